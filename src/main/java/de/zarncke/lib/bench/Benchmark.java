@@ -0,0 +1,54 @@
+package de.zarncke.lib.bench;
+
+/**
+ * A measured operation for the {@link BenchmarkRunner}.
+ * {@link #operation(int)} is called repeatedly and concurrently by the given number of threads between
+ * {@link #setUp(int)} and {@link #tearDown()}.
+ * The operation should return a value depending on its work so that it cannot be optimized away.
+ *
+ * @author Gunnar Zarncke
+ */
+public abstract class Benchmark {
+	private final String name;
+
+	protected Benchmark(final String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Called once before each thread count is measured.
+	 *
+	 * @param threads which will call {@link #operation(int)}
+	 * @throws Exception to abort the benchmark
+	 */
+	public void setUp(final int threads) throws Exception {
+		// nop
+	}
+
+	/**
+	 * Performs one measured operation.
+	 *
+	 * @param thread index 0..threads-1 of the calling thread
+	 * @return any result of the operation
+	 * @throws Exception to abort the benchmark
+	 */
+	public abstract Object operation(int thread) throws Exception;
+
+	/**
+	 * Called once after each thread count was measured.
+	 *
+	 * @throws Exception to abort the benchmark
+	 */
+	public void tearDown() throws Exception {
+		// nop
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public String toString() {
+		return this.name;
+	}
+}
@@ -0,0 +1,183 @@
+package de.zarncke.lib.bench;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.Warden;
+
+/**
+ * Measurement of one {@link Benchmark} with one thread count.
+ * Results are written one per line as CSV with a fixed column order so that files of different versions can be
+ * {@link #compare(List, List) compared} (or diffed).
+ *
+ * @author Gunnar Zarncke
+ */
+public final class BenchmarkResult {
+	public static final String CSV_HEADER = "benchmark,threads,iterations,opsPerSec,error,min,max,"
+			+ "bytesPerOp,gcCount,gcMillis";
+
+	private final String benchmark;
+	private final int threads;
+	private final int iterations;
+	private final double opsPerSec;
+	private final double error;
+	private final double min;
+	private final double max;
+	private final double bytesPerOp;
+	private final long gcCount;
+	private final long gcMillis;
+
+	/**
+	 * @param benchmark name
+	 * @param threads number of threads
+	 * @param iterations number of measurement iterations
+	 * @param opsPerSec mean throughput of all threads
+	 * @param error half width of the 99% confidence interval of the throughput
+	 * @param min smallest throughput of an iteration
+	 * @param max largest throughput of an iteration
+	 * @param bytesPerOp allocated; -1 if unknown
+	 * @param gcCount collections during measurement
+	 * @param gcMillis time of collections during measurement
+	 */
+	public BenchmarkResult(final String benchmark, final int threads, final int iterations, final double opsPerSec,
+			final double error, final double min, final double max, final double bytesPerOp, final long gcCount,
+			final long gcMillis) {
+		if (benchmark.indexOf(',') >= 0) {
+			throw Warden.spot(new IllegalArgumentException("benchmark names must not contain ',': " + benchmark));
+		}
+		this.benchmark = benchmark;
+		this.threads = threads;
+		this.iterations = iterations;
+		this.opsPerSec = opsPerSec;
+		this.error = error;
+		this.min = min;
+		this.max = max;
+		this.bytesPerOp = bytesPerOp;
+		this.gcCount = gcCount;
+		this.gcMillis = gcMillis;
+	}
+
+	public String toCsv() {
+		return String.format(Locale.ROOT, "%s,%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%d,%d", this.benchmark,
+				Integer.valueOf(this.threads), Integer.valueOf(this.iterations), Double.valueOf(this.opsPerSec),
+				Double.valueOf(this.error), Double.valueOf(this.min), Double.valueOf(this.max),
+				Double.valueOf(this.bytesPerOp), Long.valueOf(this.gcCount), Long.valueOf(this.gcMillis));
+	}
+
+	/**
+	 * @param line as written by {@link #toCsv()}
+	 * @return BenchmarkResult
+	 * @throws IllegalArgumentException if the line doesn't match
+	 */
+	public static BenchmarkResult fromCsv(final String line) {
+		String[] f = line.trim().split(",");
+		if (f.length != 10) {
+			throw Warden.spot(new IllegalArgumentException("not a benchmark result: " + line));
+		}
+		try {
+			return new BenchmarkResult(f[0], Integer.parseInt(f[1]), Integer.parseInt(f[2]), Double.parseDouble(f[3]),
+					Double.parseDouble(f[4]), Double.parseDouble(f[5]), Double.parseDouble(f[6]),
+					Double.parseDouble(f[7]), Long.parseLong(f[8]), Long.parseLong(f[9]));
+		} catch (NumberFormatException e) {
+			throw Warden.spot(new IllegalArgumentException("not a benchmark result: " + line, e));
+		}
+	}
+
+	/**
+	 * @param lines of a result file; the header and empty lines are skipped
+	 * @return results
+	 */
+	public static List<BenchmarkResult> fromCsv(final List<String> lines) {
+		List<BenchmarkResult> results = L.l();
+		for (String line : lines) {
+			if (line.trim().length() > 0 && !line.startsWith(CSV_HEADER)) {
+				results.add(fromCsv(line));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Compares the throughput of matching benchmark and thread count.
+	 * Differences within the combined errors are marked as insignificant.
+	 *
+	 * @param baseline earlier results
+	 * @param current later results
+	 * @return one line per result present in both
+	 */
+	public static List<String> compare(final List<BenchmarkResult> baseline, final List<BenchmarkResult> current) {
+		Map<String, BenchmarkResult> byKey = L.map();
+		for (BenchmarkResult r : baseline) {
+			byKey.put(r.getKey(), r);
+		}
+		List<String> lines = L.l();
+		for (BenchmarkResult r : current) {
+			BenchmarkResult old = byKey.get(r.getKey());
+			if (old == null || old.opsPerSec <= 0) {
+				continue;
+			}
+			double change = (r.opsPerSec - old.opsPerSec) / old.opsPerSec * 100;
+			boolean significant = Math.abs(r.opsPerSec - old.opsPerSec) > r.error + old.error;
+			lines.add(String.format(Locale.ROOT,
+					"%s with %d threads: %.0f -> %.0f ops/sec (%+.1f%%%s), %.0f -> %.0f bytes/op", r.benchmark,
+					Integer.valueOf(r.threads), Double.valueOf(old.opsPerSec), Double.valueOf(r.opsPerSec),
+					Double.valueOf(change), significant ? "" : " insignificant", Double.valueOf(old.bytesPerOp),
+					Double.valueOf(r.bytesPerOp)));
+		}
+		return lines;
+	}
+
+	private String getKey() {
+		return this.benchmark + "," + this.threads;
+	}
+
+	public String getBenchmark() {
+		return this.benchmark;
+	}
+
+	public int getThreads() {
+		return this.threads;
+	}
+
+	public int getIterations() {
+		return this.iterations;
+	}
+
+	public double getOpsPerSec() {
+		return this.opsPerSec;
+	}
+
+	public double getError() {
+		return this.error;
+	}
+
+	public double getMin() {
+		return this.min;
+	}
+
+	public double getMax() {
+		return this.max;
+	}
+
+	public double getBytesPerOp() {
+		return this.bytesPerOp;
+	}
+
+	public long getGcCount() {
+		return this.gcCount;
+	}
+
+	public long getGcMillis() {
+		return this.gcMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%s with %d threads: %.0f +- %.0f ops/sec, %.1f bytes/op, %d gcs in %d ms",
+				this.benchmark, Integer.valueOf(this.threads), Double.valueOf(this.opsPerSec),
+				Double.valueOf(this.error), Double.valueOf(this.bytesPerOp), Long.valueOf(this.gcCount),
+				Long.valueOf(this.gcMillis));
+	}
+}
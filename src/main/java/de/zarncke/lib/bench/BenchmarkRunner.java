@@ -0,0 +1,313 @@
+package de.zarncke.lib.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.log.Log;
+
+/**
+ * Measures the throughput of {@link Benchmark Benchmarks} with a sweep of thread counts.
+ * <ul>
+ * <li>For each thread count the benchmark is {@link Benchmark#setUp(int) set up} and that many threads call its
+ * operation as often as possible for a number of warm-up iterations (to let the JIT compile) and then of measurement
+ * iterations of fixed duration.</li>
+ * <li>Throughput is the sum of the throughputs of the threads. Mean, extremes and the half width of the 99% confidence
+ * interval (normal approximation) over the measurement iterations are reported.</li>
+ * <li>Like the gc profiler of JMH the bytes allocated per operation (if the JVM supports thread allocation counting) and
+ * the number and time of garbage collections during measurement are recorded.</li>
+ * </ul>
+ * Results are reported to the {@link Log} and returned as {@link BenchmarkResult BenchmarkResults}.
+ *
+ * @author Gunnar Zarncke
+ */
+public class BenchmarkRunner {
+	public static final int DEFAULT_WARMUP_ITERATIONS = 3;
+	public static final int DEFAULT_MEASUREMENT_ITERATIONS = 5;
+	public static final long DEFAULT_ITERATION_MILLIS = 1000;
+
+	/**
+	 * z value of the 99% confidence interval
+	 */
+	private static final double Z_99 = 2.576;
+
+	private int warmupIterations = DEFAULT_WARMUP_ITERATIONS;
+	private int measurementIterations = DEFAULT_MEASUREMENT_ITERATIONS;
+	private long iterationMillis = DEFAULT_ITERATION_MILLIS;
+	private int[] threadCounts = getDefaultThreadCounts();
+
+	/**
+	 * State of the measurement of one thread count.
+	 */
+	private static final class Trial {
+		private final Benchmark benchmark;
+		private final int threads;
+		private final CyclicBarrier barrier;
+		private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		private volatile boolean running;
+
+		// per iteration and thread
+		private final long[][] operations;
+		private final long[][] nanos;
+		private final long[][] allocated;
+
+		Trial(final Benchmark benchmark, final int threads, final int iterations) {
+			this.benchmark = benchmark;
+			this.threads = threads;
+			this.barrier = new CyclicBarrier(threads + 1);
+			this.operations = new long[iterations][threads];
+			this.nanos = new long[iterations][threads];
+			this.allocated = new long[iterations][threads];
+		}
+
+		void work(final int thread) throws InterruptedException, BrokenBarrierException {
+			Object sink = null;
+			for (int i = 0; i < this.operations.length; i++) {
+				this.barrier.await();
+				long bytes = getAllocatedBytes();
+				long start = System.nanoTime();
+				long n = 0;
+				if (this.failure.get() == null) {
+					try {
+						while (this.running) {
+							sink = this.benchmark.operation(thread);
+							n++;
+						}
+					} catch (Exception e) {
+						this.failure.compareAndSet(null, e);
+					} catch (Error e) {
+						this.failure.compareAndSet(null, e);
+					}
+				}
+				this.nanos[i][thread] = System.nanoTime() - start;
+				this.operations[i][thread] = n;
+				this.allocated[i][thread] = bytes < 0 ? -1 : getAllocatedBytes() - bytes;
+				this.barrier.await();
+			}
+			if (sink == this) {
+				// never true; uses the results
+				Log.LOG.get().report(sink);
+			}
+		}
+
+		double getOpsPerSec(final int iteration) {
+			double sum = 0;
+			for (int t = 0; t < this.threads; t++) {
+				if (this.nanos[iteration][t] > 0) {
+					sum += this.operations[iteration][t] * 1e9 / this.nanos[iteration][t];
+				}
+			}
+			return sum;
+		}
+	}
+
+	/**
+	 * @return 1, 2, 4, ... up to twice the number of processors
+	 */
+	public static int[] getDefaultThreadCounts() {
+		int max = 2 * Runtime.getRuntime().availableProcessors();
+		List<Integer> counts = L.l();
+		for (int t = 1; t <= max; t *= 2) {
+			counts.add(Integer.valueOf(t));
+		}
+		int[] result = new int[counts.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = counts.get(i).intValue();
+		}
+		return result;
+	}
+
+	/**
+	 * Measures the benchmark with each of the {@link #setThreadCounts(int...) thread counts}.
+	 *
+	 * @param benchmark != null
+	 * @return one result per thread count
+	 * @throws Exception of the benchmark
+	 */
+	public List<BenchmarkResult> run(final Benchmark benchmark) throws Exception {
+		List<BenchmarkResult> results = L.l();
+		for (int threads : this.threadCounts) {
+			BenchmarkResult result = run(benchmark, threads);
+			Log.LOG.get().report(result.toString());
+			results.add(result);
+		}
+		return results;
+	}
+
+	/**
+	 * Measures the benchmark with the given number of threads.
+	 *
+	 * @param benchmark != null
+	 * @param threads >= 1
+	 * @return BenchmarkResult
+	 * @throws Exception of the benchmark
+	 */
+	public BenchmarkResult run(final Benchmark benchmark, final int threads) throws Exception {
+		if (threads < 1) {
+			throw Warden.spot(new IllegalArgumentException("at least one thread is needed, not " + threads));
+		}
+		int iterations = this.warmupIterations + this.measurementIterations;
+		final Trial trial = new Trial(benchmark, threads, iterations);
+		benchmark.setUp(threads);
+		try {
+			Thread[] workers = new Thread[threads];
+			for (int t = 0; t < threads; t++) {
+				final int thread = t;
+				workers[t] = new Thread(benchmark.getName() + " #" + t) {
+					@Override
+					public void run() {
+						Warden w = Warden.appointWarden();
+						try {
+							trial.work(thread);
+						} catch (InterruptedException e) {
+							trial.failure.compareAndSet(null, e);
+						} catch (BrokenBarrierException e) {
+							trial.failure.compareAndSet(null, e);
+						} finally {
+							w.finish();
+						}
+					}
+				};
+				workers[t].setDaemon(true);
+				workers[t].start();
+			}
+			long gcCount = 0;
+			long gcMillis = 0;
+			for (int i = 0; i < iterations; i++) {
+				boolean measured = i >= this.warmupIterations;
+				long gcCountBefore = getGcCount();
+				long gcMillisBefore = getGcMillis();
+				trial.running = true;
+				trial.barrier.await();
+				Thread.sleep(this.iterationMillis);
+				trial.running = false;
+				trial.barrier.await();
+				if (measured) {
+					gcCount += getGcCount() - gcCountBefore;
+					gcMillis += getGcMillis() - gcMillisBefore;
+				}
+			}
+			for (Thread worker : workers) {
+				worker.join();
+			}
+			Throwable t = trial.failure.get();
+			if (t instanceof Exception) {
+				throw (Exception) t;
+			}
+			if (t instanceof Error) {
+				throw (Error) t;
+			}
+			return summarize(trial, gcCount, gcMillis);
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	private BenchmarkResult summarize(final Trial trial, final long gcCount, final long gcMillis) {
+		int n = this.measurementIterations;
+		double sum = 0;
+		double min = Double.MAX_VALUE;
+		double max = 0;
+		long operations = 0;
+		long allocated = 0;
+		for (int i = this.warmupIterations; i < this.warmupIterations + n; i++) {
+			double ops = trial.getOpsPerSec(i);
+			sum += ops;
+			min = Math.min(min, ops);
+			max = Math.max(max, ops);
+			for (int t = 0; t < trial.threads; t++) {
+				operations += trial.operations[i][t];
+				if (allocated >= 0) {
+					allocated = trial.allocated[i][t] < 0 ? -1 : allocated + trial.allocated[i][t];
+				}
+			}
+		}
+		double mean = sum / n;
+		double squares = 0;
+		for (int i = this.warmupIterations; i < this.warmupIterations + n; i++) {
+			double d = trial.getOpsPerSec(i) - mean;
+			squares += d * d;
+		}
+		double error = n > 1 ? Z_99 * Math.sqrt(squares / (n - 1)) / Math.sqrt(n) : Double.NaN;
+		double bytesPerOp = allocated < 0 || operations == 0 ? -1 : (double) allocated / operations;
+		return new BenchmarkResult(trial.benchmark.getName(), trial.threads, n, mean, error, min, max, bytesPerOp,
+				gcCount, gcMillis);
+	}
+
+	/**
+	 * @return bytes allocated by the current thread; -1 if not supported
+	 */
+	static long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	private static long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long getGcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+
+	public int getWarmupIterations() {
+		return this.warmupIterations;
+	}
+
+	public void setWarmupIterations(final int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+	}
+
+	public int getMeasurementIterations() {
+		return this.measurementIterations;
+	}
+
+	public void setMeasurementIterations(final int measurementIterations) {
+		if (measurementIterations < 1) {
+			throw Warden.spot(new IllegalArgumentException("at least one measurement is needed"));
+		}
+		this.measurementIterations = measurementIterations;
+	}
+
+	public long getIterationMillis() {
+		return this.iterationMillis;
+	}
+
+	public void setIterationMillis(final long iterationMillis) {
+		this.iterationMillis = iterationMillis;
+	}
+
+	public int[] getThreadCounts() {
+		return this.threadCounts.clone();
+	}
+
+	public void setThreadCounts(final int... threadCounts) {
+		this.threadCounts = threadCounts.clone();
+	}
+
+	@Override
+	public String toString() {
+		return "BenchmarkRunner " + this.warmupIterations + "+" + this.measurementIterations + " iterations of "
+				+ this.iterationMillis + " ms";
+	}
+}
@@ -0,0 +1,174 @@
+package de.zarncke.lib.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import de.zarncke.lib.block.StrictBlock;
+import de.zarncke.lib.cache.NoIoBenchmark;
+import de.zarncke.lib.cache.RefreshContent;
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.ctx.Context;
+import de.zarncke.lib.io.FileQueue;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.io.store.MemStore;
+import de.zarncke.lib.io.store.Store;
+import de.zarncke.lib.log.Log;
+import de.zarncke.lib.region.RegionUtil;
+import de.zarncke.lib.time.Profiling;
+import de.zarncke.lib.value.Default;
+
+/**
+ * Suite of {@link Benchmark Benchmarks} of concurrently used paths:
+ * <ul>
+ * <li>{@link Context#get()} and {@link Context#runWith(StrictBlock, Default...)},</li>
+ * <li>{@link Profiling.ThreadSaveProfiling#time(String, long)},</li>
+ * <li>{@link RefreshContent#asRegion()} as cache of a Store,</li>
+ * <li>{@link FileQueue#offer(Object)} and {@link FileQueue#poll()} and</li>
+ * <li>the {@link NoIoBenchmark} (object graph, serialization and string processing of the family model) unsynchronized
+ * and synchronized.</li>
+ * </ul>
+ * Each is run by a {@link BenchmarkRunner} with its default thread count sweep.
+ * Call with the file to write the {@link BenchmarkResult#toCsv() CSV results} to and optionally a file of earlier
+ * results to {@link BenchmarkResult#compare(List, List) compare} with.
+ *
+ * @author Gunnar Zarncke
+ */
+public final class HotPathBenchmarks {
+	private static final Context<String> CTX = Context.of(Default.of("default", String.class));
+
+	private static final String[] ITEMS = { "parse", "render", "store", "load", "send", "receive", "log", "done" };
+
+	private HotPathBenchmarks() {
+		// main only
+	}
+
+	public static void main(final String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		List<BenchmarkResult> results = L.l();
+		for (Benchmark benchmark : createSuite()) {
+			results.addAll(runner.run(benchmark));
+		}
+
+		StringBuilder csv = new StringBuilder(BenchmarkResult.CSV_HEADER).append("\n");
+		for (BenchmarkResult r : results) {
+			csv.append(r.toCsv()).append("\n");
+		}
+		if (args.length > 0) {
+			IOTools.dump(csv, new File(args[0]));
+		} else {
+			Log.LOG.get().report(csv);
+		}
+		if (args.length > 1) {
+			List<BenchmarkResult> baseline = BenchmarkResult.fromCsv(readLines(new File(args[1])));
+			for (String line : BenchmarkResult.compare(baseline, results)) {
+				Log.LOG.get().report(line);
+			}
+		}
+	}
+
+	private static List<String> readLines(final File file) throws IOException {
+		InputStream ins = new FileInputStream(file);
+		try {
+			return IOTools.getAllLines(ins);
+		} finally {
+			IOTools.forceClose(ins);
+		}
+	}
+
+	public static List<Benchmark> createSuite() {
+		NoIoBenchmark noIo = new NoIoBenchmark();
+		NoIoBenchmark noIoSynchronized = new NoIoBenchmark();
+		noIoSynchronized.setSynchronize(true);
+		return L.l(createContextGet(), createContextRunWith(), createProfiling(), createRefreshContent(),
+				createFileQueue(), noIo.asBenchmark(), noIoSynchronized.asBenchmark());
+	}
+
+	public static Benchmark createContextGet() {
+		return new Benchmark("contextGet") {
+			@Override
+			public Object operation(final int thread) {
+				return CTX.get();
+			}
+		};
+	}
+
+	public static Benchmark createContextRunWith() {
+		final Default<String> value = Default.of("bound", String.class);
+		final StrictBlock<String> block = new StrictBlock<String>() {
+			@Override
+			public String execute() {
+				return CTX.get();
+			}
+		};
+		return new Benchmark("contextRunWith") {
+			@Override
+			public Object operation(final int thread) {
+				return Context.runWith(block, value);
+			}
+		};
+	}
+
+	public static Benchmark createProfiling() {
+		return new Benchmark("profilingTime") {
+			private Profiling profiling;
+
+			@Override
+			public void setUp(final int threads) {
+				final Store store = new MemStore();
+				this.profiling = new Profiling.ThreadSaveProfiling() {
+					@Override
+					public Store getStore() {
+						return store;
+					}
+				};
+			}
+
+			@Override
+			public Object operation(final int thread) {
+				this.profiling.time(ITEMS[thread & ITEMS.length - 1], thread);
+				return this.profiling;
+			}
+		};
+	}
+
+	public static Benchmark createRefreshContent() {
+		return new Benchmark("refreshContent") {
+			private RefreshContent content;
+
+			@Override
+			public void setUp(final int threads) {
+				this.content = new RefreshContent(new MemStore(RegionUtil.asRegion(new byte[4096])));
+			}
+
+			@Override
+			public Object operation(final int thread) throws IOException {
+				return Long.valueOf(this.content.asRegion().length());
+			}
+		};
+	}
+
+	public static Benchmark createFileQueue() {
+		return new Benchmark("fileQueueOfferPoll") {
+			private FileQueue<String> queue;
+
+			@Override
+			public void setUp(final int threads) throws IOException {
+				this.queue = new FileQueue<String>(String.class);
+			}
+
+			@Override
+			public Object operation(final int thread) {
+				this.queue.offer(ITEMS[thread & ITEMS.length - 1]);
+				return this.queue.poll();
+			}
+
+			@Override
+			public void tearDown() throws IOException {
+				this.queue.close();
+			}
+		};
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * Provides a {@link de.zarncke.lib.bench.BenchmarkRunner harness} for multi-threaded micro benchmarks.
+ */
+package de.zarncke.lib.bench;
+
@@ -1,12 +1,10 @@
 package de.zarncke.lib.cache;
 
-import java.io.Serializable;
 import java.util.Iterator;
 import java.util.Map;
 
 import de.zarncke.lib.err.Warden;
-import de.zarncke.lib.lang.ClassTools;
-import de.zarncke.lib.util.ObjectTool;
+import de.zarncke.lib.lang.SizeEstimator;
 
 /**
  * Base class for memory control. All saved* methods return 0. {@link #getTypicalObjectSize()} SHOULD be overridden.
@@ -55,14 +53,14 @@ public class AbstractMapUsage extends AbstractMemoryUsage {
 		return size * numReports / actualSize;
 	}
 
+	/**
+	 * Estimates the heap size of the entry and the objects it references (within the {@link SizeEstimator} budgets).
+	 *
+	 * @param r entry, may be null
+	 * @return bytes
+	 */
 	protected int estimateSizeOfSampleEntry(final Object r) {
-		if (r instanceof Serializable) {
-			return ObjectTool.estimateSize((Serializable) r);
-		}
-		if (r != null) {
-			return ClassTools.estimateSize(r.getClass());
-		}
-		return 0;
+		return (int) Math.min(Integer.MAX_VALUE, SizeEstimator.deepSizeOf(r));
 	}
 
 	@Override
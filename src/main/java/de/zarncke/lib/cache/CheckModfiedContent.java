@@ -1,9 +1,11 @@
 package de.zarncke.lib.cache;
 
 import de.zarncke.lib.io.store.Store;
+import de.zarncke.lib.io.store.StoreWatcher;
 
 /**
  * A data block which is backed by a Store and refetched if the modification date changes.
+ * Changes are detected by the {@link StoreWatcher}, so the Store is not queried on each access.
  *
  * @author Gunnar Zarncke <gunnar@zarncke.de>
  */
@@ -16,14 +18,25 @@ public class CheckModfiedContent extends StoreContent {
 
 	private long lastModified = Long.MIN_VALUE;
 
+	private transient StoreWatcher.Watch watch;
+	private transient long generation;
+
 	@Override
-	protected void wasUpdated() {
+	protected void willUpdate() {
+		// remember the state before reading; a change during the read is then detected on the next access
+		if (this.watch == null) {
+			this.watch = StoreWatcher.CTX.get().watch(this.source);
+		}
+		this.generation = this.watch.getGeneration();
 		this.lastModified = this.source.getLastModified();
 	}
 
 	@Override
 	protected boolean hasChanged() {
-		return this.source.getLastModified() != this.lastModified;
+		if (this.watch == null) {
+			return this.source.getLastModified() != this.lastModified;
+		}
+		return this.watch.getGeneration() != this.generation;
 	}
 
 	@Override
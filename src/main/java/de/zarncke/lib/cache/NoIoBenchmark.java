@@ -18,8 +18,11 @@ import de.zarncke.app.family.model.Family;
 import de.zarncke.app.family.model.Marriage;
 import de.zarncke.app.family.model.Member;
 import de.zarncke.app.family.model.Member.Gender;
+import de.zarncke.lib.bench.Benchmark;
+import de.zarncke.lib.bench.BenchmarkRunner;
 import de.zarncke.lib.coll.Elements;
 import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.Warden;
 import de.zarncke.lib.log.Log;
 import de.zarncke.lib.region.Region;
 import de.zarncke.lib.util.Misc;
@@ -60,7 +63,8 @@ import de.zarncke.lib.util.ObjectTool;
  * <li>Use an object graph with many cross-links</li>
  * <li>Deterministic (the datastructure is random, but with fixed seed).</li>
  * <li>Intentionally no IO (neither disk nor net). This should be estimated separately.</li>
- * <li>Not yet: sychronize deep/shallow</li>
+ * <li>Optionally {@link #setSynchronize(boolean) synchronized} and with {@link #setNumberOfThreads(int) multiple
+ * threads} (run by the {@link BenchmarkRunner}).</li>
  * <li>Not yet: with/without lots of object creation</li>
  * </ul>
  * <br/>
@@ -143,22 +147,91 @@ public class NoIoBenchmark {
 
 	private int untracked;
 
+	private int numberOfThreads = 1;
+	private boolean synchronize;
+	private final Object lock = new Object();
+
+	/**
+	 * @param threads number of threads which concurrently {@link #performAll() perform} the benchmarks on the shared
+	 * structure when run by {@link #main(String[])}
+	 */
 	public void setNumberOfThreads(final int threads) {
+		if (threads < 1) {
+			throw Warden.spot(new IllegalArgumentException("at least one thread is needed, not " + threads));
+		}
+		this.numberOfThreads = threads;
+	}
 
+	public int getNumberOfThreads() {
+		return this.numberOfThreads;
 	}
 
+	/**
+	 * @param synchronize true: concurrent {@link #performAll()} calls are serialized on a common lock (measures
+	 * contended locking)
+	 */
 	public void setSynchronize(final boolean synchronize) {
+		this.synchronize = synchronize;
+	}
 
+	public boolean isSynchronize() {
+		return this.synchronize;
 	}
 
-	public static void main(final String[] args) {
+	/**
+	 * Call with the number of threads as optional argument; "sync" as second argument synchronizes.
+	 *
+	 * @param args see above
+	 * @throws Exception of the benchmark
+	 */
+	public static void main(final String[] args) throws Exception {
 		NoIoBenchmark bm = new NoIoBenchmark();
+		bm.setNumberOfThreads(args.length > 0 ? Integer.parseInt(args[0]) : 1);
+		bm.setSynchronize(args.length > 1 && "sync".equals(args[1]));
 		bm.setupStructure();
+		Log.LOG.get().report("serialized size " + bm.performSerializationBenchmark());
+		Log.LOG.get().report("printed size " + bm.performStringProcessingBenchmark());
 
-		bm.performObjectGraphBenchmark();
-		bm.performObjectGraphRestructureBenchmark();
-		bm.performSerializationBenchmark();
-		bm.performStringProcessingBenchmark();
+		Log.LOG.get().report(new BenchmarkRunner().run(bm.asBenchmark(), bm.getNumberOfThreads()).toString());
+	}
+
+	/**
+	 * Performs each benchmark once. May be called concurrently after {@link #setupStructure()}.
+	 *
+	 * @return combined sizes to use the results
+	 */
+	public int performAll() {
+		if (this.synchronize) {
+			synchronized (this.lock) {
+				return performAllUnsynchronized();
+			}
+		}
+		return performAllUnsynchronized();
+	}
+
+	private int performAllUnsynchronized() {
+		int depth = performObjectGraphBenchmark();
+		performObjectGraphRestructureBenchmark();
+		return depth + performSerializationBenchmark() + performStringProcessingBenchmark();
+	}
+
+	/**
+	 * @return a {@link Benchmark} with one {@link #performAll()} as operation on the structure set up once
+	 */
+	public Benchmark asBenchmark() {
+		return new Benchmark("noIo" + (this.synchronize ? "Synchronized" : "")) {
+			@Override
+			public void setUp(final int threads) {
+				if (NoIoBenchmark.this.families == null) {
+					setupStructure();
+				}
+			}
+
+			@Override
+			public Object operation(final int thread) {
+				return Integer.valueOf(performAll());
+			}
+		};
 	}
 
 	public void setupStructure() {
@@ -315,7 +388,10 @@ public class NoIoBenchmark {
 		this.families = null;
 	}
 
-	public void performObjectGraphBenchmark() {
+	/**
+	 * @return maximum depth of the families
+	 */
+	public int performObjectGraphBenchmark() {
 		Map<Member, Integer> seen = L.map();
 		int max = 0;
 		for (Family f : this.families) {
@@ -331,7 +407,7 @@ public class NoIoBenchmark {
 				}
 			}
 		}
-		// Log.LOG.get().report("max depth " + max);
+		return max;
 	}
 
 	public int maxDepthOf(final Member member, final Map<Member, Integer> seen) {
@@ -354,14 +430,20 @@ public class NoIoBenchmark {
 		return max;
 	}
 
-	public void performSerializationBenchmark() {
+	/**
+	 * @return serialized size
+	 */
+	public int performSerializationBenchmark() {
 		Region bytes = ObjectTool.serialize((Serializable) this.families);
 		List<Family> result = (List<Family>) ObjectTool.deserialize(bytes);
 		assert result.size() == this.families.size() : "implausible deserialization";
-		Log.LOG.get().report("size " + bytes.length());
+		return (int) bytes.length();
 	}
 
-	public void performStringProcessingBenchmark() {
+	/**
+	 * @return printed size
+	 */
+	public int performStringProcessingBenchmark() {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		BufferedOutputStream bos = new BufferedOutputStream(baos, 8192);
 		OutputStreamWriter osw = new OutputStreamWriter(bos, Misc.UTF_8);
@@ -371,7 +453,7 @@ public class NoIoBenchmark {
 			f.print(pw);
 		}
 		pw.flush();
-		Log.LOG.get().report("size " + baos.size());
+		return baos.size();
 	}
 
 
@@ -26,12 +26,20 @@ public class StoreContent implements HasData, Serializable {
 	@Override
 	public Region asRegion() throws IOException {
 		if (this.region == null || hasChanged()) {
+			willUpdate();
 			this.region = this.source.asRegion();
 			wasUpdated();
 		}
 		return this.region;
 	}
 
+	/**
+	 * Called before the source is read, so changes during the read can be noticed.
+	 */
+	protected void willUpdate() {
+		// nop
+	}
+
 	protected void wasUpdated() {
 		// nop
 	}
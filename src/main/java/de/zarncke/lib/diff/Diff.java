@@ -63,6 +63,19 @@ public class Diff {
 		}
 	}
 
+	/**
+	 * Adds all deltas and sizes of another Diff.
+	 *
+	 * @param other != null
+	 */
+	public void addAll(final Diff other) {
+		this.aSize += other.aSize;
+		this.bSize += other.bSize;
+		for (Delta delta : other.deltas) {
+			add(delta);
+		}
+	}
+
 	/**
 	 * @return a fresh copy of the current deltas
 	 */
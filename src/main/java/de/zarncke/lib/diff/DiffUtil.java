@@ -1,9 +1,15 @@
 package de.zarncke.lib.diff;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 
 import de.zarncke.lib.coll.Elements;
+import de.zarncke.lib.err.Warden;
 import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.io.store.Accessible;
+import de.zarncke.lib.io.store.FileStore;
 import de.zarncke.lib.io.store.Store;
 
 /**
@@ -16,12 +22,223 @@ public final class DiffUtil {
 		// hidden constructor of helper class
 	}
 
+	/**
+	 * Contents are compared in chunks of this size.
+	 */
+	public static final int CHUNK_SIZE = 64 * 1024;
+	/**
+	 * Differing contents up to this size are described with their bytes.
+	 */
+	public static final int DETAIL_LIMIT = 64 * 1024;
+
+	/**
+	 * Compares the contents as streams in chunks and stops at the first difference.
+	 * Contents of different size differ without reading them. Only small contents (up to {@link #DETAIL_LIMIT}) are
+	 * read completely to describe their difference. The size of other differences is determined on demand from the
+	 * common prefix and (for files) suffix.
+	 *
+	 * @param a != null
+	 * @param b != null
+	 * @param path of the Stores
+	 * @param differences to add to
+	 * @throws IOException if a Store cannot be read
+	 */
 	public static void compareContent(final Store a, final Store b, final String path, final Diff differences)
 			throws IOException {
-		differences.addSizeA(a.getSize());
-		differences.addSizeB(b.getSize());
-		final byte[] ab = IOTools.getAllBytes(a.getInputStream());
-		final byte[] bb = IOTools.getAllBytes(b.getInputStream());
+		long sizeA = a.getSize();
+		long sizeB = b.getSize();
+		differences.addSizeA(sizeA);
+		differences.addSizeB(sizeB);
+		boolean known = sizeA != Accessible.UNKNOWN_SIZE && sizeB != Accessible.UNKNOWN_SIZE;
+		long mismatch = -1;
+		if (!known || sizeA == sizeB) {
+			mismatch = findMismatch(a, b);
+			if (mismatch < 0) {
+				return;
+			}
+		}
+		addDifference(a, b, path, differences, mismatch);
+	}
+
+	/**
+	 * Adds the difference of contents which are known to differ.
+	 *
+	 * @param a != null
+	 * @param b != null
+	 * @param path of the Stores
+	 * @param differences to add to
+	 * @param mismatch offset of the first differing byte; -1 if not known yet
+	 * @throws IOException if a small Store cannot be read
+	 */
+	static void addDifference(final Store a, final Store b, final String path, final Diff differences,
+			final long mismatch) throws IOException {
+		long sizeA = a.getSize();
+		long sizeB = b.getSize();
+		if (sizeA != Accessible.UNKNOWN_SIZE && sizeB != Accessible.UNKNOWN_SIZE && sizeA <= DETAIL_LIMIT
+				&& sizeB <= DETAIL_LIMIT) {
+			addContentDifference(a, IOTools.getAllBytes(a.getInputStream()), IOTools.getAllBytes(b.getInputStream()),
+					path, differences);
+		} else {
+			differences.add(new StreamDelta(a, b, path, mismatch));
+		}
+	}
+
+	/**
+	 * @param a != null
+	 * @param b != null
+	 * @return offset of the first differing byte (or the length of the shorter content); -1 if the contents are equal
+	 * @throws IOException if a Store cannot be read
+	 */
+	public static long findMismatch(final Store a, final Store b) throws IOException {
+		InputStream ins = a.getInputStream();
+		try {
+			InputStream other = b.getInputStream();
+			try {
+				byte[] ba = new byte[CHUNK_SIZE];
+				byte[] bb = new byte[CHUNK_SIZE];
+				long offset = 0;
+				while (true) {
+					int na = readChunk(ins, ba);
+					int nb = readChunk(other, bb);
+					int n = Math.min(na, nb);
+					for (int i = 0; i < n; i++) {
+						if (ba[i] != bb[i]) {
+							return offset + i;
+						}
+					}
+					if (na != nb) {
+						return offset + n;
+					}
+					if (na < CHUNK_SIZE) {
+						return -1;
+					}
+					offset += n;
+				}
+			} finally {
+				IOTools.forceClose(other);
+			}
+		} finally {
+			IOTools.forceClose(ins);
+		}
+	}
+
+	private static int readChunk(final InputStream ins, final byte[] buf) throws IOException {
+		int off = 0;
+		while (off < buf.length) {
+			int n = ins.read(buf, off, buf.length - off);
+			if (n < 0) {
+				break;
+			}
+			off += n;
+		}
+		return off;
+	}
+
+	/**
+	 * Length of the common suffix of two files, at most the given limit.
+	 */
+	private static long commonSuffix(final File a, final File b, final long limit) throws IOException {
+		RandomAccessFile ra = new RandomAccessFile(a, "r");
+		try {
+			RandomAccessFile rb = new RandomAccessFile(b, "r");
+			try {
+				byte[] ba = new byte[CHUNK_SIZE];
+				byte[] bb = new byte[CHUNK_SIZE];
+				long endA = ra.length();
+				long endB = rb.length();
+				long common = 0;
+				while (common < limit) {
+					int n = (int) Math.min(CHUNK_SIZE, limit - common);
+					ra.seek(endA - common - n);
+					ra.readFully(ba, 0, n);
+					rb.seek(endB - common - n);
+					rb.readFully(bb, 0, n);
+					for (int i = n - 1; i >= 0; i--) {
+						if (ba[i] != bb[i]) {
+							return common + n - 1 - i;
+						}
+					}
+					common += n;
+				}
+				return common;
+			} finally {
+				IOTools.forceClose(rb);
+			}
+		} finally {
+			IOTools.forceClose(ra);
+		}
+	}
+
+	/**
+	 * Difference of large contents. Its size is determined on demand.
+	 */
+	private static final class StreamDelta implements Delta {
+		private final Store a;
+		private final Store b;
+		private final String path;
+		private long mismatch;
+		private double deltaSize = -1;
+
+		StreamDelta(final Store a, final Store b, final String path, final long mismatch) {
+			this.a = a;
+			this.b = b;
+			this.path = path;
+			this.mismatch = mismatch;
+		}
+
+		@Override
+		public boolean isAddition() {
+			return true;
+		}
+
+		@Override
+		public boolean isRemoval() {
+			return true;
+		}
+
+		@Override
+		public synchronized double getDeltaSize() {
+			if (this.deltaSize < 0) {
+				long sizeA = this.a.getSize();
+				long sizeB = this.b.getSize();
+				// at least one byte differs, even if the sizes are unknown
+				long maxLength = Math.max(1, Math.max(sizeA, sizeB));
+				try {
+					if (this.mismatch < 0) {
+						this.mismatch = findMismatch(this.a, this.b);
+					}
+					if (this.mismatch < 0) {
+						// changed to equal since
+						this.deltaSize = 0;
+					} else if (sizeA == Accessible.UNKNOWN_SIZE || sizeB == Accessible.UNKNOWN_SIZE) {
+						// no common suffix without sizes
+						this.deltaSize = Math.max(1, maxLength - this.mismatch);
+					} else {
+						long suffix = 0;
+						File fa = FileStore.getFile(this.a);
+						File fb = FileStore.getFile(this.b);
+						if (fa != null && fb != null) {
+							suffix = commonSuffix(fa, fb, Math.min(sizeA, sizeB) - this.mismatch);
+						}
+						this.deltaSize = maxLength - this.mismatch - suffix;
+					}
+				} catch (IOException e) {
+					Warden.disregardAndReport(e);
+					this.deltaSize = maxLength;
+				}
+			}
+			return this.deltaSize;
+		}
+
+		@Override
+		public String toString() {
+			return this.path + this.a.getName() + " differs" + (this.mismatch < 0 ? "" : " at " + this.mismatch) + " ("
+					+ this.a.getSize() + "!=" + this.b.getSize() + " bytes)";
+		}
+	}
+
+	private static void addContentDifference(final Store a, final byte[] ab, final byte[] bb, final String path,
+			final Diff differences) {
 		if (!Elements.arrayequals(ab, bb)) {
 			differences.add(new Delta() {
 				@Override
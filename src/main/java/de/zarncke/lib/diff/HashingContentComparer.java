@@ -0,0 +1,188 @@
+package de.zarncke.lib.diff;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.io.store.FileStore;
+import de.zarncke.lib.io.store.Store;
+
+/**
+ * {@link ContentComparer#BINARY Binary comparison} which remembers the SHA-256 content hashes of equal files.
+ * Files of different size differ without reading them. Files of the same size are compared by their hashes if both
+ * are cached; otherwise both are read once, compared chunk by chunk and hashed on the way. Hashes are cached by path,
+ * size and modification time, so repeated comparisons against the same tree compare equal files without reading them.
+ * Stores which are no files are compared by {@link DiffUtil#compareContent}.
+ * Thread safe.
+ *
+ * @author Gunnar Zarncke
+ */
+public class HashingContentComparer implements ContentComparer {
+	public static final int DEFAULT_MAX_CACHED = 100000;
+
+	/**
+	 * Identifies a version of a file.
+	 */
+	private static final class Key {
+		private final String path;
+		private final long size;
+		private final long modified;
+
+		Key(final File file) {
+			this.path = file.getAbsolutePath();
+			this.size = file.length();
+			this.modified = file.lastModified();
+		}
+
+		@Override
+		public int hashCode() {
+			return this.path.hashCode() * 31 + (int) (this.size ^ this.modified);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return this.path.equals(other.path) && this.size == other.size && this.modified == other.modified;
+		}
+	}
+
+	private final Cache<Key, HashCode> hashes;
+
+	public HashingContentComparer() {
+		this(DEFAULT_MAX_CACHED);
+	}
+
+	/**
+	 * @param maxCached number of file hashes to keep
+	 */
+	public HashingContentComparer(final int maxCached) {
+		this.hashes = CacheBuilder.newBuilder().maximumSize(maxCached).build();
+	}
+
+	@Override
+	public void compareContent(final Store a, final Store b, final String path, final Diff differences)
+			throws IOException {
+		File fa = FileStore.getFile(a);
+		File fb = FileStore.getFile(b);
+		if (fa == null || fb == null || !fa.isFile() || !fb.isFile() || fa.length() != fb.length()) {
+			DiffUtil.compareContent(a, b, path, differences);
+			return;
+		}
+		differences.addSizeA(fa.length());
+		differences.addSizeB(fb.length());
+		Key ka = new Key(fa);
+		Key kb = new Key(fb);
+		HashCode ha = this.hashes.getIfPresent(ka);
+		HashCode hb = this.hashes.getIfPresent(kb);
+		long mismatch;
+		if (ha != null && hb != null) {
+			if (ha.equals(hb)) {
+				return;
+			}
+			mismatch = -1;
+		} else {
+			mismatch = compareAndHash(fa, ka, fb, kb);
+			if (mismatch < 0) {
+				return;
+			}
+		}
+		DiffUtil.addDifference(a, b, path, differences, mismatch);
+	}
+
+	/**
+	 * Reads both files once and caches their hashes if they are equal.
+	 *
+	 * @return offset of the first differing byte; -1 if the contents are equal
+	 */
+	private long compareAndHash(final File fa, final Key ka, final File fb, final Key kb) throws IOException {
+		InputStream ina = new FileInputStream(fa);
+		try {
+			InputStream inb = new FileInputStream(fb);
+			try {
+				Hasher hasher = Hashing.sha256().newHasher();
+				byte[] ba = new byte[DiffUtil.CHUNK_SIZE];
+				byte[] bb = new byte[DiffUtil.CHUNK_SIZE];
+				long offset = 0;
+				while (true) {
+					int na = ByteStreams.read(ina, ba, 0, ba.length);
+					int nb = ByteStreams.read(inb, bb, 0, bb.length);
+					int n = Math.min(na, nb);
+					for (int i = 0; i < n; i++) {
+						if (ba[i] != bb[i]) {
+							return offset + i;
+						}
+					}
+					if (na != nb) {
+						return offset + n;
+					}
+					hasher.putBytes(ba, 0, n);
+					if (n < ba.length) {
+						break;
+					}
+					offset += n;
+				}
+				HashCode hash = hasher.hash();
+				this.hashes.put(ka, hash);
+				this.hashes.put(kb, hash);
+				return -1;
+			} finally {
+				IOTools.forceClose(inb);
+			}
+		} finally {
+			IOTools.forceClose(ina);
+		}
+	}
+
+	@Override
+	public void removed(final Store a, final String path, final Diff differences) {
+		DiffUtil.addSizeRemoveDifference(a, path, differences);
+	}
+
+	@Override
+	public void add(final Store b, final String path, final Diff differences) {
+		DiffUtil.addSizeAddDifference(b, path, differences);
+	}
+
+	/**
+	 * @param file != null
+	 * @return SHA-256 of the content; cached
+	 * @throws IOException if the file cannot be read
+	 */
+	public HashCode hash(final File file) throws IOException {
+		Key key = new Key(file);
+		HashCode hash = this.hashes.getIfPresent(key);
+		if (hash == null) {
+			Hasher hasher = Hashing.sha256().newHasher();
+			InputStream ins = new FileInputStream(file);
+			try {
+				byte[] buf = new byte[DiffUtil.CHUNK_SIZE];
+				int n;
+				while ((n = ins.read(buf)) >= 0) {
+					hasher.putBytes(buf, 0, n);
+				}
+			} finally {
+				IOTools.forceClose(ins);
+			}
+			hash = hasher.hash();
+			this.hashes.put(key, hash);
+		}
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return "HashingContentComparer with " + this.hashes.size() + " hashes";
+	}
+}
@@ -0,0 +1,127 @@
+package de.zarncke.lib.i18n;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns {@link Locale Locales} as small ints and caches their fallback chains (variant, country, language).
+ * Ids are only valid within the running VM. Id 0 stands for no Locale (null).
+ * Only Locales which are stored are interned (by {@link #idOf(Locale)}); lookups (by {@link #lookupId(Locale)} and
+ * {@link #lookupChain(Locale)}) never add Locales, so arbitrary requested Locales cannot fill the table.
+ *
+ * @author Gunnar Zarncke
+ */
+final class LocaleTable {
+	static final int NONE = 0;
+
+	private static final ConcurrentHashMap<Locale, Integer> IDS = new ConcurrentHashMap<Locale, Integer>();
+	private static volatile Locale[] locales = { null };
+	private static volatile int[][] chains = { { NONE } };
+
+	private LocaleTable() {
+		// static only
+	}
+
+	/**
+	 * Interns the Locale if needed. Use only for Locales which are stored.
+	 *
+	 * @param locale may be null
+	 * @return id >= 0
+	 */
+	static int idOf(final Locale locale) {
+		if (locale == null) {
+			return NONE;
+		}
+		Integer id = IDS.get(locale);
+		return id != null ? id.intValue() : intern(locale);
+	}
+
+	/**
+	 * @param locale may be null
+	 * @return id >= 0 or -1 if the Locale was never interned
+	 */
+	static int lookupId(final Locale locale) {
+		if (locale == null) {
+			return NONE;
+		}
+		Integer id = IDS.get(locale);
+		return id != null ? id.intValue() : -1;
+	}
+
+	/**
+	 * Like {@link #chainOf(int)} but without interning.
+	 *
+	 * @param locale may be null
+	 * @return ids to try in order; for a Locale which is not interned the same structure is returned with -1 for
+	 * the Locales which are not interned; don't modify
+	 */
+	static int[] lookupChain(final Locale locale) {
+		int id = lookupId(locale);
+		if (id >= 0) {
+			return chains[id];
+		}
+		if (locale.getVariant().length() > 0 && locale.getCountry().length() > 0) {
+			int[] countryChain = lookupChain(new Locale(locale.getLanguage(), locale.getCountry()));
+			int[] chain = new int[countryChain.length + 1];
+			System.arraycopy(countryChain, 0, chain, 1, countryChain.length);
+			chain[0] = -1;
+			return chain;
+		}
+		if ((locale.getVariant().length() > 0 || locale.getCountry().length() > 0)
+				&& locale.getLanguage().length() > 0) {
+			return new int[] { -1, lookupId(new Locale(locale.getLanguage())) };
+		}
+		return new int[] { -1 };
+	}
+
+	/**
+	 * @param id valid id
+	 * @return Locale, null for {@link #NONE}
+	 */
+	static Locale localeOf(final int id) {
+		return locales[id];
+	}
+
+	/**
+	 * @param id valid id
+	 * @return ids to try in order: the Locale itself, without variant, language only; don't modify
+	 */
+	static int[] chainOf(final int id) {
+		return chains[id];
+	}
+
+	private static synchronized int intern(final Locale locale) {
+		Integer known = IDS.get(locale);
+		if (known != null) {
+			return known.intValue();
+		}
+		int[] chain;
+		if (locale.getVariant().length() > 0 && locale.getCountry().length() > 0) {
+			int country = idOf(new Locale(locale.getLanguage(), locale.getCountry()));
+			int[] countryChain = chains[country];
+			chain = new int[countryChain.length + 1];
+			System.arraycopy(countryChain, 0, chain, 1, countryChain.length);
+		} else if ((locale.getVariant().length() > 0 || locale.getCountry().length() > 0)
+				&& locale.getLanguage().length() > 0) {
+			chain = new int[] { 0, idOf(new Locale(locale.getLanguage())) };
+		} else {
+			chain = new int[1];
+		}
+		// parents may have been added above
+		int id = locales.length;
+		chain[0] = id;
+		Locale[] newLocales = Arrays.copyOf(locales, id + 1);
+		newLocales[id] = locale;
+		int[][] newChains = Arrays.copyOf(chains, id + 1);
+		newChains[id] = chain;
+		chains = newChains;
+		locales = newLocales;
+		IDS.put(locale, Integer.valueOf(id));
+		return id;
+	}
+
+	static int size() {
+		return locales.length;
+	}
+}
@@ -1,12 +1,18 @@
 package de.zarncke.lib.i18n;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import de.zarncke.lib.coll.Elements;
@@ -14,6 +20,8 @@ import de.zarncke.lib.coll.Pair;
 
 /**
  * A translation table with support for default translation and untranslated text.
+ * The translations are kept in a small array sorted by interned Locale ids. Lookup of a Locale and its fallbacks
+ * (without variant, language only) doesn't allocate.
  *
  * @author Gunnar Zarncke
  */
@@ -22,6 +30,187 @@ public class Translations extends AbstractMap<Locale, String> implements Seriali
 	private Locale defaultLocale = null;
 	protected Map<Locale, String> translationsByLocale;
 
+	/**
+	 * Map of Locale to text as parallel arrays sorted by {@link LocaleTable locale id}.
+	 */
+	private static final class TextTable extends AbstractMap<Locale, String> implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private static final int[] NO_IDS = new int[0];
+		private static final String[] NO_TEXTS = new String[0];
+
+		private transient int[] ids = NO_IDS;
+		private transient String[] texts = NO_TEXTS;
+		private transient int size = 0;
+
+		TextTable() {
+			// empty
+		}
+
+		TextTable(final Map<Locale, String> base) {
+			if (base instanceof TextTable) {
+				TextTable t = (TextTable) base;
+				this.ids = Arrays.copyOf(t.ids, t.size);
+				this.texts = Arrays.copyOf(t.texts, t.size);
+				this.size = t.size;
+			} else {
+				putAll(base);
+			}
+		}
+
+		private int indexOf(final int id) {
+			return Arrays.binarySearch(this.ids, 0, this.size, id);
+		}
+
+		String getById(final int id) {
+			int i = indexOf(id);
+			return i >= 0 ? this.texts[i] : null;
+		}
+
+		private static int idOfKey(final Object key) {
+			if (key == null) {
+				return LocaleTable.NONE;
+			}
+			return key instanceof Locale ? LocaleTable.lookupId((Locale) key) : -1;
+		}
+
+		@Override
+		public String get(final Object key) {
+			int id = idOfKey(key);
+			return id < 0 ? null : getById(id);
+		}
+
+		@Override
+		public boolean containsKey(final Object key) {
+			int id = idOfKey(key);
+			return id >= 0 && indexOf(id) >= 0;
+		}
+
+		@Override
+		public String put(final Locale key, final String value) {
+			int id = LocaleTable.idOf(key);
+			int i = indexOf(id);
+			if (i >= 0) {
+				String old = this.texts[i];
+				this.texts[i] = value;
+				return old;
+			}
+			i = -i - 1;
+			if (this.size == this.ids.length) {
+				int capacity = Math.max(4, this.size + (this.size >> 1));
+				this.ids = Arrays.copyOf(this.ids, capacity);
+				this.texts = Arrays.copyOf(this.texts, capacity);
+			}
+			System.arraycopy(this.ids, i, this.ids, i + 1, this.size - i);
+			System.arraycopy(this.texts, i, this.texts, i + 1, this.size - i);
+			this.ids[i] = id;
+			this.texts[i] = value;
+			this.size++;
+			return null;
+		}
+
+		@Override
+		public String remove(final Object key) {
+			int id = idOfKey(key);
+			int i = id < 0 ? -1 : indexOf(id);
+			if (i < 0) {
+				return null;
+			}
+			String old = this.texts[i];
+			removeAt(i);
+			return old;
+		}
+
+		void removeAt(final int i) {
+			System.arraycopy(this.ids, i + 1, this.ids, i, this.size - i - 1);
+			System.arraycopy(this.texts, i + 1, this.texts, i, this.size - i - 1);
+			this.size--;
+			this.texts[this.size] = null;
+		}
+
+		@Override
+		public int size() {
+			return this.size;
+		}
+
+		@Override
+		public void clear() {
+			Arrays.fill(this.texts, 0, this.size, null);
+			this.size = 0;
+		}
+
+		@Override
+		public Set<Map.Entry<Locale, String>> entrySet() {
+			return new AbstractSet<Map.Entry<Locale, String>>() {
+				@Override
+				public Iterator<Map.Entry<Locale, String>> iterator() {
+					return new Iterator<Map.Entry<Locale, String>>() {
+						private int next = 0;
+						private int last = -1;
+
+						@Override
+						public boolean hasNext() {
+							return this.next < TextTable.this.size;
+						}
+
+						@Override
+						public Map.Entry<Locale, String> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							final int i = this.next++;
+							this.last = i;
+							return new AbstractMap.SimpleEntry<Locale, String>(
+									LocaleTable.localeOf(TextTable.this.ids[i]), TextTable.this.texts[i]) {
+								private static final long serialVersionUID = 1L;
+
+								@Override
+								public String setValue(final String value) {
+									TextTable.this.texts[i] = value;
+									return super.setValue(value);
+								}
+							};
+						}
+
+						@Override
+						public void remove() {
+							if (this.last < 0) {
+								throw new IllegalStateException();
+							}
+							removeAt(this.last);
+							this.next = this.last;
+							this.last = -1;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return TextTable.this.size;
+				}
+			};
+		}
+
+		private void writeObject(final ObjectOutputStream out) throws IOException {
+			out.defaultWriteObject();
+			// ids are only valid within this VM
+			out.writeInt(this.size);
+			for (int i = 0; i < this.size; i++) {
+				out.writeObject(LocaleTable.localeOf(this.ids[i]));
+				out.writeObject(this.texts[i]);
+			}
+		}
+
+		private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+			this.ids = NO_IDS;
+			this.texts = NO_TEXTS;
+			int n = in.readInt();
+			for (int i = 0; i < n; i++) {
+				put((Locale) in.readObject(), (String) in.readObject());
+			}
+		}
+	}
+
 	public static Translations getConstantTranslation(final String defaultTranslation) {
 		return new Translations((Void) null) {
 			private static final long serialVersionUID = 1L;
@@ -46,7 +235,7 @@ public class Translations extends AbstractMap<Locale, String> implements Seriali
 	 */
 	public Translations() {
 		super();
-		this.translationsByLocale = new HashMap<Locale, String>();
+		this.translationsByLocale = new TextTable();
 	}
 
 	/**
@@ -66,7 +255,7 @@ public class Translations extends AbstractMap<Locale, String> implements Seriali
 	public Translations(final Translations base) {
 		this();
 		this.defaultLocale = base.defaultLocale;
-		this.translationsByLocale = new HashMap<Locale, String>(base.translationsByLocale);
+		this.translationsByLocale = new TextTable(base.translationsByLocale);
 	}
 
 	/**
@@ -127,29 +316,36 @@ public class Translations extends AbstractMap<Locale, String> implements Seriali
 	 * @return String, may be null if no untranslated text is set.
 	 */
 	public String getDefault() {
-		String res = this.translationsByLocale.get(this.defaultLocale);
+		String res = textOf(LocaleTable.lookupId(this.defaultLocale));
 		if (res != null) {
 			return res;
 		}
-		return this.translationsByLocale.get(null);
+		return textOf(LocaleTable.NONE);
+	}
+
+	/**
+	 * @param localeId < 0 for Locales which were never stored
+	 */
+	private String textOf(final int localeId) {
+		if (localeId < 0) {
+			return null;
+		}
+		Map<Locale, String> map = this.translationsByLocale;
+		if (map instanceof TextTable) {
+			return ((TextTable) map).getById(localeId);
+		}
+		return map.get(LocaleTable.localeOf(localeId));
 	}
 
 	@Override
 	public final String put(final Locale key, final String value) {
 		if (key != null) {
-			if (key.getVariant().length() > 0) {
-				Locale lc = new Locale(key.getLanguage(), key.getCountry());
-				if (!this.translationsByLocale.containsKey(lc)) {
-					this.translationsByLocale.put(lc, value);
-				}
-				Locale l = new Locale(key.getLanguage());
-				if (!this.translationsByLocale.containsKey(l)) {
-					this.translationsByLocale.put(new Locale(key.getLanguage()), value);
-				}
-			} else if (key.getCountry().length() > 0) {
-				Locale l = new Locale(key.getLanguage());
-				if (!this.translationsByLocale.containsKey(l)) {
-					this.translationsByLocale.put(new Locale(key.getLanguage()), value);
+			// also provide the text for the more general locales if they have none
+			int[] chain = LocaleTable.chainOf(LocaleTable.idOf(key));
+			for (int i = 1; i < chain.length; i++) {
+				Locale general = LocaleTable.localeOf(chain[i]);
+				if (!this.translationsByLocale.containsKey(general)) {
+					this.translationsByLocale.put(general, value);
 				}
 			}
 		}
@@ -165,31 +361,26 @@ public class Translations extends AbstractMap<Locale, String> implements Seriali
 	 */
 	@Override
 	public String get(final Object key) {
+		if (key == null || key instanceof Locale) {
+			int[] chain = LocaleTable.lookupChain((Locale) key);
+			for (int id : chain) {
+				String val = textOf(id);
+				if (val != null) {
+					return val;
+				}
+			}
+			return getDefault();
+		}
 		return getTextAndLocale(key).getFirst();
 	}
 
 	public Pair<String, Locale> getTextAndLocale(final Object key) {
-		String val = super.get(key);
-		if (val != null) {
-			return Pair.pair(val, (Locale) key);
-		}
-		if (key == null) {
-			return Pair.pair(getDefault(), getDefaultLocale());
-		}
-		if (key instanceof Locale) {
-			Locale locale = (Locale) key;
-			if (locale.getVariant() != null) {
-				Locale localeWithoutVariant = new Locale(locale.getLanguage(), locale.getCountry());
-				val = this.translationsByLocale.get(localeWithoutVariant);
-				if (val != null) {
-					return Pair.pair(val, localeWithoutVariant);
-				}
-			}
-			if (locale.getCountry() != null) {
-				Locale localeLanguageOnly = new Locale(locale.getLanguage());
-				val = this.translationsByLocale.get(localeLanguageOnly);
+		if (key == null || key instanceof Locale) {
+			int[] chain = LocaleTable.lookupChain((Locale) key);
+			for (int id : chain) {
+				String val = textOf(id);
 				if (val != null) {
-					return Pair.pair(val, localeLanguageOnly);
+					return Pair.pair(val, LocaleTable.localeOf(id));
 				}
 			}
 		} else if (key instanceof Collection<?>) {
@@ -203,28 +394,17 @@ public class Translations extends AbstractMap<Locale, String> implements Seriali
 	}
 
 	protected Pair<String, Locale> findByCollectionOfLocale(final Iterable<Locale> list) {
-		String val;
-		for (Locale locale : list) {
-			val = this.translationsByLocale.get(locale);
-			if (val != null) {
-				return Pair.pair(val, locale);
-			}
-		}
-		for (Locale locale : list) {
-			if (locale.getVariant() != null) {
-				Locale localeWithoutVariant = new Locale(locale.getLanguage(), locale.getCountry());
-				val = this.translationsByLocale.get(localeWithoutVariant);
-				if (val != null) {
-					return Pair.pair(val, localeWithoutVariant);
-				}
-			}
-		}
-		for (Locale locale : list) {
-			if (locale.getCountry() != null) {
-				Locale localeLanguageOnly = new Locale(locale.getLanguage());
-				val = this.translationsByLocale.get(localeLanguageOnly);
-				if (val != null) {
-					return Pair.pair(val, localeLanguageOnly);
+		// first the locales themselves, then without variant, then language only
+		for (int level = 0; level < 3; level++) {
+			for (Locale locale : list) {
+				int[] chain = LocaleTable.lookupChain(locale);
+				int id = level == 0 ? chain[0] : level == 1 ? chain.length == 3 ? chain[1] : -1
+						: chain.length > 1 ? chain[chain.length - 1] : -1;
+				if (id >= 0) {
+					String val = textOf(id);
+					if (val != null) {
+						return Pair.pair(val, LocaleTable.localeOf(id));
+					}
 				}
 			}
 		}
@@ -263,7 +443,7 @@ public class Translations extends AbstractMap<Locale, String> implements Seriali
 	 * @return this
 	 */
 	public Translations append(final Translations toAdd) {
-		HashMap<Locale, String> sumTranslations = new HashMap<Locale, String>(size() * 2);
+		TextTable sumTranslations = new TextTable();
 		for (Map.Entry<Locale, String> me : toAdd.entrySet()) {
 			Locale key = me.getKey();
 			String orig = get(key);
@@ -0,0 +1,616 @@
+package de.zarncke.lib.index;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.io.ByteBufferInputStream;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.io.store.FileStore;
+import de.zarncke.lib.io.store.Store;
+import de.zarncke.lib.log.Log;
+import de.zarncke.lib.util.Misc;
+
+/**
+ * Compact binary snapshot of a {@link MultiIndex} for fast restarts.
+ * The snapshot contains
+ * <ul>
+ * <li>all entries encoded with an entry {@link Codec},</li>
+ * <li>for each {@link KeyValueIndexing} whose key type has a {@link #addKeyCodec(Class, Codec) key codec} the dictionary of
+ * encoded keys (sorted for binary search) and</li>
+ * <li>per key the posting list of the numbers of its entries.</li>
+ * </ul>
+ * A snapshot is {@link #load(Store, Map) loaded} by memory mapping it (if the Store is a file) and checking its checksum.
+ * Entries are decoded on demand and the Index of a key is built on first access by adding its entries to a new Index of the
+ * given {@link KeyValueIndexing}.
+ * Thus queries of snapshot indexings can be answered immediately; {@link #materialize(MultiIndex)} may be used to build
+ * all indexes in the background.
+ * Indexings which are not contained in the snapshot are filled synchronously within {@link #load(Store, Map) load} by
+ * decoding all entries, which takes as long as building them without a snapshot.
+ * A snapshot of another {@link #FORMAT_VERSION} or data version or with a wrong checksum is considered stale and deleted.
+ * The whole snapshot is mapped as one buffer, so the snapshot file is limited to 2GB.
+ *
+ * @author Gunnar Zarncke
+ * @param <T> type of indexed objects
+ */
+public class IndexSnapshot<T> {
+	/**
+	 * Converts values to and from bytes.
+	 *
+	 * @param <V> type of value
+	 */
+	public interface Codec<V> {
+		void write(V value, DataOutput out) throws IOException;
+
+		V read(DataInput in) throws IOException;
+	}
+
+	public static final Codec<String> STRING = new Codec<String>() {
+		@Override
+		public void write(final String value, final DataOutput out) throws IOException {
+			byte[] bytes = value.getBytes(Misc.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		@Override
+		public String read(final DataInput in) throws IOException {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new String(bytes, Misc.UTF_8);
+		}
+	};
+
+	public static final Codec<Long> LONG = new Codec<Long>() {
+		@Override
+		public void write(final Long value, final DataOutput out) throws IOException {
+			out.writeLong(value.longValue());
+		}
+
+		@Override
+		public Long read(final DataInput in) throws IOException {
+			return Long.valueOf(in.readLong());
+		}
+	};
+
+	public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+		@Override
+		public void write(final Integer value, final DataOutput out) throws IOException {
+			out.writeInt(value.intValue());
+		}
+
+		@Override
+		public Integer read(final DataInput in) throws IOException {
+			return Integer.valueOf(in.readInt());
+		}
+	};
+
+	/**
+	 * "ZMIX".
+	 */
+	public static final int MAGIC = 0x5a4d4958;
+	/**
+	 * Version of the binary layout. Snapshots of other versions are stale.
+	 */
+	public static final int FORMAT_VERSION = 1;
+
+	private static final int HEADER_SIZE = 24;
+	private static final int CHECKSUM_SIZE = 8;
+
+	private static final Comparator<byte[]> UNSIGNED = new Comparator<byte[]>() {
+		@Override
+		public int compare(final byte[] a, final byte[] b) {
+			int l = Math.min(a.length, b.length);
+			for (int i = 0; i < l; i++) {
+				int d = (a[i] & 0xff) - (b[i] & 0xff);
+				if (d != 0) {
+					return d;
+				}
+			}
+			return a.length - b.length;
+		}
+	};
+
+	/**
+	 * The entries of a loaded snapshot. They are decoded on demand. The first modification copies them into a
+	 * {@link ListIndex}.
+	 */
+	private final class Entries implements Index<T> {
+		private final ByteBuffer buffer;
+		private final int offsetsPos;
+		private final int dataPos;
+		private final AtomicReferenceArray<T> decoded;
+		private volatile boolean cleared = false;
+
+		Entries(final ByteBuffer buffer, final int offsetsPos, final int count) {
+			this.buffer = buffer;
+			this.offsetsPos = offsetsPos;
+			this.dataPos = offsetsPos + (count + 1) * 4;
+			this.decoded = new AtomicReferenceArray<T>(count);
+		}
+
+		int getEndPos() {
+			return this.dataPos + this.buffer.getInt(this.offsetsPos + this.decoded.length() * 4);
+		}
+
+		T get(final int number) {
+			T entry = this.decoded.get(number);
+			if (entry == null) {
+				int start = this.buffer.getInt(this.offsetsPos + number * 4);
+				int end = this.buffer.getInt(this.offsetsPos + number * 4 + 4);
+				try {
+					entry = IndexSnapshot.this.entryCodec.read(input(this.buffer, this.dataPos + start, end - start));
+				} catch (IOException e) {
+					throw Warden.spot(new IllegalStateException("cannot decode entry " + number, e));
+				}
+				if (!this.decoded.compareAndSet(number, null, entry)) {
+					entry = this.decoded.get(number);
+				}
+			}
+			return entry;
+		}
+
+		@Override
+		public Results<T> getAll() {
+			List<T> all = new ArrayList<T>(size());
+			for (int i = 0; i < size(); i++) {
+				all.add(get(i));
+			}
+			return new ListResults<T>(all);
+		}
+
+		@Override
+		public Index<T> add(final T entry) {
+			ListIndex<T> copy = new ListIndex<T>(size() + 1);
+			copy.addAll(getAll().realize());
+			return copy.add(entry);
+		}
+
+		@Override
+		public int size() {
+			return this.cleared ? 0 : this.decoded.length();
+		}
+
+		@Override
+		public Indexing<T> getSubIndexing() {
+			return null;
+		}
+
+		@Override
+		public void clear() {
+			this.cleared = true;
+		}
+
+		@Override
+		public String toString() {
+			return "snapshot of " + size() + " entries";
+		}
+	}
+
+	/**
+	 * The key dictionary and posting lists of one {@link KeyValueIndexing}.
+	 */
+	private final class Section<K> implements KeyValueIndexing.Backing<K, T> {
+		private final ByteBuffer buffer;
+		private final Entries entries;
+		private final Codec<K> keyCodec;
+		private final KeyValueIndexing<K, T> indexing;
+		private final int keyCount;
+		private final int keyOffsetsPos;
+		private final int keyDataPos;
+		private final int postingOffsetsPos;
+		private final int postingsPos;
+		private final ConcurrentMap<Object, Index<T>> materialized = new ConcurrentHashMap<Object, Index<T>>();
+
+		Section(final ByteBuffer buffer, final int keyOffsetsPos, final int keyCount, final Entries entries,
+				final Codec<K> keyCodec, final KeyValueIndexing<K, T> indexing) {
+			this.buffer = buffer;
+			this.entries = entries;
+			this.keyCodec = keyCodec;
+			this.indexing = indexing;
+			this.keyCount = keyCount;
+			this.keyOffsetsPos = keyOffsetsPos;
+			this.keyDataPos = keyOffsetsPos + (keyCount + 1) * 4;
+			this.postingOffsetsPos = this.keyDataPos + buffer.getInt(keyOffsetsPos + keyCount * 4);
+			this.postingsPos = this.postingOffsetsPos + (keyCount + 1) * 4;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Index<T> materialize(final Object key) {
+			Index<T> index = this.materialized.get(key);
+			if (index != null) {
+				return index;
+			}
+			int slot;
+			try {
+				slot = find(encode(this.keyCodec, (K) key));
+			} catch (ClassCastException e) {
+				return null;
+			}
+			if (slot < 0) {
+				return null;
+			}
+			index = this.indexing.createNewIndex((K) key);
+			int start = this.buffer.getInt(this.postingOffsetsPos + slot * 4);
+			int end = this.buffer.getInt(this.postingOffsetsPos + slot * 4 + 4);
+			for (int i = start; i < end; i++) {
+				index = index.add(this.entries.get(this.buffer.getInt(this.postingsPos + i * 4)));
+			}
+			Index<T> previous = this.materialized.putIfAbsent(key, index);
+			return previous == null ? index : previous;
+		}
+
+		@Override
+		public Collection<?> getKeys() {
+			List<K> keys = new ArrayList<K>(this.keyCount);
+			for (int i = 0; i < this.keyCount; i++) {
+				int start = this.buffer.getInt(this.keyOffsetsPos + i * 4);
+				int end = this.buffer.getInt(this.keyOffsetsPos + i * 4 + 4);
+				try {
+					keys.add(this.keyCodec.read(input(this.buffer, this.keyDataPos + start, end - start)));
+				} catch (IOException e) {
+					throw Warden.spot(new IllegalStateException("cannot decode key " + i, e));
+				}
+			}
+			return keys;
+		}
+
+		private int find(final byte[] key) {
+			int low = 0;
+			int high = this.keyCount - 1;
+			while (low <= high) {
+				int mid = low + high >>> 1;
+				int cmp = compareKeyAt(mid, key);
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -1;
+		}
+
+		private int compareKeyAt(final int slot, final byte[] key) {
+			int start = this.keyDataPos + this.buffer.getInt(this.keyOffsetsPos + slot * 4);
+			int len = this.keyDataPos + this.buffer.getInt(this.keyOffsetsPos + slot * 4 + 4) - start;
+			int l = Math.min(len, key.length);
+			for (int i = 0; i < l; i++) {
+				int d = (this.buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+				if (d != 0) {
+					return d;
+				}
+			}
+			return len - key.length;
+		}
+	}
+
+	private final Codec<T> entryCodec;
+	private final long dataVersion;
+	private final Map<Class<?>, Codec<?>> keyCodecs = new HashMap<Class<?>, Codec<?>>();
+
+	/**
+	 * @param entryCodec for the indexed objects != null
+	 * @param dataVersion version of the indexed data; snapshots of other versions are stale
+	 */
+	public IndexSnapshot(final Codec<T> entryCodec, final long dataVersion) {
+		this.entryCodec = entryCodec;
+		this.dataVersion = dataVersion;
+	}
+
+	/**
+	 * Registers the Codec for the keys of {@link KeyValueIndexing}s with the given {@link KeyValueIndexing#getType() type}.
+	 *
+	 * @param <K> key type
+	 * @param keyType != null
+	 * @param keyCodec != null; the order of the encoded keys needn't match the order of the keys
+	 * @return this
+	 */
+	public <K> IndexSnapshot<T> addKeyCodec(final Class<K> keyType, final Codec<K> keyCodec) {
+		this.keyCodecs.put(keyType, keyCodec);
+		return this;
+	}
+
+	/**
+	 * Writes a snapshot of the index. Must not be called concurrently with modifications of the index.
+	 * Indexings which are no {@link KeyValueIndexing} or have no key codec are left out.
+	 *
+	 * @param index != null
+	 * @param target to write to (replacing existing content) != null
+	 * @throws IOException on write errors
+	 */
+	public void write(final MultiIndex<T> index, final Store target) throws IOException {
+		List<T> entries = index.getAllIndex().getAll().realize();
+		Map<T, Integer> numbers = new IdentityHashMap<T, Integer>(entries.size());
+		ByteArrayOutputStream entryData = new ByteArrayOutputStream();
+		DataOutputStream entryOut = new DataOutputStream(entryData);
+		int[] entryOffsets = new int[entries.size() + 1];
+		for (int i = 0; i < entries.size(); i++) {
+			T entry = entries.get(i);
+			entryOffsets[i] = entryOut.size();
+			this.entryCodec.write(entry, entryOut);
+			numbers.put(entry, Integer.valueOf(i));
+		}
+		entryOffsets[entries.size()] = entryOut.size();
+
+		List<byte[]> sections = new ArrayList<byte[]>();
+		for (Map.Entry<Class<?>, Indexing<T>> me : index.getIndexings().entrySet()) {
+			byte[] section = null;
+			if (me.getValue() instanceof KeyValueIndexing) {
+				section = encodeSection(me.getKey(), (KeyValueIndexing<?, T>) me.getValue(), numbers);
+			}
+			if (section == null) {
+				Log.LOG.get().report("index for " + me.getKey() + " is not contained in snapshot " + target);
+			} else {
+				sections.add(section);
+			}
+		}
+
+		CRC32 crc = new CRC32();
+		BufferedOutputStream bos = new BufferedOutputStream(target.getOutputStream(false));
+		try {
+			DataOutputStream out = new DataOutputStream(new CheckedOutputStream(bos, crc));
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(this.dataVersion);
+			out.writeInt(entries.size());
+			out.writeInt(sections.size());
+			writeInts(entryOffsets, out);
+			entryData.writeTo(out);
+			for (byte[] section : sections) {
+				out.writeInt(section.length);
+				out.write(section);
+			}
+			out.flush();
+			new DataOutputStream(bos).writeLong(crc.getValue());
+		} finally {
+			IOTools.forceClose(bos);
+		}
+	}
+
+	private <K> byte[] encodeSection(final Class<?> indexedType, final KeyValueIndexing<K, T> indexing,
+			final Map<T, Integer> numbers) throws IOException {
+		@SuppressWarnings("unchecked")
+		Codec<K> keyCodec = (Codec<K>) this.keyCodecs.get(indexing.getType());
+		if (keyCodec == null) {
+			return null;
+		}
+		Map<byte[], Results<T>> resultsByKey = new TreeMap<byte[], Results<T>>(UNSIGNED);
+		for (Object key : indexing.getAllKeys()) {
+			@SuppressWarnings("unchecked")
+			byte[] encoded = encode(keyCodec, (K) key);
+			Results<T> results = indexing.lookup(key).getAll();
+			if (results == null) {
+				// the index doesn't know its entries
+				return null;
+			}
+			resultsByKey.put(encoded, results);
+		}
+
+		int keyCount = resultsByKey.size();
+		int[] keyOffsets = new int[keyCount + 1];
+		int[] postingOffsets = new int[keyCount + 1];
+		ByteArrayOutputStream keyData = new ByteArrayOutputStream();
+		ByteArrayOutputStream postingData = new ByteArrayOutputStream();
+		DataOutputStream postingOut = new DataOutputStream(postingData);
+		int slot = 0;
+		for (Map.Entry<byte[], Results<T>> me : resultsByKey.entrySet()) {
+			keyOffsets[slot] = keyData.size();
+			postingOffsets[slot] = postingOut.size() / 4;
+			keyData.write(me.getKey());
+			for (T entry : me.getValue()) {
+				Integer number = numbers.get(entry);
+				if (number == null) {
+					throw Warden.spot(new IllegalStateException("index for " + indexedType + " contains " + entry
+							+ " which is not contained in the MultiIndex"));
+				}
+				postingOut.writeInt(number.intValue());
+			}
+			slot++;
+		}
+		keyOffsets[keyCount] = keyData.size();
+		postingOffsets[keyCount] = postingOut.size() / 4;
+
+		ByteArrayOutputStream section = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(section);
+		out.writeUTF(indexedType.getName());
+		out.writeInt(indexing.getTotalKeys());
+		out.writeInt(indexing.getMaxSize());
+		out.writeInt(keyCount);
+		writeInts(keyOffsets, out);
+		keyData.writeTo(out);
+		writeInts(postingOffsets, out);
+		postingData.writeTo(out);
+		out.flush();
+		return section.toByteArray();
+	}
+
+	/**
+	 * Loads a snapshot.
+	 *
+	 * @param source to read from != null
+	 * @param indexings new and empty Indexings by indexed type; those not contained in the snapshot are filled from the
+	 * entries before returning
+	 * @return MultiIndex or null if there is no valid snapshot; a stale snapshot is deleted
+	 * @throws IOException on read errors
+	 */
+	public MultiIndex<T> load(final Store source, final Map<Class<?>, ? extends Indexing<T>> indexings) throws IOException {
+		ByteBuffer buffer = map(source);
+		if (buffer == null) {
+			return null;
+		}
+		String invalid = validate(buffer);
+		if (invalid != null) {
+			Log.LOG.get().report("discarding snapshot " + source + " because " + invalid);
+			source.delete();
+			return null;
+		}
+
+		int entryCount = buffer.getInt(16);
+		int sectionCount = buffer.getInt(20);
+		Entries entries = new Entries(buffer, HEADER_SIZE, entryCount);
+		MultiIndex<T> index = new MultiIndex<T>(entries);
+
+		Map<String, Class<?>> typesByName = new HashMap<String, Class<?>>();
+		for (Class<?> type : indexings.keySet()) {
+			typesByName.put(type.getName(), type);
+		}
+		int pos = entries.getEndPos();
+		for (int i = 0; i < sectionCount; i++) {
+			int length = buffer.getInt(pos);
+			pos += 4;
+			String name = input(buffer, pos, length).readUTF();
+			Class<?> type = typesByName.remove(name);
+			if (type != null && indexings.get(type) instanceof KeyValueIndexing) {
+				// modified UTF-8 is prefixed by its length
+				int nameLength = 2 + (buffer.getShort(pos) & 0xffff);
+				attach((KeyValueIndexing<?, T>) indexings.get(type), buffer, pos + nameLength, entries);
+				index.setIndex(type, indexings.get(type));
+			} else if (type != null) {
+				typesByName.put(name, type);
+			}
+			pos += length;
+		}
+		for (Class<?> type : typesByName.values()) {
+			index.addIndex(type, indexings.get(type));
+		}
+		return index;
+	}
+
+	private <K> void attach(final KeyValueIndexing<K, T> indexing, final ByteBuffer buffer, final int pos,
+			final Entries entries) {
+		@SuppressWarnings("unchecked")
+		Codec<K> keyCodec = (Codec<K>) this.keyCodecs.get(indexing.getType());
+		if (keyCodec == null) {
+			throw Warden.spot(new IllegalArgumentException("no key codec for " + indexing.getType()));
+		}
+		int totalKeys = buffer.getInt(pos);
+		int maxSize = buffer.getInt(pos + 4);
+		int keyCount = buffer.getInt(pos + 8);
+		indexing.attach(new Section<K>(buffer, pos + 12, keyCount, entries, keyCodec, indexing), totalKeys, maxSize);
+	}
+
+	/**
+	 * Builds the indexes of all keys of the snapshot the index was loaded from.
+	 * May be called in the background while the index is queried.
+	 *
+	 * @param index != null
+	 */
+	public static <T> void materialize(final MultiIndex<T> index) {
+		for (Indexing<T> indexing : index.getIndexings().values()) {
+			if (indexing instanceof KeyValueIndexing) {
+				KeyValueIndexing.Backing<?, T> backing = ((KeyValueIndexing<?, T>) indexing).getBacking();
+				if (backing != null) {
+					for (Object key : backing.getKeys()) {
+						backing.materialize(key);
+					}
+				}
+			}
+		}
+	}
+
+	private String validate(final ByteBuffer buffer) {
+		if (buffer.capacity() < HEADER_SIZE + CHECKSUM_SIZE) {
+			return "it is truncated";
+		}
+		if (buffer.getInt(0) != MAGIC) {
+			return "it is no index snapshot";
+		}
+		if (buffer.getInt(4) != FORMAT_VERSION) {
+			return "its format version " + buffer.getInt(4) + " differs from " + FORMAT_VERSION;
+		}
+		if (buffer.getLong(8) != this.dataVersion) {
+			return "its data version " + buffer.getLong(8) + " differs from " + this.dataVersion;
+		}
+		int end = buffer.capacity() - CHECKSUM_SIZE;
+		ByteBuffer content = buffer.duplicate();
+		content.position(0);
+		content.limit(end);
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		if (crc.getValue() != buffer.getLong(end)) {
+			return "its checksum doesn't match";
+		}
+		return null;
+	}
+
+	private static ByteBuffer map(final Store source) throws IOException {
+		File file = FileStore.getFile(source);
+		if (file == null) {
+			if (!source.exists()) {
+				return null;
+			}
+			return ByteBuffer.wrap(IOTools.getAllBytes(source.getInputStream()));
+		}
+		if (!file.exists()) {
+			return null;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw Warden.spot(new IOException("snapshot " + file + " exceeds 2GB"));
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static <V> byte[] encode(final Codec<V> codec, final V value) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try {
+			DataOutputStream out = new DataOutputStream(baos);
+			codec.write(value, out);
+			out.flush();
+		} catch (IOException e) {
+			throw Warden.spot(new IllegalStateException("cannot encode " + value, e));
+		}
+		return baos.toByteArray();
+	}
+
+	private static DataInputStream input(final ByteBuffer buffer, final int pos, final int length) {
+		ByteBuffer slice = buffer.duplicate();
+		slice.limit(pos + length);
+		slice.position(pos);
+		return new DataInputStream(new ByteBufferInputStream(slice));
+	}
+
+	private static void writeInts(final int[] values, final OutputStream out) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(values.length * 4);
+		bytes.asIntBuffer().put(values);
+		out.write(bytes.array());
+	}
+
+	@Override
+	public String toString() {
+		return "snapshot version " + this.dataVersion + " with key codecs for "
+				+ Arrays.toString(this.keyCodecs.keySet().toArray());
+	}
+}
@@ -5,10 +5,26 @@ package de.zarncke.lib.index;
 
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import de.zarncke.lib.index.crit.Criteria;
 
 public interface Indexing<T> {
+	/**
+	 * Indicates that an Indexing can load many entries at once faster than by repeated {@link Indexing#add(Object)}.
+	 */
+	interface BulkLoadable<T> {
+		/**
+		 * Adds all entries. The result must be the same as adding them one by one in the given order.
+		 * Must not be called concurrently with other modifications of this Indexing.
+		 *
+		 * @param entries != null
+		 * @param pool to use for parallel work != null
+		 */
+		void addAll(List<? extends T> entries, ForkJoinPool pool);
+	}
+
 	void add(T entry);
 
 	void clear();
@@ -20,4 +36,4 @@ public interface Indexing<T> {
 	Collection<? extends Comparator<T>> getOrdering();
 
 	Class<?> getType();
-}
\ No newline at end of file
+}
@@ -4,24 +4,205 @@
 package de.zarncke.lib.index;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import com.google.common.collect.Maps;
 
 import de.zarncke.lib.coll.L;
 import de.zarncke.lib.index.crit.Criteria;
 
-public abstract class KeyValueIndexing<K, T> implements Indexing<T> {
-	protected final Map<K, Index<T>> indexByKey = createMap();
+/**
+ * {@link Indexing} which maps keys of the entries to an {@link Index} per key.
+ * Supports {@link #addAll(List, ForkJoinPool) bulk loading}: The keys are extracted in parallel partitions and the per key
+ * indexes are then built in parallel buckets of keys. For this {@link #add(Object)} and {@link #createNewIndex(Object)}
+ * must not depend on state other than the entry and the key respectively.
+ *
+ * @param <K> type of key
+ * @param <T> type of indexed objects
+ */
+public abstract class KeyValueIndexing<K, T> implements Indexing<T>, Indexing.BulkLoadable<T> {
+	/**
+	 * Default number of entries handled by one bulk loading partition.
+	 */
+	public static final int DEFAULT_PARTITION_SIZE = 4096;
+
+	/**
+	 * The keys (with their hashes) and entries as added during one bulk loading partition.
+	 */
+	private static final class Fragment {
+		Object[] keys;
+		Object[] entries;
+		int[] hashes;
+		int size = 0;
+
+		Fragment(final int capacity) {
+			this.keys = new Object[capacity];
+			this.entries = new Object[capacity];
+			this.hashes = new int[capacity];
+		}
+
+		void add(final Object key, final Object entry) {
+			if (this.size == this.keys.length) {
+				int capacity = this.size * 2;
+				this.keys = Arrays.copyOf(this.keys, capacity);
+				this.entries = Arrays.copyOf(this.entries, capacity);
+				this.hashes = Arrays.copyOf(this.hashes, capacity);
+			}
+			this.keys[this.size] = key;
+			this.entries[this.size] = entry;
+			this.hashes[this.size] = key == null ? 0 : spread(key.hashCode());
+			this.size++;
+		}
+
+		private static int spread(final int h) {
+			return h ^ h >>> 16;
+		}
+	}
+
+	private final class ExtractKeys extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<? extends T> entries;
+		private final Fragment[] fragments;
+		private final int partitionSize;
+		private final int fromPartition;
+		private final int toPartition;
+
+		ExtractKeys(final List<? extends T> entries, final Fragment[] fragments, final int partitionSize,
+				final int fromPartition, final int toPartition) {
+			this.entries = entries;
+			this.fragments = fragments;
+			this.partitionSize = partitionSize;
+			this.fromPartition = fromPartition;
+			this.toPartition = toPartition;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.toPartition - this.fromPartition > 1) {
+				int mid = (this.fromPartition + this.toPartition) >>> 1;
+				invokeAll(new ExtractKeys(this.entries, this.fragments, this.partitionSize, this.fromPartition, mid),
+						new ExtractKeys(this.entries, this.fragments, this.partitionSize, mid, this.toPartition));
+				return;
+			}
+			int start = this.fromPartition * this.partitionSize;
+			int end = Math.min(start + this.partitionSize, this.entries.size());
+			Fragment fragment = new Fragment(end - start);
+			KeyValueIndexing.this.currentFragment.set(fragment);
+			try {
+				for (T entry : this.entries.subList(start, end)) {
+					add(entry);
+				}
+			} finally {
+				KeyValueIndexing.this.currentFragment.remove();
+			}
+			this.fragments[this.fromPartition] = fragment;
+		}
+	}
+
+	/**
+	 * Builds the indexes of all keys whose hash falls into one bucket.
+	 * Scans the fragments in order, so the entries of each key are added in their original order.
+	 */
+	private final class BuildBucket extends RecursiveTask<Map<K, Index<T>>> {
+		private static final long serialVersionUID = 1L;
+		private final Fragment[] fragments;
+		private final int bucket;
+		private final int mask;
+		final List<K> newKeys = new ArrayList<K>();
+		int added = 0;
+		int maxIndexSize = 0;
+
+		BuildBucket(final Fragment[] fragments, final int bucket, final int mask) {
+			this.fragments = fragments;
+			this.bucket = bucket;
+			this.mask = mask;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected Map<K, Index<T>> compute() {
+			Map<K, Index<T>> built = new HashMap<K, Index<T>>();
+			for (Fragment fragment : this.fragments) {
+				int[] hashes = fragment.hashes;
+				for (int i = 0; i < fragment.size; i++) {
+					if ((hashes[i] & this.mask) != this.bucket) {
+						continue;
+					}
+					K key = (K) fragment.keys[i];
+					Index<T> index = built.get(key);
+					if (index == null) {
+						index = lookup(key);
+						if (index == null) {
+							index = createNewIndex(key);
+							this.newKeys.add(key);
+						}
+					}
+					Index<T> newIndex = index.add((T) fragment.entries[i]);
+					built.put(key, newIndex);
+					this.maxIndexSize = Math.max(this.maxIndexSize, newIndex.size());
+					this.added++;
+				}
+			}
+			return built;
+		}
+	}
+
+	/**
+	 * Provides the indexes of keys not yet materialized in {@link #indexByKey}, e.g. from an {@link IndexSnapshot}.
+	 */
+	interface Backing<K, T> {
+		/**
+		 * @param key any
+		 * @return the Index for the key or null if it is unknown; repeated calls return the same Index
+		 */
+		Index<T> materialize(Object key);
+
+		/**
+		 * @return all keys known to this source != null
+		 */
+		Collection<?> getKeys();
+	}
+
+	private static final int BUCKETS_PER_THREAD = 4;
+
+	protected final Map<K, Index<T>> indexByKey;
 
 	private int totalKeys = 0;
 	private int maxSize = 0;
 
 	private final Class<K> type;
 
+	/**
+	 * Collects the keys of a bulk loading partition; only set in worker threads during {@link #addAll(List, ForkJoinPool)}.
+	 */
+	private final ThreadLocal<Fragment> currentFragment = new ThreadLocal<Fragment>();
+	private volatile boolean bulkLoading = false;
+	private volatile Backing<K, T> backing;
+
 	public KeyValueIndexing(final Class<K> type) {
 		this.type = type;
+		this.indexByKey = createMap();
+	}
+
+	/**
+	 * @param type of keys
+	 * @param expectedKeys number of distinct keys expected; used to presize the key map
+	 */
+	public KeyValueIndexing(final Class<K> type, final int expectedKeys) {
+		this.type = type;
+		this.indexByKey = createMap(expectedKeys);
 	}
 
 	public abstract void add(final T entry);
@@ -30,11 +211,23 @@ public abstract class KeyValueIndexing<K, T> implements Indexing<T> {
 		return new HashMap<K, Index<T>>();
 	}
 
+	protected HashMap<K, Index<T>> createMap(final int expectedKeys) {
+		return Maps.newHashMapWithExpectedSize(expectedKeys);
+	}
+
 	protected boolean add(final K key, final T entry) {
-		Index<T> index = this.indexByKey.get(key);
+		if (this.bulkLoading) {
+			Fragment fragment = this.currentFragment.get();
+			if (fragment != null) {
+				fragment.add(key, entry);
+				return true;
+			}
+		}
+		Index<T> index = lookup(key);
 		if (index == null) {
 			index = createNewIndex(key);
 			this.indexByKey.put(key, index);
+			keysAdded(Collections.singletonList(key));
 		}
 		Index<T> newIndex = index.add(entry);
 		if (newIndex != index) {
@@ -50,17 +243,149 @@ public abstract class KeyValueIndexing<K, T> implements Indexing<T> {
 
 	protected abstract Index<T> createNewIndex(K key);
 
+	/**
+	 * Called after keys got their first Index, i.e. when they were neither contained nor known to the {@link Backing}.
+	 * Bulk loading calls this once with all new keys.
+	 * This default does nothing.
+	 *
+	 * @param keys != null
+	 */
+	protected void keysAdded(final Collection<? extends K> keys) {
+		// do nothing
+	}
+
+	/**
+	 * @param key any
+	 * @return Index of the key or null if none
+	 */
+	protected Index<T> lookup(final Object key) {
+		Index<T> index = this.indexByKey.get(key);
+		if (index == null) {
+			Backing<K, T> current = this.backing;
+			if (current != null) {
+				index = current.materialize(key);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Lets this Indexing answer queries for keys which are not (yet) contained from the given source.
+	 *
+	 * @param source != null
+	 * @param totalKeys as counted by the source
+	 * @param maxSize of an Index of the source
+	 */
+	void attach(final Backing<K, T> source, final int totalKeys, final int maxSize) {
+		this.backing = source;
+		this.totalKeys += totalKeys;
+		this.maxSize = Math.max(this.maxSize, maxSize);
+	}
+
+	Backing<K, T> getBacking() {
+		return this.backing;
+	}
+
+	/**
+	 * @return all keys including those only known to the {@link Backing}
+	 */
+	Collection<Object> getAllKeys() {
+		Set<Object> keys = new LinkedHashSet<Object>(this.indexByKey.keySet());
+		Backing<K, T> current = this.backing;
+		if (current != null) {
+			keys.addAll(current.getKeys());
+		}
+		return keys;
+	}
+
+	int getTotalKeys() {
+		return this.totalKeys;
+	}
+
+	int getMaxSize() {
+		return this.maxSize;
+	}
+
+	@Override
+	public void addAll(final List<? extends T> entries, final ForkJoinPool pool) {
+		addAll(entries, pool, DEFAULT_PARTITION_SIZE);
+	}
+
+	/**
+	 * Adds all entries in parallel.
+	 * The result is the same as {@link #add(Object) adding} them one by one.
+	 *
+	 * @param entries != null
+	 * @param pool to use != null
+	 * @param partitionSize number of entries per partition; >0
+	 */
+	public void addAll(final List<? extends T> entries, final ForkJoinPool pool, final int partitionSize) {
+		if (entries.size() <= partitionSize) {
+			for (T entry : entries) {
+				add(entry);
+			}
+			return;
+		}
+		int partitions = (entries.size() + partitionSize - 1) / partitionSize;
+		Fragment[] fragments = new Fragment[partitions];
+		this.bulkLoading = true;
+		try {
+			run(pool, new ExtractKeys(entries, fragments, partitionSize, 0, partitions));
+		} finally {
+			this.bulkLoading = false;
+		}
+
+		int buckets = Integer.highestOneBit(pool.getParallelism() * BUCKETS_PER_THREAD - 1) << 1;
+		final List<BuildBucket> tasks = new ArrayList<BuildBucket>(buckets);
+		for (int b = 0; b < buckets; b++) {
+			tasks.add(new BuildBucket(fragments, b, buckets - 1));
+		}
+		run(pool, new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+
+		int keys = 0;
+		for (BuildBucket task : tasks) {
+			keys += task.getRawResult().size();
+		}
+		Map<K, Index<T>> merged = Maps.newHashMapWithExpectedSize(keys);
+		List<K> newKeys = new ArrayList<K>();
+		for (BuildBucket task : tasks) {
+			merged.putAll(task.getRawResult());
+			newKeys.addAll(task.newKeys);
+			this.maxSize = Math.max(this.maxSize, task.maxIndexSize);
+			this.totalKeys += task.added;
+		}
+		this.indexByKey.putAll(merged);
+		if (!newKeys.isEmpty()) {
+			keysAdded(newKeys);
+		}
+	}
+
+	private static void run(final ForkJoinPool pool, final ForkJoinTask<?> task) {
+		if (ForkJoinTask.getPool() == pool) {
+			task.invoke();
+		} else {
+			pool.invoke(task);
+		}
+	}
+
 	public Index<T> getIndex(final Criteria<?, T> crit) {
 		Collection<?> keys = crit.getKeys();
 		if (keys == null) {
 			return null;
 		}
 		if (keys.size() == 1) {
-			return this.indexByKey.get(keys.iterator().next());
+			return lookup(keys.iterator().next());
 		}
 		Collection<Index<T>> indizes = new ArrayList<Index<T>>();
 		for (Object key : keys) {
-			Index<T> idx = this.indexByKey.get(key);
+			Index<T> idx = lookup(key);
 			if (idx != null) {
 				indizes.add(idx);
 			}
@@ -75,7 +400,7 @@ public abstract class KeyValueIndexing<K, T> implements Indexing<T> {
 		Collection<?> keys = crit.getKeys();
 		int hits = 0;
 		for (Object key : keys) {
-			Index<T> idx = this.indexByKey.get(key);
+			Index<T> idx = lookup(key);
 			if (idx != null) {
 				hits += idx.size();
 			}
@@ -93,8 +418,9 @@ public abstract class KeyValueIndexing<K, T> implements Indexing<T> {
 
 	@Override
 	public void clear() {
+		this.backing = null;
 		for (Index<?> idx : this.indexByKey.values()) {
 			idx.clear();
 		}
 	}
-}
\ No newline at end of file
+}
@@ -5,18 +5,24 @@ package de.zarncke.lib.index;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 
 public class ListIndex<T> implements Index<T> {
 
-	private final List<T> entries = new ArrayList<T>();
+	private final ArrayList<T> entries;
 
 	public ListIndex(final Collection<T> values) {
-		this.entries.addAll(values);
+		this.entries = new ArrayList<T>(values);
 	}
 
 	public ListIndex() {
-		// initially empty
+		this.entries = new ArrayList<T>();
+	}
+
+	/**
+	 * @param expectedSize number of entries expected to be added
+	 */
+	public ListIndex(final int expectedSize) {
+		this.entries = new ArrayList<T>(expectedSize);
 	}
 
 	public Index<T> add(final T entry) {
@@ -24,6 +30,11 @@ public class ListIndex<T> implements Index<T> {
 		return this;
 	}
 
+	public Index<T> addAll(final Collection<? extends T> values) {
+		this.entries.addAll(values);
+		return this;
+	}
+
 	public Results<T> getAll() {
 		return new ListResults<T>(this.entries);
 	}
@@ -7,6 +7,8 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import de.zarncke.lib.coll.L;
 import de.zarncke.lib.index.Index.Conservative;
@@ -47,8 +49,62 @@ public class MultiIndex<T> implements EstimationContext<T>, PredictivityContext<
 		}
 	}
 
+	private static final class AddAllTo<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Indexing<T> indexing;
+		private final List<T> entries;
+		private final ForkJoinPool pool;
+
+		AddAllTo(final Indexing<T> indexing, final List<T> entries, final ForkJoinPool pool) {
+			this.indexing = indexing;
+			this.entries = entries;
+			this.pool = pool;
+		}
+
+		@Override
+		protected void compute() {
+			addAllTo(this.indexing, this.entries, this.pool);
+		}
+	}
+
 	private final Map<Class<?>, Indexing<T>> indexByType = new HashMap<Class<?>, Indexing<T>>();
-	private Index<T> all = new ListIndex<T>();
+	private Index<T> all;
+
+	public MultiIndex() {
+		this.all = new ListIndex<T>();
+	}
+
+	/**
+	 * @param expectedSize number of entries expected; used to presize the internal list of all entries
+	 */
+	public MultiIndex(final int expectedSize) {
+		this.all = new ListIndex<T>(expectedSize);
+	}
+
+	/**
+	 * @param all Index of all entries != null
+	 */
+	MultiIndex(final Index<T> all) {
+		this.all = all;
+	}
+
+	Index<T> getAllIndex() {
+		return this.all;
+	}
+
+	/**
+	 * Sets an index without adding the existing entries to it.
+	 *
+	 * @param indexedType != null
+	 * @param index which already contains the entries != null
+	 */
+	void setIndex(final Class<?> indexedType, final Indexing<T> index) {
+		this.indexByType.put(indexedType, index);
+	}
+
+	Map<Class<?>, Indexing<T>> getIndexings() {
+		return Collections.unmodifiableMap(this.indexByType);
+	}
 
 	public void add(final T entry) {
 		for (Indexing<T> indexing : this.indexByType.values()) {
@@ -57,10 +113,81 @@ public class MultiIndex<T> implements EstimationContext<T>, PredictivityContext<
 		this.all = this.all.add(entry);
 	}
 
+	/**
+	 * Adds all entries using the {@link ForkJoinPool#commonPool() common pool}.
+	 *
+	 * @param entries != null
+	 * @see #addAll(Collection, ForkJoinPool)
+	 */
+	public void addAll(final Collection<? extends T> entries) {
+		addAll(entries, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Adds all entries in bulk.
+	 * The indexes are filled concurrently and {@link Indexing.BulkLoadable bulk loadable indexes} are built from parallel
+	 * partitions.
+	 * The result is the same as {@link #add(Object) adding} the entries one by one.
+	 * Must not be called concurrently with other modifications or queries.
+	 *
+	 * @param entries != null
+	 * @param pool to use != null
+	 */
+	public void addAll(final Collection<? extends T> entries, final ForkJoinPool pool) {
+		final List<T> list = new ArrayList<T>(entries);
+		if (list.size() <= KeyValueIndexing.DEFAULT_PARTITION_SIZE) {
+			for (T entry : list) {
+				add(entry);
+			}
+			return;
+		}
+		List<AddAllTo<T>> tasks = new ArrayList<AddAllTo<T>>(this.indexByType.size());
+		for (Indexing<T> indexing : this.indexByType.values()) {
+			tasks.add(new AddAllTo<T>(indexing, list, pool));
+		}
+		for (AddAllTo<T> task : tasks) {
+			pool.execute(task);
+		}
+		try {
+			if (this.all instanceof ListIndex) {
+				this.all = ((ListIndex<T>) this.all).addAll(list);
+			} else {
+				for (T entry : list) {
+					this.all = this.all.add(entry);
+				}
+			}
+		} finally {
+			for (AddAllTo<T> task : tasks) {
+				task.join();
+			}
+		}
+	}
+
 	public void addIndex(final Class<?> indexedType, final Indexing<T> index) {
+		addIndex(indexedType, index, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Adds an index and fills it with all existing entries.
+	 *
+	 * @param indexedType type of {@link Criteria} handled by the index != null
+	 * @param index != null
+	 * @param pool to use for {@link Indexing.BulkLoadable bulk loadable indexes} != null
+	 */
+	public void addIndex(final Class<?> indexedType, final Indexing<T> index, final ForkJoinPool pool) {
 		this.indexByType.put(indexedType, index);
-		for (T entry : this.all.getAll()) {
-			index.add(entry);
+		addAllTo(index, this.all.getAll().realize(), pool);
+	}
+
+	private static <T> void addAllTo(final Indexing<T> indexing, final List<T> entries, final ForkJoinPool pool) {
+		if (indexing instanceof Indexing.BulkLoadable) {
+			@SuppressWarnings("unchecked")
+			Indexing.BulkLoadable<T> bulk = (Indexing.BulkLoadable<T>) indexing;
+			bulk.addAll(entries, pool);
+		} else {
+			for (T entry : entries) {
+				indexing.add(entry);
+			}
 		}
 	}
 
@@ -0,0 +1,111 @@
+package de.zarncke.lib.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import de.zarncke.lib.log.Log;
+
+/**
+ * Measures loading of a {@link MultiIndex} by repeated {@link MultiIndex#add(Object)} and by
+ * {@link MultiIndex#addAll(java.util.Collection, ForkJoinPool) bulk loading} with increasing numbers of threads.
+ * Reports entries/sec for each thread count.
+ * Call with the number of entries as optional argument.
+ *
+ * @author Gunnar Zarncke
+ */
+public class MultiIndexBenchmark {
+	private static final int DEFAULT_ENTRIES = 2000000;
+	private static final int ROUNDS = 3;
+
+	static final class Entry {
+		final String name;
+		final long group;
+
+		Entry(final String name, final long group) {
+			this.name = name;
+			this.group = group;
+		}
+	}
+
+	private final List<Entry> entries;
+
+	public MultiIndexBenchmark(final int numberOfEntries) {
+		Random random = new Random(3141592);
+		this.entries = new ArrayList<Entry>(numberOfEntries);
+		for (int i = 0; i < numberOfEntries; i++) {
+			this.entries.add(new Entry("n" + random.nextInt(numberOfEntries / 4 + 1), random.nextInt(1000)));
+		}
+	}
+
+	public static void main(final String[] args) {
+		MultiIndexBenchmark bm = new MultiIndexBenchmark(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ENTRIES);
+		bm.report("sequential", bm.measureSequential());
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				bm.report("bulk with " + threads + " threads", bm.measureBulk(pool));
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	private void report(final String mode, final long bestNanos) {
+		double perSec = this.entries.size() * 1e9 / bestNanos;
+		Log.LOG.get().report(mode + ": " + (long) perSec + " entries/sec");
+	}
+
+	public long measureSequential() {
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; r++) {
+			MultiIndex<Entry> index = createIndex();
+			long start = System.nanoTime();
+			for (Entry e : this.entries) {
+				index.add(e);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	public long measureBulk(final ForkJoinPool pool) {
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; r++) {
+			MultiIndex<Entry> index = createIndex();
+			long start = System.nanoTime();
+			index.addAll(this.entries, pool);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	private MultiIndex<Entry> createIndex() {
+		MultiIndex<Entry> index = new MultiIndex<Entry>(this.entries.size());
+		index.addIndex(String.class, new KeyValueIndexing<String, Entry>(String.class) {
+			@Override
+			public void add(final Entry entry) {
+				add(entry.name, entry);
+			}
+
+			@Override
+			protected Index<Entry> createNewIndex(final String key) {
+				return new ListIndex<Entry>();
+			}
+		});
+		index.addIndex(Long.class, new KeyValueIndexing<Long, Entry>(Long.class, 1000) {
+			@Override
+			public void add(final Entry entry) {
+				add(Long.valueOf(entry.group), entry);
+			}
+
+			@Override
+			protected Index<Entry> createNewIndex(final Long key) {
+				return new ListIndex<Entry>();
+			}
+		});
+		return index;
+	}
+}
@@ -0,0 +1,203 @@
+package de.zarncke.lib.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.index.crit.Criteria;
+import de.zarncke.lib.index.crit.StringMatch;
+import de.zarncke.lib.struct.StringTrie;
+
+/**
+ * Indexing of String keys which additionally answers {@link StringMatch prefix, wildcard and similarity queries} from a
+ * {@link StringTrie} over the keys instead of scanning all entries.
+ * The trie is built lazily on the first such query. Keys added afterwards are kept in a sorted set of pending keys
+ * which answers prefix queries directly (other queries use a small trie of the pending keys). Only when there are
+ * more pending keys than about the square root of the number of keys the trie is rebuilt on the next query.
+ * Thus interleaved adds and queries cost O(sqrt(keys)) amortized instead of a rebuild per query.
+ * Exact queries (e.g. {@link de.zarncke.lib.index.crit.StringCriteria}) are handled as by {@link KeyValueIndexing}.
+ *
+ * @author Gunnar Zarncke
+ * @param <T> type of entries
+ */
+public abstract class TrieIndexing<T> extends KeyValueIndexing<String, T> {
+	private static final int MIN_PENDING = 64;
+
+	/**
+	 * Not modified after publication except for the lazily built trie of the pending keys.
+	 */
+	private static final class Compiled {
+		final StringTrie trie;
+		final Object backing;
+		final TreeSet<String> pending;
+		volatile StringTrie pendingTrie;
+
+		Compiled(final StringTrie trie, final Object backing, final TreeSet<String> pending) {
+			this.trie = trie;
+			this.backing = backing;
+			this.pending = pending;
+		}
+
+		StringTrie getPendingTrie() {
+			StringTrie pt = this.pendingTrie;
+			if (pt == null) {
+				pt = new StringTrie(this.pending);
+				this.pendingTrie = pt;
+			}
+			return pt;
+		}
+
+		int getMaxPending() {
+			return Math.max(MIN_PENDING, (int) Math.sqrt(this.trie.size()));
+		}
+	}
+
+	private volatile Compiled compiled;
+
+	public TrieIndexing() {
+		super(String.class);
+	}
+
+	/**
+	 * @param expectedKeys number of distinct keys expected
+	 */
+	public TrieIndexing(final int expectedKeys) {
+		super(String.class, expectedKeys);
+	}
+
+	@Override
+	protected void keysAdded(final Collection<? extends String> keys) {
+		synchronized (this) {
+			Compiled current = this.compiled;
+			if (current == null) {
+				return;
+			}
+			if (current.pending.size() + keys.size() > current.getMaxPending()) {
+				this.compiled = null;
+				return;
+			}
+			TreeSet<String> pending = new TreeSet<String>(current.pending);
+			for (String key : keys) {
+				// a concurrent rebuild may already contain it
+				if (current.trie.indexOf(key) < 0) {
+					pending.add(key);
+				}
+			}
+			this.compiled = new Compiled(current.trie, current.backing, pending);
+		}
+	}
+
+	private Compiled getCompiled() {
+		Compiled current = this.compiled;
+		if (current == null || current.backing != getBacking()) {
+			synchronized (this) {
+				current = this.compiled;
+				if (current == null || current.backing != getBacking()) {
+					Object backing = getBacking();
+					List<String> terms = new ArrayList<String>();
+					for (Object key : getAllKeys()) {
+						terms.add((String) key);
+					}
+					current = new Compiled(new StringTrie(terms), backing, new TreeSet<String>());
+					this.compiled = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * @param match != null
+	 * @return the matching keys
+	 */
+	protected Collection<String> getMatchingKeys(final StringMatch<?> match) {
+		Compiled current = getCompiled();
+		List<String> keys = new ArrayList<String>();
+		addMatchingKeys(current.trie, match, keys);
+		if (!current.pending.isEmpty()) {
+			if (match.getKind() == StringMatch.Kind.PREFIX) {
+				for (String key : current.pending.tailSet(match.getPattern(), true)) {
+					if (!key.startsWith(match.getPattern())) {
+						break;
+					}
+					keys.add(key);
+				}
+			} else {
+				addMatchingKeys(current.getPendingTrie(), match, keys);
+			}
+		}
+		return keys;
+	}
+
+	private static void addMatchingKeys(final StringTrie trie, final StringMatch<?> match, final List<String> keys) {
+		switch (match.getKind()) {
+		case PREFIX:
+			int[] range = trie.prefixRange(match.getPattern());
+			for (int i = range[0]; i < range[1]; i++) {
+				keys.add(trie.getTerm(i));
+			}
+			break;
+		case WILDCARD:
+			for (int i : trie.matchWildcard(match.getPattern())) {
+				keys.add(trie.getTerm(i));
+			}
+			break;
+		case SIMILAR:
+			for (int i : trie.matchFuzzy(match.getPattern(), match.getMaxEdits())) {
+				keys.add(trie.getTerm(i));
+			}
+			break;
+		default:
+			throw Warden.spot(new IllegalArgumentException("unknown kind " + match.getKind()));
+		}
+	}
+
+	private static boolean isTrieQuery(final Criteria<?, ?> crit) {
+		return crit instanceof StringMatch
+				&& (((StringMatch<?>) crit).getKind() != StringMatch.Kind.WILDCARD || ((StringMatch<?>) crit)
+						.getPattern().length() <= StringTrie.MAX_PATTERN_LENGTH);
+	}
+
+	@Override
+	public Index<T> getIndex(final Criteria<?, T> crit) {
+		if (!isTrieQuery(crit)) {
+			return super.getIndex(crit);
+		}
+		Collection<String> keys = getMatchingKeys((StringMatch<?>) crit);
+		Collection<Index<T>> indizes = new ArrayList<Index<T>>(keys.size());
+		for (String key : keys) {
+			Index<T> idx = lookup(key);
+			if (idx != null) {
+				indizes.add(idx);
+			}
+		}
+		return new CombinedIndex<T>(indizes, false);
+	}
+
+	@Override
+	public double getPredictivity(final Criteria<?, T> crit) {
+		if (!isTrieQuery(crit)) {
+			if (crit != null && crit.getKeys() == null) {
+				return 1.0;
+			}
+			return super.getPredictivity(crit);
+		}
+		int hits = 0;
+		for (String key : getMatchingKeys((StringMatch<?>) crit)) {
+			Index<T> idx = lookup(key);
+			if (idx != null) {
+				hits += idx.size();
+			}
+		}
+		int total = getTotalKeys();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		this.compiled = null;
+	}
+}
@@ -0,0 +1,126 @@
+package de.zarncke.lib.index.crit;
+
+import java.util.Collection;
+
+import de.zarncke.lib.util.Chars;
+
+/**
+ * Matches strings by prefix, wildcard pattern or similarity.
+ * The keys are unknown, so without a suitable Indexing (e.g. {@link de.zarncke.lib.index.TrieIndexing}) all entries are
+ * scanned.
+ *
+ * @author Gunnar Zarncke
+ * @param <T> type to match in
+ */
+public abstract class StringMatch<T> implements Criteria<String, T> {
+	/**
+	 * How the pattern is applied.
+	 */
+	public enum Kind {
+		/**
+		 * Matches all strings starting with the pattern.
+		 */
+		PREFIX,
+		/**
+		 * Pattern with "*" for any number of characters and "?" for exactly one.
+		 */
+		WILDCARD,
+		/**
+		 * Matches all strings within the maximum edit distance of the pattern.
+		 */
+		SIMILAR
+	}
+
+	private final Kind kind;
+	private final String pattern;
+	private final int maxEdits;
+
+	/**
+	 * @param kind != null
+	 * @param pattern != null
+	 * @param maxEdits only for {@link Kind#SIMILAR}: maximum number of insertions, deletions and substitutions
+	 */
+	protected StringMatch(final Kind kind, final String pattern, final int maxEdits) {
+		this.kind = kind;
+		this.pattern = pattern;
+		this.maxEdits = maxEdits;
+	}
+
+	/**
+	 * @param entry != null
+	 * @return the String to match
+	 */
+	protected abstract String getValue(T entry);
+
+	@Override
+	public boolean matches(final T entry) {
+		return matchesString(getValue(entry));
+	}
+
+	/**
+	 * @param value may be null
+	 * @return true if the value matches the pattern
+	 */
+	public boolean matchesString(final String value) {
+		if (value == null) {
+			return false;
+		}
+		switch (this.kind) {
+		case PREFIX:
+			return value.startsWith(this.pattern);
+		case WILDCARD:
+			return Chars.wildcardMatch(value, this.pattern);
+		case SIMILAR:
+			return Chars.editDistance(value, this.pattern, this.maxEdits) <= this.maxEdits;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @return null: keys are unknown
+	 */
+	@Override
+	public Collection<String> getKeys() {
+		return null;
+	}
+
+	@Override
+	public Class<String> getType() {
+		return String.class;
+	}
+
+	public Kind getKind() {
+		return this.kind;
+	}
+
+	public String getPattern() {
+		return this.pattern;
+	}
+
+	public int getMaxEdits() {
+		return this.maxEdits;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.pattern.hashCode() * 31 + this.kind.hashCode() + this.maxEdits;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		StringMatch<?> other = (StringMatch<?>) obj;
+		return this.kind == other.kind && this.maxEdits == other.maxEdits && this.pattern.equals(other.pattern);
+	}
+
+	@Override
+	public String toString() {
+		return this.kind + " " + this.pattern + (this.kind == Kind.SIMILAR ? "~" + this.maxEdits : "");
+	}
+}
@@ -23,15 +23,13 @@ import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.util.Collections;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.zip.CRC32;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.Nonnull;
 
-import de.zarncke.lib.coll.Elements;
 import de.zarncke.lib.coll.L;
 import de.zarncke.lib.coll.Pair;
 import de.zarncke.lib.err.NotAvailableException;
@@ -59,6 +57,24 @@ public final class IOTools {
 
 	public static final OutputStream DEV_NULL = new TrashStream();
 
+	private static ForkJoinPool ioPool;
+
+	/**
+	 * The pool in which the library performs parallel IO (e.g. {@link MappedLineConsumer line processing}, tree copies
+	 * and comparisons of Stores) unless the caller provides one.
+	 * It is separate from the {@link ForkJoinPool#commonPool() common pool} (used for CPU bound work like bulk
+	 * indexing) because its tasks block on IO. It is created on first use and shared by all such features; its worker
+	 * threads are daemons which are reclaimed when unused, so it is never shut down.
+	 *
+	 * @return the shared pool
+	 */
+	public static synchronized ForkJoinPool getIoPool() {
+		if (ioPool == null) {
+			ioPool = new ForkJoinPool();
+		}
+		return ioPool;
+	}
+
 	private static final class DeleteOnExitThread extends Thread {
 		private DeleteOnExitThread() {
 			super("deleteOnExit");
@@ -712,104 +728,24 @@ public final class IOTools {
 
 	/**
 	 * Creates an InputStream which makes the contents of the OutputStream available immediatly.
+	 * The pipe is a {@link RingPipe} of {@link RingPipe#DEFAULT_CAPACITY}; writing blocks while it is full.
 	 *
 	 * @return a Pair of OutputStream, InputStream
 	 */
 	public static Pair<OutputStream, InputStream> createPipe() {
-		final Queue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
-		OutputStream outs = new OutputStream() {
-			@Override
-			public void write(final int b) throws IOException {
-				buffers.add(new byte[] { (byte) b });
-			}
-
-			@Override
-			public void write(final byte[] b, final int off, final int len) throws IOException {
-				if (len == 0) {
-					return;
-				}
-				byte[] ba;
-				if (len != b.length) {
-					ba = new byte[len];
-					System.arraycopy(b, off, ba, 0, len);
-				} else {
-					ba = b;
-				}
-				buffers.add(ba);
-			}
-
-			@Override
-			public void close() throws IOException {
-				buffers.add(Elements.NO_BYTES);
-			}
-
-		};
-		InputStream ins = new InputStream() {
-			byte[] buf = Elements.NO_BYTES;
-			int off = 0;
-
-			@Override
-			public int read() throws IOException {
-				while (!fill()) {
-					; // wait for data
-				}
-				if (this.buf == null) {
-					return -1;
-				}
-				return this.buf[this.off++];
-			}
-
-			@Override
-			public int read(final byte[] b, final int offset, final int len) throws IOException {
-				fill();
-				if (this.buf == null) {
-					return -1;
-				}
-				int remain = this.buf.length - this.off;
-				if (len > remain) {
-					System.arraycopy(this.buf, this.off, b, offset, remain);
-					this.off += remain;
-					return remain;
-				}
-				System.arraycopy(this.buf, this.off, b, offset, len);
-				this.off += len;
-				return len;
-			}
-
-			@Override
-			public int available() throws IOException {
-				fill();
-				if (this.buf == null) {
-					return 0;
-				}
-				return this.buf.length - this.off;
-			}
+		return createPipe(RingPipe.DEFAULT_CAPACITY);
+	}
 
-			/**
-			 * @return true: at least one byte is available or EOF has been reached
-			 */
-			private boolean fill() {
-				if (this.buf == null || this.off < this.buf.length) {
-					return true;
-				}
-				while (true) {
-					this.buf = buffers.poll();
-					if (this.buf != null) {
-						this.off = 0;
-						if (this.buf.length == 0) {
-							this.buf = null;
-						}
-						return true;
-					}
-					try {
-						Thread.sleep(1);
-					} catch (InterruptedException e) {
-						return false;
-					}
-				}
-			}
-		};
-		return Pair.pair(outs, ins);
+	/**
+	 * Creates an InputStream which makes the contents of the OutputStream available immediatly.
+	 * Writer and reader should be different threads if more than the capacity is written.
+	 *
+	 * @param capacity of the buffer in bytes
+	 * @return a Pair of OutputStream, InputStream
+	 */
+	public static Pair<OutputStream, InputStream> createPipe(final int capacity) {
+		RingPipe pipe = new RingPipe(capacity);
+		return Pair.pair(pipe.getOutputStream(), pipe.getInputStream());
 	}
 
 	/**
@@ -31,6 +31,7 @@ import de.zarncke.lib.io.store.Store;
  *
  * Note: No finally block is needed to close any resources.
  * Note: As the consumer has state it is not thread-safe. Use one consumer per Thread.
+ * Note: Large files can be processed in parallel without creating Strings with a {@link MappedLineConsumer}.
  *
  * @author Gunnar Zarncke
  * @param <T> return type, may be Void
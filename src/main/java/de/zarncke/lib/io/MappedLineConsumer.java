@@ -0,0 +1,448 @@
+package de.zarncke.lib.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.io.store.FileStore;
+import de.zarncke.lib.io.store.Store;
+import de.zarncke.lib.region.RegionUtil;
+import de.zarncke.lib.util.Misc;
+
+/**
+ * Processes the lines of large files in parallel (compare {@link LineConsumer} which reads line by line).
+ * <ul>
+ * <li>The file is split into chunks of about {@link #getChunkSize()} bytes at line boundaries. Each chunk is memory
+ * mapped and its lines are passed to {@link #consume(Line, Object)} in a thread of the pool. Stores which are no files
+ * are processed from their {@link Store#asRegion() Region}.</li>
+ * <li>Lines are passed as {@link Line} views of the mapped bytes. They are not copied and are only valid during the
+ * call.</li>
+ * <li>Each chunk has its own state (see {@link #startChunk(long)}) which is {@link #collect(Object) collected} by the
+ * calling thread either in file order or as the chunks complete.</li>
+ * </ul>
+ * Lines end with '\n' or "\r\n" (a single '\r' doesn't end a line). A line must not be longer than 2GB.
+ * Example counting lines containing "ERROR":
+ *
+ * <pre>
+ * long errors = new MappedLineConsumer&lt;long[], Long&gt;() {
+ * 	private long count;
+ *
+ * 	&#064;Override
+ * 	protected long[] startChunk(final long offset) {
+ * 		return new long[1];
+ * 	}
+ *
+ * 	&#064;Override
+ * 	protected void consume(final Line line, final long[] chunk) {
+ * 		if (line.indexOf(&quot;ERROR&quot;) &gt;= 0) {
+ * 			chunk[0]++;
+ * 		}
+ * 	}
+ *
+ * 	&#064;Override
+ * 	protected void collect(final long[] chunk) {
+ * 		this.count += chunk[0];
+ * 	}
+ *
+ * 	&#064;Override
+ * 	protected Long result() {
+ * 		return Long.valueOf(this.count);
+ * 	}
+ * }.consume(new FileStore(&quot;app.log&quot;)).longValue();
+ * </pre>
+ *
+ * Note: {@link #consume(Line, Object)} is called concurrently for different chunks. Use the chunk state instead of
+ * fields of the consumer. One consumer may only process one Store at a time.
+ *
+ * @author Gunnar Zarncke
+ * @param <C> type of the state of one chunk, may be Void
+ * @param <T> return type, may be Void
+ */
+public abstract class MappedLineConsumer<C, T> implements StoreConsumer<T> {
+	public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+	public static final int MAX_CHUNK_SIZE = 256 << 20;
+
+	/**
+	 * A line (without line terminator) as view of the underlying bytes.
+	 * As {@link CharSequence} each byte is one char, which is correct for ASCII and ISO-8859-1 only; {@link #toString()}
+	 * decodes the line in the charset of the consumer.
+	 */
+	public static final class Line implements CharSequence {
+		private final Charset charset;
+		private ByteBuffer buffer;
+		private int start;
+		private int length;
+		private long offset;
+
+		Line(final Charset charset) {
+			this.charset = charset;
+		}
+
+		Line(final Charset charset, final ByteBuffer buffer, final int start, final int length, final long offset) {
+			this.charset = charset;
+			set(buffer, start, length, offset);
+		}
+
+		void set(final ByteBuffer lineBuffer, final int lineStart, final int lineLength, final long lineOffset) {
+			this.buffer = lineBuffer;
+			this.start = lineStart;
+			this.length = lineLength;
+			this.offset = lineOffset;
+		}
+
+		/**
+		 * @return length in bytes
+		 */
+		@Override
+		public int length() {
+			return this.length;
+		}
+
+		@Override
+		public char charAt(final int index) {
+			return (char) (byteAt(index) & 0xff);
+		}
+
+		public byte byteAt(final int index) {
+			if (index < 0 || index >= this.length) {
+				throw Warden.spot(new IndexOutOfBoundsException(index + " not in 0.." + this.length));
+			}
+			return this.buffer.get(this.start + index);
+		}
+
+		/**
+		 * @return a new Line sharing the bytes
+		 */
+		@Override
+		public Line subSequence(final int from, final int to) {
+			if (from < 0 || to > this.length || from > to) {
+				throw Warden.spot(new IndexOutOfBoundsException(from + ".." + to + " not in 0.." + this.length));
+			}
+			return new Line(this.charset, this.buffer, this.start + from, to - from, this.offset + from);
+		}
+
+		/**
+		 * @param b byte to find
+		 * @param from index to start at
+		 * @return index of the byte or -1
+		 */
+		public int indexOf(final int b, final int from) {
+			for (int i = Math.max(0, from); i < this.length; i++) {
+				if (this.buffer.get(this.start + i) == (byte) b) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * @param ascii to find
+		 * @return index of the first occurrence or -1
+		 */
+		public int indexOf(final String ascii) {
+			int n = ascii.length();
+			outer: for (int i = 0; i <= this.length - n; i++) {
+				for (int j = 0; j < n; j++) {
+					if (this.buffer.get(this.start + i + j) != (byte) ascii.charAt(j)) {
+						continue outer;
+					}
+				}
+				return i;
+			}
+			return -1;
+		}
+
+		/**
+		 * @param target to copy the bytes to
+		 * @param targetOffset in target
+		 * @return number of bytes copied (= {@link #length()})
+		 */
+		public int copyTo(final byte[] target, final int targetOffset) {
+			ByteBuffer view = this.buffer.duplicate();
+			view.limit(this.start + this.length).position(this.start);
+			view.get(target, targetOffset, this.length);
+			return this.length;
+		}
+
+		/**
+		 * @return read-only buffer of the bytes of the line (shared)
+		 */
+		public ByteBuffer asByteBuffer() {
+			ByteBuffer view = this.buffer.asReadOnlyBuffer();
+			view.limit(this.start + this.length).position(this.start);
+			return view.slice();
+		}
+
+		/**
+		 * @return position of the line in the Store
+		 */
+		public long getOffset() {
+			return this.offset;
+		}
+
+		@Override
+		public String toString() {
+			byte[] bytes = new byte[this.length];
+			copyTo(bytes, 0);
+			return new String(bytes, this.charset);
+		}
+	}
+
+	/**
+	 * Source of the bytes of a Store.
+	 */
+	private static final class Source {
+		private final FileChannel channel;
+		private final ByteBuffer whole;
+		private final long size;
+
+		Source(final FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.whole = null;
+			this.size = channel.size();
+		}
+
+		Source(final ByteBuffer whole) {
+			this.channel = null;
+			this.whole = whole;
+			this.size = whole.remaining();
+		}
+
+		ByteBuffer window(final long start, final long length) throws IOException {
+			if (this.channel != null) {
+				return this.channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+			}
+			ByteBuffer view = this.whole.duplicate();
+			int from = this.whole.position() + (int) start;
+			view.limit(from + (int) length).position(from);
+			return view.slice();
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+	private final boolean ordered;
+	private Store store;
+
+	/**
+	 * Uses the {@link IOTools#getIoPool() IO pool}, the default chunk size and collects in order.
+	 */
+	protected MappedLineConsumer() {
+		this(null, DEFAULT_CHUNK_SIZE, true);
+	}
+
+	/**
+	 * @param pool to process chunks in, null for the {@link IOTools#getIoPool() IO pool}
+	 * @param chunkSize bytes per chunk 1..{@link #MAX_CHUNK_SIZE}
+	 * @param ordered true: chunks are collected in file order; false: as they complete
+	 */
+	protected MappedLineConsumer(final ForkJoinPool pool, final int chunkSize, final boolean ordered) {
+		if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+			throw Warden.spot(new IllegalArgumentException("chunk size must be 1.." + MAX_CHUNK_SIZE + " but is "
+					+ chunkSize));
+		}
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+		this.ordered = ordered;
+	}
+
+	/**
+	 * Consumes all lines of the content of the Store.
+	 *
+	 * @param storeToProcess != null
+	 * @return result of type T
+	 * @throws IOException on IO failure with chunk indication
+	 */
+	@Override
+	public T consume(final Store storeToProcess) throws IOException {
+		this.store = storeToProcess;
+		try {
+			File file = FileStore.getFile(storeToProcess);
+			if (file == null) {
+				process(new Source(RegionUtil.asByteBuffer(storeToProcess.asRegion())));
+			} else {
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try {
+					process(new Source(raf.getChannel()));
+				} finally {
+					IOTools.forceClose(raf);
+				}
+			}
+			return result();
+		} finally {
+			this.store = null;
+		}
+	}
+
+	private void process(final Source source) throws IOException {
+		ForkJoinPool executor = this.pool == null ? IOTools.getIoPool() : this.pool;
+		long chunks = (source.size + this.chunkSize - 1) / this.chunkSize;
+		// limit mapped but uncollected chunks
+		int maxInFlight = 2 * executor.getParallelism();
+		CompletionService<C> completion = this.ordered ? null : new ExecutorCompletionService<C>(executor);
+		List<Future<C>> inFlight = L.l();
+		long next = 0;
+		long collected = 0;
+		try {
+			while (collected < chunks) {
+				while (next < chunks && next - collected < maxInFlight) {
+					Callable<C> task = chunkTask(source, next * this.chunkSize, Math.min(source.size, (next + 1)
+							* this.chunkSize));
+					if (this.ordered) {
+						// a FutureTask passes exceptions unchanged
+						FutureTask<C> future = new FutureTask<C>(task);
+						executor.execute(future);
+						inFlight.add(future);
+					} else {
+						inFlight.add(completion.submit(task));
+					}
+					next++;
+				}
+				Future<C> done = this.ordered ? inFlight.get(0) : completion.take();
+				inFlight.remove(done);
+				collect(done.get());
+				collected++;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw Warden.spot(new IOException("interrupted while reading " + getStore().getName(), e));
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw Warden.spot((RuntimeException) cause);
+			}
+			if (cause instanceof Error) {
+				throw Warden.spot((Error) cause);
+			}
+			throw Warden.spot(new IOException("failed to read " + getStore().getName(), cause));
+		} finally {
+			for (Future<C> f : inFlight) {
+				f.cancel(false);
+			}
+		}
+	}
+
+	private Callable<C> chunkTask(final Source source, final long from, final long to) {
+		return new Callable<C>() {
+			@Override
+			public C call() throws IOException {
+				Warden w = Warden.appointWarden();
+				try {
+					return processChunk(source, from, to);
+				} finally {
+					w.finish();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Passes all lines starting in [from, to) to the consumer.
+	 */
+	private C processChunk(final Source source, final long from, final long to) throws IOException {
+		C chunk = startChunk(from);
+		// include the byte before the chunk to detect whether a line starts at from
+		long base = from == 0 ? 0 : from - 1;
+		int limit = (int) (to - base);
+		long length = Math.min(source.size - base, limit + (long) this.chunkSize);
+		ByteBuffer buffer = source.window(base, length);
+		int pos = 0;
+		if (from > 0) {
+			// skip the rest of the line of the previous chunk
+			while (pos < limit && buffer.get(pos) != '\n') {
+				pos++;
+			}
+			pos++;
+		}
+		Line line = new Line(getCharset());
+		while (pos < limit) {
+			int end = pos;
+			int len = (int) length;
+			while (end < len && buffer.get(end) != '\n') {
+				end++;
+			}
+			if (end == len && base + length < source.size) {
+				// line exceeds the window
+				if (length == Integer.MAX_VALUE) {
+					throw Warden.spot(new IOException("line at " + (base + pos) + " is too long"));
+				}
+				length = Math.min(source.size - base, Math.min(Integer.MAX_VALUE, 2 * length));
+				buffer = source.window(base, length);
+				continue;
+			}
+			int contentEnd = end > pos && buffer.get(end - 1) == '\r' ? end - 1 : end;
+			line.set(buffer, pos, contentEnd - pos, base + pos);
+			consume(line, chunk);
+			pos = end + 1;
+		}
+		return chunk;
+	}
+
+	protected Charset getCharset() {
+		return Misc.UTF_8;
+	}
+
+	/**
+	 * Called in a pool thread before the lines of a chunk are consumed.
+	 *
+	 * @param offset of the chunk in the Store
+	 * @return state of the chunk; default null
+	 */
+	protected C startChunk(final long offset) {
+		return null;
+	}
+
+	/**
+	 * Called in a pool thread for each line of a chunk in order.
+	 *
+	 * @param line only valid during the call
+	 * @param chunk state as returned by {@link #startChunk(long)}
+	 */
+	protected abstract void consume(Line line, C chunk);
+
+	/**
+	 * Called in the consuming thread for each processed chunk. Default does nothing.
+	 *
+	 * @param chunk state
+	 */
+	protected void collect(final C chunk) {
+		// nothing to do
+	}
+
+	protected T result() {
+		return null;
+	}
+
+	protected Store getStore() {
+		return this.store;
+	}
+
+	public int getChunkSize() {
+		return this.chunkSize;
+	}
+
+	public boolean isOrdered() {
+		return this.ordered;
+	}
+
+	@Override
+	public String toString() {
+		if (this.store == null) {
+			return "unused MappedLineConsumer " + getCharset();
+		}
+		return "consuming " + this.store.getName() + " in chunks of " + this.chunkSize;
+	}
+}
@@ -0,0 +1,139 @@
+package de.zarncke.lib.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import de.zarncke.lib.coll.Pair;
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.log.Log;
+
+/**
+ * Measures the pipes of {@link IOTools#createPipe()}:
+ * <ul>
+ * <li>throughput of one writer and one reader thread for different message sizes in MB/sec and</li>
+ * <li>latency of round trips of small messages through two pipes in microseconds.</li>
+ * </ul>
+ * Call with the number of MB to transfer per message size as optional argument.
+ *
+ * @author Gunnar Zarncke
+ */
+public class PipeBenchmark {
+	private static final int DEFAULT_MB = 64;
+	private static final int[] MESSAGE_SIZES = { 16, 256, 4096, 65536 };
+	private static final int ROUND_TRIPS = 20000;
+	private static final int PING_SIZE = 16;
+	private static final int ROUNDS = 3;
+
+	private final long totalBytes;
+
+	public PipeBenchmark(final int megaBytes) {
+		this.totalBytes = megaBytes * 1024L * 1024L;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		PipeBenchmark bm = new PipeBenchmark(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MB);
+		for (int size : MESSAGE_SIZES) {
+			long nanos = bm.measureThroughput(size);
+			Log.LOG.get().report(
+					"throughput with " + size + " byte messages: " + (long) (bm.totalBytes * 1e9 / nanos / 1024 / 1024)
+							+ " MB/sec");
+		}
+		long nanos = bm.measureLatency();
+		Log.LOG.get().report("latency of " + PING_SIZE + " byte round trips: " + nanos / 1000.0 / ROUND_TRIPS + " us");
+	}
+
+	public long measureThroughput(final int messageSize) throws Exception {
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; r++) {
+			Pair<OutputStream, InputStream> pipe = IOTools.createPipe();
+			final OutputStream out = pipe.getFirst();
+			final byte[] message = new byte[messageSize];
+			final long messages = this.totalBytes / messageSize;
+			Thread writer = new Thread("pipe writer") {
+				@Override
+				public void run() {
+					Warden w = Warden.appointWarden();
+					try {
+						for (long i = 0; i < messages; i++) {
+							out.write(message, 0, message.length);
+						}
+						out.close();
+					} catch (IOException e) {
+						Warden.disregardAndReport(e);
+					} finally {
+						w.finish();
+					}
+				}
+			};
+			long start = System.nanoTime();
+			writer.start();
+			InputStream ins = pipe.getSecond();
+			byte[] buf = new byte[64 * 1024];
+			long read = 0;
+			int n;
+			while ((n = ins.read(buf, 0, buf.length)) >= 0) {
+				read += n;
+			}
+			best = Math.min(best, System.nanoTime() - start);
+			writer.join();
+			if (read != messages * messageSize) {
+				throw Warden.spot(new IllegalStateException("read " + read + " bytes instead of " + messages
+						* messageSize));
+			}
+		}
+		return best;
+	}
+
+	public long measureLatency() throws Exception {
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; r++) {
+			final Pair<OutputStream, InputStream> ping = IOTools.createPipe();
+			Pair<OutputStream, InputStream> pong = IOTools.createPipe();
+			final OutputStream echo = pong.getFirst();
+			Thread echoer = new Thread("pipe echo") {
+				@Override
+				public void run() {
+					Warden w = Warden.appointWarden();
+					try {
+						byte[] buf = new byte[PING_SIZE];
+						while (readFully(ping.getSecond(), buf)) {
+							echo.write(buf, 0, buf.length);
+						}
+						echo.close();
+					} catch (IOException e) {
+						Warden.disregardAndReport(e);
+					} finally {
+						w.finish();
+					}
+				}
+			};
+			echoer.start();
+			byte[] message = new byte[PING_SIZE];
+			byte[] reply = new byte[PING_SIZE];
+			long start = System.nanoTime();
+			for (int i = 0; i < ROUND_TRIPS; i++) {
+				ping.getFirst().write(message, 0, message.length);
+				if (!readFully(pong.getSecond(), reply)) {
+					throw Warden.spot(new IllegalStateException("echo ended"));
+				}
+			}
+			best = Math.min(best, System.nanoTime() - start);
+			ping.getFirst().close();
+			echoer.join();
+		}
+		return best;
+	}
+
+	static boolean readFully(final InputStream ins, final byte[] buf) throws IOException {
+		int off = 0;
+		while (off < buf.length) {
+			int n = ins.read(buf, off, buf.length - off);
+			if (n < 0) {
+				return false;
+			}
+			off += n;
+		}
+		return true;
+	}
+}
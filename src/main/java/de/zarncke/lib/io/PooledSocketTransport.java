@@ -0,0 +1,443 @@
+package de.zarncke.lib.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.io.SocketCommunicator.ReceiveIoException;
+import de.zarncke.lib.io.SocketCommunicator.SendIoException;
+
+/**
+ * Sends the requests of {@link SocketCommunicator SocketCommunicators} over kept-alive connections instead of a new
+ * connection per request (as {@link SocketCommunicator#sendRequest} does).
+ * <ul>
+ * <li>Connections are pooled per endpoint (host and port). At most {@link #getMaxPerEndpoint()} requests per endpoint
+ * are in flight at any time, further callers wait.</li>
+ * <li>Connections idle longer than {@link #getIdleMillis()} are closed when the endpoint is used next or by
+ * {@link #evictIdle()}.</li>
+ * <li>Optionally all requests to an endpoint are multiplexed over a single connection. Responses are matched by request
+ * id and may arrive in any order.</li>
+ * </ul>
+ * Each request and response is framed as request id (int), length (int) and payload, so the server has to speak that
+ * framing (see {@link #serve(Socket, FrameHandler)}). The query of the communicator is the request payload and the
+ * response payload is passed to {@link SocketCommunicator#process(InputStream)}.
+ * A request failing on a reused connection before the response started is retried on another connection (the server
+ * may have closed the idle connection).
+ *
+ * @author Gunnar Zarncke
+ */
+public class PooledSocketTransport implements Closeable {
+	public static final int DEFAULT_MAX_PER_ENDPOINT = 8;
+	public static final long DEFAULT_IDLE_MILLIS = 30 * 1000L;
+	public static final int MAX_FRAME_SIZE = 64 << 20;
+
+	private static final int CONNECT_TIMEOUT_MS = 60 * 1000;
+
+	/**
+	 * Server side processing of one request.
+	 */
+	public interface FrameHandler {
+		/**
+		 * @param request payload
+		 * @return response payload != null
+		 * @throws IOException to close the connection
+		 */
+		byte[] handle(byte[] request) throws IOException;
+	}
+
+	/**
+	 * A kept-alive connection. Multiplexed connections have pending responses and a reader thread.
+	 */
+	private static final class Connection {
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+		private final ConcurrentMap<Integer, SettableFuture<byte[]>> pending;
+		private final AtomicInteger nextId = new AtomicInteger();
+		private volatile long lastUsed = System.currentTimeMillis();
+		private volatile boolean dead;
+
+		Connection(final Socket socket, final boolean multiplexed) throws IOException {
+			this.socket = socket;
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			this.pending = multiplexed ? new ConcurrentHashMap<Integer, SettableFuture<byte[]>>() : null;
+		}
+
+		boolean isIdleSince(final long time) {
+			return this.lastUsed < time && (this.pending == null || this.pending.isEmpty());
+		}
+
+		void readResponses() {
+			Warden w = Warden.appointWarden();
+			try {
+				while (true) {
+					int id = this.in.readInt();
+					byte[] response = readPayload(this.in);
+					this.lastUsed = System.currentTimeMillis();
+					SettableFuture<byte[]> future = this.pending.remove(Integer.valueOf(id));
+					if (future != null) {
+						future.set(response);
+					}
+				}
+			} catch (IOException e) {
+				fail(e);
+			} finally {
+				w.finish();
+			}
+		}
+
+		void fail(final IOException e) {
+			this.dead = true;
+			close();
+			if (this.pending != null) {
+				for (Iterator<SettableFuture<byte[]>> it = this.pending.values().iterator(); it.hasNext();) {
+					it.next().setException(e);
+					it.remove();
+				}
+			}
+		}
+
+		void close() {
+			this.dead = true;
+			IOTools.forceClose(this.socket);
+		}
+	}
+
+	/**
+	 * Connections to one host and port.
+	 */
+	private final class Endpoint {
+		private final String host;
+		private final int port;
+		private final Semaphore permits = new Semaphore(PooledSocketTransport.this.maxPerEndpoint);
+		// most recently used first
+		private final Deque<Connection> idle = new ArrayDeque<Connection>();
+		private Connection shared;
+
+		Endpoint(final String host, final int port) {
+			this.host = host;
+			this.port = port;
+		}
+
+		Connection connect() throws IOException {
+			Socket socket = new Socket();
+			try {
+				socket.setTcpNoDelay(true);
+				socket.setKeepAlive(true);
+				socket.connect(new InetSocketAddress(this.host, this.port), CONNECT_TIMEOUT_MS);
+				return new Connection(socket, PooledSocketTransport.this.multiplexed);
+			} catch (IOException e) {
+				IOTools.forceClose(socket);
+				throw Warden.spot(new SendIoException("cannot open connection to target " + this, e));
+			}
+		}
+
+		synchronized Connection pollIdle() {
+			evict(System.currentTimeMillis() - PooledSocketTransport.this.idleMillis);
+			return this.idle.pollFirst();
+		}
+
+		synchronized void release(final Connection connection) {
+			connection.lastUsed = System.currentTimeMillis();
+			if (PooledSocketTransport.this.closed) {
+				connection.close();
+			} else {
+				this.idle.addFirst(connection);
+			}
+		}
+
+		synchronized Connection shared() throws IOException {
+			if (this.shared == null || this.shared.dead) {
+				final Connection connection = connect();
+				Thread reader = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						connection.readResponses();
+					}
+				}, "mux " + this);
+				reader.setDaemon(true);
+				reader.start();
+				this.shared = connection;
+			}
+			return this.shared;
+		}
+
+		synchronized int evict(final long idleBefore) {
+			int evicted = 0;
+			while (!this.idle.isEmpty() && this.idle.peekLast().isIdleSince(idleBefore)) {
+				this.idle.pollLast().close();
+				evicted++;
+			}
+			if (this.shared != null && (this.shared.dead || this.shared.isIdleSince(idleBefore))) {
+				this.shared.close();
+				this.shared = null;
+				evicted++;
+			}
+			return evicted;
+		}
+
+		synchronized void closeAll() {
+			evict(Long.MAX_VALUE);
+			if (this.shared != null) {
+				this.shared.fail(new IOException("transport closed"));
+				this.shared = null;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.host + ":" + this.port;
+		}
+	}
+
+	private final int maxPerEndpoint;
+	private final long idleMillis;
+	private final boolean multiplexed;
+	private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+	private volatile boolean closed;
+
+	public PooledSocketTransport() {
+		this(DEFAULT_MAX_PER_ENDPOINT, DEFAULT_IDLE_MILLIS, false);
+	}
+
+	/**
+	 * @param maxPerEndpoint number of requests in flight per endpoint (and thus connections if not multiplexed) > 0
+	 * @param idleMillis after which unused connections are closed
+	 * @param multiplexed true: use a single connection per endpoint for all requests
+	 */
+	public PooledSocketTransport(final int maxPerEndpoint, final long idleMillis, final boolean multiplexed) {
+		if (maxPerEndpoint <= 0) {
+			throw Warden.spot(new IllegalArgumentException("at least one connection required, not " + maxPerEndpoint));
+		}
+		this.maxPerEndpoint = maxPerEndpoint;
+		this.idleMillis = idleMillis;
+		this.multiplexed = multiplexed;
+	}
+
+	/**
+	 * Sends a request to the given tcp port and processes the result with the given processor.
+	 *
+	 * @param <T> type of result
+	 * @param host != null
+	 * @param port valid tcp port
+	 * @param processor != null
+	 * @return as the processor returns
+	 * @throws IOException {@link SendIoException} or {@link ReceiveIoException}
+	 */
+	public <T> T sendRequest(final String host, final int port, final SocketCommunicator<T> processor)
+			throws IOException {
+		if (this.closed) {
+			throw Warden.spot(new IllegalStateException("transport is closed"));
+		}
+		Endpoint endpoint = endpointOf(host, port);
+		ByteArrayOutputStream query = new ByteArrayOutputStream();
+		try {
+			processor.writeQuery(query);
+		} catch (IOException e) {
+			throw Warden.spot(new SendIoException("cannot create query for " + endpoint, e));
+		}
+		byte[] response;
+		try {
+			endpoint.permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw Warden.spot(new InterruptedIOException("interrupted while waiting for a connection to " + endpoint));
+		}
+		try {
+			response = this.multiplexed ? exchangeShared(endpoint, query.toByteArray()) : exchangePooled(endpoint,
+					query.toByteArray());
+		} finally {
+			endpoint.permits.release();
+		}
+		try {
+			return processor.process(new ByteArrayInputStream(response));
+		} catch (IOException e) {
+			throw Warden.spot(new ReceiveIoException("cannot process response of " + endpoint, e));
+		}
+	}
+
+	private Endpoint endpointOf(final String host, final int port) {
+		String key = host + ":" + port;
+		Endpoint endpoint = this.endpoints.get(key);
+		if (endpoint == null) {
+			endpoint = new Endpoint(host, port);
+			Endpoint known = this.endpoints.putIfAbsent(key, endpoint);
+			if (known != null) {
+				endpoint = known;
+			}
+		}
+		return endpoint;
+	}
+
+	private byte[] exchangePooled(final Endpoint endpoint, final byte[] query) throws IOException {
+		Connection connection = endpoint.pollIdle();
+		boolean reused = connection != null;
+		if (connection == null) {
+			connection = endpoint.connect();
+		}
+		int id = connection.nextId.incrementAndGet();
+		boolean started = false;
+		try {
+			writeFrame(connection.out, id, query);
+			connection.out.flush();
+			int responseId = connection.in.readInt();
+			started = true;
+			if (responseId != id) {
+				throw new IOException("response for request " + responseId + " instead of " + id);
+			}
+			byte[] response = readPayload(connection.in);
+			endpoint.release(connection);
+			return response;
+		} catch (IOException e) {
+			connection.close();
+			if (reused && !started) {
+				// probably closed by the server while idle
+				return exchangePooled(endpoint, query);
+			}
+			throw Warden.spot(new ReceiveIoException("cannot receive response from " + endpoint, e));
+		}
+	}
+
+	private byte[] exchangeShared(final Endpoint endpoint, final byte[] query) throws IOException {
+		Connection connection = endpoint.shared();
+		Integer id = Integer.valueOf(connection.nextId.incrementAndGet());
+		SettableFuture<byte[]> response = SettableFuture.create();
+		connection.pending.put(id, response);
+		if (connection.dead) {
+			// failed or evicted before our request was registered
+			connection.pending.remove(id);
+			return exchangeShared(endpoint, query);
+		}
+		try {
+			synchronized (connection.out) {
+				writeFrame(connection.out, id.intValue(), query);
+				connection.out.flush();
+			}
+		} catch (IOException e) {
+			connection.pending.remove(id);
+			connection.fail(e);
+			throw Warden.spot(new SendIoException("cannot send data to " + endpoint, e));
+		}
+		try {
+			return response.get();
+		} catch (InterruptedException e) {
+			connection.pending.remove(id);
+			Thread.currentThread().interrupt();
+			throw Warden.spot(new InterruptedIOException("interrupted while waiting for response of " + endpoint));
+		} catch (ExecutionException e) {
+			throw Warden.spot(new ReceiveIoException("cannot receive response from " + endpoint,
+					(IOException) e.getCause()));
+		}
+	}
+
+	static void writeFrame(final DataOutputStream out, final int id, final byte[] payload) throws IOException {
+		out.writeInt(id);
+		out.writeInt(payload.length);
+		out.write(payload);
+	}
+
+	static byte[] readPayload(final DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > MAX_FRAME_SIZE) {
+			throw new IOException("invalid frame length " + length);
+		}
+		byte[] payload = new byte[length];
+		in.readFully(payload);
+		return payload;
+	}
+
+	/**
+	 * Serves framed requests on a connection until the client closes it. Requests are handled in order. Responses are
+	 * flushed when no further request is already waiting, so pipelined requests are answered in bulk.
+	 *
+	 * @param socket != null, is closed when done
+	 * @param handler != null
+	 * @throws IOException on connection failures or from the handler
+	 */
+	public static void serve(final Socket socket, final FrameHandler handler) throws IOException {
+		try {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			while (true) {
+				int first = in.read();
+				if (first < 0) {
+					// closed by client
+					return;
+				}
+				int id = first << 24 | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+				byte[] response = handler.handle(readPayload(in));
+				writeFrame(out, id, response);
+				if (in.available() == 0) {
+					out.flush();
+				}
+			}
+		} finally {
+			IOTools.forceClose(socket);
+		}
+	}
+
+	/**
+	 * Closes idle connections of all endpoints.
+	 *
+	 * @return number of connections closed
+	 */
+	public int evictIdle() {
+		long idleBefore = System.currentTimeMillis() - this.idleMillis;
+		int evicted = 0;
+		for (Endpoint endpoint : this.endpoints.values()) {
+			evicted += endpoint.evict(idleBefore);
+		}
+		return evicted;
+	}
+
+	/**
+	 * Closes all idle connections. Connections in use are closed when released. Multiplexed connections are closed
+	 * immediately.
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		for (Endpoint endpoint : this.endpoints.values()) {
+			endpoint.closeAll();
+		}
+	}
+
+	public int getMaxPerEndpoint() {
+		return this.maxPerEndpoint;
+	}
+
+	public long getIdleMillis() {
+		return this.idleMillis;
+	}
+
+	public boolean isMultiplexed() {
+		return this.multiplexed;
+	}
+
+	@Override
+	public String toString() {
+		return (this.multiplexed ? "multiplexed " : "pooled ") + this.endpoints.keySet();
+	}
+}
@@ -0,0 +1,248 @@
+package de.zarncke.lib.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import de.zarncke.lib.err.Warden;
+
+/**
+ * Bounded in-memory pipe between one writing and one reading thread.
+ * <ul>
+ * <li>Data is copied into a ring buffer of fixed capacity; no objects are allocated per write.</li>
+ * <li>The positions of writer and reader are the only shared state; no locks are used.</li>
+ * <li>A reader waiting for data and a writer waiting for space (backpressure) spin shortly and then park until the
+ * other side unparks it.</li>
+ * <li>Closing the {@link #getOutputStream() OutputStream} signals EOF to the reader after all data is read. Closing the
+ * {@link #getInputStream() InputStream} makes further writes fail.</li>
+ * </ul>
+ * Note: Writing more than the capacity blocks until data is read, so writer and reader must be different threads for
+ * larger data.
+ *
+ * @author Gunnar Zarncke
+ */
+public class RingPipe {
+	public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+	private static final int SPINS = 100;
+
+	private final byte[] buffer;
+	private final int mask;
+
+	// total number of bytes written and read; written by one thread each
+	private final AtomicLong writePosition = new AtomicLong();
+	private final AtomicLong readPosition = new AtomicLong();
+
+	private volatile Thread waitingReader;
+	private volatile Thread waitingWriter;
+	private volatile boolean writerClosed;
+	private volatile boolean readerClosed;
+
+	private final OutputStream outputStream = new OutputStream() {
+		private final byte[] single = new byte[1];
+
+		@Override
+		public void write(final int b) throws IOException {
+			this.single[0] = (byte) b;
+			RingPipe.this.write(this.single, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			RingPipe.this.write(b, off, len);
+		}
+
+		@Override
+		public void close() {
+			RingPipe.this.writerClosed = true;
+			LockSupport.unpark(RingPipe.this.waitingReader);
+		}
+	};
+
+	private final InputStream inputStream = new InputStream() {
+		private final byte[] single = new byte[1];
+
+		@Override
+		public int read() throws IOException {
+			int n = RingPipe.this.read(this.single, 0, 1);
+			return n < 0 ? -1 : this.single[0] & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			return RingPipe.this.read(b, off, len);
+		}
+
+		@Override
+		public int available() {
+			return (int) (RingPipe.this.writePosition.get() - RingPipe.this.readPosition.get());
+		}
+
+		@Override
+		public void close() {
+			RingPipe.this.readerClosed = true;
+			LockSupport.unpark(RingPipe.this.waitingWriter);
+		}
+	};
+
+	public RingPipe() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity in bytes; rounded up to a power of two
+	 */
+	public RingPipe(final int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw Warden.spot(new IllegalArgumentException("capacity must be 1.." + (1 << 30) + " but is " + capacity));
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.buffer = new byte[size];
+		this.mask = size - 1;
+	}
+
+	void write(final byte[] b, final int off, final int len) throws IOException {
+		if (this.writerClosed) {
+			throw Warden.spot(new IOException("pipe is closed"));
+		}
+		if (this.readerClosed) {
+			throw Warden.spot(new IOException("pipe is closed by reader"));
+		}
+		int pos = off;
+		int remaining = len;
+		long w = this.writePosition.get();
+		while (remaining > 0) {
+			int free = this.buffer.length - (int) (w - this.readPosition.get());
+			if (free == 0) {
+				awaitSpace(w);
+				continue;
+			}
+			int n = Math.min(free, remaining);
+			int start = (int) w & this.mask;
+			int first = Math.min(n, this.buffer.length - start);
+			System.arraycopy(b, pos, this.buffer, start, first);
+			if (first < n) {
+				System.arraycopy(b, pos + first, this.buffer, 0, n - first);
+			}
+			w += n;
+			pos += n;
+			remaining -= n;
+			// volatile write publishes the data before the reader is checked
+			this.writePosition.set(w);
+			Thread reader = this.waitingReader;
+			if (reader != null) {
+				LockSupport.unpark(reader);
+			}
+		}
+	}
+
+	private void awaitSpace(final long w) throws IOException {
+		int spins = SPINS;
+		while (w - this.readPosition.get() == this.buffer.length) {
+			if (this.readerClosed) {
+				throw Warden.spot(new IOException("pipe is closed by reader"));
+			}
+			if (spins > 0) {
+				spins--;
+				Thread.yield();
+				continue;
+			}
+			this.waitingWriter = Thread.currentThread();
+			// recheck after announcing to avoid a lost unpark
+			if (w - this.readPosition.get() == this.buffer.length && !this.readerClosed) {
+				LockSupport.park(this);
+			}
+			this.waitingWriter = null;
+			if (Thread.interrupted()) {
+				throw Warden.spot(new InterruptedIOException("interrupted while waiting for reader"));
+			}
+		}
+	}
+
+	int read(final byte[] b, final int off, final int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		long r = this.readPosition.get();
+		long w = this.writePosition.get();
+		if (w == r) {
+			w = awaitData(r);
+			if (w == r) {
+				return -1;
+			}
+		}
+		int n = (int) Math.min(len, w - r);
+		int start = (int) r & this.mask;
+		int first = Math.min(n, this.buffer.length - start);
+		System.arraycopy(this.buffer, start, b, off, first);
+		if (first < n) {
+			System.arraycopy(this.buffer, 0, b, off + first, n - first);
+		}
+		this.readPosition.set(r + n);
+		Thread writer = this.waitingWriter;
+		if (writer != null) {
+			LockSupport.unpark(writer);
+		}
+		return n;
+	}
+
+	/**
+	 * @return new write position; equal to r only at EOF
+	 */
+	private long awaitData(final long r) throws IOException {
+		int spins = SPINS;
+		while (true) {
+			long w = this.writePosition.get();
+			if (w != r) {
+				return w;
+			}
+			if (this.writerClosed) {
+				// writes before closing are visible now
+				return this.writePosition.get();
+			}
+			if (spins > 0) {
+				spins--;
+				Thread.yield();
+				continue;
+			}
+			this.waitingReader = Thread.currentThread();
+			if (this.writePosition.get() == r && !this.writerClosed) {
+				LockSupport.park(this);
+			}
+			this.waitingReader = null;
+			if (Thread.interrupted()) {
+				throw Warden.spot(new InterruptedIOException("interrupted while waiting for writer"));
+			}
+		}
+	}
+
+	/**
+	 * @return the writing side; to be used by one thread only
+	 */
+	public OutputStream getOutputStream() {
+		return this.outputStream;
+	}
+
+	/**
+	 * @return the reading side; to be used by one thread only
+	 */
+	public InputStream getInputStream() {
+		return this.inputStream;
+	}
+
+	public int getCapacity() {
+		return this.buffer.length;
+	}
+
+	@Override
+	public String toString() {
+		return "RingPipe with " + (this.writePosition.get() - this.readPosition.get()) + " of " + this.buffer.length
+				+ " bytes";
+	}
+}
@@ -19,6 +19,7 @@ import de.zarncke.lib.util.Misc;
  * Open a socket, write a query and process the response.
  * This class may be overridden to provide other queries and process the response differently (default is to read nothign and
  * return null).
+ * To keep connections alive between requests send them via a {@link PooledSocketTransport}.
  *
  * @author Gunnar Zarncke
  * @param <T> type of result
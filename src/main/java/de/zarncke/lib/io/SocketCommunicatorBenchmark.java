@@ -0,0 +1,213 @@
+package de.zarncke.lib.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.log.Log;
+import de.zarncke.lib.util.Misc;
+
+/**
+ * Compares a new connection per request ({@link SocketCommunicator#sendRequest}) with
+ * {@link PooledSocketTransport pooled} and multiplexed connections over loopback.
+ * Reports requests/sec for increasing numbers of concurrent clients.
+ * Call with the number of requests per client thread as optional argument.
+ *
+ * @author Gunnar Zarncke
+ */
+public class SocketCommunicatorBenchmark {
+	private static final int DEFAULT_REQUESTS = 1000;
+	private static final int MAX_CLIENTS = 16;
+	private static final String HOST = "localhost";
+	private static final byte[] RESPONSE = "pong\n".getBytes(Misc.UTF_8);
+
+	/**
+	 * Accepts connections and serves each in a thread of its own.
+	 */
+	private abstract static class Server implements Runnable {
+		private final ServerSocket socket;
+		private final ExecutorService handlers = Executors.newCachedThreadPool();
+
+		Server() throws IOException {
+			this.socket = new ServerSocket(0, 1000, InetAddress.getLoopbackAddress());
+			Thread acceptor = new Thread(this, "benchmark server");
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final Socket client = this.socket.accept();
+					this.handlers.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								serve(client);
+							} catch (IOException e) {
+								// client gone
+							} finally {
+								IOTools.forceClose(client);
+							}
+						}
+					});
+				}
+			} catch (IOException e) {
+				// closed
+			}
+		}
+
+		abstract void serve(Socket client) throws IOException;
+
+		int getPort() {
+			return this.socket.getLocalPort();
+		}
+
+		void close() throws IOException {
+			this.socket.close();
+			this.handlers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Answers one line per connection.
+	 */
+	private static final class LineServer extends Server {
+		LineServer() throws IOException {
+			super();
+		}
+
+		@Override
+		void serve(final Socket client) throws IOException {
+			InputStream ins = client.getInputStream();
+			int c;
+			while ((c = ins.read()) >= 0 && c != '\n') {
+				// skip query
+			}
+			OutputStream out = client.getOutputStream();
+			out.write(RESPONSE);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Answers framed requests.
+	 */
+	private static final class FramedServer extends Server {
+		FramedServer() throws IOException {
+			super();
+		}
+
+		@Override
+		void serve(final Socket client) throws IOException {
+			PooledSocketTransport.serve(client, new PooledSocketTransport.FrameHandler() {
+				@Override
+				public byte[] handle(final byte[] request) {
+					return RESPONSE;
+				}
+			});
+		}
+	}
+
+	/**
+	 * One way to send a request.
+	 */
+	private interface Mode {
+		String send(int port) throws IOException;
+	}
+
+	private final int requests;
+
+	public SocketCommunicatorBenchmark(final int requests) {
+		this.requests = requests;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		SocketCommunicatorBenchmark bm = new SocketCommunicatorBenchmark(args.length > 0 ? Integer.parseInt(args[0])
+				: DEFAULT_REQUESTS);
+		Server lineServer = new LineServer();
+		Server framedServer = new FramedServer();
+		try {
+			for (int clients = 1; clients <= MAX_CLIENTS; clients *= 2) {
+				bm.report("new connection", clients, bm.measure(lineServer.getPort(), clients, new Mode() {
+					@Override
+					public String send(final int port) throws IOException {
+						return SocketCommunicator.sendRequest(HOST, port, new LineReadSocketCommunicator("ping\n"));
+					}
+				}));
+				final PooledSocketTransport pooled = new PooledSocketTransport(clients,
+						PooledSocketTransport.DEFAULT_IDLE_MILLIS, false);
+				try {
+					bm.report("pooled", clients, bm.measure(framedServer.getPort(), clients, new Mode() {
+						@Override
+						public String send(final int port) throws IOException {
+							return pooled.sendRequest(HOST, port, new LineReadSocketCommunicator("ping\n"));
+						}
+					}));
+				} finally {
+					pooled.close();
+				}
+				final PooledSocketTransport multiplexed = new PooledSocketTransport(clients,
+						PooledSocketTransport.DEFAULT_IDLE_MILLIS, true);
+				try {
+					bm.report("multiplexed", clients, bm.measure(framedServer.getPort(), clients, new Mode() {
+						@Override
+						public String send(final int port) throws IOException {
+							return multiplexed.sendRequest(HOST, port, new LineReadSocketCommunicator("ping\n"));
+						}
+					}));
+				} finally {
+					multiplexed.close();
+				}
+			}
+		} finally {
+			lineServer.close();
+			framedServer.close();
+		}
+	}
+
+	private void report(final String mode, final int clients, final long nanos) {
+		double perSec = (double) this.requests * clients * 1e9 / nanos;
+		Log.LOG.get().report(mode + " with " + clients + " clients: " + (long) perSec + " requests/sec");
+	}
+
+	/**
+	 * @return nanos for all clients to send their requests
+	 */
+	private long measure(final int port, final int clients, final Mode mode) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(clients);
+		try {
+			List<Callable<Void>> tasks = L.l();
+			for (int i = 0; i < clients; i++) {
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						for (int r = 0; r < SocketCommunicatorBenchmark.this.requests; r++) {
+							if (!"pong".equals(mode.send(port))) {
+								throw new IOException("unexpected response");
+							}
+						}
+						return null;
+					}
+				});
+			}
+			long start = System.nanoTime();
+			for (Future<Void> f : executor.invokeAll(tasks)) {
+				f.get();
+			}
+			return System.nanoTime() - start;
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -12,6 +12,9 @@ import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -27,10 +30,11 @@ import com.google.common.collect.Collections2;
 import de.zarncke.lib.coll.L;
 import de.zarncke.lib.diff.ContentComparer;
 import de.zarncke.lib.diff.Diff;
+import de.zarncke.lib.diff.DiffUtil;
+import de.zarncke.lib.diff.HashingContentComparer;
 import de.zarncke.lib.err.CantHappenException;
 import de.zarncke.lib.err.Warden;
 import de.zarncke.lib.io.IOTools;
-import de.zarncke.lib.io.Path;
 import de.zarncke.lib.io.store.MapStore.CreateMode;
 import de.zarncke.lib.io.store.ext.EnhanceBaseStore;
 import de.zarncke.lib.io.store.ext.EnhancedStore;
@@ -553,7 +557,8 @@ public final class StoreUtil {
 	/**
 	 * Copy a Store and all of its elements into another Store.
 	 * Note: The source must be readable or {@link Store#iterationSupported() iterable}.
-	 * If source and target denote files and rsync is in the path, then it will be used.
+	 * If source and target denote files, then they are copied in parallel by a {@link TreeCopier}. With
+	 * {@link #OVERWRITE} existing files of the same size and modification time are skipped.
 	 *
 	 * @param source != null
 	 * @param target != null
@@ -573,7 +578,8 @@ public final class StoreUtil {
 	/**
 	 * Copy a Store and all of its elements into another Store.
 	 * Note: The source must be readable or {@link Store#iterationSupported() iterable}.
-	 * If source and target denote files and rsync is in the path, then it will be used.
+	 * If source and target denote files, then they are copied in parallel by a {@link TreeCopier}. With
+	 * {@link #OVERWRITE} existing files of the same size and modification time are skipped.
 	 *
 	 * @param source != null
 	 * @param target != null
@@ -585,37 +591,13 @@ public final class StoreUtil {
 	 */
 	public static void copyRecursiveOptimizedInterruptible(final Store source, final Store target,
 			final CopyStrategy overwrite, final InterruptionMode imode) throws IOException, InterruptedException {
-		boolean success = false;
-
-		File srcf = FileStore.getFile(source);
-		File dstf = FileStore.getFile(target);
-		if (srcf != null && dstf != null && overwrite == OVERWRITE) {
-			File binary = Path.CTX.get().locate("rsync");
-			if (binary != null) {
-				String src = srcf.getAbsolutePath();
-				String dst = dstf.getAbsolutePath();
-				try {
-					Process res = Runtime.getRuntime().exec(binary.getAbsolutePath() + " -r " + src + " " + dst);
-					if (res.waitFor() == 0) {
-						success = true;
-					}
-				} catch (IOException e) {
-					Warden.disregardAndReport(e);
-				} catch (InterruptedException e) {
-					if (imode == InterruptionMode.IGNORE) {
-						Warden.disregardAndReport(e);
-					} else {
-						throw Warden.spot((InterruptedException) new InterruptedException("interrupted during " + src
-								+ " of " + source).initCause(e));
-					}
-				}
-			}
-			// else
-			// if(IOTools.isHardlinkSupported())
-			// IOTools.hardlink(src, dst);
-		}
-		if (!success) {
-			StoreUtil.copyRecursiveInterruptible(source, target, overwrite, imode);
+		if (FileStore.getFile(source) != null && FileStore.getFile(target) != null) {
+			TreeCopier copier = new TreeCopier(null, overwrite,
+					overwrite == OVERWRITE ? TreeCopier.ChangeDetection.SIZE_AND_TIME : TreeCopier.ChangeDetection.NONE,
+					false);
+			copier.copy(source, target, imode);
+		} else {
+			copyRecursiveInterruptible(source, target, overwrite, imode);
 		}
 	}
 
@@ -941,12 +923,48 @@ public final class StoreUtil {
 		return compareStoresDetailed(a, b).asStrings();
 	}
 
+	/**
+	 * Compares two stores recursively and {@link ContentComparer#BINARY binary}. Element pairs of directories are
+	 * compared in parallel. File contents are compared as streams (see {@link DiffUtil#compareContent}).
+	 *
+	 * @param a != null
+	 * @param b != null
+	 * @return Diff != null
+	 * @throws IOException if neither Store can be iterated or some elements cannot be read
+	 */
 	public static Diff compareStoresDetailed(final Store a, final Store b) throws IOException {
-		return compareStoresDetailed(a, b, ContentComparer.BINARY);
+		return compareStoresDetailed(a, b, ContentComparer.BINARY, true);
 	}
 
+	/**
+	 * Compares two stores recursively. The comparer is called sequentially.
+	 *
+	 * @param a != null
+	 * @param b != null
+	 * @param comparer to compare contents with
+	 * @return Diff != null
+	 * @throws IOException if neither Store can be iterated or some elements cannot be read
+	 */
 	public static Diff compareStoresDetailed(final Store a, final Store b, final ContentComparer comparer)
 			throws IOException {
+		return compareStoresDetailed(a, b, comparer, false);
+	}
+
+	/**
+	 * Compares two stores recursively.
+	 * If parallel, element pairs of directories are compared in the {@link IOTools#getIoPool() IO pool}, so the
+	 * comparer must be thread safe (like {@link ContentComparer#BINARY} and {@link HashingContentComparer}).
+	 * The differences are the same in both cases.
+	 *
+	 * @param a != null
+	 * @param b != null
+	 * @param comparer to compare contents with
+	 * @param parallel true: the comparer is called concurrently
+	 * @return Diff != null
+	 * @throws IOException if neither Store can be iterated or some elements cannot be read
+	 */
+	public static Diff compareStoresDetailed(final Store a, final Store b, final ContentComparer comparer,
+			final boolean parallel) throws IOException {
 		if (!a.canRead()) {
 			if (!a.iterationSupported()) {
 				if (!b.iterationSupported()) {
@@ -969,12 +987,78 @@ public final class StoreUtil {
 					public void add(final Store bb, final String path, final Diff differences) throws IOException {
 						comparer.removed(bb, path, differences);
 					}
-				});
+				}, parallel);
+			}
+		}
+		if (!parallel) {
+			Diff differences = new Diff();
+			compareRecursive(a, b, "", differences, comparer);
+			return differences;
+		}
+		CompareTask task = new CompareTask(a, b, "", comparer);
+		ForkJoinPool pool = IOTools.getIoPool();
+		if (ForkJoinTask.getPool() == pool) {
+			task.invoke();
+		} else {
+			pool.invoke(task);
+		}
+		if (task.failure != null) {
+			throw task.failure;
+		}
+		return task.getRawResult();
+	}
+
+	/**
+	 * Compares the element pairs of directories in parallel; the differences are merged in the order of
+	 * {@link #compareRecursive}.
+	 */
+	private static final class CompareTask extends RecursiveTask<Diff> {
+		private static final long serialVersionUID = 1L;
+		private final Store a;
+		private final Store b;
+		private final String path;
+		private final ContentComparer comparer;
+		private IOException failure;
+
+		CompareTask(final Store a, final Store b, final String path, final ContentComparer comparer) {
+			this.a = a;
+			this.b = b;
+			this.path = path;
+			this.comparer = comparer;
+		}
+
+		@Override
+		protected Diff compute() {
+			Diff differences = new Diff();
+			try {
+				if (this.a.canRead() || !this.a.iterationSupported()) {
+					compareRecursive(this.a, this.b, this.path, differences, this.comparer);
+					return differences;
+				}
+				String subPath = this.path + this.a.getName() + DEFAULT_PATH_SEPARATOR;
+				List<CompareTask> tasks = L.l();
+				Set<String> aseen = L.set();
+				for (Store child : this.a) {
+					tasks.add(new CompareTask(child, this.b.element(child.getName()), subPath, this.comparer));
+					aseen.add(child.getName());
+				}
+				invokeAll(tasks);
+				for (CompareTask task : tasks) {
+					if (task.failure != null) {
+						throw task.failure;
+					}
+					differences.addAll(task.getRawResult());
+				}
+				for (final Store child : this.b) {
+					if (!aseen.contains(child.getName())) {
+						this.comparer.add(child, subPath, differences);
+					}
+				}
+			} catch (IOException e) {
+				this.failure = e;
 			}
+			return differences;
 		}
-		Diff differences = new Diff();
-		compareRecursive(a, b, "", differences, comparer);
-		return differences;
 	}
 
 	public static void compareRecursive(final Store a, final Store b, final String path, final Diff differences,
@@ -0,0 +1,323 @@
+package de.zarncke.lib.io.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.Duration;
+
+import com.google.common.collect.MapMaker;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.ctx.Context;
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.log.Log;
+import de.zarncke.lib.value.Default;
+
+/**
+ * Notifies about changes of {@link Store Stores} without querying {@link Store#getLastModified()} on each access.
+ * Stores backed by a {@link FileStore#getFile(Store) file} are watched with the NIO {@link WatchService}, all others
+ * (and files in directories which cannot be watched) are polled in the background with a configurable interval.
+ * <p>
+ * Usage: Obtain a {@link Watch} once, remember its {@link Watch#getGeneration() generation} when the content is read
+ * and treat the content as changed when the generation differs.
+ * </p>
+ * The threads are started on demand and are daemons. Watches of files are kept for the lifetime of the watcher,
+ * polled watches are dropped when no longer referenced.
+ *
+ * @author Gunnar Zarncke
+ */
+public class StoreWatcher implements Closeable {
+	public static final Duration DEFAULT_POLL_INTERVAL = Duration.standardSeconds(2);
+
+	public static final Context<StoreWatcher> CTX = Context.of(Default.of(new StoreWatcher(), StoreWatcher.class));
+
+	/**
+	 * Change notification for one Store.
+	 */
+	public static final class Watch {
+		private final AtomicLong generation = new AtomicLong();
+		private final Store store;
+		private volatile boolean polled;
+		// written by the event thread when falling back to polling, then only by the poller
+		private volatile long lastModified;
+
+		Watch(final Store store, final boolean polled) {
+			this.store = store;
+			this.polled = polled;
+			this.lastModified = polled ? store.getLastModified() : Store.UNKNOWN_MODIFICATION;
+		}
+
+		/**
+		 * @return a number which changes whenever the Store was modified
+		 */
+		public long getGeneration() {
+			return this.generation.get();
+		}
+
+		/**
+		 * @return true if changes are only detected by polling (and thus may be noticed late)
+		 */
+		public boolean isPolled() {
+			return this.polled;
+		}
+
+		void changed() {
+			this.generation.incrementAndGet();
+		}
+
+		void poll() {
+			long lm;
+			try {
+				lm = this.store.getLastModified();
+			} catch (RuntimeException e) {
+				Log.LOG.get().report(e);
+				changed();
+				return;
+			}
+			if (lm != this.lastModified) {
+				this.lastModified = lm;
+				changed();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return (this.polled ? "polled " : "watched ") + this.store + " #" + this.generation;
+		}
+	}
+
+	private static final class Directory {
+		final Path path;
+		final WatchKey key;
+		final Map<Path, Watch> watches = L.map();
+
+		Directory(final Path path, final WatchKey key) {
+			this.path = path;
+			this.key = key;
+		}
+	}
+
+	private final Duration pollInterval;
+
+	private final Map<Path, Directory> directories = L.map();
+	private final Map<WatchKey, Directory> directoriesByKey = L.map();
+	private final Set<Watch> polled = Collections.newSetFromMap(new MapMaker().weakKeys().<Watch, Boolean> makeMap());
+
+	private WatchService watchService;
+	private boolean watchServiceFailed = false;
+	private ScheduledExecutorService poller;
+	private boolean closed = false;
+
+	public StoreWatcher() {
+		this(DEFAULT_POLL_INTERVAL);
+	}
+
+	/**
+	 * @param pollInterval for Stores which cannot be watched
+	 */
+	public StoreWatcher(final Duration pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	/**
+	 * @param store != null
+	 * @return Watch of the Store; the same Watch is returned for the same file
+	 */
+	public synchronized Watch watch(final Store store) {
+		if (this.closed) {
+			throw Warden.spot(new IllegalStateException("watcher is closed"));
+		}
+		File file = FileStore.getFile(store);
+		if (file != null) {
+			Watch watch = watchFile(store, file.getAbsoluteFile().toPath().normalize());
+			if (watch != null) {
+				return watch;
+			}
+		}
+		Watch watch = new Watch(store, true);
+		startPolling(watch);
+		return watch;
+	}
+
+	private Watch watchFile(final Store store, final Path path) {
+		Path dirPath = path.getParent();
+		if (dirPath == null) {
+			return null;
+		}
+		Directory dir = this.directories.get(dirPath);
+		if (dir == null) {
+			if (!Files.isDirectory(dirPath)) {
+				return null;
+			}
+			WatchService service = getWatchService();
+			if (service == null) {
+				return null;
+			}
+			try {
+				WatchKey key = dirPath.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+				dir = new Directory(dirPath, key);
+			} catch (IOException e) {
+				Warden.disregard(e);
+				return null;
+			} catch (RuntimeException e) {
+				Warden.disregard(e);
+				return null;
+			}
+			this.directories.put(dirPath, dir);
+			this.directoriesByKey.put(dir.key, dir);
+		}
+		Path name = path.getFileName();
+		Watch watch = dir.watches.get(name);
+		if (watch == null) {
+			watch = new Watch(store, false);
+			dir.watches.put(name, watch);
+		}
+		return watch;
+	}
+
+	private WatchService getWatchService() {
+		if (this.watchService == null && !this.watchServiceFailed) {
+			try {
+				this.watchService = FileSystems.getDefault().newWatchService();
+			} catch (IOException e) {
+				Warden.disregard(e);
+			} catch (UnsupportedOperationException e) {
+				Warden.disregard(e);
+			}
+			if (this.watchService == null) {
+				this.watchServiceFailed = true;
+				Log.LOG.get().report("no WatchService available, polling all Stores every " + this.pollInterval);
+				return null;
+			}
+			final WatchService service = this.watchService;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					processEvents(service);
+				}
+			}, "StoreWatcher");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return this.watchService;
+	}
+
+	private void processEvents(final WatchService service) {
+		while (true) {
+			WatchKey key;
+			try {
+				key = service.take();
+			} catch (InterruptedException e) {
+				return;
+			} catch (ClosedWatchServiceException e) {
+				// closed: stop watching
+				return;
+			}
+			synchronized (this) {
+				Directory dir = this.directoriesByKey.get(key);
+				if (dir == null) {
+					key.cancel();
+					continue;
+				}
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						for (Watch watch : dir.watches.values()) {
+							watch.changed();
+						}
+					} else {
+						Watch watch = dir.watches.get(event.context());
+						if (watch != null) {
+							watch.changed();
+						}
+					}
+				}
+				if (!key.reset()) {
+					// directory is gone: fall back to polling
+					this.directories.remove(dir.path);
+					this.directoriesByKey.remove(key);
+					for (Watch watch : dir.watches.values()) {
+						watch.changed();
+						watch.polled = true;
+						watch.lastModified = watch.store.getLastModified();
+						startPolling(watch);
+					}
+				}
+			}
+		}
+	}
+
+	private void startPolling(final Watch watch) {
+		this.polled.add(watch);
+		if (this.poller == null && !this.closed) {
+			this.poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread thread = new Thread(r, "StoreWatcher-poll");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			long ms = this.pollInterval.getMillis();
+			this.poller.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					pollAll();
+				}
+			}, ms, ms, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Polls all Stores which are not watched. Called regularly.
+	 */
+	public void pollAll() {
+		for (Watch watch : L.copy(this.polled)) {
+			watch.poll();
+		}
+	}
+
+	public Duration getPollInterval() {
+		return this.pollInterval;
+	}
+
+	/**
+	 * Stops all watching. Existing Watches will no longer change.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		this.closed = true;
+		if (this.poller != null) {
+			this.poller.shutdownNow();
+		}
+		if (this.watchService != null) {
+			this.watchService.close();
+		}
+		this.directories.clear();
+		this.directoriesByKey.clear();
+		this.polled.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "watching " + this.directories.size() + " directories, polling " + this.polled.size() + " Stores every "
+				+ this.pollInterval;
+	}
+}
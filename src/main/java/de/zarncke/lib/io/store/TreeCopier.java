@@ -0,0 +1,346 @@
+package de.zarncke.lib.io.store;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.util.InterruptionMode;
+
+/**
+ * Copies (or hard-links) a Store tree in parallel.
+ * <ul>
+ * <li>Directories are traversed by fork join tasks, so the elements of large and deep trees are processed by all
+ * threads of the pool.</li>
+ * <li>Files of {@link FileStore FileStores} are copied with {@link FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel) kernel transfers} and get the modification time of their source. Other
+ * Stores are copied by {@link StoreUtil#copy(Store, Store)}.</li>
+ * <li>Existing targets which are unchanged according to the {@link ChangeDetection} are skipped. Others are handled by
+ * the {@link StoreUtil.OverwriteStrategy} ({@link StoreUtil#OVERWRITE} transfers as above).</li>
+ * <li>A {@link StoreUtil.DirectorStrategy} is called for each element (possibly concurrently).</li>
+ * <li>The first failure stops all tasks and is thrown unchanged.</li>
+ * </ul>
+ * Semantics are those of {@link StoreUtil#copyRecursiveInterruptible(Store, Store, StoreUtil.CopyStrategy,
+ * InterruptionMode)} except for the order of copying.
+ *
+ * @author Gunnar Zarncke
+ */
+public class TreeCopier {
+	/**
+	 * How to decide that an existing target needs no copying.
+	 */
+	public enum ChangeDetection {
+		/**
+		 * Existing targets are always handled by the strategy.
+		 */
+		NONE,
+		/**
+		 * Targets of the same size and modification time are unchanged.
+		 */
+		SIZE_AND_TIME,
+		/**
+		 * Targets of the same size and content hash are unchanged; reads both.
+		 */
+		HASH
+	}
+
+	private final ForkJoinPool pool;
+	private final StoreUtil.CopyStrategy strategy;
+	private final ChangeDetection detection;
+	private final boolean hardlink;
+
+	private final AtomicLong copied = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+
+	/**
+	 * Copies with {@link StoreUtil#OVERWRITE} after checking {@link ChangeDetection#SIZE_AND_TIME}.
+	 */
+	public TreeCopier() {
+		this(null, StoreUtil.OVERWRITE, ChangeDetection.SIZE_AND_TIME, false);
+	}
+
+	/**
+	 * @param pool to use; null for the {@link IOTools#getIoPool() IO pool}
+	 * @param strategy how to handle changed existing targets
+	 * @param detection how to detect unchanged targets
+	 * @param hardlink true: {@link StoreUtil#hardLink(Store, Store) hard-link} instead of copying new targets
+	 */
+	public TreeCopier(final ForkJoinPool pool, final StoreUtil.CopyStrategy strategy, final ChangeDetection detection,
+			final boolean hardlink) {
+		this.pool = pool;
+		this.strategy = strategy;
+		this.detection = detection;
+		this.hardlink = hardlink;
+	}
+
+	/**
+	 * State of one copy run.
+	 */
+	private final class Run {
+		private final Store targetRoot;
+		private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		private volatile boolean cancelled;
+
+		Run(final Store targetRoot) {
+			this.targetRoot = targetRoot;
+		}
+
+		void fail(final Throwable t) {
+			this.failure.compareAndSet(null, t);
+			this.cancelled = true;
+		}
+	}
+
+	private final class CopyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Run run;
+		private final Store source;
+		private final Store target;
+
+		CopyTask(final Run run, final Store source, final Store target) {
+			this.run = run;
+			this.source = source;
+			this.target = target;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.run.cancelled) {
+				return;
+			}
+			try {
+				List<CopyTask> children = copyOrList(this.run, this.source, this.target);
+				if (children != null) {
+					invokeAll(children);
+				}
+			} catch (IOException e) {
+				this.run.fail(e);
+			} catch (RuntimeException e) {
+				this.run.fail(e);
+			} catch (Error e) {
+				this.run.fail(e);
+			}
+		}
+	}
+
+	/**
+	 * Copies the source tree into the target.
+	 *
+	 * @param source != null
+	 * @param target != null
+	 * @param imode how to handle interruption of the calling thread; running tasks are stopped unless ignored
+	 * @throws IOException of the first failed element
+	 * @throws InterruptedException if interrupted and not ignored
+	 */
+	public void copy(final Store source, final Store target, final InterruptionMode imode) throws IOException,
+			InterruptedException {
+		Run run = new Run(target);
+		CopyTask root = new CopyTask(run, source, target);
+		ForkJoinPool executor = this.pool == null ? IOTools.getIoPool() : this.pool;
+		if (ForkJoinTask.getPool() == executor) {
+			root.invoke();
+		} else {
+			executor.execute(root);
+			boolean interrupted = false;
+			while (true) {
+				try {
+					root.get();
+					break;
+				} catch (InterruptedException e) {
+					if (imode == InterruptionMode.IGNORE) {
+						Warden.disregard(e);
+						continue;
+					}
+					if (!interrupted) {
+						interrupted = true;
+						run.fail(Warden.spot(new InterruptedException("interrupted during copying " + source)));
+					}
+				} catch (ExecutionException e) {
+					// failures are recorded by the tasks
+					Warden.disregard(e);
+					break;
+				}
+			}
+		}
+		Throwable t = run.failure.get();
+		if (t instanceof IOException) {
+			throw (IOException) t;
+		}
+		if (t instanceof InterruptedException) {
+			throw (InterruptedException) t;
+		}
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+	}
+
+	/**
+	 * @return tasks for the elements of a listable source; null if done
+	 */
+	private List<CopyTask> copyOrList(final Run run, final Store source, final Store target) throws IOException {
+		if (this.strategy instanceof StoreUtil.DirectorStrategy
+				&& !((StoreUtil.DirectorStrategy) this.strategy).beforeCopy(source, target)) {
+			return null;
+		}
+		if (source.canRead()) {
+			copyElement(source, target);
+			return null;
+		}
+		if (!source.iterationSupported()) {
+			throw Warden.spot(new IllegalArgumentException("cannot copy recursively as the source " + source
+					+ " cannot be read and doesn't support iteration."));
+		}
+		File dir = FileStore.getFile(target);
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+			throw Warden.spot(new IOException("cannot create " + dir));
+		}
+		List<CopyTask> children = L.l();
+		for (Store child : source) {
+			if (StoreUtil.sameStore(child, run.targetRoot)) {
+				// never directly copy the target into itself
+				continue;
+			}
+			children.add(new CopyTask(run, child, target.element(child.getName())));
+		}
+		return children;
+	}
+
+	private void copyElement(final Store source, final Store target) throws IOException {
+		if (!target.exists()) {
+			if (this.hardlink) {
+				StoreUtil.hardLink(source, target);
+			} else {
+				transfer(source, target);
+			}
+			this.copied.incrementAndGet();
+			return;
+		}
+		if (isUnchanged(source, target)) {
+			this.skipped.incrementAndGet();
+			return;
+		}
+		if (this.strategy == StoreUtil.OVERWRITE) {
+			transfer(source, target);
+		} else if (this.strategy instanceof StoreUtil.OverwriteStrategy) {
+			((StoreUtil.OverwriteStrategy) this.strategy).handleExisting(source, target);
+		} else {
+			this.skipped.incrementAndGet();
+			return;
+		}
+		this.copied.incrementAndGet();
+	}
+
+	private boolean isUnchanged(final Store source, final Store target) throws IOException {
+		if (this.detection == ChangeDetection.NONE) {
+			return false;
+		}
+		long size = source.getSize();
+		if (size == Accessible.UNKNOWN_SIZE || size != target.getSize()) {
+			return false;
+		}
+		if (this.detection == ChangeDetection.HASH) {
+			return hash(source).equals(hash(target));
+		}
+		long modified = source.getLastModified();
+		return modified != Store.UNKNOWN_MODIFICATION && modified == target.getLastModified();
+	}
+
+	private static HashCode hash(final Store store) throws IOException {
+		Hasher hasher = Hashing.sha1().newHasher();
+		InputStream ins = store.getInputStream();
+		try {
+			byte[] buf = new byte[64 * 1024];
+			int n;
+			while ((n = ins.read(buf)) >= 0) {
+				hasher.putBytes(buf, 0, n);
+			}
+		} finally {
+			IOTools.forceClose(ins);
+		}
+		return hasher.hash();
+	}
+
+	/**
+	 * Copies the content; files by kernel transfer.
+	 */
+	static void transfer(final Store source, final Store target) throws IOException {
+		File from = FileStore.getFile(source);
+		File to = FileStore.getFile(target);
+		if (from == null || to == null) {
+			StoreUtil.copy(source, target);
+			return;
+		}
+		if (from.equals(to)) {
+			return;
+		}
+		File parent = to.getParentFile();
+		if (parent != null && !parent.isDirectory()) {
+			parent.mkdirs();
+		}
+		FileInputStream ins = new FileInputStream(from);
+		try {
+			FileOutputStream outs = new FileOutputStream(to);
+			try {
+				FileChannel in = ins.getChannel();
+				FileChannel out = outs.getChannel();
+				long size = in.size();
+				long pos = 0;
+				while (pos < size) {
+					long n = in.transferTo(pos, size - pos, out);
+					if (n <= 0) {
+						// file shrunk concurrently
+						break;
+					}
+					pos += n;
+				}
+			} finally {
+				outs.close();
+			}
+		} finally {
+			IOTools.forceClose(ins);
+		}
+		long modified = from.lastModified();
+		if (modified != 0) {
+			to.setLastModified(modified);
+		}
+	}
+
+	/**
+	 * @return number of elements copied or overwritten so far
+	 */
+	public long getCopied() {
+		return this.copied.get();
+	}
+
+	/**
+	 * @return number of existing elements skipped so far
+	 */
+	public long getSkipped() {
+		return this.skipped.get();
+	}
+
+	@Override
+	public String toString() {
+		return "TreeCopier " + (this.hardlink ? "hardlinking" : "copying") + " with " + this.detection + " copied "
+				+ this.copied + " skipped " + this.skipped;
+	}
+}
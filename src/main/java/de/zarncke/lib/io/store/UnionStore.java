@@ -1,11 +1,10 @@
 package de.zarncke.lib.io.store;
 
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import de.zarncke.lib.coll.L;
@@ -13,22 +12,237 @@ import de.zarncke.lib.err.Warden;
 
 /**
  * Provides as its own elements all elements of sub-elements of the decoreated Store.
+ * The sub-elements are the layers; an element present in several layers is itself a UnionStore of these.
+ * <ul>
+ * <li>The names of all layers which {@link Store#iterationSupported() can be listed} are indexed once. Lookups use the
+ * index and access no Store. Layers which cannot be listed are probed on each lookup.</li>
+ * <li>The index is rebuilt when {@link #invalidate() invalidated} or when the {@link Store#getLastModified()
+ * modification time} of a layer changed. By default modification times are checked on each access; callers may opt
+ * in to check them at most every {@link #getRecheckMillis()}.</li>
+ * <li>Modification times are coarse. While a layer was modified less than {@link #MODIFICATION_GRANULARITY_MILLIS}
+ * before the index was built, names missing from the index are probed in all layers and iteration rebuilds the index
+ * (unless a recheck interval is given). The first check after that rebuilds it once.</li>
+ * <li>Iteration merges the sorted names of the layers, so each name occurs once.</li>
+ * </ul>
  *
  * @author Gunnar Zarncke <gunnar@konzentrik.de>
  */
 public class UnionStore extends DelegateStore {
+	public static final long DEFAULT_RECHECK_MILLIS = 0;
+	/**
+	 * Changes within this time may not change the modification time of a layer.
+	 */
+	public static final long MODIFICATION_GRANULARITY_MILLIS = 2000;
+
+	private static final String[] NO_NAMES = new String[0];
+
+	/**
+	 * Elements of one name in each layer (null where absent).
+	 */
+	private static final class Entry {
+		private final Store[] elements;
+		private volatile Store merged;
+
+		Entry(final int layers) {
+			this.elements = new Store[layers];
+		}
+	}
+
+	/**
+	 * Snapshot of the names of all layers.
+	 */
+	private static final class Index {
+		private final Store[] layers;
+		private final long[] modified;
+		private final long delegateModified;
+		// sorted names of each layer, null if the layer cannot be listed
+		private final String[][] names;
+		private final Map<String, Entry> entries = L.map();
+		private final boolean complete;
+		// until then changes may not be visible in the modification times
+		private final long racyUntil;
+		private volatile long checked;
+
+		Index(final Store[] layers, final long delegateModified) {
+			this.layers = layers;
+			this.delegateModified = delegateModified;
+			this.modified = new long[layers.length];
+			this.names = new String[layers.length][];
+			boolean all = true;
+			for (int i = 0; i < layers.length; i++) {
+				Store layer = layers[i];
+				this.modified[i] = layer.getLastModified();
+				if (!layer.iterationSupported()) {
+					all = false;
+					continue;
+				}
+				List<String> layerNames = L.l();
+				for (Store element : layer) {
+					String name = element.getName();
+					if (name == null) {
+						continue;
+					}
+					Entry entry = this.entries.get(name);
+					if (entry == null) {
+						entry = new Entry(layers.length);
+						this.entries.put(name, entry);
+					}
+					if (entry.elements[i] == null) {
+						entry.elements[i] = element;
+						layerNames.add(name);
+					}
+				}
+				String[] sorted = layerNames.isEmpty() ? NO_NAMES : layerNames.toArray(new String[layerNames.size()]);
+				Arrays.sort(sorted);
+				this.names[i] = sorted;
+			}
+			this.complete = all;
+			this.checked = System.currentTimeMillis();
+			long latest = delegateModified;
+			for (long mod : this.modified) {
+				latest = Math.max(latest, mod);
+			}
+			long settled = latest + MODIFICATION_GRANULARITY_MILLIS;
+			this.racyUntil = latest == UNKNOWN_MODIFICATION || settled <= this.checked ? 0 : settled;
+		}
+
+		boolean isRacy() {
+			return this.racyUntil != 0 && System.currentTimeMillis() < this.racyUntil;
+		}
+
+		boolean isCurrent(final Store delegate, final long recheckMillis) {
+			long now = System.currentTimeMillis();
+			if (now - this.checked < recheckMillis) {
+				return true;
+			}
+			if (this.racyUntil != 0 && now >= this.racyUntil) {
+				// built before changes became visible
+				return false;
+			}
+			if (delegate != null && delegate.getLastModified() != this.delegateModified) {
+				return false;
+			}
+			for (int i = 0; i < this.layers.length; i++) {
+				long mod = this.layers[i].getLastModified();
+				if (mod != this.modified[i] || mod == UNKNOWN_MODIFICATION && this.names[i] != null) {
+					return false;
+				}
+			}
+			this.checked = now;
+			return true;
+		}
+	}
+
+	/**
+	 * Merges the sorted names of the layers.
+	 */
+	private final class MergeIterator implements Iterator<Store> {
+		private final Index index;
+		private final int[] positions;
+		private String next;
+
+		MergeIterator(final Index index) {
+			this.index = index;
+			this.positions = new int[index.names.length];
+			advance();
+		}
+
+		private void advance() {
+			String min = null;
+			String[][] names = this.index.names;
+			for (int i = 0; i < names.length; i++) {
+				if (names[i] != null && this.positions[i] < names[i].length) {
+					String candidate = names[i][this.positions[i]];
+					if (min == null || candidate.compareTo(min) < 0) {
+						min = candidate;
+					}
+				}
+			}
+			if (min != null) {
+				for (int i = 0; i < names.length; i++) {
+					if (names[i] != null && this.positions[i] < names[i].length
+							&& names[i][this.positions[i]].equals(min)) {
+						this.positions[i]++;
+					}
+				}
+			}
+			this.next = min;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.next != null;
+		}
+
+		@Override
+		public Store next() {
+			if (this.next == null) {
+				throw new NoSuchElementException();
+			}
+			String name = this.next;
+			advance();
+			return lookup(this.index, name);
+		}
+
+		@Override
+		public void remove() {
+			throw Warden.spot(new UnsupportedOperationException("read only"));
+		}
+	}
+
+	private final Store[] fixedLayers;
+	private final long recheckMillis;
+	private volatile Index index;
 
 	public UnionStore(final Store delegate) {
+		this(delegate, DEFAULT_RECHECK_MILLIS);
+	}
+
+	/**
+	 * @param delegate whose elements are the layers; must support iteration
+	 * @param recheckMillis interval to check modification times of layers; 0 to check on each access
+	 */
+	public UnionStore(final Store delegate, final long recheckMillis) {
 		super(delegate);
 		if (!delegate.iterationSupported()) {
 			throw Warden.spot(new IllegalArgumentException(delegate + " must support iteration!"));
 		}
+		this.fixedLayers = null;
+		this.recheckMillis = recheckMillis;
+	}
+
+	private UnionStore(final Store delegate, final Store[] layers, final long recheckMillis) {
+		super(delegate);
+		this.fixedLayers = layers;
+		this.recheckMillis = recheckMillis;
+	}
+
+	/**
+	 * Forgets the index. Call after changes of the layers which don't change their modification times.
+	 */
+	public void invalidate() {
+		this.index = null;
+	}
+
+	private Index getIndex() {
+		Index current = this.index;
+		if (current == null || !current.isCurrent(this.fixedLayers == null ? this.delegate : null, this.recheckMillis)) {
+			long delegateModified = this.delegate.getLastModified();
+			Store[] layers = this.fixedLayers;
+			if (layers == null) {
+				List<Store> children = L.copy(this.delegate.iterator());
+				layers = children.toArray(new Store[children.size()]);
+			}
+			current = new Index(layers, delegateModified);
+			this.index = current;
+		}
+		return current;
 	}
 
 	@Override
 	public boolean iterationSupported() {
-		for (Store child : this.delegate) {
-			if (child.iterationSupported()) {
+		for (String[] names : getIndex().names) {
+			if (names != null) {
 				return true;
 			}
 		}
@@ -37,30 +251,60 @@ public class UnionStore extends DelegateStore {
 
 	@Override
 	public Iterator<Store> iterator() {
-		List<Store> childrenReverse = L.copy(this.delegate.iterator());
-		Collections.reverse(childrenReverse);
-		// take duplicate elements once, in the order they appeared taking the first occurring of same named
-		Set<Store> elems = new LinkedHashSet<Store>();
-		for (Store child : childrenReverse) {
-			elems.addAll(L.copy(child.iterator()));
-		}
-		return elems.iterator();
+		Index current = getIndex();
+		if (this.recheckMillis == 0 && current.isRacy()) {
+			invalidate();
+			current = getIndex();
+		}
+		return new MergeIterator(current);
 	}
 
 	@Override
 	public Store element(final String name) {
-		Map<String, Store> matchingElements = new LinkedHashMap<String, Store>();
-		for (Store child : this.delegate) {
-			Store elem = child.element(name);
-			if (elem.exists()) {
-				matchingElements.put(child.getName(), elem);
+		return lookup(getIndex(), name);
+	}
+
+	private Store lookup(final Index current, final String name) {
+		Entry entry = current.entries.get(name);
+		// a missing name may have been added without changing the modification time
+		boolean probe = entry == null && this.recheckMillis == 0 && current.isRacy();
+		if (current.complete && !probe) {
+			if (entry == null) {
+				return new AbsentStore(name);
+			}
+			Store merged = entry.merged;
+			if (merged == null) {
+				merged = merge(name, entry.elements, current.layers);
+				entry.merged = merged;
 			}
+			return merged;
 		}
-		if (matchingElements.isEmpty()) {
+		Store[] elements = new Store[current.layers.length];
+		for (int i = 0; i < elements.length; i++) {
+			if (current.names[i] != null && !probe) {
+				elements[i] = entry == null ? null : entry.elements[i];
+			} else {
+				Store elem = current.layers[i].element(name);
+				elements[i] = elem.exists() ? elem : null;
+			}
+		}
+		return merge(name, elements, current.layers);
+	}
+
+	private Store merge(final String name, final Store[] elements, final Store[] allLayers) {
+		int count = 0;
+		Store single = null;
+		for (Store elem : elements) {
+			if (elem != null) {
+				count++;
+				single = elem;
+			}
+		}
+		if (count == 0) {
 			return new AbsentStore(name);
 		}
-		if (matchingElements.size() == 1) {
-			return new DelegateStore(matchingElements.values().iterator().next()) {
+		if (count == 1) {
+			return new DelegateStore(single) {
 				@Override
 				public Store getParent() {
 					return UnionStore.this;
@@ -68,13 +312,31 @@ public class UnionStore extends DelegateStore {
 			};
 		}
 
-		return new UnionStore(new MapStore(matchingElements) {
+		Store[] layers = new Store[count];
+		MapStore byLayer = new MapStore() {
 			@Override
 			public Store getParent() {
 				return UnionStore.this;
 			}
-		});
 
-		// return super.element(name);
+			@Override
+			public String getName() {
+				return name;
+			}
+		};
+		Set<String> layerNames = L.set();
+		int n = 0;
+		for (int i = 0; i < elements.length; i++) {
+			if (elements[i] != null) {
+				layers[n++] = elements[i];
+				String layerName = String.valueOf(allLayers[i].getName());
+				byLayer.add(layerNames.add(layerName) ? layerName : layerName + "#" + i, elements[i]);
+			}
+		}
+		return new UnionStore(byLayer, layers, this.recheckMillis);
+	}
+
+	public long getRecheckMillis() {
+		return this.recheckMillis;
 	}
 }
@@ -0,0 +1,449 @@
+package de.zarncke.lib.io.store;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.util.Misc;
+
+/**
+ * Disk backed cache of the content of http(s) URLs for {@link UrlStore}.
+ * <ul>
+ * <li>Content is fresh as long as the server allows (<code>Cache-Control: max-age</code> or <code>Expires</code>) but
+ * at least for {@link #getMinFreshMillis()}. Fresh content is served without any request.</li>
+ * <li>Stale content is revalidated with <code>If-None-Match</code> (ETag) and <code>If-Modified-Since</code>. A 304
+ * response only updates the freshness.</li>
+ * <li>Content with <code>Cache-Control: no-store</code> is streamed from the response and never kept.</li>
+ * <li>Metadata of resources (existence, modification time) is determined by HEAD requests which never read a body.
+ * Servers which refuse HEAD (403, 405 or 501) are asked with a GET of the first byte whose body isn't read.</li>
+ * </ul>
+ * Content and metadata are kept in files (named by the hash of the normalized URI) in the cache directory, so they
+ * survive restarts. Content files are replaced atomically; streams opened before keep reading the old content.
+ *
+ * @author Gunnar Zarncke
+ */
+public class UrlCache {
+	public static final int CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+	public static final int READ_TIMEOUT_MILLIS = 60 * 1000;
+
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+	private static final String BODY_SUFFIX = ".body";
+	private static final String META_SUFFIX = ".meta";
+	private static final String ETAG = "etag";
+	private static final String LAST_MODIFIED = "lastModified";
+	private static final String FRESH_UNTIL = "freshUntil";
+
+	/**
+	 * Cached state of one URI.
+	 */
+	private static final class Entry {
+		private final File body;
+		private final File meta;
+		private String etag;
+		private long lastModified;
+		private long freshUntil;
+		private boolean present;
+
+		Entry(final File body, final File meta) {
+			this.body = body;
+			this.meta = meta;
+		}
+	}
+
+	private final File directory;
+	private final long minFreshMillis;
+	private final ConcurrentMap<URI, Entry> entries = CacheBuilder.newBuilder().softValues().<URI, Entry> build()
+			.asMap();
+
+	/**
+	 * Revalidates on each access unless the server declares freshness.
+	 *
+	 * @param directory to keep the content in; created if needed
+	 */
+	public UrlCache(final File directory) {
+		this(directory, 0);
+	}
+
+	/**
+	 * @param directory to keep the content in; created if needed
+	 * @param minFreshMillis time content is considered fresh at least
+	 */
+	public UrlCache(final File directory, final long minFreshMillis) {
+		this.directory = directory;
+		this.minFreshMillis = minFreshMillis;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw Warden.spot(new IllegalArgumentException("cannot create cache directory " + directory));
+		}
+	}
+
+	/**
+	 * @param uri to cache
+	 * @return true if the cache handles the URI (http and https)
+	 */
+	public static boolean isCacheable(final URI uri) {
+		String scheme = uri.getScheme();
+		return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme);
+	}
+
+	/**
+	 * @param uri != null
+	 * @return stream of the current content
+	 * @throws FileNotFoundException if the resource doesn't exist
+	 * @throws IOException on connection failures
+	 */
+	public InputStream open(final URI uri) throws IOException {
+		Entry entry = entryOf(uri);
+		synchronized (entry) {
+			InputStream uncached = revalidate(uri, entry);
+			if (uncached != null) {
+				return uncached;
+			}
+			if (!entry.present) {
+				throw Warden.spot(new FileNotFoundException(uri.toString()));
+			}
+			// opened while locked so a concurrent update doesn't replace the file in between
+			return new FileInputStream(entry.body);
+		}
+	}
+
+	/**
+	 * @param uri != null
+	 * @return true if the resource exists; uses cached content if fresh, a HEAD request otherwise
+	 */
+	public boolean exists(final URI uri) {
+		Entry entry = entryOf(uri);
+		synchronized (entry) {
+			if (isFresh(entry)) {
+				return entry.present;
+			}
+		}
+		try {
+			return head(uri) != null;
+		} catch (IOException e) {
+			Warden.disregard(e);
+			return false;
+		}
+	}
+
+	/**
+	 * @param uri != null
+	 * @return modification time as reported by the server or {@link Store#UNKNOWN_MODIFICATION}
+	 */
+	public long getLastModified(final URI uri) {
+		Entry entry = entryOf(uri);
+		synchronized (entry) {
+			if (isFresh(entry) && entry.present && entry.lastModified != 0) {
+				return entry.lastModified;
+			}
+		}
+		try {
+			HttpURLConnection conn = head(uri);
+			if (conn != null && conn.getLastModified() != 0) {
+				return conn.getLastModified();
+			}
+		} catch (IOException e) {
+			Warden.disregard(e);
+		}
+		return Store.UNKNOWN_MODIFICATION;
+	}
+
+	/**
+	 * Forgets the content of the URI.
+	 *
+	 * @param uri != null
+	 */
+	public void remove(final URI uri) {
+		Entry entry = entryOf(uri);
+		synchronized (entry) {
+			entry.present = false;
+			entry.freshUntil = 0;
+			entry.etag = null;
+			entry.lastModified = 0;
+			if (!entry.body.delete() && entry.body.exists() || !entry.meta.delete() && entry.meta.exists()) {
+				throw Warden.spot(new IllegalStateException("cannot remove cached " + uri));
+			}
+		}
+	}
+
+	/**
+	 * Scheme and host are case insensitive, so they are normalized. The fragment is never sent to the server and thus
+	 * ignored.
+	 *
+	 * @return URI which identifies the entry and names its files
+	 */
+	private static URI normalize(final URI uri) {
+		if (uri.getHost() == null) {
+			return uri;
+		}
+		StringBuilder sb = new StringBuilder(uri.getScheme().toLowerCase(Locale.ENGLISH)).append("://");
+		if (uri.getRawUserInfo() != null) {
+			sb.append(uri.getRawUserInfo()).append('@');
+		}
+		sb.append(uri.getHost().toLowerCase(Locale.ENGLISH));
+		if (uri.getPort() >= 0) {
+			sb.append(':').append(uri.getPort());
+		}
+		sb.append(uri.getRawPath());
+		if (uri.getRawQuery() != null) {
+			sb.append('?').append(uri.getRawQuery());
+		}
+		return URI.create(sb.toString());
+	}
+
+	private Entry entryOf(final URI uri) {
+		URI key = normalize(uri);
+		Entry entry = this.entries.get(key);
+		if (entry == null) {
+			String hash = Hashing.sha1().hashString(key.toString(), Misc.UTF_8).toString();
+			entry = new Entry(new File(this.directory, hash + BODY_SUFFIX), new File(this.directory, hash + META_SUFFIX));
+			load(entry);
+			Entry known = this.entries.putIfAbsent(key, entry);
+			if (known != null) {
+				entry = known;
+			}
+		}
+		return entry;
+	}
+
+	private static void load(final Entry entry) {
+		if (!entry.meta.exists() || !entry.body.exists()) {
+			return;
+		}
+		Properties props = new Properties();
+		try {
+			InputStream ins = new FileInputStream(entry.meta);
+			try {
+				props.load(ins);
+			} finally {
+				ins.close();
+			}
+			entry.etag = props.getProperty(ETAG);
+			entry.lastModified = Long.parseLong(props.getProperty(LAST_MODIFIED, "0"));
+			entry.freshUntil = Long.parseLong(props.getProperty(FRESH_UNTIL, "0"));
+			entry.present = true;
+		} catch (IOException e) {
+			// broken entry is fetched again
+			Warden.disregard(e);
+		} catch (NumberFormatException e) {
+			Warden.disregard(e);
+		}
+	}
+
+	private static void save(final Entry entry) throws IOException {
+		Properties props = new Properties();
+		if (entry.etag != null) {
+			props.setProperty(ETAG, entry.etag);
+		}
+		props.setProperty(LAST_MODIFIED, String.valueOf(entry.lastModified));
+		props.setProperty(FRESH_UNTIL, String.valueOf(entry.freshUntil));
+		File tmp = new File(entry.meta.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			props.store(out, null);
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), entry.meta.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static boolean isFresh(final Entry entry) {
+		return System.currentTimeMillis() < entry.freshUntil;
+	}
+
+	/**
+	 * @return stream of the response if it must not be stored; null if the entry is current
+	 */
+	private InputStream revalidate(final URI uri, final Entry entry) throws IOException {
+		if (isFresh(entry)) {
+			return null;
+		}
+		HttpURLConnection conn = connect(uri, "GET");
+		try {
+			if (entry.present) {
+				if (entry.etag != null) {
+					conn.setRequestProperty("If-None-Match", entry.etag);
+				}
+				if (entry.lastModified != 0) {
+					conn.setIfModifiedSince(entry.lastModified);
+				}
+			}
+			int code = conn.getResponseCode();
+			if (code == HttpURLConnection.HTTP_NOT_MODIFIED && entry.present) {
+				entry.freshUntil = freshUntil(conn);
+				save(entry);
+				return null;
+			}
+			if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE) {
+				remove(uri);
+				entry.freshUntil = freshUntil(conn);
+				return null;
+			}
+			if (code != HttpURLConnection.HTTP_OK) {
+				throw Warden.spot(new IOException("cannot read " + uri + ": " + code + " " + conn.getResponseMessage()));
+			}
+			if (isNoStore(conn)) {
+				remove(uri);
+				InputStream body = conn.getInputStream();
+				// the caller reads and closes it
+				conn = null;
+				return body;
+			}
+			File tmp = new File(entry.body.getPath() + ".tmp");
+			IOTools.copy(conn.getInputStream(), new FileOutputStream(tmp), false, true);
+			Files.move(tmp.toPath(), entry.body.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			entry.etag = conn.getHeaderField("ETag");
+			entry.lastModified = conn.getLastModified();
+			entry.freshUntil = freshUntil(conn);
+			entry.present = true;
+			save(entry);
+			return null;
+		} finally {
+			if (conn != null) {
+				release(conn);
+			}
+		}
+	}
+
+	private static boolean isNoStore(final HttpURLConnection conn) {
+		String cacheControl = conn.getHeaderField("Cache-Control");
+		if (cacheControl != null) {
+			for (String directive : cacheControl.split(",")) {
+				if (directive.trim().equalsIgnoreCase("no-store")) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private long freshUntil(final HttpURLConnection conn) {
+		long now = System.currentTimeMillis();
+		long until = now + this.minFreshMillis;
+		String cacheControl = conn.getHeaderField("Cache-Control");
+		if (cacheControl != null) {
+			for (String directive : cacheControl.split(",")) {
+				String d = directive.trim().toLowerCase(Locale.ENGLISH);
+				if (d.equals("no-cache") || d.equals("no-store") || d.equals("must-revalidate")) {
+					return until;
+				}
+				if (d.startsWith("max-age=")) {
+					try {
+						return Math.max(until, now + 1000L * Long.parseLong(d.substring("max-age=".length())));
+					} catch (NumberFormatException e) {
+						// ignore directive
+					}
+				}
+			}
+		}
+		long expires = conn.getExpiration();
+		return expires > now ? Math.max(until, expires) : until;
+	}
+
+	/**
+	 * Falls back to a GET of the first byte if the server refuses HEAD. Its body isn't read; the connection is closed.
+	 *
+	 * @return the (released) connection if the resource exists, null if not
+	 */
+	static HttpURLConnection head(final URI uri) throws IOException {
+		HttpURLConnection conn = connect(uri, "HEAD");
+		try {
+			int code = conn.getResponseCode();
+			if (code == HttpURLConnection.HTTP_FORBIDDEN || code == HttpURLConnection.HTTP_BAD_METHOD
+					|| code == HttpURLConnection.HTTP_NOT_IMPLEMENTED) {
+				return getFirstByte(uri);
+			}
+			if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE) {
+				return null;
+			}
+			if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
+				throw Warden.spot(new IOException("cannot probe " + uri + ": " + code + " " + conn.getResponseMessage()));
+			}
+			return conn;
+		} finally {
+			release(conn);
+		}
+	}
+
+	private static HttpURLConnection getFirstByte(final URI uri) throws IOException {
+		HttpURLConnection conn = connect(uri, "GET");
+		conn.setRequestProperty("Range", "bytes=0-0");
+		try {
+			int code = conn.getResponseCode();
+			if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE) {
+				return null;
+			}
+			// an empty resource can't satisfy the range
+			if (code >= HttpURLConnection.HTTP_BAD_REQUEST && code != HTTP_RANGE_NOT_SATISFIABLE) {
+				throw Warden.spot(new IOException("cannot probe " + uri + " with GET: " + code + " "
+						+ conn.getResponseMessage()));
+			}
+			return conn;
+		} finally {
+			// the server may ignore the range, so the body isn't drained
+			conn.disconnect();
+		}
+	}
+
+	private static HttpURLConnection connect(final URI uri, final String method) throws IOException {
+		URLConnection urlConn = uri.toURL().openConnection();
+		if (!(urlConn instanceof HttpURLConnection)) {
+			throw Warden.spot(new IOException(uri + " is no http URL"));
+		}
+		HttpURLConnection conn = (HttpURLConnection) urlConn;
+		conn.setRequestMethod(method);
+		conn.setUseCaches(false);
+		conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+		conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+		return conn;
+	}
+
+	/**
+	 * Closes the streams of the connection so it can be kept alive.
+	 */
+	static void release(final HttpURLConnection conn) {
+		try {
+			InputStream ins = conn.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST ? conn.getErrorStream()
+					: conn.getInputStream();
+			if (ins != null) {
+				// drain what's left (nothing for HEAD and completely read bodies)
+				IOTools.copy(ins, IOTools.DEV_NULL, true, false);
+			}
+		} catch (IOException e) {
+			Warden.disregard(e);
+			conn.disconnect();
+		}
+	}
+
+	public File getDirectory() {
+		return this.directory;
+	}
+
+	public long getMinFreshMillis() {
+		return this.minFreshMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "UrlCache in " + this.directory + " with " + this.entries.size() + " entries";
+	}
+}
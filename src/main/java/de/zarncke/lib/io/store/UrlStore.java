@@ -2,6 +2,7 @@ package de.zarncke.lib.io.store;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URLConnection;
 
@@ -12,39 +13,56 @@ import de.zarncke.lib.region.RegionUtil;
 
 /**
  * Store which reads resources from an {@link URLConnection}.
+ * Existence of http(s) resources is checked with HEAD requests. With an {@link UrlCache} their content is cached on
+ * disk and only revalidated when stale.
  *
  * @author Gunnar Zarncke
  */
 public class UrlStore extends AbstractStore {
 
-	// TODO add test
-
 	private static final String RESOURCE_SEPARATOR = "/";
 	private final Store parent;
 	private final URI uri;
+	private final UrlCache cache;
 
 	public UrlStore(final URI uri) {
 		this(uri, null);
 	}
 
 	public UrlStore(final URI uri, final Store parent) {
+		this(uri, parent, null);
+	}
+
+	/**
+	 * @param uri of the resource
+	 * @param parent may be null
+	 * @param cache for http(s) content; null to read it on each access
+	 */
+	public UrlStore(final URI uri, final Store parent, final UrlCache cache) {
 		this.uri = uri;
 		this.parent = parent;
+		this.cache = cache;
 	}
 
 	@Override
 	public boolean exists() {
-		// TODO perform HEAD request
 		return canRead();
 	}
 
+	private boolean isHttp() {
+		return UrlCache.isCacheable(this.uri);
+	}
+
 	private InputStream getStream() throws IOException {
+		if (this.cache != null && isHttp()) {
+			return this.cache.open(this.uri);
+		}
 		return this.uri.toURL().openStream();
 	}
 
 	@Override
 	public Store element(final String name) {
-		return new UrlStore(this.uri.resolve(name), this);
+		return new UrlStore(this.uri.resolve(name), this, this.cache);
 	}
 
 	public String getName() {
@@ -63,14 +81,47 @@ public class UrlStore extends AbstractStore {
 
 	@Override
 	public boolean canRead() {
+		if (isHttp()) {
+			if (this.cache != null) {
+				return this.cache.exists(this.uri);
+			}
+			try {
+				return UrlCache.head(this.uri) != null;
+			} catch (IOException e) {
+				Warden.disregard(e);
+				return false;
+			}
+		}
+		InputStream ins = null;
 		try {
-			return getStream() != null;
+			ins = getStream();
+			return ins != null;
 		} catch (IOException e) {
 			Warden.disregard(e);
 			return false;
+		} finally {
+			IOTools.forceClose(ins);
 		}
 	}
 
+	@Override
+	public long getLastModified() {
+		if (isHttp()) {
+			if (this.cache != null) {
+				return this.cache.getLastModified(this.uri);
+			}
+			try {
+				HttpURLConnection conn = UrlCache.head(this.uri);
+				if (conn != null && conn.getLastModified() != 0) {
+					return conn.getLastModified();
+				}
+			} catch (IOException e) {
+				Warden.disregard(e);
+			}
+		}
+		return UNKNOWN_MODIFICATION;
+	}
+
 	@Override
 	public InputStream getInputStream() throws IOException {
 		InputStream is = getStream();
@@ -83,7 +134,12 @@ public class UrlStore extends AbstractStore {
 	@Override
 	public Region asRegion() throws IOException {
 		// TODO consider returning a region which fills as the stream is read
-		return RegionUtil.asRegion(IOTools.getAllBytes(getStream()));
+		InputStream ins = getInputStream();
+		try {
+			return RegionUtil.asRegion(IOTools.getAllBytes(ins));
+		} finally {
+			IOTools.forceClose(ins);
+		}
 	}
 
 	@Override
@@ -4,20 +4,25 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 import com.sun.jna.Library;
 import com.sun.jna.Native;
+import com.sun.jna.Structure;
 
 import de.zarncke.lib.coll.L;
 import de.zarncke.lib.coll.Pair;
 import de.zarncke.lib.err.Warden;
 import de.zarncke.lib.io.DiskInfo;
 import de.zarncke.lib.io.IOTools;
-import de.zarncke.lib.io.StoreConsumer;
-import de.zarncke.lib.io.store.Store;
+import de.zarncke.lib.time.Times;
 import de.zarncke.lib.util.Misc;
 
 /**
@@ -30,6 +35,11 @@ public class LinuxFunctions {
 	public static final String PROC_MEMINFO = "/proc/meminfo";
 	public static final String PROC_MEMINFO_MEM_TOTAL = "MemTotal:";
 	public static final String PROC_MEMINFO_MEM_FREE = "MemFree:";
+	public static final String PROC_MOUNTINFO = "/proc/self/mountinfo";
+	/**
+	 * Interval for re-reading the mount table if changes cannot be detected with poll.
+	 */
+	public static final long MOUNTS_RECHECK_MILLIS = 10 * Times.MILLIS_PER_SECOND;
 	// from http://www.kneuro.net/cgi-bin/lxr/http/source/include/asm-arm/errno.h
 	private static final int EOPNOTSUPP = 95;
 	// from http://www.delorie.com/djgpp/doc/incs/fcntl.h
@@ -45,6 +55,23 @@ public class LinuxFunctions {
 	// from http://fossies.org/dox/fio-2.0.14/falloc_8c.html
 	private static final int FALLOC_FL_KEEP_SIZE = 0x01;
 	private static final int FALLOC_FL_PUNCH_HOLE = 0x02;
+	// from poll.h
+	private static final short POLLPRI = 0x002;
+	private static final short POLLERR = 0x008;
+
+	/**
+	 * struct pollfd.
+	 */
+	public static class PollFd extends Structure {
+		public int fd;
+		public short events;
+		public short revents;
+
+		@Override
+		protected List<String> getFieldOrder() {
+			return Arrays.asList("fd", "events", "revents");
+		}
+	}
 
 	/**
 	 * Functions from the libc.
@@ -61,6 +88,8 @@ public class LinuxFunctions {
 		int open(String filename, int flags);
 
 		int close(int filedes);
+
+		int poll(PollFd fds, int nfds, int timeout);
 	}
 
 	/**
@@ -82,6 +111,13 @@ public class LinuxFunctions {
 		int fallocate(int fd, int mode, long offset, long len);
 	}
 
+	private static final Object MOUNTS_LOCK = new Object();
+	private static List<String> mountPoints;
+	private static long mountsReadMillis;
+	private static int mountInfoFd = -1;
+	private static boolean mountPollFailed = false;
+	private static final Map<String, FileStore> FILE_STORES = L.map();
+
 	private LinuxFunctions() {
 		// hidden constructor of helper class
 	}
@@ -164,63 +200,194 @@ public class LinuxFunctions {
 	}
 
 	/**
-	 * Uses /usr/bin/df to query disk sizes. Use on you own risk.
+	 * Determines the sizes of all mounted file systems (like <code>df</code> but without forking).
+	 * File systems without blocks (e.g. proc) are omitted.
 	 *
 	 * @return List of {@link DiskInfo}
 	 */
 	public static List<DiskInfo> getDiskInfos() {
-		List<String> df;
-		try {
-			df = Misc.processCommand("/bin/df -P", new StoreConsumer<List<String>>() {
-				@Override
-				public List<String> consume(final Store storeToProcess) throws IOException {
-					return IOTools.getAllLines(storeToProcess.getInputStream());
+		List<DiskInfo> diskInfos = L.l();
+		for (String mountPoint : getMountPoints()) {
+			DiskInfo info = getDiskInfo(mountPoint);
+			if (info != null && info.getTotal() > 0) {
+				diskInfos.add(info);
+			}
+		}
+		return diskInfos;
+	}
+
+	/**
+	 * Queries the size of one file system (statvfs).
+	 *
+	 * @param mountPoint of the file system
+	 * @return DiskInfo or null if not available
+	 */
+	public static DiskInfo getDiskInfo(final String mountPoint) {
+		FileStore store;
+		synchronized (MOUNTS_LOCK) {
+			store = FILE_STORES.get(mountPoint);
+			if (store == null) {
+				try {
+					store = Files.getFileStore(Paths.get(mountPoint));
+				} catch (IOException e) {
+					Warden.disregard(e);
+					return null;
+				} catch (RuntimeException e) {
+					Warden.disregard(e);
+					return null;
 				}
-			}).getFirst();
+				FILE_STORES.put(mountPoint, store);
+			}
+		}
+		try {
+			return new DiskInfo(mountPoint, store.getUsableSpace(), store.getTotalSpace());
 		} catch (IOException e) {
 			Warden.disregard(e);
-			return L.e();
+			return null;
 		}
+	}
 
-		List<DiskInfo> diskInfos = L.l();
-		for (String line : df) {
-			String[] parts = line.split(" +");
-			try {
-				long free = Long.parseLong(parts[3]) * Misc.BYTES_PER_KB;
-				long total = Long.parseLong(parts[1]) * Misc.BYTES_PER_KB;
-				diskInfos.add(new DiskInfo(parts[parts.length - 1], free, total));
-			} catch (NumberFormatException e) {
-				// ignore
+	/**
+	 * Returns the mount points from {@link #PROC_MOUNTINFO}. The mount table is only read again when it changed.
+	 *
+	 * @return mount points, longest first; the same List is returned as long as nothing changes; empty if unknown
+	 */
+	public static List<String> getMountPoints() {
+		synchronized (MOUNTS_LOCK) {
+			// always check to open the watch before the first read
+			if (mountsChanged() || mountPoints == null) {
+				List<String> lines;
+				try {
+					// procfs doesn't support available(), so no streams here
+					lines = Files.readAllLines(Paths.get(PROC_MOUNTINFO), Misc.UTF_8);
+				} catch (IOException e) {
+					Warden.disregard(e);
+					lines = L.e();
+				}
+				mountPoints = Collections.unmodifiableList(parseMountPoints(lines));
+				mountsReadMillis = System.currentTimeMillis();
+				FILE_STORES.clear();
 			}
+			return mountPoints;
 		}
-		return diskInfos;
 	}
 
-	public static Pair<Long, Long> getAvailableSystemDiskBytes(final File fileOnFileSystem) {
-		List<DiskInfo> diskInfos = getDiskInfos();
-		if (diskInfos.isEmpty()) {
-			return null;
-		}
-		if (fileOnFileSystem == null) {
-			return diskInfos.get(0).toFreeAndTotal();
+	/**
+	 * The kernel flags changes of the mount table to poll on an open mountinfo (see proc(5)).
+	 * Without JNA the table is re-read periodically.
+	 */
+	private static boolean mountsChanged() {
+		if (!mountPollFailed) {
+			try {
+				if (mountInfoFd < 0) {
+					mountInfoFd = LibC.LIBC.open(PROC_MOUNTINFO, O_RDONLY);
+					if (mountInfoFd < 0) {
+						mountPollFailed = true;
+					}
+					// state at opening is unknown
+					return true;
+				}
+				PollFd pollFd = new PollFd();
+				pollFd.fd = mountInfoFd;
+				pollFd.events = POLLPRI;
+				int res = LibC.LIBC.poll(pollFd, 1, 0);
+				if (res >= 0) {
+					return res > 0 && (pollFd.revents & (POLLPRI | POLLERR)) != 0;
+				}
+				mountPollFailed = true;
+			} catch (LinkageError e) {
+				mountPollFailed = true;
+			}
 		}
+		return System.currentTimeMillis() > mountsReadMillis + MOUNTS_RECHECK_MILLIS;
+	}
 
+	/**
+	 * @param mountInfoLines lines of {@link #PROC_MOUNTINFO}
+	 * @return mount points, longest first
+	 */
+	static List<String> parseMountPoints(final List<String> mountInfoLines) {
+		List<String> mounts = L.l();
+		for (String line : mountInfoLines) {
+			// id parent major:minor root mountpoint options...
+			String[] parts = line.split(" ", 6);
+			if (parts.length < 5) {
+				continue;
+			}
+			String mountPoint = unescapeMountPoint(parts[4]);
+			if (!mounts.contains(mountPoint)) {
+				mounts.add(mountPoint);
+			}
+		}
 		// sort by path length longest first
-		Collections.sort(diskInfos, new Comparator<DiskInfo>() {
+		Collections.sort(mounts, new Comparator<String>() {
 			@Override
-			public int compare(final DiskInfo o1, final DiskInfo o2) {
-				return -Misc.compare(o1.getName().length(), o2.getName().length());
+			public int compare(final String o1, final String o2) {
+				return -Misc.compare(o1.length(), o2.length());
 			}
 		});
+		return mounts;
+	}
 
-		for (DiskInfo di : diskInfos) {
-			if (fileOnFileSystem.getAbsolutePath().startsWith(di.getPath())) {
-				return di.toFreeAndTotal();
+	/**
+	 * Space, tab, newline and backslash are escaped octal in the mount table.
+	 */
+	private static String unescapeMountPoint(final String escaped) {
+		if (escaped.indexOf('\\') < 0) {
+			return escaped;
+		}
+		StringBuilder sb = new StringBuilder(escaped.length());
+		for (int i = 0; i < escaped.length(); i++) {
+			char c = escaped.charAt(i);
+			if (c == '\\' && i + 3 < escaped.length() && isOctal(escaped, i + 1)) {
+				sb.append((char) Integer.parseInt(escaped.substring(i + 1, i + 4), 8));
+				i += 3;
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static boolean isOctal(final String str, final int start) {
+		for (int i = start; i < start + 3; i++) {
+			char c = str.charAt(i);
+			if (c < '0' || c > '7') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param file != null
+	 * @return mount point of the file system containing the file; null if unknown
+	 */
+	public static String getMountPointOf(final File file) {
+		String path = file.getAbsolutePath();
+		for (String mountPoint : getMountPoints()) {
+			if (path.startsWith(mountPoint)
+					&& (path.length() == mountPoint.length() || mountPoint.endsWith(File.separator) || path
+							.charAt(mountPoint.length()) == File.separatorChar)) {
+				return mountPoint;
 			}
 		}
 		return null;
 	}
 
+	public static Pair<Long, Long> getAvailableSystemDiskBytes(final File fileOnFileSystem) {
+		if (fileOnFileSystem == null) {
+			List<DiskInfo> diskInfos = getDiskInfos();
+			return diskInfos.isEmpty() ? null : diskInfos.get(diskInfos.size() - 1).toFreeAndTotal();
+		}
+		String mountPoint = getMountPointOf(fileOnFileSystem);
+		if (mountPoint == null) {
+			return null;
+		}
+		DiskInfo info = getDiskInfo(mountPoint);
+		return info == null ? null : info.toFreeAndTotal();
+	}
+
 	public static void hardlink(final File src, final File dest) throws IOException {
 		if (LibC.LIBC.link(src.toString(), dest.toString()) != 0) {
 			throw new IOException(LibC.LIBC.strerror(Native.getLastError()));
@@ -518,6 +518,13 @@ public final class ClassTools {
 			});
 	public static final int CLASS_BASE_SIZE = 8;
 
+	/**
+	 * Rough size of an instance of the class (for arrays: of an element). Use {@link SizeEstimator} for sizes of actual
+	 * objects.
+	 *
+	 * @param clazz != null
+	 * @return bytes
+	 */
 	public static int estimateSize(final Class<?> clazz) {
 		try {
 			return clazzToDescription.get(clazz).getEstimatedSize();
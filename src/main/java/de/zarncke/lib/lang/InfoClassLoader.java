@@ -1,6 +1,8 @@
 package de.zarncke.lib.lang;
 
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.ProtectionDomain;
 
 import de.zarncke.lib.err.Warden;
 
@@ -12,15 +14,26 @@ public abstract class InfoClassLoader extends ClassLoader
 
 	abstract byte[] findClassBinary(String name);
 
+	/**
+	 * May be overridden to provide the class without copying it into an array.
+	 *
+	 * @param name of the class
+	 * @return class bytes or null if unknown
+	 */
+	ByteBuffer findClassBuffer(final String name) {
+		byte[] ba = findClassBinary(name);
+		return ba == null ? null : ByteBuffer.wrap(ba);
+	}
+
     @Override
     protected Class<?> findClass(final String name) throws ClassNotFoundException
     {
-        byte[] ba = findClassBinary(name);
-        if ( ba == null )
+        ByteBuffer bb = findClassBuffer(name);
+        if ( bb == null )
         {
             throw new ClassNotFoundException("cannot find " + name);
         }
-        return defineClass(name, ba, 0, ba.length);
+        return defineClass(name, bb, (ProtectionDomain) null);
     }
 
 	@Override
@@ -0,0 +1,352 @@
+package de.zarncke.lib.lang;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.Warden;
+
+/**
+ * Estimates the heap size of objects without serializing them.
+ * <ul>
+ * <li>Shallow sizes are computed from the field layout of the class which is determined once per class (or taken from
+ * an {@link Instrumentation} if {@link #setInstrumentation(Instrumentation) available}).</li>
+ * <li>Deep sizes follow references with an identity based visited set. The traversal stops at a maximum depth, a
+ * maximum number of objects and a time budget; the result is then a lower bound.</li>
+ * <li>The traversal structures are reused per thread, so estimating doesn't create garbage once warmed up.</li>
+ * </ul>
+ * Class objects are considered shared and not counted.
+ * To use exact sizes the jar may be registered as agent (<code>Premain-Class</code> or <code>Agent-Class</code>
+ * {@link SizeEstimator}).
+ *
+ * @author Gunnar Zarncke
+ */
+public final class SizeEstimator {
+	public static final int DEFAULT_MAX_DEPTH = 64;
+	public static final int DEFAULT_MAX_OBJECTS = 100000;
+	public static final long DEFAULT_MAX_NANOS = 5000000L;
+
+	private static final boolean VM_64 = !"32".equals(System.getProperty("sun.arch.data.model"));
+	// compressed oops are the default for heaps below 32GB
+	private static final boolean COMPRESSED = !VM_64 || Runtime.getRuntime().maxMemory() < (32L << 30);
+	public static final int REFERENCE_SIZE = COMPRESSED ? 4 : 8;
+	public static final int OBJECT_HEADER_SIZE = VM_64 ? COMPRESSED ? 12 : 16 : 8;
+	public static final int ARRAY_HEADER_SIZE = OBJECT_HEADER_SIZE + 4;
+	public static final int ALIGNMENT = 8;
+
+	private static final int CHECK_TIME_EVERY = 256;
+	private static final int MAX_RETAINED_CAPACITY = 1 << 16;
+
+	private static volatile Instrumentation instrumentation;
+
+	/**
+	 * Size and references of the instances of one class.
+	 */
+	private static final class Layout {
+		final long shallowSize;
+		final Field[] references;
+		final boolean array;
+		final int elementSize;
+		final boolean referenceArray;
+
+		Layout(final Class<?> clazz) {
+			this.array = clazz.isArray();
+			if (this.array) {
+				Class<?> component = clazz.getComponentType();
+				this.referenceArray = !component.isPrimitive();
+				this.elementSize = this.referenceArray ? REFERENCE_SIZE : sizeOfPrimitive(component);
+				this.shallowSize = ARRAY_HEADER_SIZE;
+				this.references = new Field[0];
+				return;
+			}
+			this.referenceArray = false;
+			this.elementSize = 0;
+			long bytes = OBJECT_HEADER_SIZE;
+			List<Field> refs = L.l();
+			for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+				for (Field f : c.getDeclaredFields()) {
+					if (Modifier.isStatic(f.getModifiers())) {
+						continue;
+					}
+					Class<?> type = f.getType();
+					if (type.isPrimitive()) {
+						bytes += sizeOfPrimitive(type);
+					} else {
+						bytes += REFERENCE_SIZE;
+						try {
+							f.setAccessible(true);
+							refs.add(f);
+						} catch (RuntimeException e) {
+							// not accessible (SecurityException, InaccessibleObjectException for JDK internals since
+							// Java 9): the reference slot is counted but not followed
+						}
+					}
+				}
+			}
+			this.shallowSize = align(bytes);
+			this.references = refs.toArray(new Field[refs.size()]);
+		}
+
+		long sizeOf(final Object object) {
+			if (!this.array) {
+				return this.shallowSize;
+			}
+			return align(this.shallowSize + (long) Array.getLength(object) * this.elementSize);
+		}
+	}
+
+	/**
+	 * Reusable traversal state of one thread.
+	 */
+	private static final class Traversal {
+		Object[] visited = new Object[64];
+		int visitedCount;
+		Object[] stack = new Object[64];
+		int[] depths = new int[64];
+		boolean busy;
+
+		boolean add(final Object o) {
+			if (this.visitedCount * 2 >= this.visited.length) {
+				grow();
+			}
+			Object[] table = this.visited;
+			int mask = table.length - 1;
+			int i = System.identityHashCode(o) & mask;
+			while (table[i] != null) {
+				if (table[i] == o) {
+					return false;
+				}
+				i = i + 1 & mask;
+			}
+			table[i] = o;
+			this.visitedCount++;
+			return true;
+		}
+
+		private void grow() {
+			Object[] old = this.visited;
+			this.visited = new Object[old.length * 2];
+			this.visitedCount = 0;
+			for (Object o : old) {
+				if (o != null) {
+					add(o);
+				}
+			}
+		}
+
+		void push(final Object o, final int depth, final int top) {
+			if (top == this.stack.length) {
+				this.stack = Arrays.copyOf(this.stack, top * 2);
+				this.depths = Arrays.copyOf(this.depths, top * 2);
+			}
+			this.stack[top] = o;
+			this.depths[top] = depth;
+		}
+
+		void reset(final int top) {
+			// don't hold on to the objects or to huge tables
+			if (this.visited.length > MAX_RETAINED_CAPACITY) {
+				this.visited = new Object[64];
+			} else {
+				Arrays.fill(this.visited, null);
+			}
+			this.visitedCount = 0;
+			if (this.stack.length > MAX_RETAINED_CAPACITY) {
+				this.stack = new Object[64];
+				this.depths = new int[64];
+			} else {
+				// popped entries are cleared already
+				Arrays.fill(this.stack, 0, top, null);
+			}
+			this.busy = false;
+		}
+	}
+
+	private static final LoadingCache<Class<?>, Layout> LAYOUTS = CacheBuilder.newBuilder().weakKeys().softValues()
+			.build(new CacheLoader<Class<?>, Layout>() {
+				@Override
+				public Layout load(final Class<?> key) {
+					return new Layout(key);
+				}
+			});
+
+	private static final ThreadLocal<Traversal> TRAVERSALS = new ThreadLocal<Traversal>() {
+		@Override
+		protected Traversal initialValue() {
+			return new Traversal();
+		}
+	};
+
+	private SizeEstimator() {
+		// static only
+	}
+
+	/**
+	 * Entry point when used as java agent at startup.
+	 *
+	 * @param args ignored
+	 * @param inst to use
+	 */
+	public static void premain(final String args, final Instrumentation inst) {
+		setInstrumentation(inst);
+	}
+
+	/**
+	 * Entry point when used as java agent attached later.
+	 *
+	 * @param args ignored
+	 * @param inst to use
+	 */
+	public static void agentmain(final String args, final Instrumentation inst) {
+		setInstrumentation(inst);
+	}
+
+	/**
+	 * @param inst to determine exact shallow sizes; null to use layouts
+	 */
+	public static void setInstrumentation(final Instrumentation inst) {
+		instrumentation = inst;
+	}
+
+	public static Instrumentation getInstrumentation() {
+		return instrumentation;
+	}
+
+	static long align(final long bytes) {
+		return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	static int sizeOfPrimitive(final Class<?> type) {
+		if (type == Long.TYPE || type == Double.TYPE) {
+			return 8;
+		}
+		if (type == Integer.TYPE || type == Float.TYPE) {
+			return 4;
+		}
+		if (type == Short.TYPE || type == Character.TYPE) {
+			return 2;
+		}
+		return 1;
+	}
+
+	private static Layout layoutOf(final Class<?> clazz) {
+		try {
+			return LAYOUTS.get(clazz);
+		} catch (ExecutionException e) {
+			throw Warden.spot(new IllegalArgumentException("cannot determine layout of " + clazz, e));
+		}
+	}
+
+	/**
+	 * @param clazz of an instance (for arrays: the size of an empty array)
+	 * @return bytes an instance occupies without referenced objects
+	 */
+	public static long shallowSizeOf(final Class<?> clazz) {
+		return layoutOf(clazz).shallowSize;
+	}
+
+	/**
+	 * @param object may be null
+	 * @return bytes the object occupies without referenced objects; 0 for null
+	 */
+	public static long shallowSizeOf(final Object object) {
+		if (object == null) {
+			return 0;
+		}
+		Instrumentation inst = instrumentation;
+		if (inst != null) {
+			return inst.getObjectSize(object);
+		}
+		return layoutOf(object.getClass()).sizeOf(object);
+	}
+
+	/**
+	 * Estimates the size of an object and all objects reachable from it within the default budgets.
+	 *
+	 * @param root may be null
+	 * @return bytes
+	 */
+	public static long deepSizeOf(final Object root) {
+		return deepSizeOf(root, DEFAULT_MAX_DEPTH, DEFAULT_MAX_OBJECTS, DEFAULT_MAX_NANOS);
+	}
+
+	/**
+	 * Estimates the size of an object and all objects reachable from it.
+	 * Each object is counted once. If a budget is exhausted the size of the objects visited so far is returned.
+	 *
+	 * @param root may be null
+	 * @param maxDepth number of references to follow from the root (0 = shallow)
+	 * @param maxObjects number of objects to visit at most
+	 * @param maxNanos time to spend at most
+	 * @return bytes
+	 */
+	public static long deepSizeOf(final Object root, final int maxDepth, final int maxObjects, final long maxNanos) {
+		if (root == null) {
+			return 0;
+		}
+		Traversal t = TRAVERSALS.get();
+		if (t.busy) {
+			// reentrant use (e.g. from a toString() in an error report): don't disturb the outer traversal
+			t = new Traversal();
+		}
+		t.busy = true;
+		long start = System.nanoTime();
+		long size = 0;
+		int visited = 0;
+		int top = 0;
+		try {
+			t.push(root, 0, top++);
+			t.add(root);
+			while (top > 0) {
+				top--;
+				Object o = t.stack[top];
+				int depth = t.depths[top];
+				t.stack[top] = null;
+
+				Class<?> clazz = o.getClass();
+				Layout layout = layoutOf(clazz);
+				Instrumentation inst = instrumentation;
+				size += inst != null ? inst.getObjectSize(o) : layout.sizeOf(o);
+
+				if (++visited >= maxObjects || visited % CHECK_TIME_EVERY == 0 && System.nanoTime() - start > maxNanos) {
+					break;
+				}
+				if (depth >= maxDepth) {
+					continue;
+				}
+				if (layout.referenceArray) {
+					for (Object e : (Object[]) o) {
+						if (e != null && !(e instanceof Class) && t.add(e)) {
+							t.push(e, depth + 1, top++);
+						}
+					}
+				} else {
+					for (Field f : layout.references) {
+						Object e;
+						try {
+							e = f.get(o);
+						} catch (IllegalAccessException ex) {
+							// made accessible in the layout
+							continue;
+						}
+						if (e != null && !(e instanceof Class) && t.add(e)) {
+							t.push(e, depth + 1, top++);
+						}
+					}
+				}
+			}
+		} finally {
+			t.reset(top);
+		}
+		return size;
+	}
+}
@@ -2,22 +2,235 @@ package de.zarncke.lib.lang;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import de.zarncke.lib.coll.L;
 import de.zarncke.lib.err.Warden;
 import de.zarncke.lib.io.store.Store;
 import de.zarncke.lib.io.store.StoreUtil;
+import de.zarncke.lib.io.store.FileStore;
+import de.zarncke.lib.io.store.StoreWatcher;
+import de.zarncke.lib.region.RegionUtil;
 
+/**
+ * Loads classes and resources from {@link Store Stores} (searched in order).
+ * <ul>
+ * <li>The packages of all Stores which {@link Store#iterationSupported() can be listed} are indexed, so names are
+ * looked up only in the Stores containing their package. Stores which cannot be listed are probed. Stores which list
+ * full paths (like jars) are supported.</li>
+ * <li>Names not found this way are resolved by path in all Stores whose index lacks the package (Stores may resolve
+ * paths leniently) before they are remembered as missing in a bounded cache.</li>
+ * <li>Class bytes are passed on from the {@link de.zarncke.lib.region.Region} of the Store without copying (if
+ * possible).</li>
+ * </ul>
+ * The index is rebuilt when the {@link StoreWatcher} notices a modification of one of the file backed Stores (e.g. a
+ * replaced jar). Other Stores are only watched (by polling their modification time) if requested, because that may be
+ * expensive (e.g. a request for each poll of a {@link de.zarncke.lib.io.store.UrlStore}). Changes within a directory
+ * are usually not a modification of the directory itself (file systems report only the parent directory); call
+ * {@link #refresh()} after such changes.
+ */
 public class StoreClassLoader extends InfoClassLoader {
+	public static final int DEFAULT_NEGATIVE_CACHE_SIZE = 10000;
+
+	private static final String CLASS_SUFFIX = ".class";
+
+	/**
+	 * Maps package paths ("a/b") to the package Store of each backing Store (null where absent).
+	 * Lookups work directly on class names ("a.b.C") and resource names ("a/b/c.txt") without creating Strings.
+	 * Immutable together with the properties of the Stores it was built from; the misses are only valid for it.
+	 */
+	private static final class PackageIndex {
+		private final String[] keys;
+		private final Store[][] values;
+		private final int mask;
+		private final boolean[] indexed;
+		private final boolean[] flat;
+		private final long[] generations;
+		private final Cache<String, Boolean> missing;
+
+		PackageIndex(final Map<String, Store[]> packages, final boolean[] indexed, final boolean[] flat,
+				final long[] generations, final int negativeCacheSize) {
+			this.indexed = indexed;
+			this.flat = flat;
+			this.generations = generations;
+			this.missing = CacheBuilder.newBuilder().maximumSize(negativeCacheSize).build();
+			int capacity = Integer.highestOneBit(Math.max(4, packages.size() * 2 - 1)) << 1;
+			this.keys = new String[capacity];
+			this.values = new Store[capacity][];
+			this.mask = capacity - 1;
+			for (Map.Entry<String, Store[]> me : packages.entrySet()) {
+				String key = me.getKey();
+				int i = hash(key, key.length(), '/') & this.mask;
+				while (this.keys[i] != null) {
+					i = i + 1 & this.mask;
+				}
+				this.keys[i] = key;
+				this.values[i] = me.getValue();
+			}
+		}
+
+		/**
+		 * @param name class or resource name
+		 * @param end length of the package part
+		 * @param separator '.' or '/'
+		 * @return Stores of the package or null if unknown
+		 */
+		Store[] get(final String name, final int end, final char separator) {
+			int i = hash(name, end, separator) & this.mask;
+			String key;
+			while ((key = this.keys[i]) != null) {
+				if (matches(key, name, end, separator)) {
+					return this.values[i];
+				}
+				i = i + 1 & this.mask;
+			}
+			return null;
+		}
+
+		private static int hash(final String name, final int end, final char separator) {
+			int h = 0;
+			for (int i = 0; i < end; i++) {
+				char c = name.charAt(i);
+				h = 31 * h + (c == separator ? '/' : c);
+			}
+			return h ^ h >>> 16;
+		}
+
+		boolean isOutdated(final StoreWatcher.Watch[] watches) {
+			for (int i = 0; i < watches.length; i++) {
+				if (watches[i] != null && watches[i].getGeneration() != this.generations[i]) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static boolean matches(final String key, final String name, final int end, final char separator) {
+			if (key.length() != end) {
+				return false;
+			}
+			for (int i = 0; i < end; i++) {
+				char c = name.charAt(i);
+				if (key.charAt(i) != (c == separator ? '/' : c)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
 	private final Store[] stores;
+	private final StoreWatcher.Watch[] watches;
+	private final int negativeCacheSize;
+	private volatile PackageIndex index;
 
 	public StoreClassLoader(final ClassLoader parentClassLoader, final Store... stores) {
+		this(parentClassLoader, DEFAULT_NEGATIVE_CACHE_SIZE, stores);
+	}
+
+	/**
+	 * @param parentClassLoader to delegate to
+	 * @param negativeCacheSize number of names not found to remember
+	 * @param stores to search in order
+	 */
+	public StoreClassLoader(final ClassLoader parentClassLoader, final int negativeCacheSize, final Store... stores) {
+		this(parentClassLoader, negativeCacheSize, false, stores);
+	}
+
+	/**
+	 * @param parentClassLoader to delegate to
+	 * @param negativeCacheSize number of names not found to remember
+	 * @param pollStores true: also watch Stores which are not backed by files by polling them
+	 * @param stores to search in order
+	 */
+	public StoreClassLoader(final ClassLoader parentClassLoader, final int negativeCacheSize,
+			final boolean pollStores, final Store... stores) {
 		super(parentClassLoader);
 		this.stores = stores;
+		this.negativeCacheSize = negativeCacheSize;
+		this.watches = new StoreWatcher.Watch[stores.length];
+		StoreWatcher watcher = StoreWatcher.CTX.get();
+		for (int i = 0; i < stores.length; i++) {
+			if (pollStores || FileStore.getFile(stores[i]) != null) {
+				this.watches[i] = watcher.watch(stores[i]);
+			}
+		}
+		refresh();
+	}
+
+	/**
+	 * Rebuilds the package index and forgets all misses.
+	 */
+	public final synchronized void refresh() {
+		// generations before listing, so changes during the listing cause another refresh
+		long[] generations = new long[this.stores.length];
+		for (int i = 0; i < this.stores.length; i++) {
+			generations[i] = this.watches[i] == null ? 0 : this.watches[i].getGeneration();
+		}
+		boolean[] indexed = new boolean[this.stores.length];
+		boolean[] flat = new boolean[this.stores.length];
+		Map<String, Store[]> packages = L.map();
+		for (int i = 0; i < this.stores.length; i++) {
+			indexed[i] = this.stores[i].iterationSupported();
+			if (indexed[i]) {
+				addPackages(packages, flat, "", this.stores[i], i);
+			}
+		}
+		this.index = new PackageIndex(packages, indexed, flat, generations, this.negativeCacheSize);
+	}
+
+	private PackageIndex getIndex() {
+		PackageIndex current = this.index;
+		if (current.isOutdated(this.watches)) {
+			refresh();
+			current = this.index;
+		}
+		return current;
+	}
+
+	private void addPackages(final Map<String, Store[]> packages, final boolean[] flat, final String path,
+			final Store dir, final int nr) {
+		addPackage(packages, path, dir, nr);
+		for (Store element : dir) {
+			String name = element.getName();
+			int slash = name == null ? -1 : name.lastIndexOf('/');
+			if (slash >= 0) {
+				// listing of full paths, the package Store is not needed
+				flat[nr] = true;
+				String pack = name.substring(0, slash);
+				addPackage(packages, path.length() == 0 ? pack : path + "/" + pack, this.stores[nr], nr);
+				continue;
+			}
+			if (element.canRead() || !element.iterationSupported()) {
+				continue;
+			}
+			Iterator<Store> it = element.iterator();
+			if (it.hasNext()) {
+				addPackages(packages, flat, path.length() == 0 ? element.getName() : path + "/" + element.getName(),
+						element, nr);
+			}
+		}
+	}
+
+	private void addPackage(final Map<String, Store[]> packages, final String path, final Store dir, final int nr) {
+		Store[] dirs = packages.get(path);
+		if (dirs == null) {
+			dirs = new Store[this.stores.length];
+			packages.put(path, dirs);
+		}
+		if (dirs[nr] == null) {
+			dirs[nr] = dir;
+		}
 	}
 
 	@Override
 	public InputStream getResourceAsStream(final String name) {
-		Store res = resolveToStore(name);
+		Store res = resolveToStore(name, name.lastIndexOf('/'), '/', name.substring(name.lastIndexOf('/') + 1));
 		if (res == null) {
 			return null;
 		}
@@ -31,30 +244,84 @@ public class StoreClassLoader extends InfoClassLoader {
 
 	@Override
 	byte[] findClassBinary(final String name) {
-		Store res = resolveToStore(name.replaceAll("\\.", "/") + ".class");
-		if (res == null) {
+		ByteBuffer bb = findClassBuffer(name);
+		if (bb == null) {
 			return null;
 		}
+		byte[] byteArray = new byte[bb.remaining()];
+		bb.get(byteArray);
+		return byteArray;
+	}
 
-		byte[] byteArray;
+	@Override
+	ByteBuffer findClassBuffer(final String name) {
+		int dot = name.lastIndexOf('.');
+		Store res = resolveToStore(name, dot, '.', null);
+		if (res == null) {
+			return null;
+		}
 		try {
-			byteArray = res.asRegion().toByteArray();
+			return RegionUtil.asByteBuffer(res.asRegion());
 		} catch (IOException e) {
 			Warden.disregard(e);
 			return null;
 		}
-
-		return byteArray;
 	}
 
-	private Store resolveToStore(final String name) {
-		Store res = null;
-		for (Store store : this.stores) {
-			res = StoreUtil.resolvePath(store, name, "/");
+	/**
+	 * @param name class or resource name
+	 * @param lastSeparator position of the last separator or -1
+	 * @param separator of name
+	 * @param fileName last part of the path (for classes it is derived if needed)
+	 * @return the first readable Store or null
+	 */
+	private Store resolveToStore(final String name, final int lastSeparator, final char separator,
+			final String fileName) {
+		PackageIndex current = getIndex();
+		if (current.missing.getIfPresent(name) != null) {
+			return null;
+		}
+		Store[] dirs = current.get(name, Math.max(0, lastSeparator), separator);
+		String file = fileName;
+		String path = null;
+		for (int i = 0; i < this.stores.length; i++) {
+			Store res;
+			if (current.indexed[i] && (dirs == null || dirs[i] == null)) {
+				continue;
+			}
+			if (current.indexed[i] && !current.flat[i]) {
+				if (file == null) {
+					file = name.substring(lastSeparator + 1) + CLASS_SUFFIX;
+				}
+				res = dirs[i].element(file);
+			} else {
+				if (path == null) {
+					path = separator == '/' ? name : name.replace(separator, '/') + CLASS_SUFFIX;
+				}
+				res = current.flat[i] ? this.stores[i].element(path) : StoreUtil.resolvePath(this.stores[i], path, "/");
+			}
 			if (res.canRead()) {
 				return res;
 			}
 		}
+		// Stores may resolve paths which they don't list (e.g. jars fall back to their root)
+		for (int i = 0; i < this.stores.length; i++) {
+			if (current.indexed[i] && (dirs == null || dirs[i] == null)) {
+				if (path == null) {
+					path = separator == '/' ? name : name.replace(separator, '/') + CLASS_SUFFIX;
+				}
+				Store res = StoreUtil.resolvePath(this.stores[i], path, "/");
+				if (res.canRead()) {
+					return res;
+				}
+			}
+		}
+		current.missing.put(name, Boolean.TRUE);
 		return null;
 	}
+
+	@Override
+	public String toString() {
+		return "StoreClassLoader " + this.index.missing.size() + " misses cached";
+	}
 }
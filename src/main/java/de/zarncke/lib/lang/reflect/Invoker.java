@@ -0,0 +1,319 @@
+package de.zarncke.lib.lang.reflect;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.lang.ClassTools;
+
+/**
+ * A resolved method or constructor which can be called quickly with Object arguments.
+ * <ul>
+ * <li>Resolution (by {@link ClassTools#getBestMethod} and {@link ClassTools#getBestConstructor}) is cached per class
+ * and signature; failed resolutions are cached too. The cache is attached (by a {@link ClassValue}) to the one of
+ * the target and argument classes whose loader sees the loaders of all the others, so it doesn't keep classes or
+ * their class loaders alive. Signatures involving unrelated loaders are not cached. A bounded number of signatures
+ * is kept per class.</li>
+ * <li>Calls go through a {@link MethodHandle} adapted once to <code>(Object, Object[])Object</code> instead of
+ * {@link Method#invoke}. Members which are not accessible that way are called reflectively.</li>
+ * </ul>
+ * Arguments are checked like by {@link Method#invoke}. Exceptions of the called code are thrown unchanged.
+ * <p>
+ * {@link java.lang.invoke.LambdaMetafactory} is not used: The classes it generates are defined in the loader of the
+ * lookup class and cannot link against classes of other loaders (like those of a
+ * {@link de.zarncke.lib.lang.StoreClassLoader}), which fails with a {@link NoClassDefFoundError}. It also cannot
+ * spread an argument array, so each arity, static-ness and void-ness would need an interface of its own.
+ * </p>
+ *
+ * @author Gunnar Zarncke
+ */
+public final class Invoker {
+	public static final int MAX_SIGNATURES_PER_CLASS = 1000;
+
+	/**
+	 * Thrown if the arguments don't match the parameters of the member.
+	 */
+	public static final class ArgumentMismatchException extends IllegalArgumentException {
+		private static final long serialVersionUID = 1L;
+
+		ArgumentMismatchException(final String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Cache key.
+	 */
+	private static final class Signature {
+		private final Class<?> target;
+		private final String name;
+		private final boolean includeStatic;
+		private final Class<?>[] args;
+		private final int hash;
+
+		Signature(final Class<?> target, final String name, final boolean includeStatic, final Class<?>[] args) {
+			this.target = target;
+			this.name = name;
+			this.includeStatic = includeStatic;
+			this.args = args;
+			this.hash = ((name == null ? 0 : name.hashCode()) * 31 + target.hashCode()) * 31 + Arrays.hashCode(args)
+					+ (includeStatic ? 1 : 0);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Signature)) {
+				return false;
+			}
+			Signature other = (Signature) obj;
+			return this.hash == other.hash && this.target == other.target && this.includeStatic == other.includeStatic
+					&& (this.name == null ? other.name == null : this.name.equals(other.name))
+					&& Arrays.equals(this.args, other.args);
+		}
+	}
+
+	private static final ClassValue<Cache<Signature, Object>> CACHE = new ClassValue<Cache<Signature, Object>>() {
+		@Override
+		protected Cache<Signature, Object> computeValue(final Class<?> type) {
+			return CacheBuilder.newBuilder().concurrencyLevel(2).maximumSize(MAX_SIGNATURES_PER_CLASS).build();
+		}
+	};
+
+	private final Member member;
+	private final Class<?> returnType;
+	private final MethodHandle handle;
+	/**
+	 * Declaring class for instance methods, null otherwise.
+	 */
+	private final Class<?> selfType;
+	/**
+	 * Wrapped.
+	 */
+	private final Class<?>[] parameterTypes;
+	private final boolean[] primitive;
+
+	private Invoker(final Member member, final Class<?>[] parameterTypes, final Class<?> returnType,
+			final MethodHandle handle) {
+		this.member = member;
+		this.returnType = returnType;
+		this.handle = handle;
+		this.selfType = member instanceof Method && !Modifier.isStatic(member.getModifiers()) ? member
+				.getDeclaringClass() : null;
+		this.parameterTypes = ClassTools.replacePrimitives(parameterTypes);
+		this.primitive = new boolean[parameterTypes.length];
+		for (int i = 0; i < parameterTypes.length; i++) {
+			this.primitive[i] = parameterTypes[i].isPrimitive();
+		}
+	}
+
+	/**
+	 * @param clazz to call the method on
+	 * @param name of the method
+	 * @param includeStatic true: also consider static methods
+	 * @param args types of the arguments (see {@link ClassTools#getBestMethod})
+	 * @return Invoker of the best matching method
+	 * @throws NoSuchMethodException if none matches (also if it didn't match before)
+	 */
+	public static Invoker forMethod(final Class<?> clazz, final String name, final boolean includeStatic,
+			final Class<?>[] args) throws NoSuchMethodException {
+		Signature key = new Signature(clazz, name, includeStatic, args);
+		Cache<Signature, Object> known = cacheOf(clazz, args);
+		Object cached = known == null ? null : known.getIfPresent(key);
+		if (cached == null) {
+			try {
+				Method method = ClassTools.getBestMethod(clazz, name, includeStatic, args);
+				cached = new Invoker(method, method.getParameterTypes(), method.getReturnType(), adapt(method));
+			} catch (NoSuchMethodException e) {
+				cached = e.getMessage();
+			}
+			if (known != null) {
+				known.put(key, cached);
+			}
+		}
+		return resolved(cached);
+	}
+
+	/**
+	 * @param clazz to instantiate
+	 * @param args types of the arguments (see {@link ClassTools#getBestConstructor})
+	 * @return Invoker of the best matching constructor; the object argument of {@link #invoke} is ignored
+	 * @throws NoSuchMethodException if none matches (also if it didn't match before)
+	 */
+	public static Invoker forConstructor(final Class<?> clazz, final Class<?>[] args) throws NoSuchMethodException {
+		Signature key = new Signature(clazz, null, false, args);
+		Cache<Signature, Object> known = cacheOf(clazz, args);
+		Object cached = known == null ? null : known.getIfPresent(key);
+		if (cached == null) {
+			try {
+				Constructor<?> constructor = ClassTools.getBestConstructor(clazz, args);
+				cached = new Invoker(constructor, constructor.getParameterTypes(), clazz, adapt(constructor));
+			} catch (NoSuchMethodException e) {
+				cached = e.getMessage();
+			}
+			if (known != null) {
+				known.put(key, cached);
+			}
+		}
+		return resolved(cached);
+	}
+
+	/**
+	 * @return the cache of the class whose loader sees the loaders of the target and all arguments; null if there is
+	 * none
+	 */
+	private static Cache<Signature, Object> cacheOf(final Class<?> clazz, final Class<?>[] args) {
+		Class<?> holder = clazz;
+		for (Class<?> arg : args) {
+			if (arg == null || isAncestor(arg.getClassLoader(), holder.getClassLoader())) {
+				continue;
+			}
+			if (!isAncestor(holder.getClassLoader(), arg.getClassLoader())) {
+				return null;
+			}
+			holder = arg;
+		}
+		return CACHE.get(holder);
+	}
+
+	/**
+	 * @return true if the loader is the other one or one of its parents (the bootstrap loader is everybody's parent)
+	 */
+	private static boolean isAncestor(final ClassLoader loader, final ClassLoader of) {
+		if (loader == null) {
+			return true;
+		}
+		for (ClassLoader l = of; l != null; l = l.getParent()) {
+			if (l == loader) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Invoker resolved(final Object cached) throws NoSuchMethodException {
+		if (cached instanceof Invoker) {
+			return (Invoker) cached;
+		}
+		throw new NoSuchMethodException((String) cached);
+	}
+
+	/**
+	 * @return handle of type (Object, Object[])Object or null if not accessible
+	 */
+	private static MethodHandle adapt(final Member member) {
+		if (!Modifier.isPublic(member.getDeclaringClass().getModifiers())) {
+			return null;
+		}
+		MethodHandle mh;
+		int params;
+		try {
+			if (member instanceof Method) {
+				Method method = (Method) member;
+				params = method.getParameterTypes().length;
+				mh = MethodHandles.publicLookup().unreflect(method).asFixedArity();
+				if (Modifier.isStatic(method.getModifiers())) {
+					mh = MethodHandles.dropArguments(mh, 0, Object.class);
+				}
+			} else {
+				Constructor<?> constructor = (Constructor<?>) member;
+				if (Modifier.isAbstract(constructor.getDeclaringClass().getModifiers())) {
+					return null;
+				}
+				params = constructor.getParameterTypes().length;
+				mh = MethodHandles.dropArguments(MethodHandles.publicLookup().unreflectConstructor(constructor)
+						.asFixedArity(), 0, Object.class);
+			}
+		} catch (IllegalAccessException e) {
+			// called reflectively
+			return null;
+		}
+		return mh.asType(MethodType.genericMethodType(params + 1)).asSpreader(Object[].class, params);
+	}
+
+	/**
+	 * @param self object to call the method on (ignored for static methods and constructors)
+	 * @param args the arguments
+	 * @return result of the method (null for void) or the created object
+	 * @throws ArgumentMismatchException if self or the arguments don't match (like {@link Method#invoke})
+	 * @throws NullPointerException if self is null for an instance method
+	 * @throws IllegalAccessException if the member is not accessible
+	 * @throws InstantiationException if the class cannot be instantiated
+	 * @throws Throwable any exception of the called code
+	 */
+	public Object invoke(final Object self, final Object... args) throws Throwable { // NOPMD generic reflect
+		checkArguments(self, args);
+		if (this.handle != null) {
+			return this.handle.invokeExact(self, args);
+		}
+		try {
+			if (this.member instanceof Method) {
+				return ((Method) this.member).invoke(self, args);
+			}
+			return ((Constructor<?>) this.member).newInstance(args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void checkArguments(final Object self, final Object[] args) {
+		if (this.selfType != null) {
+			if (self == null) {
+				throw Warden.spot(new NullPointerException("no object to call " + this.member + " on"));
+			}
+			if (!this.selfType.isInstance(self)) {
+				throw Warden.spot(new ArgumentMismatchException(self.getClass().getName() + " is not an instance of "
+						+ this.selfType.getName()));
+			}
+		}
+		if (args.length != this.parameterTypes.length) {
+			throw Warden.spot(new ArgumentMismatchException(this.member + " needs " + this.parameterTypes.length
+					+ " arguments, not " + args.length));
+		}
+		for (int i = 0; i < args.length; i++) {
+			Object arg = args[i];
+			if (arg == null ? this.primitive[i] : !this.parameterTypes[i].isInstance(arg)) {
+				String actual = arg == null ? "null" : arg.getClass().getName();
+				throw Warden.spot(new ArgumentMismatchException("argument " + i + " of " + this.member + " must be a "
+						+ this.parameterTypes[i].getName() + ", not " + actual));
+			}
+		}
+	}
+
+	public Member getMember() {
+		return this.member;
+	}
+
+	/**
+	 * @return declared return type of the method or the class of a constructor
+	 */
+	public Class<?> getReturnType() {
+		return this.returnType;
+	}
+
+	/**
+	 * @return true if calls use a MethodHandle
+	 */
+	public boolean isDirect() {
+		return this.handle != null;
+	}
+
+	@Override
+	public String toString() {
+		return (this.handle != null ? "direct " : "reflective ") + this.member;
+	}
+}
@@ -1,22 +1,19 @@
 package de.zarncke.lib.lang.reflect;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 
 import javax.annotation.Nonnull;
 
 import de.zarncke.lib.coll.L;
 import de.zarncke.lib.err.Warden;
-import de.zarncke.lib.lang.ClassTools;
 import de.zarncke.lib.value.Typed;
 import de.zarncke.lib.value.Value;
 
 /**
  * A Reflected Object with convenience methods.
  * For easy reflection use.
+ * Methods and constructors are resolved once per signature and called via {@link Invoker}.
  *
  * @author Gunnar Zarncke <gunnar@zarncke.de>
  */
@@ -68,33 +65,24 @@ public class Reflect implements Value<Object>, Typed {
 			objs[i] = param;
 			classes[i] = param == null ? Object.class : param.getClass();
 		}
-		Constructor method;
+		Invoker method;
 		try {
-			method = ClassTools.getBestConstructor(clazz, classes);
+			method = Invoker.forConstructor(clazz, classes);
 		} catch (NoSuchMethodException e) {
 			throw Warden.spot(new IllegalArgumentException(clazz.getName() + "() not found", e));
 		}
 		Object res;
 		try {
-			res = method.newInstance(objs);
+			res = method.invoke(null, objs);
 		} catch (IllegalAccessException e) {
 			throw Warden.spot(new IllegalArgumentException(clazz.getName() + "() is not accessible", e));
 
 		} catch (InstantiationException e) {
 			throw Warden.spot(new IllegalArgumentException(clazz.getName() + "() is not instantiable", e));
-		} catch (InvocationTargetException e) {
-			Throwable t = e.getCause();
-			if (t instanceof RuntimeException) {
-				throw Warden.spot((RuntimeException) t);
-			}
-			if (t instanceof Error) {
-				throw Warden.spot((Error) t);
-			}
-			throw Warden.spot(new RuntimeException(
-					"reflection yielded checked exception which is wrapped as unchecked", e)); // NOPMD generic reflect
-		} catch (IllegalArgumentException e) {
-			// Warden.disregard(e);
+		} catch (Invoker.ArgumentMismatchException e) {
 			throw Warden.spot(new RuntimeException("", e));
+		} catch (Throwable t) { // NOPMD generic reflect
+			throw rethrow(t);
 		}
 		return new Reflect(res, clazz);
 	}
@@ -187,9 +175,9 @@ public class Reflect implements Value<Object>, Typed {
 			objs[i] = param;
 			classes[i] = param == null ? Object.class : param.getClass();
 		}
-		Method method;
+		Invoker method;
 		try {
-			method = ClassTools.getBestMethod(clazz, methodName, self == null, classes);
+			method = Invoker.forMethod(clazz, methodName, self == null, classes);
 		} catch (NoSuchMethodException e) {
 			throw Warden.spot(new IllegalArgumentException(clazz.getName() + "." + methodName + L.l(classes)
 					+ " not found", e));
@@ -201,19 +189,22 @@ public class Reflect implements Value<Object>, Typed {
 			throw Warden.spot(new IllegalArgumentException(clazz.getName() + "." + methodName + L.l(classes)
 					+ " is not accessible", e));
 
-		} catch (InvocationTargetException e) {
-			Throwable t = e.getCause();
-			if (t instanceof RuntimeException) {
-				throw Warden.spot((RuntimeException) t);
-			}
-			if (t instanceof Error) {
-				throw Warden.spot((Error) t);
-			}
-			throw Warden.spot(new RuntimeException(
-					"reflection yielded checked exception which is wrapped as unchecked", e)); // NOPMD generic reflect
+		} catch (Throwable t) { // NOPMD generic reflect
+			throw rethrow(t);
 		}
 		// return new Reflect(res, res == null ? method.getReturnType() : res.getClass());
 		return new Reflect(res, method.getReturnType());
 	}
 
+	private static RuntimeException rethrow(final Throwable t) {
+		if (t instanceof RuntimeException) {
+			throw Warden.spot((RuntimeException) t);
+		}
+		if (t instanceof Error) {
+			throw Warden.spot((Error) t);
+		}
+		throw Warden.spot(new RuntimeException(
+				"reflection yielded checked exception which is wrapped as unchecked", t)); // NOPMD generic reflect
+	}
+
 }
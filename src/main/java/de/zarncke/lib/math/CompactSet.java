@@ -1,88 +1,570 @@
 package de.zarncke.lib.math;
 
-import java.util.ArrayList;
-import java.util.BitSet;
-import java.util.Collection;
-import java.util.Collections;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-import de.zarncke.lib.coll.EmptyIterator;
 import de.zarncke.lib.err.Warden;
 import de.zarncke.lib.region.Binary;
-import de.zarncke.lib.region.Binary.Decoder;
 import de.zarncke.lib.region.Region;
 import de.zarncke.lib.region.RegionUtil;
 
 /**
- * A Set which uses a compact, but slow encoding for its elements.
- * Compact means smaller than an ArrayList or smaller than all the bytes of the stored elements.
- * Slow means insert is expensive (comparable to HashSet-reorg).
- * Lookup is comparable to binary search.
- * Can only store {@link Binary} objects.
- * The method is somewhat comparable to a binary decision diagram without reusing nodes.
+ * An immutable set of non-negative longs in Elias-Fano encoding.
+ * <ul>
+ * <li>Needs about 2 + log2(max/size) bits per element, e.g. less than 2 bytes per element for a million ids below a
+ * billion (compare with more than 50 bytes per element of a HashSet&lt;Long&gt;).</li>
+ * <li>{@link #contains(long)}, {@link #rank(long)} and {@link #select(long)} take constant time plus a scan of some
+ * words. Sampled positions of the ones and zeros of the upper bits are part of the encoding.</li>
+ * <li>{@link #union(CompactSet)} and {@link #intersection(CompactSet)} merge in linear time; intersections with much
+ * smaller sets probe instead.</li>
+ * <li>The whole set is one sequence of longs which is {@link #encode() encoded} as is. {@link #decode(Region)} of a
+ * Region backed by a (mapped) ByteBuffer uses the buffer directly without copying.</li>
+ * </ul>
+ * Create with {@link #of(long...)} or a {@link Builder}.
  *
  * @author Gunnar Zarncke
- * @param <T> the specific binary object type
  */
-public class CompactSet<T extends Binary> {
-	private Decoder<T> decoder;
+public final class CompactSet implements Iterable<Long>, Binary {
+	private static final long MAGIC = 0x4546534554000001L;
 
-	private final Region encodedData = RegionUtil.EMPTY;
+	private static final int HEADER = 8;
+	private static final int H_MAGIC = 0;
+	private static final int H_SIZE = 1;
+	private static final int H_MAX = 2;
+	private static final int H_LOW_BITS = 3;
+	private static final int H_LOWER_WORDS = 4;
+	private static final int H_UPPER_WORDS = 5;
+	private static final int H_ONE_SAMPLES = 6;
+	private static final int H_ZERO_SAMPLES = 7;
 
-	public CompactSet(final Binary.Decoder<T> decoder) {
-		this.decoder = decoder;
+	/**
+	 * Every 2^SAMPLE_SHIFT-th one and zero of the upper bits is sampled.
+	 */
+	private static final int SAMPLE_SHIFT = 8;
+
+	/**
+	 * Intersections probe the larger set if it is this many times larger.
+	 */
+	private static final int PROBE_FACTOR = 32;
+
+	public static final CompactSet EMPTY = encode(new long[0], 0);
+
+	public static final Binary.Decoder<CompactSet> DECODER = new Binary.Decoder<CompactSet>() {
+		@Override
+		public CompactSet decode(final Region data) {
+			return CompactSet.decode(data);
+		}
+	};
+
+	/**
+	 * Collects elements in any order.
+	 */
+	public static final class Builder {
+		private long[] values = new long[16];
+		private int count;
+		private boolean sorted = true;
+
+		public Builder add(final long value) {
+			if (value < 0) {
+				throw Warden.spot(new IllegalArgumentException("only non-negative values allowed, not " + value));
+			}
+			if (this.count == this.values.length) {
+				this.values = Arrays.copyOf(this.values, this.count * 2);
+			}
+			if (this.count > 0 && value < this.values[this.count - 1]) {
+				this.sorted = false;
+			}
+			this.values[this.count++] = value;
+			return this;
+		}
+
+		public Builder addAll(final Iterable<? extends Number> values) {
+			for (Number n : values) {
+				add(n.longValue());
+			}
+			return this;
+		}
+
+		public CompactSet build() {
+			if (!this.sorted) {
+				Arrays.sort(this.values, 0, this.count);
+			}
+			int n = 0;
+			for (int i = 0; i < this.count; i++) {
+				if (n == 0 || this.values[i] != this.values[n - 1]) {
+					this.values[n++] = this.values[i];
+				}
+			}
+			this.count = n;
+			this.sorted = true;
+			return encode(this.values, n);
+		}
 	}
 
-	public CompactSet() {
-		this(null);
+	/**
+	 * Reads the elements in increasing order.
+	 */
+	private final class Cursor implements Iterator<Long> {
+		private long position;
+		private long index;
+
+		@Override
+		public boolean hasNext() {
+			return this.index < CompactSet.this.size;
+		}
+
+		long nextLong() {
+			if (this.index >= CompactSet.this.size) {
+				throw Warden.spot(new NoSuchElementException());
+			}
+			int w = (int) (this.position >>> 6);
+			long word = upper(w) & -1L << (this.position & 63);
+			while (word == 0) {
+				word = upper(++w);
+			}
+			long p = ((long) w << 6) + Long.numberOfTrailingZeros(word);
+			long value = p - this.index << CompactSet.this.lowBits | low(this.index);
+			this.position = p + 1;
+			this.index++;
+			return value;
+		}
+
+		@Override
+		public Long next() {
+			return Long.valueOf(nextLong());
+		}
+
+		@Override
+		public void remove() {
+			throw Warden.spot(new UnsupportedOperationException("immutable"));
+		}
 	}
 
-	public void add(final T element) {
+	private final LongBuffer data;
+
+	private final long size;
+	private final long max;
+	private final int lowBits;
+	private final long lowMask;
+	private final int lowerOffset;
+	private final int upperOffset;
+	private final int oneSamplesOffset;
+	private final int zeroSamplesOffset;
 
+	private CompactSet(final LongBuffer data) {
+		this.data = data;
+		this.size = data.get(H_SIZE);
+		this.max = data.get(H_MAX);
+		this.lowBits = (int) data.get(H_LOW_BITS);
+		this.lowMask = (1L << this.lowBits) - 1;
+		this.lowerOffset = HEADER;
+		this.upperOffset = this.lowerOffset + (int) data.get(H_LOWER_WORDS);
+		this.oneSamplesOffset = this.upperOffset + (int) data.get(H_UPPER_WORDS);
+		this.zeroSamplesOffset = this.oneSamplesOffset + (int) data.get(H_ONE_SAMPLES);
 	}
 
-	public void addAll(final Collection<T> elements) {
-		ArrayList<Region> regionsToBeSorted = new ArrayList<Region>(elements.size());
-		int total = 0;
-		for (T elem : elements) {
-			Region enc = elem.encode();
-			regionsToBeSorted.add(enc);
-			total += enc.length();
+	/**
+	 * @param values >= 0 in any order, duplicates allowed
+	 * @return CompactSet of the values
+	 */
+	public static CompactSet of(final long... values) {
+		Builder builder = new Builder();
+		for (long v : values) {
+			builder.add(v);
 		}
-		Collections.sort(regionsToBeSorted, Region.LEXICOGRAPHICALLY);
-		ArrayList<BitSet> bitSets = new ArrayList<BitSet>(elements.size());
-		for (Region r : regionsToBeSorted) {
-			// horribly slow, but simple
-			BitSet bs = new BitSet((int) r.length() * 8);
-			for (int i = 0; i < r.length(); i++) {
-				byte b = r.get(i);
-				for (int bit = 0; bit < 8; bit++) {
-					if ((b & 1 << bit) != 0) {
-						bs.set(i * 8 + bit);
-					}
+		return builder.build();
+	}
+
+	/**
+	 * @param values strictly increasing and non-negative
+	 * @param n number of values to use
+	 */
+	private static CompactSet encode(final long[] values, final int n) {
+		long max = n == 0 ? -1 : values[n - 1];
+		int lowBits = 0;
+		if (n > 0 && max / n > 0) {
+			lowBits = 63 - Long.numberOfLeadingZeros(max / n);
+		}
+		long buckets = n == 0 ? 0 : (max >>> lowBits) + 1;
+		long upperBits = n + buckets;
+		int lowerWords = words((long) n * lowBits);
+		int upperWords = words(upperBits);
+		int oneSamples = samples(n);
+		int zeroSamples = samples(buckets);
+
+		long[] words = new long[HEADER + lowerWords + upperWords + oneSamples + zeroSamples];
+		words[H_MAGIC] = MAGIC;
+		words[H_SIZE] = n;
+		words[H_MAX] = max;
+		words[H_LOW_BITS] = lowBits;
+		words[H_LOWER_WORDS] = lowerWords;
+		words[H_UPPER_WORDS] = upperWords;
+		words[H_ONE_SAMPLES] = oneSamples;
+		words[H_ZERO_SAMPLES] = zeroSamples;
+
+		int upperOffset = HEADER + lowerWords;
+		int onesOffset = upperOffset + upperWords;
+		int zerosOffset = onesOffset + oneSamples;
+		long lowMask = (1L << lowBits) - 1;
+		long bucket = 0;
+		for (int i = 0; i < n; i++) {
+			if (lowBits > 0) {
+				long bit = (long) i * lowBits;
+				int w = HEADER + (int) (bit >>> 6);
+				int o = (int) (bit & 63);
+				long low = values[i] & lowMask;
+				words[w] |= low << o;
+				if (o + lowBits > 64) {
+					words[w + 1] |= low >>> 64 - o;
+				}
+			}
+			long high = values[i] >>> lowBits;
+			// the zeros ending the buckets before this element
+			while (bucket < high) {
+				if ((bucket & (1 << SAMPLE_SHIFT) - 1) == 0) {
+					words[zerosOffset + (int) (bucket >>> SAMPLE_SHIFT)] = bucket + i;
 				}
+				bucket++;
+			}
+			long p = high + i;
+			words[upperOffset + (int) (p >>> 6)] |= 1L << (p & 63);
+			if ((i & (1 << SAMPLE_SHIFT) - 1) == 0) {
+				words[onesOffset + (i >>> SAMPLE_SHIFT)] = p;
 			}
-			bitSets.add(bs);
 		}
+		while (bucket < buckets) {
+			if ((bucket & (1 << SAMPLE_SHIFT) - 1) == 0) {
+				words[zerosOffset + (int) (bucket >>> SAMPLE_SHIFT)] = bucket + n;
+			}
+			bucket++;
+		}
+		return new CompactSet(LongBuffer.wrap(words));
+	}
+
+	private static int words(final long bits) {
+		long w = bits + 63 >>> 6;
+		if (w > Integer.MAX_VALUE - HEADER) {
+			throw Warden.spot(new IllegalArgumentException("too large: " + bits + " bits"));
+		}
+		return (int) w;
+	}
+
+	private static int samples(final long count) {
+		return (int) (count + (1 << SAMPLE_SHIFT) - 1 >>> SAMPLE_SHIFT);
+	}
+
+	/**
+	 * Uses the bytes of the Region directly if it is backed by a ByteBuffer (e.g. a mapped file), otherwise copies
+	 * them.
+	 *
+	 * @param region as returned by {@link #encode()}
+	 * @return CompactSet
+	 * @throws IllegalArgumentException if the Region contains no CompactSet
+	 */
+	public static CompactSet decode(final Region region) {
+		ByteBuffer bytes = RegionUtil.asByteBuffer(region);
+		if (bytes.remaining() % 8 != 0 || bytes.remaining() < HEADER * 8) {
+			throw Warden.spot(new IllegalArgumentException("not an encoded CompactSet of length " + bytes.remaining()));
+		}
+		LongBuffer words = bytes.asLongBuffer();
+		if (words.get(H_MAGIC) != MAGIC) {
+			throw Warden.spot(new IllegalArgumentException("not an encoded CompactSet (magic "
+					+ Long.toHexString(words.get(H_MAGIC)) + ")"));
+		}
+		long expected = HEADER;
+		for (int i = H_LOWER_WORDS; i <= H_ZERO_SAMPLES; i++) {
+			expected += words.get(i);
+		}
+		if (expected != words.capacity()) {
+			throw Warden.spot(new IllegalArgumentException("encoded CompactSet needs " + expected * 8
+					+ " bytes but has " + words.capacity() * 8));
+		}
+		return new CompactSet(words);
+	}
+
+	/**
+	 * @return a Region of {@link #getSizeInBytes()} bytes (big endian longs)
+	 */
+	@Override
+	public Region encode() {
+		if (getSizeInBytes() > Integer.MAX_VALUE) {
+			throw Warden.spot(new IllegalStateException("too large to encode into an array: " + this));
+		}
+		ByteBuffer bytes = ByteBuffer.allocate((int) getSizeInBytes());
+		LongBuffer source = this.data.duplicate();
+		source.clear();
+		bytes.asLongBuffer().put(source);
+		return RegionUtil.asRegion(bytes.array());
+	}
+
+	private long upper(final int word) {
+		return this.data.get(this.upperOffset + word);
+	}
+
+	private long low(final long index) {
+		if (this.lowBits == 0) {
+			return 0;
+		}
+		long bit = index * this.lowBits;
+		int w = this.lowerOffset + (int) (bit >>> 6);
+		int o = (int) (bit & 63);
+		long v = this.data.get(w) >>> o;
+		if (o + this.lowBits > 64) {
+			v |= this.data.get(w + 1) << 64 - o;
+		}
+		return v & this.lowMask;
+	}
 
-		byte[] dataBuffer = new byte[total];
+	private boolean isUpperSet(final long position) {
+		return (upper((int) (position >>> 6)) & 1L << (position & 63)) != 0;
+	}
 
-		process(bitSets, 0, regionsToBeSorted.size(), dataBuffer);
+	/**
+	 * @return position of the one with the given rank in the upper bits
+	 */
+	private long selectOne(final long rank) {
+		long p = this.data.get(this.oneSamplesOffset + (int) (rank >>> SAMPLE_SHIFT));
+		long remaining = rank & (1 << SAMPLE_SHIFT) - 1;
+		int w = (int) (p >>> 6);
+		long word = upper(w) & -1L << (p & 63);
+		while (true) {
+			int c = Long.bitCount(word);
+			if (remaining < c) {
+				return ((long) w << 6) + selectInWord(word, (int) remaining);
+			}
+			remaining -= c;
+			word = upper(++w);
+		}
 	}
 
-	private void process(final ArrayList<BitSet> bitSets, final int i, final int size, final byte[] dataBuffer) {
+	/**
+	 * @return position of the zero with the given rank in the upper bits
+	 */
+	private long selectZero(final long rank) {
+		long p = this.data.get(this.zeroSamplesOffset + (int) (rank >>> SAMPLE_SHIFT));
+		long remaining = rank & (1 << SAMPLE_SHIFT) - 1;
+		int w = (int) (p >>> 6);
+		long word = ~upper(w) & -1L << (p & 63);
+		while (true) {
+			int c = Long.bitCount(word);
+			if (remaining < c) {
+				return ((long) w << 6) + selectInWord(word, (int) remaining);
+			}
+			remaining -= c;
+			word = ~upper(++w);
+		}
+	}
 
+	private static int selectInWord(final long word, final int rank) {
+		long w = word;
+		for (int i = 0; i < rank; i++) {
+			w &= w - 1;
+		}
+		return Long.numberOfTrailingZeros(w);
 	}
 
-	public boolean contains(final T element) {
-		Region r = element.encode();
+	/**
+	 * @return position of the first element of the bucket in the upper bits
+	 */
+	private long bucketStart(final long bucket) {
+		return bucket == 0 ? 0 : selectZero(bucket - 1) + 1;
+	}
+
+	public boolean contains(final long value) {
+		if (value < 0 || value > this.max) {
+			return false;
+		}
+		long high = value >>> this.lowBits;
+		long low = value & this.lowMask;
+		long p = bucketStart(high);
+		long i = p - high;
+		while (isUpperSet(p)) {
+			long l = low(i);
+			if (l >= low) {
+				return l == low;
+			}
+			p++;
+			i++;
+		}
 		return false;
 	}
 
-	public Iterator<T> iterator() {
-		if (this.decoder == null) {
-			throw Warden.spot(new UnsupportedOperationException("iteration only works when a decoder is set"));
+	/**
+	 * @param value any
+	 * @return number of elements less than the value
+	 */
+	public long rank(final long value) {
+		if (value <= 0) {
+			return 0;
+		}
+		if (value > this.max) {
+			return this.size;
+		}
+		long high = value >>> this.lowBits;
+		long low = value & this.lowMask;
+		long p = bucketStart(high);
+		long i = p - high;
+		while (isUpperSet(p) && low(i) < low) {
+			p++;
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @param rank 0..size-1
+	 * @return the element with the given number of smaller elements
+	 */
+	public long select(final long rank) {
+		if (rank < 0 || rank >= this.size) {
+			throw Warden.spot(new IndexOutOfBoundsException("rank " + rank + " not in 0.." + (this.size - 1)));
+		}
+		return selectOne(rank) - rank << this.lowBits | low(rank);
+	}
+
+	public long size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @return largest element; -1 if empty
+	 */
+	public long getMax() {
+		return this.max;
+	}
+
+	public long getSizeInBytes() {
+		return this.data.capacity() * 8L;
+	}
+
+	/**
+	 * @return elements in increasing order
+	 */
+	@Override
+	public Iterator<Long> iterator() {
+		return new Cursor();
+	}
+
+	/**
+	 * @return elements in increasing order
+	 */
+	public long[] toArray() {
+		if (this.size > Integer.MAX_VALUE) {
+			throw Warden.spot(new IllegalStateException("too many elements for an array: " + this.size));
+		}
+		long[] values = new long[(int) this.size];
+		Cursor c = new Cursor();
+		for (int i = 0; i < values.length; i++) {
+			values[i] = c.nextLong();
+		}
+		return values;
+	}
+
+	public CompactSet union(final CompactSet other) {
+		if (other.isEmpty()) {
+			return this;
+		}
+		if (isEmpty()) {
+			return other;
+		}
+		long[] values = new long[checkedSum(this.size, other.size)];
+		Cursor a = new Cursor();
+		Cursor b = other.new Cursor();
+		long va = a.nextLong();
+		long vb = b.nextLong();
+		int n = 0;
+		while (va >= 0 || vb >= 0) {
+			if (vb < 0 || va >= 0 && va < vb) {
+				values[n++] = va;
+				va = a.hasNext() ? a.nextLong() : -1;
+			} else if (va < 0 || vb < va) {
+				values[n++] = vb;
+				vb = b.hasNext() ? b.nextLong() : -1;
+			} else {
+				values[n++] = va;
+				va = a.hasNext() ? a.nextLong() : -1;
+				vb = b.hasNext() ? b.nextLong() : -1;
+			}
+		}
+		return encode(values, n);
+	}
+
+	public CompactSet intersection(final CompactSet other) {
+		if (isEmpty() || other.isEmpty()) {
+			return EMPTY;
+		}
+		CompactSet small = this.size <= other.size ? this : other;
+		CompactSet large = small == this ? other : this;
+		long[] values = new long[checkedSum(small.size, 0)];
+		int n = 0;
+		Cursor a = small.new Cursor();
+		if (small.size * PROBE_FACTOR < large.size) {
+			while (a.hasNext()) {
+				long v = a.nextLong();
+				if (large.contains(v)) {
+					values[n++] = v;
+				}
+			}
+		} else {
+			Cursor b = large.new Cursor();
+			long va = a.nextLong();
+			long vb = b.nextLong();
+			while (true) {
+				if (va == vb) {
+					values[n++] = va;
+				}
+				if (va <= vb) {
+					if (!a.hasNext()) {
+						break;
+					}
+					va = a.nextLong();
+				} else {
+					if (!b.hasNext()) {
+						break;
+					}
+					vb = b.nextLong();
+				}
+			}
+		}
+		return encode(values, n);
+	}
+
+	private static int checkedSum(final long a, final long b) {
+		if (a + b > Integer.MAX_VALUE - 8) {
+			throw Warden.spot(new IllegalArgumentException("result may have too many elements: " + (a + b)));
 		}
-		return EmptyIterator.getInstance();
+		return (int) (a + b);
+	}
+
+	/**
+	 * Equal sets have equal encodings.
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CompactSet)) {
+			return false;
+		}
+		CompactSet other = (CompactSet) obj;
+		return this.size == other.size && this.max == other.max && this.data.equals(other.data);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (this.size * 31 + this.max);
+	}
+
+	@Override
+	public String toString() {
+		return "CompactSet of " + this.size + " elements up to " + this.max + " in " + getSizeInBytes() + " bytes";
 	}
 }
@@ -5,7 +5,6 @@ import java.util.Collection;
 import java.util.Currency;
 
 import de.zarncke.lib.err.Warden;
-import de.zarncke.lib.util.Misc;
 
 /**
  * Mutable Money object.
@@ -15,10 +14,7 @@ import de.zarncke.lib.util.Misc;
 public class Cash implements Money {
 
 	public static MAmount plus(final Money a, final Money b) {
-		if (!Misc.equals(a.getCurrency(), b.getCurrency())) {
-			throw Warden.spot(new IllegalArgumentException("cannot add Money of different currencies " + a + "+" + b));
-		}
-		return new MAmount(a.getAmount().add(b.getAmount()), a.getCurrency());
+		return MAmount.of(a).plus(b);
 	}
 
 	public static MAmount times(final Money a, final int factor) {
@@ -28,14 +24,11 @@ public class Cash implements Money {
 		if (factor == 1) {
 			return MAmount.of(a);
 		}
-		if (factor == -1) {
-			return new MAmount(a.getAmount().negate(), a.getCurrency());
-		}
-		return new MAmount(a.getAmount().multiply(BigDecimal.valueOf(factor)), a.getCurrency());
+		return MAmount.of(a).times(factor);
 	}
 
 	public static MAmount negate(final Money a) {
-		return new MAmount(a.getAmount().negate(), a.getCurrency());
+		return MAmount.of(a).negate();
 	}
 
 	public static Cash with(final MAmount... amounts) {
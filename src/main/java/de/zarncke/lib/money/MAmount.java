@@ -10,20 +10,74 @@ import de.zarncke.lib.err.Warden;
 
 /**
  * Immutable Money object.
+ * Amounts whose unscaled value fits into a long (with a scale of at most {@link #MAX_COMPACT_SCALE}) are kept compact
+ * as long units without any {@link BigDecimal}. Arithmetic of compact amounts is done on longs with overflow checks and
+ * falls back to BigDecimal transparently. Results are the same as those of the corresponding BigDecimal operations
+ * including their scale.
  *
  * @author Gunnar Zarncke
  */
 public class MAmount implements Money {
+	/**
+	 * Highest scale of compact amounts.
+	 */
+	public static final int MAX_COMPACT_SCALE = 18;
+
+	private static final long[] POWERS_OF_TEN = new long[MAX_COMPACT_SCALE + 1];
+	private static final long[] MAX_FOR_POWER = new long[MAX_COMPACT_SCALE + 1];
+	static {
+		long p = 1;
+		for (int i = 0; i <= MAX_COMPACT_SCALE; i++) {
+			POWERS_OF_TEN[i] = p;
+			MAX_FOR_POWER[i] = Long.MAX_VALUE / p;
+			p *= 10;
+		}
+	}
 
 	private final Currency currency;
+	// value is units * 10^-scale if amount is null
+	private final long units;
+	private final int scale;
 	private final BigDecimal amount;
+	// lazily created BigDecimal of compact amounts
+	private transient BigDecimal decimal;
 
 	public static MAmount of(final long major, final int minor, final Currency currency) {
+		int digits = currency.getDefaultFractionDigits();
+		if (digits >= 0 && digits <= MAX_COMPACT_SCALE && fits(major, digits)) {
+			long majorUnits = major * POWERS_OF_TEN[digits];
+			long units = majorUnits + minor;
+			if (!overflows(majorUnits, minor, units)) {
+				return new MAmount(units, digits, currency);
+			}
+		}
 		BigDecimal amount = new BigDecimal(major).add(new BigDecimal(minor).scaleByPowerOfTen(-currency
 				.getDefaultFractionDigits()));
 		return of(amount, currency);
 	}
 
+	/**
+	 * @param units count of minor units
+	 * @param currency whose {@link Currency#getDefaultFractionDigits() fraction digits} determine the scale
+	 * @return MAmount
+	 */
+	public static MAmount ofUnits(final long units, final Currency currency) {
+		return ofUnits(units, Math.max(0, currency.getDefaultFractionDigits()), currency);
+	}
+
+	/**
+	 * @param units unscaled value
+	 * @param scale of the units; 0 to {@link #MAX_COMPACT_SCALE}
+	 * @param currency of the amount
+	 * @return MAmount of units * 10^-scale
+	 */
+	public static MAmount ofUnits(final long units, final int scale, final Currency currency) {
+		if (scale < 0 || scale > MAX_COMPACT_SCALE) {
+			throw Warden.spot(new IllegalArgumentException("scale must be 0.." + MAX_COMPACT_SCALE + " but is " + scale));
+		}
+		return new MAmount(units, scale, currency);
+	}
+
 	public static MAmount of(final Money money) {
 		return money instanceof MAmount ? (MAmount) money : of(money.getAmount(), money.getCurrency());
 	}
@@ -45,16 +99,34 @@ public class MAmount implements Money {
 		if (amount instanceof Double || amount instanceof Float) {
 			return new MAmount(new BigDecimal(amount.doubleValue()), currency);
 		}
-		return new MAmount(new BigDecimal(amount.longValue()), currency);
+		return new MAmount(amount.longValue(), 0, currency);
 	}
 
 	public static MAmount zero(final Currency currency) {
-		return new MAmount(BigDecimal.ZERO, currency);
+		return new MAmount(0, 0, currency);
 	}
 
 	protected MAmount(final BigDecimal amount, final Currency currency) {
-		this.amount = amount;
 		this.currency = currency;
+		int s = amount.scale();
+		if (s >= 0 && s <= MAX_COMPACT_SCALE
+				&& (amount.precision() <= MAX_COMPACT_SCALE || amount.unscaledValue().bitLength() < Long.SIZE)) {
+			this.units = amount.unscaledValue().longValue();
+			this.scale = s;
+			this.amount = null;
+			this.decimal = amount;
+		} else {
+			this.units = 0;
+			this.scale = 0;
+			this.amount = amount;
+		}
+	}
+
+	private MAmount(final long units, final int scale, final Currency currency) {
+		this.currency = currency;
+		this.units = units;
+		this.scale = scale;
+		this.amount = null;
 	}
 
 	@Override
@@ -64,25 +136,124 @@ public class MAmount implements Money {
 
 	@Override
 	public BigDecimal getAmount() {
-		return this.amount;
+		if (this.amount != null) {
+			return this.amount;
+		}
+		BigDecimal d = this.decimal;
+		if (d == null) {
+			d = BigDecimal.valueOf(this.units, this.scale);
+			this.decimal = d;
+		}
+		return d;
+	}
+
+	/**
+	 * @return true if the amount is represented by long units
+	 */
+	public boolean isCompact() {
+		return this.amount == null;
+	}
+
+	/**
+	 * @return unscaled value of a {@link #isCompact() compact} amount
+	 * @throws ArithmeticException if not compact
+	 */
+	public long getUnits() {
+		if (this.amount != null) {
+			throw Warden.spot(new ArithmeticException(this + " is not compact"));
+		}
+		return this.units;
+	}
+
+	/**
+	 * @return scale of the amount (as of {@link BigDecimal#scale()})
+	 */
+	public int getScale() {
+		return this.amount == null ? this.scale : this.amount.scale();
+	}
+
+	/**
+	 * @param other of the same currency
+	 * @return sum; scale as of {@link BigDecimal#add(BigDecimal)}
+	 */
+	public MAmount plus(final Money other) {
+		if (!sameCurrency(other)) {
+			throw Warden.spot(new IllegalArgumentException("cannot add Money of different currencies " + this + "+"
+					+ other));
+		}
+		if (this.amount == null && other instanceof MAmount && ((MAmount) other).amount == null) {
+			MAmount o = (MAmount) other;
+			int s = Math.max(this.scale, o.scale);
+			if (fits(this.units, s - this.scale) && fits(o.units, s - o.scale)) {
+				long a = this.units * POWERS_OF_TEN[s - this.scale];
+				long b = o.units * POWERS_OF_TEN[s - o.scale];
+				long r = a + b;
+				if (!overflows(a, b, r)) {
+					return new MAmount(r, s, this.currency);
+				}
+			}
+		}
+		return new MAmount(getAmount().add(other.getAmount()), this.currency);
+	}
+
+	/**
+	 * @param other of the same currency
+	 * @return difference; scale as of {@link BigDecimal#subtract(BigDecimal)}
+	 */
+	public MAmount minus(final Money other) {
+		return plus(MAmount.of(other).negate());
+	}
+
+	/**
+	 * @param factor any
+	 * @return product; scale as of {@link BigDecimal#multiply(BigDecimal)}
+	 */
+	public MAmount times(final long factor) {
+		if (this.amount == null) {
+			long r = this.units * factor;
+			long ax = Math.abs(this.units);
+			long ay = Math.abs(factor);
+			if ((ax | ay) >>> 31 == 0 || (factor == 0 || r / factor == this.units)
+					&& !(this.units == Long.MIN_VALUE && factor == -1)) {
+				return new MAmount(r, this.scale, this.currency);
+			}
+		}
+		return new MAmount(getAmount().multiply(BigDecimal.valueOf(factor)), this.currency);
+	}
+
+	/**
+	 * @return MAmount with opposite sign
+	 */
+	public MAmount negate() {
+		if (this.amount == null && this.units != Long.MIN_VALUE) {
+			return new MAmount(-this.units, this.scale, this.currency);
+		}
+		return new MAmount(getAmount().negate(), this.currency);
+	}
+
+	/**
+	 * @return -1, 0 or 1
+	 */
+	public int signum() {
+		return this.amount == null ? Long.signum(this.units) : this.amount.signum();
 	}
 
 	public String print(final Locale locale) {
 		NumberFormat nf = NumberFormat.getCurrencyInstance(locale);
 		nf.setCurrency(this.currency);
-		return nf.format(this.amount);
+		return nf.format(getAmount());
 	}
 
 	@Override
 	public String toString() {
-		return this.amount + " " + this.currency;
+		return getAmount() + " " + this.currency;
 	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + (this.amount == null ? 0 : this.amount.hashCode());
+		result = prime * result + getAmount().hashCode();
 		result = prime * result + (this.currency == null ? 0 : this.currency.hashCode());
 		return result;
 	}
@@ -99,7 +270,7 @@ public class MAmount implements Money {
 			return false;
 		}
 		MAmount other = (MAmount) obj;
-		if (this.amount.compareTo(other.amount) != 0) {
+		if (compareAmount(other) != 0) {
 			return false;
 		}
 		if (this.currency == null) {
@@ -117,6 +288,47 @@ public class MAmount implements Money {
 		if (!this.currency.equals(o.getCurrency())) {
 			throw Warden.spot(new IllegalArgumentException("incomparable currencies " + this + "," + o));
 		}
-		return this.amount.compareTo(o.getAmount());
+		if (o instanceof MAmount) {
+			return compareAmount((MAmount) o);
+		}
+		return getAmount().compareTo(o.getAmount());
+	}
+
+	private int compareAmount(final MAmount o) {
+		if (this.amount == null && o.amount == null) {
+			if (this.scale == o.scale) {
+				return this.units < o.units ? -1 : this.units == o.units ? 0 : 1;
+			}
+			int s = Math.max(this.scale, o.scale);
+			if (fits(this.units, s - this.scale) && fits(o.units, s - o.scale)) {
+				long a = this.units * POWERS_OF_TEN[s - this.scale];
+				long b = o.units * POWERS_OF_TEN[s - o.scale];
+				return a < b ? -1 : a == b ? 0 : 1;
+			}
+		}
+		return getAmount().compareTo(o.getAmount());
+	}
+
+	private boolean sameCurrency(final Money other) {
+		return this.currency == null ? other.getCurrency() == null : this.currency.equals(other.getCurrency());
+	}
+
+	static long powerOfTen(final int power) {
+		return POWERS_OF_TEN[power];
+	}
+
+	/**
+	 * @return true if value * 10^power fits into a long
+	 */
+	static boolean fits(final long value, final int power) {
+		long max = MAX_FOR_POWER[power];
+		return value <= max && value >= -max;
+	}
+
+	/**
+	 * @return true if a + b = r overflowed
+	 */
+	static boolean overflows(final long a, final long b, final long r) {
+		return ((a ^ r) & (b ^ r)) < 0;
 	}
 }
@@ -0,0 +1,145 @@
+package de.zarncke.lib.money;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Currency;
+
+import de.zarncke.lib.err.Warden;
+
+/**
+ * Aggregation of amounts kept in columns of long units (unscaled values of one currency with a common scale).
+ * The loops allocate nothing; sums are accumulated with 128 bits and only fall back to {@link BigDecimal} if the
+ * total doesn't fit into a long.
+ *
+ * @author Gunnar Zarncke
+ */
+public final class MoneyColumns {
+	private MoneyColumns() {
+		// helper
+	}
+
+	/**
+	 * @param money any
+	 * @param scale of the units
+	 * @return unscaled value of the amount at the scale
+	 * @throws ArithmeticException if the amount cannot be represented exactly
+	 */
+	public static long toUnits(final Money money, final int scale) {
+		if (money instanceof MAmount) {
+			MAmount m = (MAmount) money;
+			if (m.isCompact() && m.getScale() <= scale && scale <= MAmount.MAX_COMPACT_SCALE
+					&& MAmount.fits(m.getUnits(), scale - m.getScale())) {
+				return m.getUnits() * MAmount.powerOfTen(scale - m.getScale());
+			}
+		}
+		try {
+			return money.getAmount().movePointRight(scale).longValueExact();
+		} catch (ArithmeticException e) {
+			throw Warden.spot(new ArithmeticException(money + " cannot be represented with scale " + scale));
+		}
+	}
+
+	/**
+	 * @param amounts all of the same currency
+	 * @param scale of the units
+	 * @return column of the unscaled values
+	 * @throws ArithmeticException if an amount cannot be represented exactly
+	 */
+	public static long[] toUnits(final Collection<? extends Money> amounts, final int scale) {
+		long[] units = new long[amounts.size()];
+		int i = 0;
+		for (Money money : amounts) {
+			units[i++] = toUnits(money, scale);
+		}
+		return units;
+	}
+
+	/**
+	 * @param units column of minor units
+	 * @param currency whose {@link Currency#getDefaultFractionDigits() fraction digits} are the scale
+	 * @return total
+	 */
+	public static MAmount sum(final long[] units, final Currency currency) {
+		return sum(units, 0, units.length, Math.max(0, currency.getDefaultFractionDigits()), currency);
+	}
+
+	/**
+	 * @param units column
+	 * @param from first index (inclusive)
+	 * @param to last index (exclusive)
+	 * @param scale of the units
+	 * @param currency of the units
+	 * @return total of the range
+	 */
+	public static MAmount sum(final long[] units, final int from, final int to, final int scale, final Currency currency) {
+		long lo = 0;
+		long hi = 0;
+		for (int i = from; i < to; i++) {
+			long x = units[i];
+			long r = lo + x;
+			// sign extension of x plus unsigned carry of the low word
+			hi += (x >> 63) + (((lo & x) | ((lo | x) & ~r)) >>> 63);
+			lo = r;
+		}
+		if (hi == lo >> 63) {
+			return MAmount.ofUnits(lo, scale, currency);
+		}
+		BigInteger low = BigInteger.valueOf(lo >>> 1).shiftLeft(1).add(BigInteger.valueOf(lo & 1));
+		BigInteger total = BigInteger.valueOf(hi).shiftLeft(64).add(low);
+		return MAmount.of(new BigDecimal(total, scale), currency);
+	}
+
+	/**
+	 * Adds each unit to the total of its group.
+	 *
+	 * @param units column
+	 * @param groups column of the same length with indexes into totals
+	 * @param totals to add to
+	 * @throws ArithmeticException if a total overflows
+	 */
+	public static void sumByGroup(final long[] units, final int[] groups, final long[] totals) {
+		if (units.length != groups.length) {
+			throw Warden.spot(new IllegalArgumentException("columns differ in length " + units.length + "!="
+					+ groups.length));
+		}
+		for (int i = 0; i < units.length; i++) {
+			int g = groups[i];
+			long a = totals[g];
+			long x = units[i];
+			long r = a + x;
+			if (MAmount.overflows(a, x, r)) {
+				throw Warden.spot(new ArithmeticException("total of group " + g + " overflows at " + i));
+			}
+			totals[g] = r;
+		}
+	}
+
+	/**
+	 * @param units column
+	 * @param from first index (inclusive)
+	 * @param to last index (exclusive)
+	 * @return smallest unit of the range or {@link Long#MAX_VALUE} if empty
+	 */
+	public static long min(final long[] units, final int from, final int to) {
+		long min = Long.MAX_VALUE;
+		for (int i = from; i < to; i++) {
+			min = Math.min(min, units[i]);
+		}
+		return min;
+	}
+
+	/**
+	 * @param units column
+	 * @param from first index (inclusive)
+	 * @param to last index (exclusive)
+	 * @return largest unit of the range or {@link Long#MIN_VALUE} if empty
+	 */
+	public static long max(final long[] units, final int from, final int to) {
+		long max = Long.MIN_VALUE;
+		for (int i = from; i < to; i++) {
+			max = Math.max(max, units[i]);
+		}
+		return max;
+	}
+}
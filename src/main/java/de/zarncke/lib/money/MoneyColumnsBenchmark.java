@@ -0,0 +1,93 @@
+package de.zarncke.lib.money;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import de.zarncke.lib.log.Log;
+
+/**
+ * Measures summing of amounts as {@link BigDecimal}, as compact {@link MAmount} and as a column with
+ * {@link MoneyColumns#sum(long[], java.util.Currency)}.
+ * Reports amounts/sec for each.
+ * Call with the number of amounts as optional argument.
+ *
+ * @author Gunnar Zarncke
+ */
+public class MoneyColumnsBenchmark {
+	private static final int DEFAULT_AMOUNTS = 10000000;
+	private static final int ROUNDS = 3;
+
+	private final long[] units;
+	private final BigDecimal[] decimals;
+	private final MAmount[] amounts;
+
+	public MoneyColumnsBenchmark(final int numberOfAmounts) {
+		Random random = new Random(3141592);
+		this.units = new long[numberOfAmounts];
+		this.decimals = new BigDecimal[numberOfAmounts];
+		this.amounts = new MAmount[numberOfAmounts];
+		for (int i = 0; i < numberOfAmounts; i++) {
+			this.units[i] = random.nextInt(1000000) - 100000;
+			this.decimals[i] = BigDecimal.valueOf(this.units[i], 2);
+			this.amounts[i] = MAmount.ofUnits(this.units[i], Money.EURO);
+		}
+	}
+
+	public static void main(final String[] args) {
+		MoneyColumnsBenchmark bm = new MoneyColumnsBenchmark(args.length > 0 ? Integer.parseInt(args[0])
+				: DEFAULT_AMOUNTS);
+		bm.report("BigDecimal", bm.measureBigDecimal());
+		bm.report("MAmount", bm.measureAmounts());
+		bm.report("column", bm.measureColumn());
+	}
+
+	private void report(final String mode, final long bestNanos) {
+		double perSec = this.units.length * 1e9 / bestNanos;
+		Log.LOG.get().report(mode + ": " + (long) perSec + " amounts/sec");
+	}
+
+	public long measureBigDecimal() {
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; r++) {
+			long start = System.nanoTime();
+			BigDecimal sum = BigDecimal.ZERO;
+			for (BigDecimal d : this.decimals) {
+				sum = sum.add(d);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+			check(sum);
+		}
+		return best;
+	}
+
+	public long measureAmounts() {
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; r++) {
+			long start = System.nanoTime();
+			MAmount sum = MAmount.zero(Money.EURO);
+			for (MAmount m : this.amounts) {
+				sum = sum.plus(m);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+			check(sum.getAmount());
+		}
+		return best;
+	}
+
+	public long measureColumn() {
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; r++) {
+			long start = System.nanoTime();
+			MAmount sum = MoneyColumns.sum(this.units, Money.EURO);
+			best = Math.min(best, System.nanoTime() - start);
+			check(sum.getAmount());
+		}
+		return best;
+	}
+
+	private void check(final BigDecimal sum) {
+		if (sum.signum() == 0 && this.units.length > 0) {
+			Log.LOG.get().report("suspicious sum " + sum);
+		}
+	}
+}
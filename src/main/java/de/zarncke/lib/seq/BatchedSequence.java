@@ -1,22 +1,103 @@
 package de.zarncke.lib.seq;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
 import de.zarncke.lib.coll.Pair;
+import de.zarncke.lib.err.Warden;
 import de.zarncke.lib.util.Q;
 
 /**
  * A Sequences which uses a backing Sequence to fetch multiple values at once thus batching lower calls.
  * Will lead to gaps in the backing sequence if non-multipele numbers of IDs are used up.
  * It is recommended to log {@link #terminateAndGetCurrentAndRemaining() the remaining values at program termination}.
+ * <p>
+ * Allocation within a batch is lock-free: The current batch is a range of values whose cursor is advanced by
+ * compare-and-set. When a batch is exhausted one thread seals it and installs the next batch, the others wait until it
+ * is installed.
+ * As soon as half of a batch is used up the next batch is prefetched from the backing sequence in the background.
+ * If the prefetch has completed the refill doesn't call the backing sequence. Otherwise, and for deltas larger than the
+ * batch size, the refill waits for the prefetch or calls the backing sequence, and all other threads wait with it.
+ * The backing sequence is never called concurrently by one instance.
+ * Consequently up to one batch more than used is taken from the backing sequence.
+ * <p>
+ * Ordering guarantees:
+ * <ul>
+ * <li>By default values are strictly increasing in allocation order over all threads: If one call completes before
+ * another starts, the value of the latter is larger (given a monotonic backing sequence).</li>
+ * <li>With a {@link #BatchedSequence(Sequence, int, int) stripe size} each thread allocates from its own sub-range
+ * without any shared writes. Values are unique and increasing per thread, but not over all threads.</li>
+ * </ul>
  *
  * @author Gunnar Zarncke <gunnar@zarncke.de>
  */
 public class BatchedSequence implements Sequence {
 	private static final int DEFAULT_BATCH_SIZE = 100;
 
-	private Sequence backingSequence;
+	/**
+	 * Marks a batch whose prefetch was taken (or which must not be prefetched any more).
+	 */
+	private static final FutureTask<Long> NO_PREFETCH = new FutureTask<Long>(new Callable<Long>() {
+		@Override
+		public Long call() {
+			return null;
+		}
+	});
+
+	/**
+	 * Installed by {@link #terminateAndGetCurrentAndRemaining()}.
+	 */
+	private static final Batch TERMINATED = new Batch(0, -1);
+
+	private static ExecutorService prefetcher;
+
+	/**
+	 * The values [next, end) fetched from the backing sequence.
+	 * Sealed (no more allocations) when next > end.
+	 */
+	private static final class Batch {
+		private final AtomicLong next;
+		private final long end;
+		private final AtomicReference<FutureTask<Long>> prefetched = new AtomicReference<FutureTask<Long>>();
+		private final CountDownLatch replaced = new CountDownLatch(1);
+
+		Batch(final long next, final long end) {
+			this.next = new AtomicLong(next);
+			this.end = end;
+		}
+
+		@Override
+		public String toString() {
+			return this.next.get() + " to " + this.end;
+		}
+	}
+
+	private final Sequence backingSequence;
 	private final long batchSize;
-	private volatile long nextValue;
-	private volatile long remainingValues = 0;
+	private final long stripeSize;
+	private final AtomicReference<Batch> current = new AtomicReference<Batch>(new Batch(0, 0));
+
+	/**
+	 * Per thread next and end of the stripe.
+	 */
+	private final ThreadLocal<long[]> stripes = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[2];
+		}
+	};
 
 	public BatchedSequence(final Sequence backingSequence) {
 		this(backingSequence, DEFAULT_BATCH_SIZE);
@@ -24,13 +105,33 @@ public class BatchedSequence implements Sequence {
 
 	/**
 	 * Create a sequence with the given backing Sequence and batch size.
+	 * Values are strictly ordered over all threads.
 	 *
 	 * @param backingSequence
 	 * @param batchSize
 	 */
 	public BatchedSequence(final Sequence backingSequence, final int batchSize) {
+		this(backingSequence, batchSize, 0);
+	}
+
+	/**
+	 * Create a sequence which trades strict ordering for throughput:
+	 * Each thread takes stripes of the given size from the batches and allocates from its stripe without contention.
+	 * Values are unique and increase per thread, but values of different threads interleave arbitrarily.
+	 * The unused rest of the stripes of other threads is lost on {@link #terminateAndGetCurrentAndRemaining()}.
+	 *
+	 * @param backingSequence
+	 * @param batchSize > 0, should be a multiple of the stripe size
+	 * @param stripeSize 0 for strict ordering
+	 */
+	public BatchedSequence(final Sequence backingSequence, final int batchSize, final int stripeSize) {
+		if (batchSize <= 0 || stripeSize < 0) {
+			throw Warden.spot(new IllegalArgumentException("batch size " + batchSize + " must be > 0 and stripe size "
+					+ stripeSize + " >= 0"));
+		}
 		this.backingSequence = backingSequence;
 		this.batchSize = batchSize;
+		this.stripeSize = stripeSize;
 	}
 
 	@Override
@@ -43,29 +144,145 @@ public class BatchedSequence implements Sequence {
 	 * batch size. Otherwise gaps may occur because contiguous regions cannot be ensured.
 	 */
 	@Override
-	public synchronized long addAndGet(final long delta) {
+	public long addAndGet(final long delta) {
 		assert delta >= 0 : "delta " + delta + " must be >= 0";
-		if (delta == 0) {
-			if (this.remainingValues <= 0) {
-				this.nextValue = this.backingSequence.addAndGet(this.batchSize);
-				this.remainingValues = this.batchSize;
+		if (this.stripeSize == 0) {
+			return allocate(delta);
+		}
+
+		if (this.current.get() == TERMINATED) {
+			throw Warden.spot(new IllegalStateException("sequence was terminated"));
+		}
+		long[] stripe = this.stripes.get();
+		if (delta > this.stripeSize) {
+			// drop the stripe to stay monotonic for this thread
+			if (stripe[0] < stripe[1]) {
+				discard(stripe[0], stripe[1] - stripe[0]);
 			}
-			return this.nextValue;
+			stripe[0] = stripe[1] = 0;
+			return allocate(delta);
 		}
-		if (this.remainingValues - delta < 0) {
-			if (this.remainingValues > 0) {
-				discard(this.nextValue, this.remainingValues);
+		if (stripe[0] + Math.max(delta, 1) > stripe[1]) {
+			if (stripe[0] < stripe[1]) {
+				discard(stripe[0], stripe[1] - stripe[0]);
 			}
+			stripe[0] = allocate(this.stripeSize);
+			stripe[1] = stripe[0] + this.stripeSize;
+		}
+		long value = stripe[0];
+		stripe[0] += delta;
+		return value;
+	}
 
-			long needToFetch = ((delta - 1) / this.batchSize + 1) * this.batchSize;
-			this.nextValue = this.backingSequence.addAndGet(needToFetch);
-			this.remainingValues = needToFetch;
+	private long allocate(final long delta) {
+		while (true) {
+			Batch batch = this.current.get();
+			if (batch == TERMINATED) {
+				throw Warden.spot(new IllegalStateException("sequence was terminated"));
+			}
+			long next = batch.next.get();
+			if (next > batch.end) {
+				Uninterruptibles.awaitUninterruptibly(batch.replaced);
+			} else if (next + Math.max(delta, 1) <= batch.end) {
+				if (delta == 0) {
+					return next;
+				}
+				if (batch.next.compareAndSet(next, next + delta)) {
+					if (batch.end - next - delta <= this.batchSize / 2) {
+						prefetch(batch);
+					}
+					return next;
+				}
+			} else if (batch.next.compareAndSet(next, batch.end + 1)) {
+				return refill(batch, next, delta);
+			}
 		}
+	}
 
-		long current = this.nextValue;
-		this.remainingValues -= delta;
-		this.nextValue += delta;
-		return current;
+	/**
+	 * Called by the one thread which sealed the batch.
+	 */
+	private long refill(final Batch batch, final long next, final long delta) {
+		try {
+			if (next < batch.end) {
+				discard(next, batch.end - next);
+			}
+
+			long needToFetch = ((Math.max(delta, 1) - 1) / this.batchSize + 1) * this.batchSize;
+			long start = takePrefetched(batch, needToFetch);
+			Batch refilled = new Batch(start + delta, start + needToFetch);
+			this.current.set(refilled);
+			if (needToFetch - delta <= this.batchSize / 2) {
+				prefetch(refilled);
+			}
+			return start;
+		} finally {
+			// on failure leave an empty batch which the next caller will refill
+			this.current.compareAndSet(batch, new Batch(batch.end, batch.end));
+			batch.replaced.countDown();
+		}
+	}
+
+	private long takePrefetched(final Batch batch, final long needToFetch) {
+		FutureTask<Long> prefetch = batch.prefetched.getAndSet(NO_PREFETCH);
+		if (prefetch != null) {
+			try {
+				long start = Uninterruptibles.getUninterruptibly(prefetch).longValue();
+				if (needToFetch == this.batchSize) {
+					return start;
+				}
+				discard(start, this.batchSize);
+			} catch (ExecutionException e) {
+				// retried below to report any persisting problem to the caller
+				Warden.disregardAndReport(e);
+			}
+		}
+		return this.backingSequence.addAndGet(needToFetch);
+	}
+
+	private void prefetch(final Batch batch) {
+		if (batch.prefetched.get() != null) {
+			return;
+		}
+		FutureTask<Long> prefetch = new FutureTask<Long>(new Callable<Long>() {
+			@Override
+			public Long call() {
+				return Q.l(BatchedSequence.this.backingSequence.addAndGet(BatchedSequence.this.batchSize));
+			}
+		});
+		if (batch.prefetched.compareAndSet(null, prefetch)) {
+			getPrefetcher().execute(prefetch);
+		}
+	}
+
+	private static synchronized ExecutorService getPrefetcher() {
+		if (prefetcher == null) {
+			int threads = Runtime.getRuntime().availableProcessors();
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(final Runnable r) {
+							Thread thread = new Thread("sequence-prefetch-" + this.count.incrementAndGet()) {
+								@Override
+								public void run() {
+									Warden w = Warden.appointWarden();
+									try {
+										r.run();
+									} finally {
+										w.finish();
+									}
+								}
+							};
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			pool.allowCoreThreadTimeOut(true);
+			prefetcher = pool;
+		}
+		return prefetcher;
 	}
 
 	/**
@@ -73,6 +290,8 @@ public class BatchedSequence implements Sequence {
 	 * This can be the case when the batch size is a non-multiples of the delta.
 	 * This leads to gaps (unused values) in the underlying sequence and thus derived classes may log this issue
 	 * (this default method does nothing).
+	 * A prefetched batch which cannot be used is also discarded.
+	 * This method may be called concurrently from different threads.
 	 *
 	 * @param firstDiscarded first number which is discarded.
 	 * @param numberOfDiscarded
@@ -83,19 +302,38 @@ public class BatchedSequence implements Sequence {
 
 	/**
 	 * May only be called as the last method. The other methods will fail after this call.
+	 * A prefetched batch is {@link #discard(long, long) discarded}.
 	 *
 	 * @return next value that would be returned by the sequence and the number of remaining values
 	 */
-	public synchronized Pair<Long, Long> terminateAndGetCurrentAndRemaining() {
-		Pair<Long, Long> result = Pair.pair(Q.l(this.nextValue), Q.l(this.remainingValues));
-		this.backingSequence = null;
-		this.nextValue += this.remainingValues;
-		this.remainingValues = 0;
-		return result;
+	public Pair<Long, Long> terminateAndGetCurrentAndRemaining() {
+		while (true) {
+			Batch batch = this.current.get();
+			if (batch == TERMINATED) {
+				throw Warden.spot(new IllegalStateException("sequence was terminated"));
+			}
+			long next = batch.next.get();
+			if (next > batch.end) {
+				Uninterruptibles.awaitUninterruptibly(batch.replaced);
+			} else if (batch.next.compareAndSet(next, batch.end + 1)) {
+				this.current.set(TERMINATED);
+				batch.replaced.countDown();
+				FutureTask<Long> prefetch = batch.prefetched.getAndSet(NO_PREFETCH);
+				if (prefetch != null) {
+					try {
+						discard(Uninterruptibles.getUninterruptibly(prefetch).longValue(), this.batchSize);
+					} catch (ExecutionException e) {
+						Warden.disregardAndReport(e);
+					}
+				}
+				return Pair.pair(Q.l(next), Q.l(batch.end - next));
+			}
+		}
 	}
 
 	@Override
 	public String toString() {
-		return "batching " + this.batchSize + " of " + this.backingSequence.toString();
+		return "batching " + this.batchSize + (this.stripeSize > 0 ? " in stripes of " + this.stripeSize : "")
+				+ " of " + this.backingSequence.toString();
 	}
 }
@@ -0,0 +1,667 @@
+package de.zarncke.lib.struct;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.coll.Pair;
+import de.zarncke.lib.err.Warden;
+
+/**
+ * Immutable {@link Graph} in compressed sparse row form.
+ * <ul>
+ * <li>Vertices are numbered densely (0..{@link #numberOfVertices()}-1) in the order they were added.</li>
+ * <li>The outgoing edges of vertex i are the edge numbers {@link #getFirstOut(int)}..{@link #getEndOut(int)}-1 in
+ * an int array of targets; incoming edges are kept the same way. Edge objects are stored once (not at all if all are
+ * null).</li>
+ * <li>Traversal, {@link #topologicalOrder() topological sort} and {@link #reachable(int, boolean) reachability} are
+ * iterative and use explicit int stacks or queues, so long chains don't need stack space.</li>
+ * </ul>
+ * Memory use is about 30 bytes per vertex and 12 (20 with edge objects) per edge plus the vertex and edge objects,
+ * so a million vertices with a few million edges fit in tens of MB.
+ * Mutating methods throw {@link UnsupportedOperationException}. Create instances with {@link #of(Graph)} or a
+ * {@link Builder}.
+ *
+ * @author Gunnar Zarncke
+ * @param <V> vertex type
+ * @param <E> edge type
+ */
+public final class CsrGraph<V, E> implements Graph<V, E>, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Collects vertices and edges; duplicate edges are kept.
+	 *
+	 * @param <V> vertex type
+	 * @param <E> edge type
+	 */
+	public static final class Builder<V, E> {
+		private final VertexIndex index = new VertexIndex();
+		private Object[] vertices = new Object[16];
+		private int[] sources = new int[16];
+		private int[] targets = new int[16];
+		private Object[] edges;
+		private int edgeCount;
+
+		/**
+		 * @param vertex to add (if not yet present)
+		 * @return number of the vertex
+		 */
+		public int add(final V vertex) {
+			int v = this.index.indexOf(vertex, this.vertices);
+			if (v >= 0) {
+				return v;
+			}
+			v = this.index.size();
+			if (v == this.vertices.length) {
+				this.vertices = Arrays.copyOf(this.vertices, v * 2);
+			}
+			this.vertices[v] = vertex;
+			this.index.add(vertex, v, this.vertices);
+			return v;
+		}
+
+		public Builder<V, E> add(final V src, final E edge, final V dst) {
+			int s = add(src);
+			int d = add(dst);
+			if (this.edgeCount == this.sources.length) {
+				int capacity = this.edgeCount * 2;
+				this.sources = Arrays.copyOf(this.sources, capacity);
+				this.targets = Arrays.copyOf(this.targets, capacity);
+				if (this.edges != null) {
+					this.edges = Arrays.copyOf(this.edges, capacity);
+				}
+			}
+			if (edge != null && this.edges == null) {
+				this.edges = new Object[this.sources.length];
+			}
+			this.sources[this.edgeCount] = s;
+			this.targets[this.edgeCount] = d;
+			if (this.edges != null) {
+				this.edges[this.edgeCount] = edge;
+			}
+			this.edgeCount++;
+			return this;
+		}
+
+		public CsrGraph<V, E> build() {
+			return new CsrGraph<V, E>(this);
+		}
+	}
+
+	/**
+	 * Open addressing hash table from vertex to number; the vertices themselves are kept by the owner.
+	 */
+	private static final class VertexIndex implements Serializable {
+		private static final long serialVersionUID = 1L;
+		// number + 1 of the vertex in the slot, 0 if empty
+		private int[] slots = new int[32];
+		private int size;
+
+		int size() {
+			return this.size;
+		}
+
+		int indexOf(final Object vertex, final Object[] vertices) {
+			int mask = this.slots.length - 1;
+			for (int i = hash(vertex) & mask;; i = i + 1 & mask) {
+				int v = this.slots[i] - 1;
+				if (v < 0) {
+					return -1;
+				}
+				Object candidate = vertices[v];
+				if (candidate == vertex || candidate != null && candidate.equals(vertex)) {
+					return v;
+				}
+			}
+		}
+
+		void add(final Object vertex, final int number, final Object[] vertices) {
+			if ((this.size + 1) * 2 > this.slots.length) {
+				int[] old = this.slots;
+				this.slots = new int[old.length * 2];
+				for (int s : old) {
+					if (s != 0) {
+						put(vertices[s - 1], s);
+					}
+				}
+			}
+			put(vertex, number + 1);
+			this.size++;
+		}
+
+		private void put(final Object vertex, final int slotValue) {
+			int mask = this.slots.length - 1;
+			int i = hash(vertex) & mask;
+			while (this.slots[i] != 0) {
+				i = i + 1 & mask;
+			}
+			this.slots[i] = slotValue;
+		}
+
+		static VertexIndex of(final Object[] vertices) {
+			VertexIndex index = new VertexIndex();
+			int capacity = 32;
+			while (capacity < vertices.length * 2) {
+				capacity <<= 1;
+			}
+			index.slots = new int[capacity];
+			for (int v = 0; v < vertices.length; v++) {
+				index.put(vertices[v], v + 1);
+			}
+			index.size = vertices.length;
+			return index;
+		}
+
+		private static int hash(final Object vertex) {
+			int h = vertex == null ? 0 : vertex.hashCode();
+			return h ^ h >>> 16;
+		}
+	}
+
+	private final Object[] vertices;
+	private final VertexIndex index;
+	private final int[] outOffsets;
+	private final int[] outTargets;
+	// null if all edges are null
+	private final Object[] outEdges;
+	private final int[] inOffsets;
+	private final int[] inSources;
+	// number of the outgoing edge of each incoming edge
+	private final int[] inEdges;
+	private volatile Boolean acyclic;
+
+	/**
+	 * @param graph to copy
+	 * @return CsrGraph with the vertices and edges of the graph
+	 */
+	public static <V, E> CsrGraph<V, E> of(final Graph<V, E> graph) {
+		if (graph instanceof CsrGraph) {
+			return (CsrGraph<V, E>) graph;
+		}
+		Builder<V, E> builder = new Builder<V, E>();
+		for (V v : graph.getVertices()) {
+			builder.add(v);
+		}
+		for (Join<V, E> join : graph) {
+			builder.add(join.getSource(), join.getEdge(), join.getDestination());
+		}
+		return builder.build();
+	}
+
+	private CsrGraph(final Builder<V, E> builder) {
+		int n = builder.index.size();
+		int m = builder.edgeCount;
+		this.vertices = Arrays.copyOf(builder.vertices, n);
+		this.index = VertexIndex.of(this.vertices);
+
+		// counting sort by source keeps the order of addition
+		this.outOffsets = new int[n + 1];
+		this.inOffsets = new int[n + 1];
+		for (int e = 0; e < m; e++) {
+			this.outOffsets[builder.sources[e] + 1]++;
+			this.inOffsets[builder.targets[e] + 1]++;
+		}
+		for (int v = 0; v < n; v++) {
+			this.outOffsets[v + 1] += this.outOffsets[v];
+			this.inOffsets[v + 1] += this.inOffsets[v];
+		}
+		this.outTargets = new int[m];
+		this.outEdges = builder.edges == null ? null : new Object[m];
+		int[] outFill = Arrays.copyOf(this.outOffsets, n);
+		int[] position = new int[m];
+		for (int e = 0; e < m; e++) {
+			int pos = outFill[builder.sources[e]]++;
+			position[e] = pos;
+			this.outTargets[pos] = builder.targets[e];
+			if (this.outEdges != null) {
+				this.outEdges[pos] = builder.edges[e];
+			}
+		}
+		this.inSources = new int[m];
+		this.inEdges = new int[m];
+		int[] inFill = Arrays.copyOf(this.inOffsets, n);
+		for (int e = 0; e < m; e++) {
+			int pos = inFill[builder.targets[e]]++;
+			this.inSources[pos] = builder.sources[e];
+			this.inEdges[pos] = position[e];
+		}
+	}
+
+	/**
+	 * @param vertex any
+	 * @return number of the vertex or -1 if not present
+	 */
+	public int indexOf(final V vertex) {
+		return this.index.indexOf(vertex, this.vertices);
+	}
+
+	/**
+	 * @param v number
+	 * @return vertex
+	 */
+	@SuppressWarnings("unchecked")
+	public V getVertex(final int v) {
+		return (V) this.vertices[v];
+	}
+
+	/**
+	 * @param v vertex number
+	 * @return number of the first outgoing edge
+	 */
+	public int getFirstOut(final int v) {
+		return this.outOffsets[v];
+	}
+
+	/**
+	 * @param v vertex number
+	 * @return number after the last outgoing edge
+	 */
+	public int getEndOut(final int v) {
+		return this.outOffsets[v + 1];
+	}
+
+	/**
+	 * @param e number of outgoing edge
+	 * @return vertex number of its destination
+	 */
+	public int getTarget(final int e) {
+		return this.outTargets[e];
+	}
+
+	/**
+	 * @param e number of outgoing edge
+	 * @return edge object
+	 */
+	@SuppressWarnings("unchecked")
+	public E getEdge(final int e) {
+		return this.outEdges == null ? null : (E) this.outEdges[e];
+	}
+
+	/**
+	 * @param v vertex number
+	 * @return position of the first incoming edge
+	 */
+	public int getFirstIn(final int v) {
+		return this.inOffsets[v];
+	}
+
+	/**
+	 * @param v vertex number
+	 * @return position after the last incoming edge
+	 */
+	public int getEndIn(final int v) {
+		return this.inOffsets[v + 1];
+	}
+
+	/**
+	 * @param i position of incoming edge
+	 * @return vertex number of its source
+	 */
+	public int getSource(final int i) {
+		return this.inSources[i];
+	}
+
+	/**
+	 * @param i position of incoming edge
+	 * @return number of the edge (as outgoing edge of its source)
+	 */
+	public int getInEdge(final int i) {
+		return this.inEdges[i];
+	}
+
+	/**
+	 * Breadth first search.
+	 *
+	 * @param start vertex number
+	 * @param forward true: follow outgoing edges; false: follow incoming edges
+	 * @return the numbers of all vertices reachable from start (including start)
+	 */
+	public BitSet reachable(final int start, final boolean forward) {
+		BitSet seen = new BitSet(this.vertices.length);
+		int[] queue = new int[16];
+		int head = 0;
+		int tail = 0;
+		seen.set(start);
+		queue[tail++] = start;
+		while (head < tail) {
+			int v = queue[head++];
+			int end = forward ? this.outOffsets[v + 1] : this.inOffsets[v + 1];
+			for (int i = forward ? this.outOffsets[v] : this.inOffsets[v]; i < end; i++) {
+				int w = forward ? this.outTargets[i] : this.inSources[i];
+				if (!seen.get(w)) {
+					seen.set(w);
+					if (tail == queue.length) {
+						queue = Arrays.copyOf(queue, tail * 2);
+					}
+					queue[tail++] = w;
+				}
+			}
+		}
+		return seen;
+	}
+
+	/**
+	 * @param start vertex
+	 * @return all vertices reachable by outgoing edges (including start)
+	 */
+	public List<V> getReachable(final V start) {
+		int v = indexOf(start);
+		if (v < 0) {
+			throw Warden.spot(new IllegalArgumentException("unknown vertex " + start));
+		}
+		List<V> res = L.l();
+		BitSet reach = reachable(v, true);
+		for (int w = reach.nextSetBit(0); w >= 0; w = reach.nextSetBit(w + 1)) {
+			res.add(getVertex(w));
+		}
+		return res;
+	}
+
+	/**
+	 * Kahn's algorithm.
+	 *
+	 * @return vertex numbers such that each edge leads from an earlier to a later vertex; null if the graph has cycles
+	 */
+	public int[] topologicalOrder() {
+		int n = this.vertices.length;
+		int[] pending = new int[n];
+		int[] order = new int[n];
+		int tail = 0;
+		for (int v = 0; v < n; v++) {
+			pending[v] = this.inOffsets[v + 1] - this.inOffsets[v];
+			if (pending[v] == 0) {
+				order[tail++] = v;
+			}
+		}
+		for (int head = 0; head < tail; head++) {
+			int v = order[head];
+			for (int e = this.outOffsets[v]; e < this.outOffsets[v + 1]; e++) {
+				int w = this.outTargets[e];
+				if (--pending[w] == 0) {
+					order[tail++] = w;
+				}
+			}
+		}
+		if (tail < n) {
+			return null;
+		}
+		return order;
+	}
+
+	/**
+	 * @return vertices in {@link #topologicalOrder() topological order}
+	 * @throws IllegalStateException if the graph has cycles
+	 */
+	public List<V> topologicalSort() {
+		int[] order = topologicalOrder();
+		if (order == null) {
+			throw Warden.spot(new IllegalStateException("graph has cycles"));
+		}
+		List<V> res = L.l();
+		for (int v : order) {
+			res.add(getVertex(v));
+		}
+		return res;
+	}
+
+	@Override
+	public boolean isAscyclic() {
+		Boolean result = this.acyclic;
+		if (result == null) {
+			result = Boolean.valueOf(topologicalOrder() != null);
+			this.acyclic = result;
+		}
+		return result.booleanValue();
+	}
+
+	/**
+	 * Depth first traversal with an explicit stack. Each reachable vertex is departed from once.
+	 */
+	@Override
+	public <T> T traverse(final V start, final Traverser<V, E, T> traverser) {
+		int s = indexOf(start);
+		if (s < 0) {
+			throw Warden.spot(new IllegalArgumentException("unknown vertex " + start));
+		}
+		BitSet seen = new BitSet(this.vertices.length);
+		// vertex and next edge of each level
+		int[] stackVertex = new int[16];
+		int[] stackEdge = new int[16];
+		int depth = 0;
+		seen.set(s);
+		T r = traverser.depart(start);
+		if (r != null) {
+			return r;
+		}
+		stackVertex[0] = s;
+		stackEdge[0] = this.outOffsets[s];
+		depth = 1;
+		while (depth > 0) {
+			int v = stackVertex[depth - 1];
+			int e = stackEdge[depth - 1];
+			if (e == this.outOffsets[v + 1]) {
+				depth--;
+				continue;
+			}
+			stackEdge[depth - 1] = e + 1;
+			int w = this.outTargets[e];
+			V target = getVertex(w);
+			r = traverser.traverse(getVertex(v), getEdge(e), target);
+			if (r != null) {
+				return r;
+			}
+			if (seen.get(w)) {
+				r = traverser.arrive(target, true);
+				if (r != null) {
+					return r;
+				}
+				continue;
+			}
+			seen.set(w);
+			r = traverser.arrive(target, false);
+			if (r != null) {
+				return r;
+			}
+			r = traverser.depart(target);
+			if (r != null) {
+				return r;
+			}
+			if (depth == stackVertex.length) {
+				stackVertex = Arrays.copyOf(stackVertex, depth * 2);
+				stackEdge = Arrays.copyOf(stackEdge, depth * 2);
+			}
+			stackVertex[depth] = w;
+			stackEdge[depth] = this.outOffsets[w];
+			depth++;
+		}
+		return null;
+	}
+
+	@Override
+	public Graph<V, E> add(final V vertex) {
+		throw Warden.spot(new UnsupportedOperationException("immutable"));
+	}
+
+	@Override
+	public Graph<V, E> add(final V src, final E edge, final V dst) {
+		throw Warden.spot(new UnsupportedOperationException("immutable"));
+	}
+
+	@Override
+	public void removeVertex(final V vertex) {
+		throw Warden.spot(new UnsupportedOperationException("immutable"));
+	}
+
+	@Override
+	public void removeEdge(final V source, final E edge, final V destination) {
+		throw Warden.spot(new UnsupportedOperationException("immutable"));
+	}
+
+	@Override
+	public boolean containsVertex(final V vertex) {
+		return indexOf(vertex) >= 0;
+	}
+
+	@Override
+	public Collection<V> getVertices() {
+		return new AbstractList<V>() {
+			@Override
+			public V get(final int v) {
+				return getVertex(v);
+			}
+
+			@Override
+			public int size() {
+				return CsrGraph.this.vertices.length;
+			}
+
+			@Override
+			public boolean contains(final Object o) {
+				return CsrGraph.this.index.indexOf(o, CsrGraph.this.vertices) >= 0;
+			}
+		};
+	}
+
+	@Override
+	public Collection<E> getEdges() {
+		return new AbstractList<E>() {
+			@Override
+			public E get(final int e) {
+				return getEdge(e);
+			}
+
+			@Override
+			public int size() {
+				return CsrGraph.this.outTargets.length;
+			}
+		};
+	}
+
+	@Override
+	public Collection<Pair<E, V>> getEdgesFrom(final V src) {
+		final int v = indexOf(src);
+		if (v < 0) {
+			return L.e();
+		}
+		return new AbstractList<Pair<E, V>>() {
+			@Override
+			public Pair<E, V> get(final int i) {
+				int e = CsrGraph.this.outOffsets[v] + i;
+				return Pair.pair(getEdge(e), getVertex(CsrGraph.this.outTargets[e]));
+			}
+
+			@Override
+			public int size() {
+				return CsrGraph.this.outOffsets[v + 1] - CsrGraph.this.outOffsets[v];
+			}
+		};
+	}
+
+	@Override
+	public Collection<Pair<V, E>> getEdgesTo(final V dst) {
+		final int v = indexOf(dst);
+		if (v < 0) {
+			return L.e();
+		}
+		return new AbstractList<Pair<V, E>>() {
+			@Override
+			public Pair<V, E> get(final int i) {
+				int k = CsrGraph.this.inOffsets[v] + i;
+				return Pair.pair(getVertex(CsrGraph.this.inSources[k]), getEdge(CsrGraph.this.inEdges[k]));
+			}
+
+			@Override
+			public int size() {
+				return CsrGraph.this.inOffsets[v + 1] - CsrGraph.this.inOffsets[v];
+			}
+		};
+	}
+
+	@Override
+	public Collection<E> getEdges(final V src, final V dst) {
+		int s = indexOf(src);
+		int d = indexOf(dst);
+		List<E> res = L.l();
+		if (s >= 0 && d >= 0) {
+			for (int e = this.outOffsets[s]; e < this.outOffsets[s + 1]; e++) {
+				if (this.outTargets[e] == d) {
+					res.add(getEdge(e));
+				}
+			}
+		}
+		return res;
+	}
+
+	@Override
+	public Iterator<Join<V, E>> iterator() {
+		return new Iterator<Join<V, E>>() {
+			private int vertex = 0;
+			private int edge = 0;
+
+			@Override
+			public boolean hasNext() {
+				return this.edge < CsrGraph.this.outTargets.length;
+			}
+
+			@Override
+			public Join<V, E> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				while (CsrGraph.this.outOffsets[this.vertex + 1] <= this.edge) {
+					this.vertex++;
+				}
+				final int e = this.edge++;
+				final int v = this.vertex;
+				return new Join<V, E>() {
+					@Override
+					public V getSource() {
+						return getVertex(v);
+					}
+
+					@Override
+					public E getEdge() {
+						return CsrGraph.this.getEdge(e);
+					}
+
+					@Override
+					public V getDestination() {
+						return getVertex(CsrGraph.this.outTargets[e]);
+					}
+				};
+			}
+
+			@Override
+			public void remove() {
+				throw Warden.spot(new UnsupportedOperationException("immutable"));
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return this.outTargets.length;
+	}
+
+	@Override
+	public int numberOfVertices() {
+		return this.vertices.length;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.vertices.length == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "CsrGraph of " + this.vertices.length + " vertices and " + this.outTargets.length + " edges";
+	}
+}
@@ -21,6 +21,13 @@ import com.google.common.collect.Multimaps;
 
 import de.zarncke.lib.coll.Pair;
 
+/**
+ * Mutable {@link Graph} backed by multimaps.
+ * For large graphs and deep traversals use an immutable {@link CsrGraph#of(Graph) CsrGraph}.
+ *
+ * @param <V> vertex type
+ * @param <E> edge type
+ */
 public class MapGraph<V, E> implements Graph<V, E>, Serializable {
 
 	private static final class LinkedHashSetSupplier<E> implements Supplier<Collection<E>> {
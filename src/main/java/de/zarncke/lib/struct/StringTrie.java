@@ -0,0 +1,392 @@
+package de.zarncke.lib.struct;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import de.zarncke.lib.err.Warden;
+
+/**
+ * Immutable, compact radix trie over a set of Strings (terms).
+ * The terms are numbered in their natural order. Queries return these term numbers.
+ * Supports exact, prefix, wildcard ("*" and "?") and bounded edit distance (Levenshtein) lookups.
+ * <p>
+ * The nodes are stored in parallel arrays in breadth first order, so the children of a node are consecutive.
+ * Edge labels share one char array. All traversals are iterative.
+ * </p>
+ *
+ * @author Gunnar Zarncke
+ */
+public final class StringTrie {
+	/**
+	 * Maximum length of a wildcard pattern.
+	 */
+	public static final int MAX_PATTERN_LENGTH = 63;
+
+	private static final int[] NONE = new int[0];
+
+	private final String[] terms;
+	private final char[] labels;
+	/** per node: start of its label in {@link #labels}; one extra element for the end of the last label */
+	private final int[] labelStart;
+	/** per node: first child; one extra element for the end of the children of the last node */
+	private final int[] childStart;
+	/** per node: first term number in its subtree; if the node is terminal this is its term */
+	private final int[] firstTerm;
+	/** per node: end (exclusive) of the term numbers in its subtree */
+	private final int[] endTerm;
+	/** per node: length of the path from the root including its label */
+	private final int[] depth;
+	private final int nodes;
+
+	/**
+	 * Collects term numbers.
+	 */
+	private static final class Hits {
+		int[] numbers = new int[16];
+		int size = 0;
+
+		void add(final int number) {
+			if (this.size == this.numbers.length) {
+				this.numbers = Arrays.copyOf(this.numbers, this.size * 2);
+			}
+			this.numbers[this.size++] = number;
+		}
+
+		void addRange(final int from, final int to) {
+			for (int i = from; i < to; i++) {
+				add(i);
+			}
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(this.numbers, this.size);
+		}
+	}
+
+	/**
+	 * @param terms any Strings; duplicates are ignored
+	 */
+	public StringTrie(final Collection<String> terms) {
+		String[] sorted = terms.toArray(new String[terms.size()]);
+		Arrays.sort(sorted);
+		int unique = 0;
+		long totalChars = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (unique == 0 || !sorted[i].equals(sorted[unique - 1])) {
+				sorted[unique++] = sorted[i];
+				totalChars += sorted[i].length();
+			}
+		}
+		this.terms = Arrays.copyOf(sorted, unique);
+		if (totalChars > Integer.MAX_VALUE) {
+			throw Warden.spot(new IllegalArgumentException("too many characters " + totalChars));
+		}
+
+		// a radix trie has at most one node per term and one branching node per term plus the root
+		int maxNodes = 2 * unique + 1;
+		int[] rangeLo = new int[maxNodes];
+		int[] rangeHi = new int[maxNodes];
+		int[] depth = new int[maxNodes];
+		int[] parentDepth = new int[maxNodes];
+		int[] lStart = new int[maxNodes + 1];
+		int[] cStart = new int[maxNodes + 1];
+		char[] chars = new char[(int) totalChars];
+		int labelEnd = 0;
+
+		rangeLo[0] = 0;
+		rangeHi[0] = unique;
+		depth[0] = 0;
+		int count = 1;
+		// breadth first: node n is processed after all its predecessors, its children are appended
+		for (int n = 0; n < count; n++) {
+			cStart[n] = count;
+			int lo = rangeLo[n];
+			int hi = rangeHi[n];
+			int d = depth[n];
+			int i = lo < hi && this.terms[lo].length() == d ? lo + 1 : lo;
+			while (i < hi) {
+				char c = this.terms[i].charAt(d);
+				int j = i + 1;
+				while (j < hi && this.terms[j].charAt(d) == c) {
+					j++;
+				}
+				String first = this.terms[i];
+				int childDepth = j - i == 1 ? first.length() : commonPrefix(first, this.terms[j - 1]);
+				rangeLo[count] = i;
+				rangeHi[count] = j;
+				depth[count] = childDepth;
+				parentDepth[count] = d;
+				count++;
+				i = j;
+			}
+			lStart[n] = labelEnd;
+			if (n > 0) {
+				this.terms[lo].getChars(parentDepth[n], d, chars, labelEnd);
+				labelEnd += d - parentDepth[n];
+			}
+		}
+		cStart[count] = count;
+		lStart[count] = labelEnd;
+
+		this.nodes = count;
+		this.labels = Arrays.copyOf(chars, labelEnd);
+		this.labelStart = Arrays.copyOf(lStart, count + 1);
+		this.childStart = Arrays.copyOf(cStart, count + 1);
+		this.firstTerm = Arrays.copyOf(rangeLo, count);
+		this.endTerm = Arrays.copyOf(rangeHi, count);
+		this.depth = Arrays.copyOf(depth, count);
+	}
+
+	private static int commonPrefix(final String a, final String b) {
+		int l = Math.min(a.length(), b.length());
+		int i = 0;
+		while (i < l && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return number of distinct terms
+	 */
+	public int size() {
+		return this.terms.length;
+	}
+
+	/**
+	 * @return number of nodes (including the root)
+	 */
+	public int getNodeCount() {
+		return this.nodes;
+	}
+
+	/**
+	 * @param number 0 <= number < {@link #size()}
+	 * @return the term
+	 */
+	public String getTerm(final int number) {
+		return this.terms[number];
+	}
+
+	private boolean isTerminal(final int node) {
+		int first = this.firstTerm[node];
+		return first < this.endTerm[node] && this.terms[first].length() == this.depth[node];
+	}
+
+	/**
+	 * Follows the given chars from the root.
+	 *
+	 * @param chars to follow
+	 * @return {node, chars of the node label consumed} or null if the path doesn't exist
+	 */
+	private int[] walk(final CharSequence chars) {
+		int node = 0;
+		int pos = 0;
+		int consumed = 0;
+		while (pos < chars.length()) {
+			int labelLen = this.labelStart[node + 1] - this.labelStart[node];
+			if (consumed < labelLen) {
+				if (this.labels[this.labelStart[node] + consumed] != chars.charAt(pos)) {
+					return null;
+				}
+				consumed++;
+				pos++;
+				continue;
+			}
+			int child = findChild(node, chars.charAt(pos));
+			if (child < 0) {
+				return null;
+			}
+			node = child;
+			consumed = 0;
+		}
+		return new int[] { node, consumed };
+	}
+
+	private int findChild(final int node, final char c) {
+		int low = this.childStart[node];
+		int high = this.childStart[node + 1] - 1;
+		while (low <= high) {
+			int mid = low + high >>> 1;
+			char midChar = this.labels[this.labelStart[mid]];
+			if (midChar < c) {
+				low = mid + 1;
+			} else if (midChar > c) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param term any
+	 * @return number of the term or -1 if it isn't contained
+	 */
+	public int indexOf(final String term) {
+		int[] found = walk(term);
+		if (found == null) {
+			return -1;
+		}
+		int node = found[0];
+		if (found[1] != this.labelStart[node + 1] - this.labelStart[node]) {
+			return -1;
+		}
+		return isTerminal(node) ? this.firstTerm[node] : -1;
+	}
+
+	/**
+	 * @param prefix any
+	 * @return {from, to (exclusive)}: the range of numbers of all terms with the prefix; empty if there is none
+	 */
+	public int[] prefixRange(final String prefix) {
+		int[] found = walk(prefix);
+		if (found == null) {
+			return new int[] { 0, 0 };
+		}
+		return new int[] { this.firstTerm[found[0]], this.endTerm[found[0]] };
+	}
+
+	/**
+	 * @param pattern where "*" matches any number of characters and "?" exactly one; at most
+	 * {@value #MAX_PATTERN_LENGTH} characters
+	 * @return numbers of matching terms in ascending order
+	 */
+	public int[] matchWildcard(final String pattern) {
+		int m = pattern.length();
+		if (m > MAX_PATTERN_LENGTH) {
+			throw Warden.spot(new IllegalArgumentException("pattern too long " + pattern));
+		}
+		// states: bit p set means pattern[0..p) has matched
+		long anyTail = 0;
+		for (int p = m; p >= 0; p--) {
+			if (p == m || pattern.charAt(p) == '*' && (anyTail & 1L << p + 1) != 0) {
+				anyTail |= 1L << p;
+			}
+		}
+		long accept = 1L << m;
+		anyTail &= ~accept;
+		Hits hits = new Hits();
+		int[] nodeStack = new int[64];
+		long[] stateStack = new long[64];
+		int sp = 0;
+		nodeStack[sp] = 0;
+		stateStack[sp++] = closure(pattern, 1L);
+		while (sp > 0) {
+			int node = nodeStack[--sp];
+			long state = stateStack[sp];
+			for (int i = this.labelStart[node]; i < this.labelStart[node + 1] && state != 0; i++) {
+				state = step(pattern, state, this.labels[i]);
+			}
+			if (state == 0) {
+				continue;
+			}
+			if ((state & anyTail) != 0) {
+				// the rest of the pattern consists of stars: everything below matches
+				hits.addRange(this.firstTerm[node], this.endTerm[node]);
+				continue;
+			}
+			if ((state & accept) != 0 && isTerminal(node)) {
+				hits.add(this.firstTerm[node]);
+			}
+			for (int child = this.childStart[node + 1] - 1; child >= this.childStart[node]; child--) {
+				if (sp == nodeStack.length) {
+					nodeStack = Arrays.copyOf(nodeStack, sp * 2);
+					stateStack = Arrays.copyOf(stateStack, sp * 2);
+				}
+				nodeStack[sp] = child;
+				stateStack[sp++] = state;
+			}
+		}
+		return hits.size == 0 ? NONE : hits.toArray();
+	}
+
+	private static long step(final String pattern, final long state, final char c) {
+		long next = 0;
+		long s = state;
+		while (s != 0) {
+			int p = Long.numberOfTrailingZeros(s);
+			s &= s - 1;
+			if (p < pattern.length()) {
+				char pc = pattern.charAt(p);
+				if (pc == '*') {
+					next |= 1L << p;
+				} else if (pc == '?' || pc == c) {
+					next |= 1L << p + 1;
+				}
+			}
+		}
+		return closure(pattern, next);
+	}
+
+	private static long closure(final String pattern, final long state) {
+		long s = state;
+		for (int p = 0; p < pattern.length(); p++) {
+			if ((s & 1L << p) != 0 && pattern.charAt(p) == '*') {
+				s |= 1L << p + 1;
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * @param term to search similar terms for
+	 * @param maxEdits maximum number of insertions, deletions and substitutions >= 0
+	 * @return numbers of terms within the edit distance in ascending order
+	 */
+	public int[] matchFuzzy(final String term, final int maxEdits) {
+		int m = term.length();
+		Hits hits = new Hits();
+		int[] nodeStack = new int[64];
+		int[][] rowStack = new int[64][];
+		int sp = 0;
+		int[] initial = new int[m + 1];
+		for (int j = 0; j <= m; j++) {
+			initial[j] = j;
+		}
+		nodeStack[sp] = 0;
+		rowStack[sp++] = initial;
+		while (sp > 0) {
+			int node = nodeStack[--sp];
+			int[] row = rowStack[sp];
+			rowStack[sp] = null;
+			int rowMin = 0;
+			for (int i = this.labelStart[node]; i < this.labelStart[node + 1]; i++) {
+				char c = this.labels[i];
+				int[] next = new int[m + 1];
+				next[0] = row[0] + 1;
+				rowMin = next[0];
+				for (int j = 1; j <= m; j++) {
+					int cost = term.charAt(j - 1) == c ? 0 : 1;
+					next[j] = Math.min(Math.min(next[j - 1] + 1, row[j] + 1), row[j - 1] + cost);
+					rowMin = Math.min(rowMin, next[j]);
+				}
+				row = next;
+				if (rowMin > maxEdits) {
+					break;
+				}
+			}
+			if (rowMin > maxEdits) {
+				continue;
+			}
+			if (row[m] <= maxEdits && isTerminal(node)) {
+				hits.add(this.firstTerm[node]);
+			}
+			for (int child = this.childStart[node + 1] - 1; child >= this.childStart[node]; child--) {
+				if (sp == nodeStack.length) {
+					nodeStack = Arrays.copyOf(nodeStack, sp * 2);
+					rowStack = Arrays.copyOf(rowStack, sp * 2);
+				}
+				nodeStack[sp] = child;
+				rowStack[sp++] = row;
+			}
+		}
+		return hits.size == 0 ? NONE : hits.toArray();
+	}
+
+	@Override
+	public String toString() {
+		return "trie of " + this.terms.length + " terms in " + this.nodes + " nodes";
+	}
+}
@@ -6,6 +6,17 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nonnull;
 
@@ -13,6 +24,7 @@ import org.joda.time.DateTime;
 
 import com.google.common.collect.MapMaker;
 
+import de.zarncke.lib.block.StrictBlock;
 import de.zarncke.lib.coll.L;
 import de.zarncke.lib.ctx.Context;
 import de.zarncke.lib.err.Warden;
@@ -31,6 +43,15 @@ import de.zarncke.lib.value.Default;
 
 /**
  * This is {@link Headquarters} of the application.
+ * <p>
+ * The health of the modules is evaluated concurrently on a pool of daemon threads which grows to the number of modules,
+ * so no check waits in a queue and each module gets the full deadline. Idle threads terminate and the pool is shut
+ * down with the system. A module which doesn't answer
+ * within the {@link #getModuleHealthDeadlineMillis() deadline} is represented by its last known health and its
+ * {@link Status#isStale() Status is marked stale}; its evaluation is not repeated until it finished. The aggregated
+ * {@link #getHealth() health} is cached for {@link #getHealthTtlMillis() a configurable time} and concurrent callers
+ * share one evaluation.
+ * </p>
  * 
  * @author Gunnar Zarncke
  */
@@ -42,6 +63,8 @@ public class Headquarters implements Component, ReportListener {
 	private static final long STATUS_RESET_MILLIS = 24 * Times.MINUTES_PER_HOUR * Times.MILLIS_PER_MINUTE;
 	public static final long ALLOWED_MS_PER_LOG = 100;
 	public static final long LOG_RESCALE_PERIOD_MS = Times.MILLIS_PER_MINUTE;
+	public static final long DEFAULT_MODULE_HEALTH_DEADLINE_MILLIS = 5 * Times.MILLIS_PER_SECOND;
+	public static final int DEFAULT_HEALTH_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
 
 	/**
 	 * summarizes the system status of one {@link Module}.
@@ -54,6 +77,7 @@ public class Headquarters implements Component, ReportListener {
 		private Health highestReportedLevel;
 		private long nextReset;
 		private final List<String> lastErrorSummaries = new ArrayList<String>(1);
+		private volatile boolean stale;
 
 		public Status(final Module module) {
 			this.module = module;
@@ -70,6 +94,14 @@ public class Headquarters implements Component, ReportListener {
 			return this.health;
 		}
 
+		/**
+		 * @return true if the module didn't determine its health within the deadline of the last check and its last known
+		 * health was used instead
+		 */
+		public boolean isStale() {
+			return this.stale;
+		}
+
 		public int getNumberOfReports(final Health level) {
 			return this.numberOfReports[level.ordinal()];
 		}
@@ -145,7 +177,7 @@ public class Headquarters implements Component, ReportListener {
 
 		@Override
 		public String toString() {
-			return this.module + ":" + this.health + "\n" + getLastErrorSummary();
+			return this.module + ":" + this.health + (this.stale ? " (stale)" : "") + "\n" + getLastErrorSummary();
 		}
 
 		public Health inform(final Report report) {
@@ -212,9 +244,15 @@ public class Headquarters implements Component, ReportListener {
 	private Thread shutdownHandler;
 	private Thread killHandler;
 	private long statusResetPeriodMillis;
-	private long lastCheckMs;
-	private Health lastHealth = Health.VIRGIN;
+	private volatile long lastCheckMs;
+	private volatile Health lastHealth = Health.VIRGIN;
 	private final Map<Module, Status> statusByModule = new MapMaker().makeMap();
+
+	private long healthTtlMillis = MIN_CHECK_INTERVAL_MILLIS;
+	private long moduleHealthDeadlineMillis = DEFAULT_MODULE_HEALTH_DEADLINE_MILLIS;
+	private final ReentrantLock healthLock = new ReentrantLock();
+	private final Map<Module, Future<Health>> pendingHealth = new MapMaker().makeMap();
+	private ThreadPoolExecutor healthExecutor;
 	private boolean immediateLoggingEnabled = false;
 
 	private int logsSince = 0;
@@ -234,25 +272,41 @@ public class Headquarters implements Component, ReportListener {
 
 	/**
 	 * Returns a snapshot of the aggregated system health.
+	 * The health is evaluated at most once per {@link #getHealthTtlMillis() TTL}. While one caller evaluates it, other
+	 * callers get the previous result (if any).
 	 * 
 	 * @return Health of the overall system
 	 */
 	@Override
 	public Health getHealth() {
-		if (this.lastCheckMs > System.currentTimeMillis() - MIN_CHECK_INTERVAL_MILLIS) {
+		if (this.lastCheckMs > System.currentTimeMillis() - this.healthTtlMillis) {
 			return this.lastHealth;
 		}
-
-		// TODO 20121205 gunnar This seems to call module getHealth indirectly multiple times
-		Health health = checkModuleHealthUpdateStatusAndGetAggregate();
-		this.lastHealth = health;
-		this.lastCheckMs = System.currentTimeMillis();
-		return this.lastHealth;
+		if (!this.healthLock.tryLock()) {
+			if (this.lastCheckMs > 0) {
+				return this.lastHealth;
+			}
+			this.healthLock.lock();
+		}
+		try {
+			if (this.lastCheckMs > System.currentTimeMillis() - this.healthTtlMillis) {
+				return this.lastHealth;
+			}
+			// TODO 20121205 gunnar This seems to call module getHealth indirectly multiple times
+			Health health = checkModuleHealthUpdateStatusAndGetAggregate();
+			this.lastHealth = health;
+			this.lastCheckMs = System.currentTimeMillis();
+			return health;
+		} finally {
+			this.healthLock.unlock();
+		}
 	}
 
 	/**
 	 * Determines the overall system state.
-	 * This operation may be quite expensive
+	 * The modules are asked concurrently. Modules which don't answer within the
+	 * {@link #getModuleHealthDeadlineMillis() deadline} contribute their last known health.
+	 * This operation may be quite expensive; consider {@link #getHealth()}.
 	 * 
 	 * @return aggregated health
 	 */
@@ -262,14 +316,46 @@ public class Headquarters implements Component, ReportListener {
 		int deaths = 0;
 		Health health = Health.VIRGIN;
 		Collection<Module> modules = getAllModules();
+
+		// one thread per module lets all checks start now, so they share the deadline
+		ensureHealthThreads(modules.size());
+		Map<Module, Future<Health>> futures = L.map();
+		for (Module m : modules) {
+			futures.put(m, submitHealthCheck(m));
+		}
+		long deadline = System.currentTimeMillis() + this.moduleHealthDeadlineMillis;
+
 		for (Module m : modules) {
 			try {
 				Health mHealth;
+				Future<Health> future = futures.get(m);
 				try {
-					mHealth = m.getHealth();
-					getStatusFor(m).informAboutHealthChange(mHealth);
-				} catch (Throwable t) { // NOPMD generic
-					Warden.disregardAndReport(t);
+					mHealth = future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+					this.pendingHealth.remove(m, future);
+					getStatusFor(m).stale = false;
+					if (mHealth == null) {
+						// failed and already reported
+						mHealth = healthByModule.get(m);
+					} else {
+						getStatusFor(m).informAboutHealthChange(mHealth);
+					}
+				} catch (TimeoutException e) {
+					Warden.disregard(e);
+					mHealth = healthByModule.get(m);
+					if (mHealth == null) {
+						mHealth = Health.WARNINGS;
+					}
+					getStatusFor(m).stale = true;
+					Log.LOG.get().report(
+							"health of " + m.getName().getDefault() + " not determined within "
+									+ this.moduleHealthDeadlineMillis + "ms, using last known " + mHealth);
+				} catch (ExecutionException e) {
+					this.pendingHealth.remove(m, future);
+					Warden.disregardAndReport(e.getCause());
+					mHealth = healthByModule.get(m);
+				} catch (InterruptedException e) {
+					Warden.disregard(e);
+					Thread.currentThread().interrupt();
 					mHealth = healthByModule.get(m);
 				}
 
@@ -301,6 +387,84 @@ public class Headquarters implements Component, ReportListener {
 		return health;
 	}
 
+	/**
+	 * Starts the evaluation of the health of a module unless one is still running from an earlier check.
+	 * 
+	 * @param module != null
+	 * @return Future of the health; the Health is null if the module failed (this is reported already)
+	 */
+	private Future<Health> submitHealthCheck(final Module module) {
+		synchronized (this.pendingHealth) {
+			Future<Health> pending = this.pendingHealth.get(module);
+			if (pending != null) {
+				return pending;
+			}
+			final Default<?>[] context = Context.bundleCurrentContext();
+			final StrictBlock<Health> check = new StrictBlock<Health>() {
+				@Override
+				public Health execute() {
+					try {
+						return module.getHealth();
+					} catch (Throwable t) { // NOPMD generic
+						Warden.disregardAndReport(t);
+						return null;
+					}
+				}
+			};
+			try {
+				pending = getHealthExecutor().submit(new Callable<Health>() {
+					@Override
+					public Health call() {
+						Warden w = Warden.appointWarden();
+						try {
+							return Context.runWith(check, Context.INHERITED, context);
+						} finally {
+							w.finish();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				throw Warden.spot(new IllegalStateException("cannot check health of " + module, e));
+			}
+			this.pendingHealth.put(module, pending);
+			return pending;
+		}
+	}
+
+	private synchronized ThreadPoolExecutor getHealthExecutor() {
+		if (this.healthExecutor == null) {
+			this.healthExecutor = new ThreadPoolExecutor(DEFAULT_HEALTH_THREADS, DEFAULT_HEALTH_THREADS, 1,
+					TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(final Runnable r) {
+							Thread thread = new Thread(r, "health-" + this.count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			this.healthExecutor.allowCoreThreadTimeOut(true);
+		}
+		return this.healthExecutor;
+	}
+
+	private synchronized void ensureHealthThreads(final int threads) {
+		ThreadPoolExecutor executor = getHealthExecutor();
+		if (threads > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(threads);
+			executor.setCorePoolSize(threads);
+		}
+	}
+
+	private synchronized void shutdownHealthExecutor() {
+		if (this.healthExecutor != null) {
+			this.healthExecutor.shutdownNow();
+			this.healthExecutor = null;
+		}
+		this.pendingHealth.clear();
+	}
+
 	/**
 	 * Returns all modules in the system (including sub children).
 	 * 
@@ -456,10 +620,15 @@ public class Headquarters implements Component, ReportListener {
 
 	/**
 	 * Calls {@link Module#shutdown()} on each module in the reverse {@link #startOrRestart()} order.
+	 * Then stops the threads of the health checks.
 	 */
 	public void shutdown() {
 		Log.LOG.get().report(new Exception("System is shutting down"));
-		shutdown(Headquarters.this.installation.getRootModule(), true);
+		try {
+			shutdown(Headquarters.this.installation.getRootModule(), true);
+		} finally {
+			shutdownHealthExecutor();
+		}
 	}
 
 	private void shutdown(final Module module, final boolean root) {
@@ -665,6 +834,33 @@ public class Headquarters implements Component, ReportListener {
 		return this;
 	}
 
+	public long getHealthTtlMillis() {
+		return this.healthTtlMillis;
+	}
+
+	/**
+	 * @param healthTtlMillis time for which {@link #getHealth()} returns the last aggregated health without checking
+	 * the modules again
+	 * @return this
+	 */
+	public Headquarters setHealthTtlMillis(final long healthTtlMillis) {
+		this.healthTtlMillis = healthTtlMillis;
+		return this;
+	}
+
+	public long getModuleHealthDeadlineMillis() {
+		return this.moduleHealthDeadlineMillis;
+	}
+
+	/**
+	 * @param moduleHealthDeadlineMillis time each check waits for the modules to determine their health
+	 * @return this
+	 */
+	public Headquarters setModuleHealthDeadlineMillis(final long moduleHealthDeadlineMillis) {
+		this.moduleHealthDeadlineMillis = moduleHealthDeadlineMillis;
+		return this;
+	}
+
 	public int getMaxReportsKept() {
 		return this.maxReportsKept;
 	}
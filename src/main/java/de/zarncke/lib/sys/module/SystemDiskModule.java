@@ -11,19 +11,26 @@ import javax.annotation.Nonnull;
 import de.zarncke.lib.coll.L;
 import de.zarncke.lib.coll.Pair;
 import de.zarncke.lib.i18n.Translations;
+import de.zarncke.lib.io.DiskInfo;
 import de.zarncke.lib.io.IOTools;
 import de.zarncke.lib.sys.Health;
 
 /**
  * This Module tracks the system disk space.
+ * The space is sampled at most every {@link #SAMPLE_MILLIS} and without forking processes, so it may be queried
+ * frequently.
  *
  * @author Gunnar Zarncke
  */
 public class SystemDiskModule implements Module {
+	public static final long SAMPLE_MILLIS = 500;
+
 	private boolean virgin = true;
 	private State state = State.UNINITIALIZED;
 	private final File fileOnFileSystem;
 	private final String name;
+	private volatile DiskInfo snapshot;
+	private volatile long snapshotMillis;
 
 	public SystemDiskModule() {
 		this(IOTools.getTempDir());
@@ -89,7 +96,7 @@ public class SystemDiskModule implements Module {
 
 	private Health checkDiskHealth() {
 		double load = getLoad();
-		if (load == Double.NaN) {
+		if (Double.isNaN(load)) {
 			return Health.VIRGIN;
 		}
 		if (load >= 0.99) {
@@ -107,13 +114,30 @@ public class SystemDiskModule implements Module {
 		return Health.CLEAN;
 	}
 
+	/**
+	 * @return current disk space (cached for {@link #SAMPLE_MILLIS}); null if unknown
+	 */
+	public DiskInfo getDiskInfo() {
+		long now = System.currentTimeMillis();
+		DiskInfo current = this.snapshot;
+		if (current != null && now < this.snapshotMillis + SAMPLE_MILLIS) {
+			return current;
+		}
+		Pair<Long, Long> disk = IOTools.getAvailableSystemDiskBytes(this.fileOnFileSystem);
+		current = disk == null ? null : new DiskInfo(this.fileOnFileSystem.getPath(), disk.getFirst().longValue(), disk
+				.getSecond().longValue());
+		this.snapshot = current;
+		this.snapshotMillis = now;
+		return current;
+	}
+
 	@Override
 	public double getLoad() {
-		Pair<Long, Long> disk = IOTools.getAvailableSystemDiskBytes(this.fileOnFileSystem);
-		if (disk == null) {
+		DiskInfo disk = getDiskInfo();
+		if (disk == null || disk.getTotal() == 0) {
 			return Double.NaN;
 		}
-		return 1.0 - disk.getFirst().longValue() / (double) disk.getSecond().longValue();
+		return 1.0 - disk.getFree() / (double) disk.getTotal();
 	}
 
 	@Override
@@ -123,7 +147,7 @@ public class SystemDiskModule implements Module {
 
 	@Override
 	public String getMetaInformation() {
-		Pair<Long, Long> disk = IOTools.getAvailableSystemDiskBytes(this.fileOnFileSystem);
-		return disk == null ? "disk size unknown" : disk.getFirst() + " free of " + disk.getSecond() + " total";
+		DiskInfo disk = getDiskInfo();
+		return disk == null ? "disk size unknown" : disk.getFree() + " free of " + disk.getTotal() + " total";
 	}
 }
\ No newline at end of file
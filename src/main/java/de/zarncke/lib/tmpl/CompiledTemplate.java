@@ -0,0 +1,345 @@
+package de.zarncke.lib.tmpl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.Warden;
+
+/**
+ * Immutable, pre-encoded form of a {@link Template} for fast repeated rendering.
+ * All constant text is encoded once into a single byte array. The program consists of instructions which either copy
+ * a constant range or insert a variable; a variable instruction jumps over the following default text if the variable
+ * has a value.
+ * Variables are addressed by {@link #getSlot(String) slot} and encoded directly into the target without intermediate
+ * Strings.
+ * Instances are thread safe.
+ *
+ * @author Gunnar Zarncke
+ */
+public final class CompiledTemplate {
+	private static final int OP_CONST = 0;
+	private static final int OP_SLOT = 1;
+	private static final int INSTRUCTION_SIZE = 3;
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final Set<String> ASCII_COMPATIBLE = L.set("UTF-8", "ISO-8859-1", "ISO-8859-15", "US-ASCII",
+			"windows-1252");
+
+	/**
+	 * Encoding state for one thread; busy while its buffer is set.
+	 */
+	private static final class Sink {
+		final CharsetEncoder encoder;
+		final ByteBuffer scratch = ByteBuffer.allocate(BUFFER_SIZE);
+		ByteBuffer buffer;
+		OutputStream out;
+
+		Sink(final Charset encoding) {
+			this.encoder = encoding.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+
+		void flush() throws IOException {
+			if (this.out == null) {
+				throw Warden.spot(new BufferOverflowException());
+			}
+			this.out.write(this.buffer.array(), this.buffer.arrayOffset(), this.buffer.position());
+			this.buffer.clear();
+		}
+
+		void put(final byte[] bytes, final int offset, final int length) throws IOException {
+			if (length > this.buffer.remaining()) {
+				if (this.out == null) {
+					throw Warden.spot(new BufferOverflowException());
+				}
+				flush();
+				if (length > this.buffer.remaining()) {
+					this.out.write(bytes, offset, length);
+					return;
+				}
+			}
+			this.buffer.put(bytes, offset, length);
+		}
+
+		void putChars(final CharSequence chars, final boolean ascii) throws IOException {
+			int n = chars.length();
+			int i = 0;
+			if (ascii) {
+				ByteBuffer b = this.buffer;
+				for (; i < n; i++) {
+					char c = chars.charAt(i);
+					if (c >= 0x80) {
+						break;
+					}
+					if (!b.hasRemaining()) {
+						flush();
+					}
+					b.put((byte) c);
+				}
+				if (i == n) {
+					return;
+				}
+			}
+			CharsetEncoder enc = this.encoder.reset();
+			CharBuffer in = CharBuffer.wrap(chars, i, n);
+			while (true) {
+				CoderResult result = enc.encode(in, this.buffer, true);
+				if (result.isOverflow()) {
+					flush();
+				} else if (result.isError()) {
+					try {
+						result.throwException();
+					} catch (CharacterCodingException e) {
+						throw Warden.spot(new IOException("cannot encode " + chars, e));
+					}
+				} else {
+					break;
+				}
+			}
+			while (enc.flush(this.buffer).isOverflow()) {
+				flush();
+			}
+		}
+	}
+
+	private final Charset encoding;
+	private final boolean ascii;
+	private final byte[] constants;
+	private final int[] program;
+	private final String[] slotKeys;
+	private final Map<String, Integer> slotByKey;
+	private final int constantLength;
+
+	/**
+	 * Shared by all templates of a thread (keeps one buffer per thread, not per template and thread).
+	 */
+	private static final ThreadLocal<Sink> SINKS = new ThreadLocal<Sink>();
+
+	/**
+	 * Compiles the structure of a template.
+	 *
+	 * @param data the template text
+	 * @param starts start offsets of the constant parts; one more than keys
+	 * @param ends end offsets of the constant parts; one more than keys
+	 * @param keys key for each insert position
+	 * @param defaults default text for each insert position (may be null)
+	 * @param encoding to encode to
+	 * @param slotPerPosition true: each insert position gets its own slot (numbered by position); false: all positions
+	 * of a key share one slot
+	 */
+	CompiledTemplate(final CharSequence data, final int[] starts, final int[] ends, final String[] keys,
+			final CharSequence[] defaults, final Charset encoding, final boolean slotPerPosition) {
+		this.encoding = encoding;
+		this.ascii = ASCII_COMPATIBLE.contains(encoding.name());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		List<String> slots = L.l();
+		Map<String, Integer> bySlot = L.map();
+		int n = keys.length;
+		int[] prog = new int[(3 * n + 1) * INSTRUCTION_SIZE];
+		int pc = 0;
+		for (int i = 0; i <= n; i++) {
+			pc = addConstant(prog, pc, bytes, data.subSequence(starts[i], ends[i]));
+			if (i == n) {
+				break;
+			}
+			Integer slot = slotPerPosition ? null : bySlot.get(keys[i]);
+			if (slot == null) {
+				slot = Integer.valueOf(slots.size());
+				slots.add(keys[i]);
+				if (!bySlot.containsKey(keys[i])) {
+					bySlot.put(keys[i], slot);
+				}
+			}
+			int slotPc = pc;
+			prog[pc] = OP_SLOT;
+			prog[pc + 1] = slot.intValue();
+			pc += INSTRUCTION_SIZE;
+			if (defaults[i] != null) {
+				pc = addConstant(prog, pc, bytes, defaults[i]);
+			}
+			// jump target if the variable is set: behind the default
+			prog[slotPc + 2] = pc;
+		}
+		this.constants = bytes.toByteArray();
+		this.program = Arrays.copyOf(prog, pc);
+		this.slotKeys = slots.toArray(new String[slots.size()]);
+		this.slotByKey = bySlot;
+		this.constantLength = this.constants.length;
+	}
+
+	private int addConstant(final int[] prog, final int pc, final ByteArrayOutputStream bytes, final CharSequence text) {
+		if (text.length() == 0) {
+			return pc;
+		}
+		byte[] encoded = text.toString().getBytes(this.encoding);
+		prog[pc] = OP_CONST;
+		prog[pc + 1] = bytes.size();
+		prog[pc + 2] = encoded.length;
+		bytes.write(encoded, 0, encoded.length);
+		return pc + INSTRUCTION_SIZE;
+	}
+
+	/**
+	 * @return number of distinct variables
+	 */
+	public int getNumberOfSlots() {
+		return this.slotKeys.length;
+	}
+
+	/**
+	 * @param key of a variable
+	 * @return (first) slot of the variable or -1 if the template doesn't contain it
+	 */
+	public int getSlot(final String key) {
+		Integer slot = this.slotByKey.get(key);
+		return slot == null ? -1 : slot.intValue();
+	}
+
+	/**
+	 * @param slot 0 <= slot < {@link #getNumberOfSlots()}
+	 * @return the key
+	 */
+	public String getKey(final int slot) {
+		return this.slotKeys[slot];
+	}
+
+	public Charset getEncoding() {
+		return this.encoding;
+	}
+
+	/**
+	 * @param values by key, missing keys get their default
+	 * @return values by slot for {@link #render(CharSequence[], OutputStream)}
+	 */
+	public CharSequence[] toSlots(final Map<String, ? extends CharSequence> values) {
+		CharSequence[] slots = new CharSequence[this.slotKeys.length];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = values.get(this.slotKeys[i]);
+		}
+		return slots;
+	}
+
+	/**
+	 * @param values by slot; null means the default text of the template
+	 * @return an estimate of the size of the rendered bytes
+	 */
+	public int estimateSize(final CharSequence[] values) {
+		int size = this.constantLength;
+		for (CharSequence v : values) {
+			if (v != null) {
+				size += v.length();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Renders into a stream.
+	 *
+	 * @param values by slot; null means the default text of the template
+	 * @param out != null, is not closed
+	 * @throws IOException from the stream
+	 */
+	public void render(final CharSequence[] values, final OutputStream out) throws IOException {
+		Sink sink = getSink();
+		sink.buffer = sink.scratch;
+		sink.buffer.clear();
+		sink.out = out;
+		try {
+			execute(values, sink);
+			if (sink.buffer.position() > 0) {
+				sink.flush();
+			}
+		} finally {
+			sink.out = null;
+			sink.buffer = null;
+		}
+	}
+
+	/**
+	 * Renders into a buffer.
+	 *
+	 * @param values by slot; null means the default text of the template
+	 * @param target to put the bytes into (from its position)
+	 * @throws BufferOverflowException if the target is too small
+	 */
+	public void render(final CharSequence[] values, final ByteBuffer target) {
+		Sink sink = getSink();
+		sink.buffer = target;
+		sink.out = null;
+		try {
+			execute(values, sink);
+		} catch (IOException e) {
+			// not possible without stream
+			throw Warden.spot(new IllegalStateException("unexpected", e));
+		} finally {
+			sink.buffer = null;
+		}
+	}
+
+	private Sink getSink() {
+		Sink sink = SINKS.get();
+		if (sink != null && sink.buffer != null) {
+			// rendering from within a rendering (e.g. by a value)
+			return new Sink(this.encoding);
+		}
+		if (sink == null || !sink.encoder.charset().equals(this.encoding)) {
+			sink = new Sink(this.encoding);
+			SINKS.set(sink);
+		}
+		return sink;
+	}
+
+	/**
+	 * @param values by slot; null means the default text of the template
+	 * @return rendered bytes
+	 */
+	public byte[] render(final CharSequence[] values) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(estimateSize(values) + 16);
+		try {
+			render(values, baos);
+		} catch (IOException e) {
+			throw Warden.spot(new IllegalStateException("unexpected", e));
+		}
+		return baos.toByteArray();
+	}
+
+	private void execute(final CharSequence[] values, final Sink sink) throws IOException {
+		int[] prog = this.program;
+		int pc = 0;
+		while (pc < prog.length) {
+			if (prog[pc] == OP_CONST) {
+				sink.put(this.constants, prog[pc + 1], prog[pc + 2]);
+				pc += INSTRUCTION_SIZE;
+			} else {
+				CharSequence value = values[prog[pc + 1]];
+				if (value == null) {
+					pc += INSTRUCTION_SIZE;
+				} else {
+					sink.putChars(value, this.ascii);
+					pc = prog[pc + 2];
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "compiled template with " + this.slotKeys.length + " variables, " + this.constants.length
+				+ " constant bytes in " + this.encoding;
+	}
+}
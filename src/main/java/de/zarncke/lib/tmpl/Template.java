@@ -3,26 +3,22 @@ package de.zarncke.lib.tmpl;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import com.google.common.base.Function;
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.Multimap;
 
-import de.zarncke.lib.coll.L;
 import de.zarncke.lib.err.Warden;
-import de.zarncke.lib.io.CompositeInputStream;
 
 /**
  * Provides a simple templating mechanism for CharSequences. Behaves like a Map - but only with the keys defined in the
@@ -45,7 +41,8 @@ import de.zarncke.lib.io.CompositeInputStream;
  *
  * Note that replacements should contain a trailing newline. No nesting of replacements is supported!
  * Can be rendered efficiently into any stream. Can be copied - in which case the content will be copied. <br/>
- * For performance use a (memory mapped) CharBuffer.
+ * For performance use a (memory mapped) CharBuffer. For repeated rendering into bytes use a {@link #compile(Charset)
+ * compiled template}.
  */
 public class Template extends AbstractMap<String, CharSequence> {
 	public interface Patterns {
@@ -95,6 +92,17 @@ public class Template extends AbstractMap<String, CharSequence> {
 
 	private CharSequence[] inserts;
 
+	private CharSequence[] defaults;
+
+	private String[] keys;
+
+	private volatile CompiledTemplate compiled;
+
+	/**
+	 * With one slot per position for rendering the current content.
+	 */
+	private volatile CompiledTemplate compiledPositions;
+
 	private Multimap<String, Integer> keyToPos = ArrayListMultimap.create();
 
 	public Template(final CharSequence data) {
@@ -113,12 +121,73 @@ public class Template extends AbstractMap<String, CharSequence> {
 
 	public Template(final Template t) {
 		this.data = t.data;
+		this.patterns = t.patterns;
 		this.startOffsets = t.startOffsets;
 		this.endOffsets = t.endOffsets;
 		this.keyToPos = t.keyToPos;
+		this.keys = t.keys;
+		this.defaults = t.defaults;
+		this.compiled = t.compiled;
+		this.compiledPositions = t.compiledPositions;
 		this.inserts = t.inserts.clone(); // allow differing contents
 	}
 
+	/**
+	 * Compiles the structure of this template. The result is cached for the last encoding.
+	 * The compiled template renders the original default of a variable if no value is given; the values put into this
+	 * Template are not taken into account.
+	 *
+	 * @param encoding to encode to
+	 * @return CompiledTemplate
+	 */
+	public CompiledTemplate compile(final Charset encoding) {
+		CompiledTemplate c = this.compiled;
+		if (c == null || !c.getEncoding().equals(encoding)) {
+			c = new CompiledTemplate(this.data, this.startOffsets, this.endOffsets, this.keys, this.defaults, encoding,
+					false);
+			this.compiled = c;
+		}
+		return c;
+	}
+
+	private CompiledTemplate compilePositions(final Charset encoding) {
+		CompiledTemplate c = this.compiledPositions;
+		if (c == null || !c.getEncoding().equals(encoding)) {
+			c = new CompiledTemplate(this.data, this.startOffsets, this.endOffsets, this.keys, this.defaults, encoding,
+					true);
+			this.compiledPositions = c;
+		}
+		return c;
+	}
+
+	/**
+	 * Renders the current content of this template.
+	 *
+	 * @param out != null, is not closed
+	 * @param encoding to use
+	 * @throws IOException from the stream
+	 */
+	public void renderTo(final OutputStream out, final Charset encoding) throws IOException {
+		compilePositions(encoding).render(currentSlots(), out);
+	}
+
+	/**
+	 * @return the content of each position (positions may differ until a value is put)
+	 */
+	private CharSequence[] currentSlots() {
+		CharSequence[] values = new CharSequence[this.inserts.length];
+		for (int i = 0; i < values.length; i++) {
+			CharSequence insert = this.inserts[i];
+			if (insert == null) {
+				values[i] = "";
+			} else if (insert != this.defaults[i]) {
+				values[i] = insert;
+			}
+			// else the pre-encoded default
+		}
+		return values;
+	}
+
 	public void renderTo(final Writer writer) throws IOException {
 		int n = this.inserts.length;
 		for (int i = 0; i < n; i++) {
@@ -131,33 +200,14 @@ public class Template extends AbstractMap<String, CharSequence> {
 	}
 
 	public InputStream getAsRenderedInputStream(final Charset encoding) {
-		List<CharSequence> cs = L.l();
-		int n = this.inserts.length;
-		for (int i = 0; i < n; i++) {
-			cs.add(this.data.subSequence(this.startOffsets[i], this.endOffsets[i]));
-			if (this.inserts[i] != null) {
-				cs.add(this.inserts[i]);
-			}
-		}
-		cs.add(this.data.subSequence(this.startOffsets[n], this.endOffsets[n]));
-
-		return new CompositeInputStream(L.copy(Collections2.transform(cs, new Function<CharSequence, InputStream>() {
-			public InputStream apply(final CharSequence from) {
-				// if (from.length() < 10000) {
-				// just convert the chunk in memory
-				return new ByteArrayInputStream(from.toString().getBytes(encoding));
-				// }
-				// allow to stream it by using a converted buffer
-				// TODO actually do the encoding in chunks
-				// return new ByteBufferInputStream(encoding.encode(CharBuffer.wrap(from)));
-			}
-		})));
+		return new ByteArrayInputStream(compilePositions(encoding).render(currentSlots()));
 	}
 
 	private void findOffsetsAndKeys() {
 		ArrayList<Integer> soffs = new ArrayList<Integer>();
 		ArrayList<Integer> eoffs = new ArrayList<Integer>();
 		ArrayList<CharSequence> inss = new ArrayList<CharSequence>();
+		ArrayList<String> ks = new ArrayList<String>();
 
 		Matcher sm = this.patterns.getStart().matcher(this.data);
 		Matcher em = this.patterns.getEnd() == null ? null : this.patterns.getEnd().matcher(this.data);
@@ -168,6 +218,7 @@ public class Template extends AbstractMap<String, CharSequence> {
 			soffs.add(Integer.valueOf(currentPos));
 			eoffs.add(Integer.valueOf(matchStartPos));
 			String key = sm.group(1);
+			ks.add(key);
 			this.keyToPos.put(key, Integer.valueOf(size));
 			size++;
 			int matchEnd = sm.end();
@@ -187,6 +238,8 @@ public class Template extends AbstractMap<String, CharSequence> {
 		this.startOffsets = listToLongArray(soffs);
 		this.endOffsets = listToLongArray(eoffs);
 		this.inserts = inss.toArray(new CharSequence[inss.size()]);
+		this.defaults = this.inserts.clone();
+		this.keys = ks.toArray(new String[ks.size()]);
 	}
 
 	private static int[] listToLongArray(final ArrayList<Integer> offs) {
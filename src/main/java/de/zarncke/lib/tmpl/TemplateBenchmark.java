@@ -0,0 +1,162 @@
+package de.zarncke.lib.tmpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.io.CompositeInputStream;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.log.Log;
+
+/**
+ * Compares rendering a {@link Template} by encoding each segment on every render (as done before compiled templates
+ * existed) with rendering a {@link CompiledTemplate} into a stream and into a buffer.
+ * Reports renders/sec. Call with the number of renders as optional argument.
+ *
+ * @author Gunnar Zarncke
+ */
+public class TemplateBenchmark {
+	private static final int DEFAULT_RENDERS = 200000;
+	private static final int ROUNDS = 5;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Counts and discards bytes.
+	 */
+	private static final class NullOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(final int b) {
+			this.count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) {
+			this.count += len;
+		}
+	}
+
+	private final int renders;
+	private final Template template;
+	private final CompiledTemplate compiled;
+	private final CharSequence[][] values;
+	private long sink;
+
+	public TemplateBenchmark(final int renders) {
+		this.renders = renders;
+		StringBuilder page = new StringBuilder();
+		page.append("<html><head><title>${TITLE}</title></head><body>\n");
+		for (int i = 0; i < 20; i++) {
+			page.append("<div class=\"row\">Some constant text of the page, row ").append(i).append(" - ${V")
+					.append(i % 5).append("}</div>\n");
+		}
+		page.append("<p>${FOOTER}</p></body></html>\n");
+		this.template = new Template(page, Template.SHELL_PATTERN);
+		this.compiled = this.template.compile(UTF8);
+		this.values = new CharSequence[16][];
+		for (int v = 0; v < this.values.length; v++) {
+			CharSequence[] slots = new CharSequence[this.compiled.getNumberOfSlots()];
+			for (int s = 0; s < slots.length; s++) {
+				slots[s] = "value " + v + " of " + this.compiled.getKey(s) + (s == 0 ? " \u00fcber" : "");
+			}
+			this.values[v] = slots;
+		}
+	}
+
+	public static void main(final String[] args) throws IOException {
+		TemplateBenchmark bm = new TemplateBenchmark(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RENDERS);
+		for (int r = 0; r < ROUNDS; r++) {
+			bm.report("segments", bm.measureSegments());
+			bm.report("compiled to stream", bm.measureCompiledStream());
+			bm.report("compiled to buffer", bm.measureCompiledBuffer());
+		}
+	}
+
+	private void report(final String mode, final long nanos) {
+		Log.LOG.get().report(mode + ": " + (long) (this.renders * 1e9 / nanos) + " renders/sec");
+	}
+
+	/**
+	 * The rendering as done by {@link Template#getAsRenderedInputStream(Charset)} before compilation.
+	 *
+	 * @return nanos
+	 * @throws IOException on error
+	 */
+	public long measureSegments() throws IOException {
+		Template t = new Template(this.template);
+		long start = System.nanoTime();
+		for (int i = 0; i < this.renders; i++) {
+			CharSequence[] slots = this.values[i % this.values.length];
+			for (int s = 0; s < slots.length; s++) {
+				t.put(this.compiled.getKey(s), slots[s]);
+			}
+			List<InputStream> parts = L.l();
+			for (CharSequence part : segments(t)) {
+				parts.add(new ByteArrayInputStream(part.toString().getBytes(UTF8)));
+			}
+			this.sink += IOTools.getAllBytes(new CompositeInputStream(parts)).length;
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static List<CharSequence> segments(final Template t) throws IOException {
+		final List<CharSequence> parts = L.l();
+		t.renderTo(new Writer() {
+			@Override
+			public void write(final char[] cbuf, final int off, final int len) {
+				parts.add(new String(cbuf, off, len));
+			}
+
+			@Override
+			public Writer append(final CharSequence csq) {
+				parts.add(csq);
+				return this;
+			}
+
+			@Override
+			public void flush() {
+				// nop
+			}
+
+			@Override
+			public void close() {
+				// nop
+			}
+		});
+		return parts;
+	}
+
+	public long measureCompiledStream() throws IOException {
+		NullOutputStream out = new NullOutputStream();
+		long start = System.nanoTime();
+		for (int i = 0; i < this.renders; i++) {
+			this.compiled.render(this.values[i % this.values.length], out);
+		}
+		long nanos = System.nanoTime() - start;
+		this.sink += out.count;
+		return nanos;
+	}
+
+	public long measureCompiledBuffer() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+		long start = System.nanoTime();
+		for (int i = 0; i < this.renders; i++) {
+			buffer.clear();
+			this.compiled.render(this.values[i % this.values.length], buffer);
+			this.sink += buffer.position();
+		}
+		return System.nanoTime() - start;
+	}
+
+	@Override
+	public String toString() {
+		return "rendered " + this.sink + " bytes";
+	}
+}
@@ -1,5 +1,6 @@
 package de.zarncke.lib.tmpl;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -7,15 +8,16 @@ import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.util.Map;
 
-import de.zarncke.lib.io.IOTools;
 import de.zarncke.lib.io.store.DelegateStore;
 import de.zarncke.lib.io.store.Store;
+import de.zarncke.lib.io.store.StoreWatcher;
 import de.zarncke.lib.region.Region;
 import de.zarncke.lib.region.RegionUtil;
 import de.zarncke.lib.tmpl.Template.Patterns;
 
 /**
  * A Store which templates a delegate Store.
+ * The parsed template is kept until the {@link StoreWatcher} reports a change of the delegate.
  *
  * @author Gunnar Zarncke
  */
@@ -26,6 +28,8 @@ public class TemplatedStore extends DelegateStore {
 	private final Patterns patterns;
 	private Template template;
 	private long lastModified;
+	private StoreWatcher.Watch watch;
+	private long generation;
 
 	public TemplatedStore(final Store delegate, final Template.Patterns patterns, final Map<String, String> values,
 			final Charset encoding) {
@@ -37,12 +41,18 @@ public class TemplatedStore extends DelegateStore {
 
 	@Override
 	public InputStream getInputStream() throws IOException {
-		// TODO cache the template
-		Template t = getTemplate();
-		for (String key : t.keySet()) {
-			t.put(key, this.values.get(key));
+		return new ByteArrayInputStream(render());
+	}
+
+	private byte[] render() throws IOException {
+		CompiledTemplate compiled = getTemplate().compile(this.encoding);
+		CharSequence[] slots = new CharSequence[compiled.getNumberOfSlots()];
+		for (int i = 0; i < slots.length; i++) {
+			String value = this.values.get(compiled.getKey(i));
+			// missing values are rendered empty
+			slots[i] = value == null ? "" : value;
 		}
-		return t.getAsRenderedInputStream(this.encoding);
+		return compiled.render(slots);
 	}
 
 	@Override
@@ -52,7 +62,11 @@ public class TemplatedStore extends DelegateStore {
 	}
 
 	public Template getTemplate() throws IOException {
-		if (this.template == null || this.lastModified == Store.UNKNOWN_MODIFICATION || this.lastModified < getLastModified()) {
+		if (this.template == null || this.lastModified == Store.UNKNOWN_MODIFICATION || hasChanged()) {
+			if (this.watch == null) {
+				this.watch = StoreWatcher.CTX.get().watch(this);
+			}
+			this.generation = this.watch.getGeneration();
 			this.lastModified = getLastModified();
 			Region r = super.asRegion();
 			ByteBuffer bb = RegionUtil.asByteBuffer(r);
@@ -62,10 +76,16 @@ public class TemplatedStore extends DelegateStore {
 		return this.template;
 	}
 
+	private boolean hasChanged() {
+		if (this.watch == null) {
+			return this.lastModified < getLastModified();
+		}
+		return this.watch.getGeneration() != this.generation;
+	}
+
 	@Override
 	public Region asRegion() throws IOException {
-		// TODO inefficient
-		return RegionUtil.asRegion(IOTools.getAllBytes(getInputStream()));
+		return RegionUtil.asRegion(render());
 	}
 
 }
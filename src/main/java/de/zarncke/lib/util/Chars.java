@@ -387,6 +387,74 @@ public final class Chars {
 				&& str.length() >= pat.length() - 1;
 	}
 
+	/**
+	 * A wildcard match where "*" matches any number of characters and "?" matches exactly one character.
+	 *
+	 * @param str the String to test
+	 * @param pat a pattern which may contain any number of "*" and "?"
+	 * @return true if str matches pat
+	 */
+	public static boolean wildcardMatch(final String str, final String pat) {
+		int s = 0;
+		int p = 0;
+		int star = -1;
+		int starMatch = 0;
+		while (s < str.length()) {
+			if (p < pat.length() && (pat.charAt(p) == '?' || pat.charAt(p) == str.charAt(s))) {
+				s++;
+				p++;
+			} else if (p < pat.length() && pat.charAt(p) == '*') {
+				star = p++;
+				starMatch = s;
+			} else if (star >= 0) {
+				p = star + 1;
+				s = ++starMatch;
+			} else {
+				return false;
+			}
+		}
+		while (p < pat.length() && pat.charAt(p) == '*') {
+			p++;
+		}
+		return p == pat.length();
+	}
+
+	/**
+	 * Levenshtein distance (insertions, deletions and substitutions) bounded by a maximum.
+	 *
+	 * @param a != null
+	 * @param b != null
+	 * @param max the maximum distance of interest >= 0
+	 * @return the distance or max + 1 if it is larger than max
+	 */
+	public static int editDistance(final CharSequence a, final CharSequence b, final int max) {
+		if (Math.abs(a.length() - b.length()) > max) {
+			return max + 1;
+		}
+		int[] prev = new int[b.length() + 1];
+		int[] curr = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) {
+			prev[j] = j;
+		}
+		for (int i = 1; i <= a.length(); i++) {
+			curr[0] = i;
+			int rowMin = i;
+			char c = a.charAt(i - 1);
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = c == b.charAt(j - 1) ? 0 : 1;
+				curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+				rowMin = Math.min(rowMin, curr[j]);
+			}
+			if (rowMin > max) {
+				return max + 1;
+			}
+			int[] t = prev;
+			prev = curr;
+			curr = t;
+		}
+		return Math.min(prev[b.length()], max + 1);
+	}
+
 	/**
 	 * capitalize (toUpper()) the first letter of the String.
 	 *
@@ -9,6 +9,7 @@ import java.io.Serializable;
 
 import de.zarncke.lib.err.Warden;
 import de.zarncke.lib.io.RegionInputStream;
+import de.zarncke.lib.lang.SizeEstimator;
 import de.zarncke.lib.region.Region;
 import de.zarncke.lib.region.RegionUtil;
 
@@ -115,10 +116,17 @@ public final class ObjectTool {
 		}
 	}
 
+	/**
+	 * Estimates the heap size of the object graph (within the default {@link SizeEstimator budgets}).
+	 * The object is not serialized.
+	 *
+	 * @param object may be null
+	 * @return bytes
+	 */
 	public static int estimateSize(final Serializable object) {
 		try {
-			return getSerializedBytes(object).length;
-		} catch (Exception e) {
+			return (int) Math.min(Integer.MAX_VALUE, SizeEstimator.deepSizeOf(object));
+		} catch (RuntimeException e) {
 			Warden.disregard(e);
 			return 64;
 		}
@@ -1,20 +1,15 @@
 package de.zarncke.lib.value;
 
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.ThreadPoolExecutor.DiscardPolicy;
-import java.util.concurrent.TimeUnit;
-
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 
-import de.zarncke.lib.block.ABlock;
 import de.zarncke.lib.data.HasValidity;
 import de.zarncke.lib.err.Warden;
 import de.zarncke.lib.time.Times;
 
 /**
  * Caches a Value for some time and refreshes it in the background.
+ * The refresh runs on the shared {@link RefreshScheduler} and starts somewhat ahead of the end of the validity.
  * Notes:
  * <ul>
  * <li>If the initial fetching of the value fails with a {@link RuntimeException}, then he exception is passed on.</li>
@@ -27,15 +22,13 @@ import de.zarncke.lib.time.Times;
  */
 public class Preloaded<T> implements Value<T>, HasValidity {
 
-	private final ThreadPoolExecutor executor;
-	{
-		this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>());
-		this.executor.setRejectedExecutionHandler(new DiscardPolicy());
-	}
+	private final RefreshScheduler scheduler;
+	private final RefreshScheduler.Task refresh;
 
 	private final Value<T> delegate;
-	private DateTime validUntil;
-	private T lastResults;
+	private volatile DateTime validUntil;
+	private volatile long refreshAtMillis;
+	private volatile T lastResults;
 	private final Duration duration;
 
 	public Preloaded(final Value<T> delegate, final Duration duration) {
@@ -43,31 +36,55 @@ public class Preloaded<T> implements Value<T>, HasValidity {
 	}
 
 	public Preloaded(final Value<T> delegate, final Duration duration, final boolean loadImmediate) {
+		this(delegate, duration, loadImmediate, RefreshScheduler.Priority.NORMAL);
+	}
+
+	/**
+	 * @param delegate to cache
+	 * @param duration of validity
+	 * @param loadImmediate true: fetch in the constructor
+	 * @param priority of background refreshes
+	 */
+	public Preloaded(final Value<T> delegate, final Duration duration, final boolean loadImmediate,
+			final RefreshScheduler.Priority priority) {
 		this.delegate = delegate;
 		this.duration = duration;
+		this.scheduler = RefreshScheduler.CTX.get();
+		this.refresh = this.scheduler.createTask(String.valueOf(delegate), priority, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					fetch();
+				} catch (RuntimeException e) {
+					handleAsyncFailure(e);
+				}
+			}
+		});
 		if (loadImmediate) {
 			fetch();
 		}
 	}
 
 	private void checkFetch() {
-		if (this.validUntil == null || Times.now().isAfter(this.validUntil)) {
+		DateTime until = this.validUntil;
+		if (until == null) {
 			triggerReload();
+			return;
+		}
+		long now = Times.now().getMillis();
+		if (now >= this.refreshAtMillis) {
+			triggerReload();
+			if (now > until.getMillis()) {
+				this.scheduler.recordStaleness(now - until.getMillis());
+			}
 		}
 	}
 
+	/**
+	 * Requests a refresh in the background. Does nothing if one is already pending.
+	 */
 	public void triggerReload() {
-		this.executor.execute(ABlock.toRunnable(Warden.guarded(new ABlock<Void>() {
-			@Override
-			public Void execute() {
-				try {
-					fetch();
-				} catch (RuntimeException e) {
-					handleAsyncFailure(e);
-				}
-				return null;
-			}
-		}.logAndIgnoreExceptions(null))));
+		this.refresh.trigger();
 	}
 
 	protected void handleFailure(final RuntimeException e) {
@@ -81,7 +98,9 @@ public class Preloaded<T> implements Value<T>, HasValidity {
 	private void fetch() {
 		try {
 			this.lastResults = this.delegate.get();
-			this.validUntil = Times.now().plus(this.duration);
+			DateTime now = Times.now();
+			this.refreshAtMillis = this.scheduler.refreshAt(now.getMillis(), this.duration.getMillis());
+			this.validUntil = now.plus(this.duration);
 		} catch (RuntimeException e) {
 			handleFailure(e);
 		}
@@ -89,12 +108,13 @@ public class Preloaded<T> implements Value<T>, HasValidity {
 
 	@Override
 	public T get() {
-		if (this.lastResults == null) {
+		T current = this.lastResults;
+		if (current == null) {
 			fetch();
-		} else {
-			checkFetch();
+			return this.lastResults;
 		}
-		return this.lastResults;
+		checkFetch();
+		return current;
 	}
 
 	@Override
@@ -0,0 +1,304 @@
+package de.zarncke.lib.value;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.zarncke.lib.ctx.Context;
+import de.zarncke.lib.ctx.ContextRunnable;
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.i18n.Translations;
+import de.zarncke.lib.sys.Health;
+import de.zarncke.lib.sys.module.AbstractModule;
+
+/**
+ * Refreshes self-refreshing values (e.g. {@link Preloaded}) in the background on a small, fixed number of threads.
+ * <ul>
+ * <li>Each value obtains one {@link Task}. {@link Task#trigger() Triggering} a Task which is already queued or running
+ * does nothing, so concurrent refreshes of the same value collapse into one.</li>
+ * <li>Queued Tasks are run by {@link Priority} and then in order of triggering.</li>
+ * <li>The queue is bounded. If it is full, triggers are dropped (and may be repeated later).</li>
+ * <li>The {@link Context} of the triggering thread is applied to the refresh.</li>
+ * <li>{@link #refreshAt(long, long)} spreads refreshes ahead of expiry to avoid refresh storms.</li>
+ * </ul>
+ * Refresh latency, queue wait and staleness are available as {@link #getMetaInformation() meta information}.
+ *
+ * @author Gunnar Zarncke
+ */
+public class RefreshScheduler extends AbstractModule {
+	public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+	public static final int DEFAULT_MAX_QUEUED = 10000;
+	/**
+	 * Fraction of the validity before its end within which a refresh starts.
+	 */
+	public static final double REFRESH_AHEAD = 0.2;
+
+	public static final Context<RefreshScheduler> CTX = Context.of(Default.of(new RefreshScheduler(DEFAULT_THREADS,
+			DEFAULT_MAX_QUEUED), RefreshScheduler.class));
+
+	/**
+	 * Order of refreshes.
+	 */
+	public enum Priority {
+		HIGH, NORMAL, LOW
+	}
+
+	/**
+	 * A repeatable refresh of one value.
+	 */
+	public final class Task {
+		private final String name;
+		private final Priority priority;
+		private final Runnable body;
+		private final AtomicBoolean pending = new AtomicBoolean();
+
+		Task(final String name, final Priority priority, final Runnable body) {
+			this.name = name;
+			this.priority = priority;
+			this.body = body;
+		}
+
+		/**
+		 * Requests a refresh.
+		 *
+		 * @return true if the refresh was queued; false if a refresh is already pending or the queue is full
+		 */
+		public boolean trigger() {
+			if (!this.pending.compareAndSet(false, true)) {
+				RefreshScheduler.this.collapsed.incrementAndGet();
+				return false;
+			}
+			if (RefreshScheduler.this.queued.incrementAndGet() > RefreshScheduler.this.maxQueued
+					|| RefreshScheduler.this.executor.isShutdown()) {
+				RefreshScheduler.this.queued.decrementAndGet();
+				RefreshScheduler.this.dropped.incrementAndGet();
+				this.pending.set(false);
+				return false;
+			}
+			try {
+				RefreshScheduler.this.executor.execute(new Queued(this, Context.bundleCurrentContext()));
+			} catch (RejectedExecutionException e) {
+				Warden.disregard(e);
+				RefreshScheduler.this.queued.decrementAndGet();
+				RefreshScheduler.this.dropped.incrementAndGet();
+				this.pending.set(false);
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * @return true if a refresh is queued or running
+		 */
+		public boolean isPending() {
+			return this.pending.get();
+		}
+
+		@Override
+		public String toString() {
+			return this.name + (this.pending.get() ? " (pending)" : "");
+		}
+	}
+
+	private final class Queued extends ContextRunnable implements Comparable<Queued> {
+		private final Task task;
+		private final long sequence = RefreshScheduler.this.sequence.incrementAndGet();
+		private final long queuedNanos = System.nanoTime();
+
+		Queued(final Task task, final Default<?>[] context) {
+			super(context);
+			this.task = task;
+		}
+
+		@Override
+		public void runGuardedWithContext() {
+			RefreshScheduler.this.queued.decrementAndGet();
+			long start = System.nanoTime();
+			RefreshScheduler.this.totalWaitNanos.addAndGet(start - this.queuedNanos);
+			try {
+				this.task.body.run();
+			} catch (RuntimeException e) {
+				RefreshScheduler.this.failures.incrementAndGet();
+				Warden.disregardAndReport(e);
+			} finally {
+				// reset only afterwards so a value is never refreshed by two threads at once
+				this.task.pending.set(false);
+				long nanos = System.nanoTime() - start;
+				RefreshScheduler.this.refreshes.incrementAndGet();
+				RefreshScheduler.this.totalRefreshNanos.addAndGet(nanos);
+				updateMax(RefreshScheduler.this.maxRefreshNanos, nanos);
+			}
+		}
+
+		@Override
+		public int compareTo(final Queued o) {
+			int c = this.task.priority.compareTo(o.task.priority);
+			return c != 0 ? c : Long.compare(this.sequence, o.sequence);
+		}
+	}
+
+	private final int threads;
+	private final int maxQueued;
+	private volatile ThreadPoolExecutor executor;
+
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicLong refreshes = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong collapsed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong totalRefreshNanos = new AtomicLong();
+	private final AtomicLong maxRefreshNanos = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong staleServed = new AtomicLong();
+	private final AtomicLong totalStaleMillis = new AtomicLong();
+	private final AtomicLong maxStaleMillis = new AtomicLong();
+
+	/**
+	 * @param threads number of refresh threads (they are created on demand and are daemons)
+	 * @param maxQueued maximum number of waiting refreshes
+	 */
+	public RefreshScheduler(final int threads, final int maxQueued) {
+		this.threads = threads;
+		this.maxQueued = maxQueued;
+		this.executor = createExecutor();
+		this.state = State.UP;
+	}
+
+	private ThreadPoolExecutor createExecutor() {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(this.threads, this.threads, 1, TimeUnit.MINUTES,
+				new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						Thread thread = new Thread(r, "refresh-" + this.count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * @param name for diagnostics
+	 * @param priority != null
+	 * @param body to run on each refresh; exceptions are reported
+	 * @return Task to trigger
+	 */
+	public Task createTask(final String name, final Priority priority, final Runnable body) {
+		return new Task(name, priority, body);
+	}
+
+	/**
+	 * Determines when to start refreshing a value ahead of its expiry.
+	 * The time is spread randomly over the second half of the {@link #REFRESH_AHEAD} window, so values created together
+	 * don't refresh together.
+	 *
+	 * @param fetchedMillis time of fetching the value
+	 * @param validMillis validity of the value
+	 * @return time in millis
+	 */
+	public long refreshAt(final long fetchedMillis, final long validMillis) {
+		double ahead = REFRESH_AHEAD * (0.5 + 0.5 * ThreadLocalRandom.current().nextDouble());
+		return fetchedMillis + validMillis - (long) (validMillis * ahead);
+	}
+
+	/**
+	 * Values should call this when they return a value after its validity ended.
+	 *
+	 * @param staleMillis time since the end of the validity
+	 */
+	public void recordStaleness(final long staleMillis) {
+		this.staleServed.incrementAndGet();
+		this.totalStaleMillis.addAndGet(staleMillis);
+		updateMax(this.maxStaleMillis, staleMillis);
+	}
+
+	private static void updateMax(final AtomicLong max, final long value) {
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	public long getNumberOfRefreshes() {
+		return this.refreshes.get();
+	}
+
+	public long getNumberOfFailures() {
+		return this.failures.get();
+	}
+
+	public long getNumberOfCollapsed() {
+		return this.collapsed.get();
+	}
+
+	public long getNumberOfDropped() {
+		return this.dropped.get();
+	}
+
+	public int getNumberQueued() {
+		return this.queued.get();
+	}
+
+	public long getNumberOfStaleServed() {
+		return this.staleServed.get();
+	}
+
+	@Override
+	public Translations getName() {
+		return new Translations("Refresh Scheduler");
+	}
+
+	@Override
+	public String getMetaInformation() {
+		long n = Math.max(1, this.refreshes.get());
+		long s = Math.max(1, this.staleServed.get());
+		return "refreshes: " + this.refreshes + " (" + this.failures + " failed, " + this.collapsed + " collapsed, "
+				+ this.dropped + " dropped)\n" //
+				+ "queued: " + this.queued + " of " + this.maxQueued + " on " + this.threads
+				+ " threads\n" //
+				+ "latency: avg " + this.totalRefreshNanos.get() / n / 1000 + "us, max "
+				+ this.maxRefreshNanos.get() / 1000 + "us, avg wait " + this.totalWaitNanos.get() / n / 1000 + "us\n" //
+				+ "stale: " + this.staleServed + " served, avg " + this.totalStaleMillis.get() / s + "ms, max "
+				+ this.maxStaleMillis + "ms\n";
+	}
+
+	@Override
+	protected Health getHealthProtected() {
+		if (this.executor.isShutdown()) {
+			return Health.FAILURE;
+		}
+		return this.dropped.get() > 0 ? Health.WARNINGS : Health.OK;
+	}
+
+	@Override
+	public double getLoad() {
+		return (double) this.queued.get() / this.maxQueued;
+	}
+
+	@Override
+	protected void doShutdown() {
+		this.executor.shutdown();
+	}
+
+	@Override
+	protected void doStartup() {
+		if (this.executor.isShutdown()) {
+			this.executor = createExecutor();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RefreshScheduler " + this.queued + " queued";
+	}
+}
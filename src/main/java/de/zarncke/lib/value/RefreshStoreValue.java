@@ -3,9 +3,13 @@ package de.zarncke.lib.value;
 import com.google.common.base.Function;
 
 import de.zarncke.lib.io.store.Store;
+import de.zarncke.lib.io.store.StoreWatcher;
 
 /**
  * A {@link Value} which is refetched from a Store when last modified changes.
+ * Changes are detected by the {@link StoreWatcher}, so the Store is not queried on each access.
+ * Optionally the value is refetched in the background by the {@link RefreshScheduler} while the previous value is
+ * still returned.
  *
  * @author Gunnar Zarncke <gunnar@zarncke.de>
  * @param <T> result type
@@ -14,18 +18,73 @@ public class RefreshStoreValue<T> extends StoreValue<T> {
 	private static final long serialVersionUID = 1L;
 	private long lastModified;
 
+	private final RefreshScheduler.Priority backgroundPriority;
+	private transient RefreshScheduler.Task refresh;
+
 	public RefreshStoreValue(final Store source, final Function<Store, T> converter) {
+		this(source, converter, null);
+	}
+
+	/**
+	 * @param source to read
+	 * @param converter to create the value
+	 * @param backgroundPriority != null: refetch changed values in the background with this priority; null: refetch
+	 * on access
+	 */
+	public RefreshStoreValue(final Store source, final Function<Store, T> converter,
+			final RefreshScheduler.Priority backgroundPriority) {
 		super(source, converter);
+		this.backgroundPriority = backgroundPriority;
+	}
+
+	@Override
+	public T get() {
+		T loaded = getLoaded();
+		StoreWatcher.Watch current = this.watch;
+		if (this.backgroundPriority == null || loaded == null || current == null) {
+			return super.get();
+		}
+		if (current.getGeneration() != this.generation) {
+			getRefresh().trigger();
+		}
+		return loaded;
 	}
 
+	private synchronized RefreshScheduler.Task getRefresh() {
+		if (this.refresh == null) {
+			this.refresh = RefreshScheduler.CTX.get().createTask(toString(), this.backgroundPriority, new Runnable() {
+				@Override
+				public void run() {
+					load();
+				}
+			});
+		}
+		return this.refresh;
+	}
+
+	private T load() {
+		return super.get();
+	}
+
+	private transient volatile StoreWatcher.Watch watch;
+	private transient volatile long generation;
+
 	@Override
-	protected void wasUpdated() {
+	protected void willUpdate() {
+		// remember the state before reading; a change during the read is then detected on the next access
+		if (this.watch == null) {
+			this.watch = StoreWatcher.CTX.get().watch(this.source);
+		}
+		this.generation = this.watch.getGeneration();
 		this.lastModified = this.source.getLastModified();
 	}
 
 	@Override
 	protected boolean hasChanged() {
-		return this.source.getLastModified() != this.lastModified;
+		if (this.watch == null) {
+			return this.source.getLastModified() != this.lastModified;
+		}
+		return this.watch.getGeneration() != this.generation;
 	}
 
 	@Override
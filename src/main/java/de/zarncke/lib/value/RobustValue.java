@@ -7,6 +7,8 @@ import de.zarncke.lib.log.Log;
 
 /**
  * Robust wrapper for a {@link Value}.
+ * Optionally retries after failures in the background on the {@link RefreshScheduler}, so callers get the
+ * replacement value immediately instead of waiting for the retry.
  *
  * @author Gunnar Zarncke
  * @param <T> proxy type
@@ -15,11 +17,13 @@ public class RobustValue<T> implements Value<T> {
 
 	private final Value<T> delegate;
 	private final T defaultValue;
-	private long nextTry = Long.MIN_VALUE;
+	private volatile long nextTry = Long.MIN_VALUE;
 	private final Duration minimumRetryDuration;
 	private final boolean useLastValue;
-	private T lastValue;
+	private volatile T lastValue;
 	private final boolean logExceptions;
+	private final RefreshScheduler.Task retry;
+	private volatile boolean failed = false;
 
 	/**
 	 * @param delegate to query
@@ -32,12 +36,34 @@ public class RobustValue<T> implements Value<T> {
 	public RobustValue(final Value<T> delegate, final T defaultValue, final Duration minimumRetryDuration,
 			final boolean useLastValue,
 			final boolean logExceptions) {
+		this(delegate, defaultValue, minimumRetryDuration, useLastValue, logExceptions, null);
+	}
+
+	/**
+	 * @param delegate to query
+	 * @param defaultValue to use if query fails
+	 * @param minimumRetryDuration time to wait after a failing request (until then the replacement value is returned
+	 * @param useLastValue true: in error cases use the last successfully fetched value (default if none yet);
+	 * false: use the default value in case of errors
+	 * @param logExceptions true: exceptions are logged; false: exceptions are ignored
+	 * @param retryPriority != null: after a failure retry in the background with this priority; null: retry on the
+	 * next call
+	 */
+	public RobustValue(final Value<T> delegate, final T defaultValue, final Duration minimumRetryDuration,
+			final boolean useLastValue, final boolean logExceptions, final RefreshScheduler.Priority retryPriority) {
 		this.delegate = delegate;
 		this.defaultValue = defaultValue;
 		this.minimumRetryDuration = minimumRetryDuration;
 		this.useLastValue = useLastValue;
 		this.lastValue = defaultValue;
 		this.logExceptions = logExceptions;
+		this.retry = retryPriority == null ? null : RefreshScheduler.CTX.get().createTask(String.valueOf(delegate),
+				retryPriority, new Runnable() {
+					@Override
+					public void run() {
+						fetch(System.currentTimeMillis());
+					}
+				});
 	}
 
 	public T get() {
@@ -45,10 +71,21 @@ public class RobustValue<T> implements Value<T> {
 		if (this.nextTry > now) {
 			return chooseReplacement(true);
 		}
+		if (this.failed && this.retry != null) {
+			this.retry.trigger();
+			return chooseReplacement(true);
+		}
+		return fetch(now);
+	}
+
+	private T fetch(final long now) {
 		try {
-			this.lastValue = this.delegate.get();
-			return this.lastValue;
+			T value = this.delegate.get();
+			this.lastValue = value;
+			this.failed = false;
+			return value;
 		} catch (Exception e) {
+			this.failed = true;
 			this.nextTry = now + this.minimumRetryDuration.getMillis();
 			Warden.disregard(e);
 			if (this.logExceptions) {
@@ -16,7 +16,7 @@ public class StoreValue<T> implements Value<T>, Serializable {
 	private static final long serialVersionUID = 1L;
 
 	protected final Store source;
-	private transient T value;
+	private transient volatile T value;
 	private final Function<Store, T> converter;
 
 	public StoreValue(final Store source, final Function<Store, T> converter) {
@@ -27,12 +27,27 @@ public class StoreValue<T> implements Value<T>, Serializable {
 	@Override
 	public T get() {
 		if (this.value == null || hasChanged()) {
+			willUpdate();
 			this.value = this.converter.apply(this.source);
 			wasUpdated();
 		}
 		return this.value;
 	}
 
+	/**
+	 * @return the current value without checking for changes; null if not yet loaded
+	 */
+	protected T getLoaded() {
+		return this.value;
+	}
+
+	/**
+	 * Called before the source is read, so changes during the read can be noticed.
+	 */
+	protected void willUpdate() {
+		// nop
+	}
+
 	protected void wasUpdated() {
 		// nop
 	}
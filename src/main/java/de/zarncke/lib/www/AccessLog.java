@@ -0,0 +1,115 @@
+package de.zarncke.lib.www;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.log.Log;
+
+/**
+ * Writes access log entries from a background thread so that request threads never block on logging.
+ * Entries are queued in a bounded queue; if it is full entries are dropped and their number is reported later.
+ *
+ * @author Gunnar Zarncke
+ */
+public class AccessLog {
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	private static final long POLL_MILLIS = 1000;
+
+	private final BlockingQueue<String> queue;
+	private final Log target;
+	private final AtomicLong dropped = new AtomicLong();
+	private final Thread writer;
+	private volatile boolean closed;
+
+	/**
+	 * Logs to the current {@link Log#LOG}.
+	 */
+	public AccessLog() {
+		this(Log.LOG.get(), DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param target to report entries to (from the writer thread)
+	 * @param capacity of the queue
+	 */
+	public AccessLog(final Log target, final int capacity) {
+		this.target = target;
+		this.queue = new ArrayBlockingQueue<String>(capacity);
+		this.writer = new Thread("access log") {
+			@Override
+			public void run() {
+				Warden w = Warden.appointWarden();
+				try {
+					write();
+				} finally {
+					w.finish();
+				}
+			}
+		};
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Never blocks.
+	 *
+	 * @param entry to log
+	 */
+	public void log(final CharSequence entry) {
+		if (this.closed || !this.queue.offer(entry.toString())) {
+			this.dropped.incrementAndGet();
+		}
+	}
+
+	void write() {
+		List<String> batch = L.l();
+		while (!this.closed || !this.queue.isEmpty()) {
+			try {
+				String entry = this.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (entry != null) {
+					batch.add(entry);
+					this.queue.drainTo(batch);
+				}
+			} catch (InterruptedException e) {
+				Warden.disregard(e);
+			}
+			for (String entry : batch) {
+				try {
+					this.target.report(entry);
+				} catch (RuntimeException e) {
+					Warden.disregardAndReport(e);
+				}
+			}
+			batch.clear();
+			long lost = this.dropped.getAndSet(0);
+			if (lost > 0) {
+				this.target.report("access log dropped " + lost + " entries");
+			}
+		}
+	}
+
+	/**
+	 * Writes pending entries and stops the writer thread.
+	 */
+	public void close() {
+		this.closed = true;
+		this.writer.interrupt();
+		try {
+			this.writer.join();
+		} catch (InterruptedException e) {
+			Warden.disregard(e);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "AccessLog to " + this.target + " with " + this.queue.size() + " pending entries";
+	}
+}
@@ -0,0 +1,434 @@
+package de.zarncke.lib.www;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.io.store.Accessible;
+import de.zarncke.lib.io.store.FileStore;
+import de.zarncke.lib.io.store.Store;
+import de.zarncke.lib.region.ByteBufferRegion;
+import de.zarncke.lib.region.Region;
+import de.zarncke.lib.region.RegionUtil;
+
+/**
+ * Body of a GET response which can be sent partially and validated by conditional requests independent of the http
+ * server.
+ * <ul>
+ * <li>Files of {@link FileStore FileStores} are sent by {@link FileChannel#transferTo(long, long, WritableByteChannel)
+ * transferTo}, {@link ByteBufferRegion ByteBufferRegions} without copying them first; the content is never read into
+ * memory as a whole. This is no zero-copy: only a file or socket channel as target lets the kernel transfer the
+ * bytes. Other channels (like the one over the response OutputStream in {@link WebService}) get the content copied
+ * in chunks in user space.</li>
+ * <li>{@link #getRanges(String, String) Range} requests with one or more ranges (sent as multipart/byteranges) are
+ * supported, also together with If-Range.</li>
+ * <li>A weak {@link #getETag() ETag} is derived from size and modification time. It and the modification time are used
+ * to {@link #isNotModified(String, String) answer} If-None-Match and If-Modified-Since.</li>
+ * </ul>
+ *
+ * @author Gunnar Zarncke
+ */
+public class HttpEntity {
+	/**
+	 * More ranges than this in one request are ignored and the full content is sent.
+	 */
+	public static final int MAX_RANGES = 32;
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+	private static final String CRLF = "\r\n";
+
+	/**
+	 * An inclusive range of bytes.
+	 */
+	public static final class Range {
+		private final long first;
+		private final long last;
+
+		public Range(final long first, final long last) {
+			this.first = first;
+			this.last = last;
+		}
+
+		public long getFirst() {
+			return this.first;
+		}
+
+		public long getLast() {
+			return this.last;
+		}
+
+		public long getLength() {
+			return this.last - this.first + 1;
+		}
+
+		/**
+		 * @param total length of the content
+		 * @return value of the Content-Range header
+		 */
+		public String toContentRange(final long total) {
+			return "bytes " + this.first + "-" + this.last + "/" + total;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Range)) {
+				return false;
+			}
+			Range other = (Range) obj;
+			return this.first == other.first && this.last == other.last;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (this.first * 31 + this.last);
+		}
+
+		@Override
+		public String toString() {
+			return this.first + "-" + this.last;
+		}
+	}
+
+	private final Store store;
+	private final Region region;
+	private final long length;
+	private final long lastModified;
+
+	private HttpEntity(final Store store, final Region region, final long length, final long lastModified) {
+		this.store = store;
+		this.region = region;
+		this.length = length;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * @param store != null, readable
+	 * @return HttpEntity with size and modification time of the Store
+	 */
+	public static HttpEntity of(final Store store) {
+		return new HttpEntity(store, null, store.getSize(), store.getLastModified());
+	}
+
+	/**
+	 * @param region != null
+	 * @param lastModified of the content or {@link Store#UNKNOWN_MODIFICATION}
+	 * @return HttpEntity
+	 */
+	public static HttpEntity of(final Region region, final long lastModified) {
+		return new HttpEntity(null, region, region.length(), lastModified);
+	}
+
+	/**
+	 * @param bytes != null
+	 * @return HttpEntity without modification time
+	 */
+	public static HttpEntity of(final byte[] bytes) {
+		return of(new ByteBufferRegion(ByteBuffer.wrap(bytes)), Store.UNKNOWN_MODIFICATION);
+	}
+
+	/**
+	 * @return length in bytes or {@link Accessible#UNKNOWN_SIZE}
+	 */
+	public long getLength() {
+		return this.length;
+	}
+
+	/**
+	 * @return millis or {@link Store#UNKNOWN_MODIFICATION}
+	 */
+	public long getLastModified() {
+		return this.lastModified;
+	}
+
+	/**
+	 * @return weak entity tag from size and modification time; null if either is unknown
+	 */
+	public String getETag() {
+		if (this.length == Accessible.UNKNOWN_SIZE || this.lastModified == Store.UNKNOWN_MODIFICATION) {
+			return null;
+		}
+		return "W/\"" + Long.toHexString(this.length) + "-" + Long.toHexString(this.lastModified) + "\"";
+	}
+
+	/**
+	 * If-None-Match takes precedence over If-Modified-Since as in RFC 7232.
+	 *
+	 * @param ifNoneMatch header value or null
+	 * @param ifModifiedSince header value or null
+	 * @return true if 304 (not modified) should be sent
+	 */
+	public boolean isNotModified(final String ifNoneMatch, final String ifModifiedSince) {
+		if (ifNoneMatch != null) {
+			String etag = getETag();
+			if (etag == null) {
+				return false;
+			}
+			for (String tag : ifNoneMatch.split(",")) {
+				String t = tag.trim();
+				if ("*".equals(t) || weak(t).equals(weak(etag))) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (ifModifiedSince != null && this.lastModified != Store.UNKNOWN_MODIFICATION) {
+			long since = parseHttpDate(ifModifiedSince);
+			// http dates have second precision
+			return since >= 0 && this.lastModified / 1000 <= since / 1000;
+		}
+		return false;
+	}
+
+	private static String weak(final String tag) {
+		return tag.startsWith("W/") ? tag.substring(2) : tag;
+	}
+
+	/**
+	 * @param range header value or null
+	 * @param ifRange header value or null
+	 * @return ranges to send; null to send the full content; empty if none is satisfiable (416)
+	 */
+	public List<Range> getRanges(final String range, final String ifRange) {
+		if (range == null || this.length == Accessible.UNKNOWN_SIZE) {
+			return null;
+		}
+		if (ifRange != null && !isCurrent(ifRange.trim())) {
+			return null;
+		}
+		String spec = range.trim();
+		if (!spec.startsWith("bytes=")) {
+			return null;
+		}
+		String[] parts = spec.substring("bytes=".length()).split(",");
+		if (parts.length > MAX_RANGES) {
+			return null;
+		}
+		List<Range> ranges = L.l();
+		for (String part : parts) {
+			String p = part.trim();
+			int dash = p.indexOf('-');
+			if (dash < 0) {
+				return null;
+			}
+			long first;
+			long last;
+			try {
+				if (dash == 0) {
+					long suffix = Long.parseLong(p.substring(1));
+					if (suffix == 0) {
+						continue;
+					}
+					first = Math.max(0, this.length - suffix);
+					last = this.length - 1;
+				} else {
+					first = Long.parseLong(p.substring(0, dash));
+					last = dash == p.length() - 1 ? Long.MAX_VALUE : Long.parseLong(p.substring(dash + 1));
+					if (last < first) {
+						return null;
+					}
+					last = Math.min(this.length - 1, last);
+				}
+			} catch (NumberFormatException e) {
+				Warden.disregard(e);
+				return null;
+			}
+			if (first < this.length) {
+				ranges.add(new Range(first, last));
+			}
+		}
+		return ranges;
+	}
+
+	private boolean isCurrent(final String ifRange) {
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			// weak tags never match strongly; so If-Range only works with dates
+			return false;
+		}
+		long date = parseHttpDate(ifRange);
+		return date >= 0 && this.lastModified != Store.UNKNOWN_MODIFICATION && this.lastModified / 1000 == date / 1000;
+	}
+
+	/**
+	 * Transfers the content without holding it in memory.
+	 *
+	 * @param offset >= 0
+	 * @param count >= 0; {@link Accessible#UNKNOWN_SIZE} for all remaining bytes of a Store
+	 * @param out to write to
+	 * @throws IOException on failure; also if the content is shorter than expected
+	 */
+	public void transfer(final long offset, final long count, final WritableByteChannel out) throws IOException {
+		if (this.region != null) {
+			transferRegion(offset, count, out);
+			return;
+		}
+		File file = FileStore.getFile(this.store);
+		if (file != null) {
+			transferFile(file, offset, count, out);
+			return;
+		}
+		InputStream ins = this.store.getInputStream();
+		try {
+			long skip = offset;
+			while (skip > 0) {
+				long n = ins.skip(skip);
+				if (n <= 0) {
+					throw Warden.spot(new IOException(this.store + " ended before " + offset));
+				}
+				skip -= n;
+			}
+			boolean all = count == Accessible.UNKNOWN_SIZE;
+			byte[] buf = new byte[all ? CHUNK_SIZE : (int) Math.min(CHUNK_SIZE, Math.max(1, count))];
+			long remaining = count;
+			while (all || remaining > 0) {
+				int n = ins.read(buf, 0, all ? buf.length : (int) Math.min(buf.length, remaining));
+				if (n < 0) {
+					if (all) {
+						break;
+					}
+					throw Warden.spot(new IOException(this.store + " ended " + remaining + " bytes early"));
+				}
+				writeFully(ByteBuffer.wrap(buf, 0, n), out);
+				remaining -= n;
+			}
+		} finally {
+			IOTools.forceClose(ins);
+		}
+	}
+
+	private static void transferFile(final File file, final long offset, final long count,
+			final WritableByteChannel out) throws IOException {
+		FileInputStream ins = new FileInputStream(file);
+		try {
+			FileChannel channel = ins.getChannel();
+			long pos = offset;
+			long end = offset + count;
+			while (pos < end) {
+				long n = channel.transferTo(pos, end - pos, out);
+				if (n <= 0) {
+					throw Warden.spot(new IOException(file + " ended " + (end - pos) + " bytes early"));
+				}
+				pos += n;
+			}
+		} finally {
+			IOTools.forceClose(ins);
+		}
+	}
+
+	private void transferRegion(final long offset, final long count, final WritableByteChannel out)
+			throws IOException {
+		if (this.region instanceof ByteBufferRegion) {
+			ByteBuffer buffer = RegionUtil.asByteBuffer(this.region);
+			buffer.position((int) offset);
+			buffer.limit((int) (offset + count));
+			writeFully(buffer, out);
+			return;
+		}
+		long pos = offset;
+		long end = offset + count;
+		while (pos < end) {
+			int n = (int) Math.min(CHUNK_SIZE, end - pos);
+			writeFully(ByteBuffer.wrap(this.region.select(pos, n).toByteArray()), out);
+			pos += n;
+		}
+	}
+
+	private static void writeFully(final ByteBuffer buffer, final WritableByteChannel out) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	/**
+	 * @param ranges != null
+	 * @param contentType of the content
+	 * @param boundary of the parts
+	 * @return number of bytes {@link #transferMultipart(List, String, String, WritableByteChannel)} will write
+	 */
+	public long getMultipartLength(final List<Range> ranges, final String contentType, final String boundary) {
+		long total = 0;
+		for (Range r : ranges) {
+			total += partHeader(r, contentType, boundary).length + r.getLength();
+		}
+		return total + partTrailer(boundary).length;
+	}
+
+	/**
+	 * Sends the ranges as multipart/byteranges.
+	 *
+	 * @param ranges != null
+	 * @param contentType of the content
+	 * @param boundary of the parts; must not occur in the content
+	 * @param out to write to
+	 * @throws IOException on failure
+	 */
+	public void transferMultipart(final List<Range> ranges, final String contentType, final String boundary,
+			final WritableByteChannel out) throws IOException {
+		for (Range r : ranges) {
+			writeFully(ByteBuffer.wrap(partHeader(r, contentType, boundary)), out);
+			transfer(r.getFirst(), r.getLength(), out);
+		}
+		writeFully(ByteBuffer.wrap(partTrailer(boundary)), out);
+	}
+
+	private byte[] partHeader(final Range range, final String contentType, final String boundary) {
+		return ascii(CRLF + "--" + boundary + CRLF + "Content-Type: " + contentType + CRLF + "Content-Range: "
+				+ range.toContentRange(this.length) + CRLF + CRLF);
+	}
+
+	private static byte[] partTrailer(final String boundary) {
+		return ascii(CRLF + "--" + boundary + "--" + CRLF);
+	}
+
+	private static byte[] ascii(final String text) {
+		byte[] bytes = new byte[text.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) text.charAt(i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param date as sent in http headers (RFC 1123)
+	 * @return millis; -1 if not parseable
+	 */
+	public static long parseHttpDate(final String date) {
+		try {
+			return httpDateFormat().parse(date.trim()).getTime();
+		} catch (ParseException e) {
+			Warden.disregard(e);
+			return -1;
+		}
+	}
+
+	/**
+	 * @param millis since epoch
+	 * @return date as to be sent in http headers (RFC 1123)
+	 */
+	public static String formatHttpDate(final long millis) {
+		return httpDateFormat().format(Long.valueOf(millis));
+	}
+
+	private static SimpleDateFormat httpDateFormat() {
+		SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format;
+	}
+
+	@Override
+	public String toString() {
+		return "HttpEntity of " + (this.region != null ? "region" : this.store) + " with " + this.length + " bytes";
+	}
+}
@@ -13,7 +13,7 @@ import org.simpleframework.transport.connect.SocketConnection;
 
 import de.zarncke.lib.coll.L;
 import de.zarncke.lib.ctx.Context;
-import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.io.store.FileStore;
 import de.zarncke.lib.sys.Headquarters;
 import de.zarncke.lib.sys.mbean.JmxHeadquarters;
 import de.zarncke.lib.time.JavaClock;
@@ -54,9 +54,10 @@ public class WebServer
         {
             Result r = new Result();
             File loc = new File(this.root, path);
-            if ( loc.exists() )
+            if ( loc.isFile() )
             {
-                r.obj = IOTools.getAllBytes(loc);
+                // streamed by WebService
+                r.obj = new FileStore(loc);
                 r.code = 200;
             }
             else
@@ -6,6 +6,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
@@ -40,7 +42,9 @@ import org.xml.sax.SAXParseException;
 import de.zarncke.lib.coll.L;
 import de.zarncke.lib.err.ExceptionUtil;
 import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.io.store.Store;
 import de.zarncke.lib.log.Log;
+import de.zarncke.lib.region.Region;
 
 /**
  * Http container which support WebDAV (basically). Currently doesn't work with Windows.
@@ -102,7 +106,6 @@ public class WebService implements Container {
 
 		public void execute(final Request req, final Response resp) throws IOException {
 			resp.set("DAV", "1");
-			resp.setDate("Last-Modified", System.currentTimeMillis());
 
 			String path = preprocessUri(req.getPath().getPath());
 
@@ -124,23 +127,87 @@ public class WebService implements Container {
 				obj = ExceptionUtil.getStackTrace(t).getBytes();
 				code = 500;
 			}
-			byte[] ba;
-			if (obj instanceof byte[]) {
-				ba = (byte[]) obj;
+			HttpEntity entity;
+			if (obj instanceof HttpEntity) {
+				entity = (HttpEntity) obj;
+			} else if (obj instanceof Store) {
+				entity = HttpEntity.of((Store) obj);
+			} else if (obj instanceof Region) {
+				entity = HttpEntity.of((Region) obj, Store.UNKNOWN_MODIFICATION);
+			} else if (obj instanceof byte[]) {
+				entity = HttpEntity.of((byte[]) obj);
 			} else {
-				ba = "no byte[] found".getBytes();
+				entity = HttpEntity.of("no byte[] found".getBytes());
 				code = 500;
 			}
 
+			long modified = entity.getLastModified();
+			resp.setDate("Last-Modified", modified == Store.UNKNOWN_MODIFICATION ? System.currentTimeMillis()
+					: modified);
 			resp.set("Content-Type", ct);
-			resp.setCode(code);
-			OutputStream os = resp.getOutputStream(ba.length);
-			if (this.isHead) {
-				resp.setContentLength(0);
+			if (code != 200) {
+				resp.setCode(code);
+				send(resp, entity.getLength(), entity, null, null, null);
+				return;
+			}
+
+			String etag = entity.getETag();
+			if (etag != null) {
+				resp.set("ETag", etag);
+			}
+			resp.set("Accept-Ranges", "bytes");
+			if (entity.isNotModified(req.getValue("If-None-Match"), req.getValue("If-Modified-Since"))) {
+				resp.setCode(304);
+				send(resp, 0, null, null, null, null);
+				return;
+			}
+
+			List<HttpEntity.Range> ranges = entity.getRanges(req.getValue("Range"), req.getValue("If-Range"));
+			if (ranges == null) {
+				resp.setCode(200);
+				send(resp, entity.getLength(), entity, null, null, null);
+			} else if (ranges.isEmpty()) {
+				resp.setCode(416);
+				resp.set("Content-Range", "bytes */" + entity.getLength());
+				send(resp, 0, null, null, null, null);
+			} else if (ranges.size() == 1) {
+				HttpEntity.Range range = ranges.get(0);
+				resp.setCode(206);
+				resp.set("Content-Range", range.toContentRange(entity.getLength()));
+				send(resp, range.getLength(), entity, ranges, null, null);
 			} else {
-				os.write(ba);
+				String boundary = "byteranges" + Long.toHexString(System.nanoTime());
+				resp.setCode(206);
+				resp.set("Content-Type", "multipart/byteranges; boundary=" + boundary);
+				send(resp, entity.getMultipartLength(ranges, ct, boundary), entity, ranges, boundary, ct);
+			}
+		}
+
+		/**
+		 * Streams the (selected part of the) entity through the output of the response; nothing for HEAD.
+		 * Multiple ranges are sent as parts with the given boundary and type.
+		 */
+		private void send(final Response resp, final long length, final HttpEntity entity,
+				final List<HttpEntity.Range> ranges, final String boundary, final String partType) throws IOException {
+			if (length >= 0) {
+				resp.set("Content-Length", String.valueOf(length));
+			}
+			// not zero-copy: the server only offers a stream, so files are copied through user space in chunks
+			WritableByteChannel channel = Channels.newChannel(resp.getOutputStream());
+			try {
+				if (this.isHead || entity == null) {
+					return;
+				}
+				if (ranges == null) {
+					entity.transfer(0, entity.getLength(), channel);
+				} else if (boundary == null) {
+					entity.transfer(ranges.get(0).getFirst(), ranges.get(0).getLength(), channel);
+				} else {
+					entity.transferMultipart(ranges, partType, boundary, channel);
+				}
+			} finally {
+				channel.close();
 			}
-			os.close();
 		}
 	}
 
@@ -448,6 +515,8 @@ public class WebService implements Container {
 
 	Content content;
 
+	private final AccessLog accessLog = new AccessLog();
+
 	private final File docRoot;
 
 	public WebService(final String baseUri, final String docRoot, final Content content) {
@@ -486,7 +555,7 @@ public class WebService implements Container {
 	}
 
 	private void log(final String path, final Object res) {
-		System.out.println(path + "->" + res);
+		this.accessLog.log(path + "->" + res);
 	}
 
 	// prefix = url part before path
@@ -630,40 +699,22 @@ public class WebService implements Container {
 			meth = this.defaultMethod;
 		}
 
-		// TODO: remove: this is test/dbeug only
-		Map reqHeaders = new HashMap();
-		reqHeaders.put("Accept", req.getValue("Accept"));
-		reqHeaders.put("Accept-Charset", req.getValue("Accept-Charset"));
-		reqHeaders.put("Accept-Encoding", req.getValue("Accept-Encoding"));
-		reqHeaders.put("Accept-Language", req.getValue("Accept-Language"));
-		reqHeaders.put("Authorization", req.getValue("Authorization"));
-		reqHeaders.put("Expect", req.getValue("Expect"));
-		reqHeaders.put("From", req.getValue("From"));
-		reqHeaders.put("Host", req.getValue("Host"));
-		reqHeaders.put("If-Match", req.getValue("If-Match"));
-		reqHeaders.put("If-Modified-Since", req.getValue("If-Modified-Since"));
-		reqHeaders.put("If-None-Match", req.getValue("If-None-Match"));
-		reqHeaders.put("If-Range", req.getValue("If-Range"));
-		reqHeaders.put("If-Unmodified-Since", req.getValue("If-Unmodified-Since"));
-		reqHeaders.put("Range", req.getValue("Range"));
-		reqHeaders.put("Referer", req.getValue("Referer"));
-		reqHeaders.put("User-Agent", req.getValue("User-Agent"));
-
-		reqHeaders.put("DAV", req.getValue("DAV"));
-		reqHeaders.put("If", req.getValue("If"));
-
-		System.out.println(meth + " " + reqHeaders);
-
+		long start = System.currentTimeMillis();
 		try {
 			meth.execute(req, resp);
 		} catch (IOException e) {
 			// TODO suitable error handling!
 			e.printStackTrace();
 			throw new RuntimeException("what now?", e);
+		} finally {
+			this.accessLog.log(req.getMethod() + " " + req.getPath() + " " + resp.getCode() + " "
+					+ (System.currentTimeMillis() - start) + "ms"
+					+ (req.getValue("Range") == null ? "" : " range " + req.getValue("Range")));
 		}
 	}
 
 	public void stop() {
 		this.content.stopAll();
+		this.accessLog.close();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package de.zarncke.lib.bench;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.time.Times;
+
+public class BenchmarkRunnerTest extends GuardedTest {
+	private static BenchmarkRunner createQuickRunner() {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		runner.setWarmupIterations(1);
+		runner.setMeasurementIterations(2);
+		runner.setIterationMillis(50);
+		return runner;
+	}
+
+	public void testRun() throws Exception {
+		final AtomicInteger setUps = new AtomicInteger();
+		final AtomicInteger tearDowns = new AtomicInteger();
+		Benchmark benchmark = new Benchmark("allocating") {
+			@Override
+			public void setUp(final int threads) {
+				setUps.incrementAndGet();
+			}
+
+			@Override
+			public Object operation(final int thread) {
+				return new byte[100];
+			}
+
+			@Override
+			public void tearDown() {
+				tearDowns.incrementAndGet();
+			}
+		};
+		BenchmarkRunner runner = createQuickRunner();
+		runner.setThreadCounts(1, 2);
+		List<BenchmarkResult> results = runner.run(benchmark);
+		assertEquals(2, results.size());
+		assertEquals(2, setUps.get());
+		assertEquals(2, tearDowns.get());
+		for (BenchmarkResult r : results) {
+			assertEquals("allocating", r.getBenchmark());
+			assertEquals(2, r.getIterations());
+			assertTrue(r.toString(), r.getOpsPerSec() > 0);
+			assertTrue(r.toString(), r.getMin() <= r.getOpsPerSec() && r.getOpsPerSec() <= r.getMax());
+			if (r.getBytesPerOp() >= 0) {
+				assertTrue(r.toString(), r.getBytesPerOp() >= 100);
+			}
+		}
+		assertEquals(2, results.get(1).getThreads());
+	}
+
+	public void testFailure() throws Exception {
+		Benchmark benchmark = new Benchmark("failing") {
+			@Override
+			public Object operation(final int thread) {
+				throw new IllegalStateException("expected");
+			}
+		};
+		try {
+			createQuickRunner().run(benchmark, 2);
+			fail("failure expected");
+		} catch (IllegalStateException e) {
+			assertEquals("expected", e.getMessage());
+		}
+	}
+
+	public void testCsv() {
+		BenchmarkResult a = new BenchmarkResult("x", 2, 5, 1000.5, 10, 990, 1010, 24, 3, 7);
+		BenchmarkResult b = BenchmarkResult.fromCsv(a.toCsv());
+		assertEquals(a.toCsv(), b.toCsv());
+		assertEquals(L.l(a.toCsv()), L.l(BenchmarkResult.fromCsv(L.l(BenchmarkResult.CSV_HEADER, a.toCsv(), "")).get(0)
+				.toCsv()));
+
+		BenchmarkResult faster = new BenchmarkResult("x", 2, 5, 2000, 10, 1990, 2010, 24, 3, 7);
+		List<String> comparison = BenchmarkResult.compare(L.l(a), L.l(faster, new BenchmarkResult("y", 1, 5, 1, 0,
+				1, 1, -1, 0, 0)));
+		assertEquals(1, comparison.size());
+		assertTrue(comparison.get(0), comparison.get(0).contains("+99.9%"));
+		assertTrue(BenchmarkResult.compare(L.l(a), L.l(a)).get(0).contains("insignificant"));
+	}
+
+	public void testSuite() throws Exception {
+		BenchmarkRunner runner = createQuickRunner();
+		runner.setIterationMillis(20);
+		for (Benchmark benchmark : HotPathBenchmarks.createSuite()) {
+			if (!benchmark.getName().startsWith("noIo")) {
+				assertTrue(benchmark.getName(), runner.run(benchmark, 2).getOpsPerSec() > 0);
+			}
+		}
+	}
+
+	@Override
+	protected long getMaximumTestMillis() {
+		// the suite measures 5 benchmarks with 3 iterations each
+		return 10 * Times.MILLIS_PER_SECOND;
+	}
+}
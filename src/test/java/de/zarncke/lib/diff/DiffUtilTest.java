@@ -0,0 +1,150 @@
+package de.zarncke.lib.diff;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.io.store.DelegateStore;
+import de.zarncke.lib.io.store.FileStore;
+import de.zarncke.lib.io.store.Store;
+import de.zarncke.lib.io.store.StoreUtil;
+
+public class DiffUtilTest extends GuardedTest {
+	private static final int LARGE = 3 * DiffUtil.CHUNK_SIZE + 17;
+
+	private File dir;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		this.dir = IOTools.createTempDir("diff");
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		IOTools.deleteAll(this.dir);
+		super.tearDown();
+	}
+
+	private Store write(final String name, final byte[] content) throws IOException {
+		File file = new File(this.dir, name);
+		file.getParentFile().mkdirs();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		return new FileStore(file);
+	}
+
+	private static byte[] content(final int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (i * 31 + i / 7);
+		}
+		return data;
+	}
+
+	public void testLargeFiles() throws IOException {
+		byte[] data = content(LARGE);
+		Store a = write("a", data);
+		Store same = write("same", data);
+		assertEquals(-1, DiffUtil.findMismatch(a, same));
+		Diff diff = new Diff();
+		DiffUtil.compareContent(a, same, "", diff);
+		assertTrue(diff.isIdentity());
+
+		byte[] changed = data.clone();
+		changed[2 * DiffUtil.CHUNK_SIZE + 5]++;
+		Store b = write("b", changed);
+		assertEquals(2 * DiffUtil.CHUNK_SIZE + 5, DiffUtil.findMismatch(a, b));
+		diff = new Diff();
+		DiffUtil.compareContent(a, b, "", diff);
+		assertEquals(1, diff.size());
+		assertEquals(1.0, diff.getDeltas().get(0).getDeltaSize(), 0.0);
+		assertTrue(diff.toString(), diff.toString().contains("at " + (2 * DiffUtil.CHUNK_SIZE + 5)));
+
+		Store shorter = write("shorter", Arrays.copyOf(data, LARGE - 100));
+		diff = new Diff();
+		DiffUtil.compareContent(a, shorter, "", diff);
+		assertEquals(100.0, diff.getDeltas().get(0).getDeltaSize(), 0.0);
+		assertEquals(LARGE - 100, DiffUtil.findMismatch(a, shorter));
+	}
+
+	public void testTrees() throws IOException {
+		byte[] data = content(LARGE);
+		for (String tree : L.l("x", "y")) {
+			for (int i = 0; i < 10; i++) {
+				write(tree + "/d" + i + "/large", data);
+				write(tree + "/d" + i + "/small", ("small " + i).getBytes());
+			}
+		}
+		write("y/d3/small", "SMALL 3".getBytes());
+		write("y/d7/added", "new".getBytes());
+		Store x = new FileStore(new File(this.dir, "x"));
+		Store y = new FileStore(new File(this.dir, "y"));
+
+		HashingContentComparer comparer = new HashingContentComparer();
+		for (boolean parallel : new boolean[] { false, true }) {
+			for (ContentComparer cc : L.l(ContentComparer.BINARY, comparer, comparer)) {
+				Diff diff = StoreUtil.compareStoresDetailed(x, y, cc, parallel);
+				List<String> found = L.copy(diff.asStrings());
+				// order of the file system
+				Collections.sort(found);
+				assertEquals(L.l("x/d3/small 'small 3'!='SMALL 3'", "x/d7/added+"), found);
+			}
+		}
+	}
+
+	public void testHashingReadsOnce() throws IOException {
+		byte[] data = content(LARGE);
+		Store a = write("a", data);
+		byte[] changed = data.clone();
+		changed[DiffUtil.CHUNK_SIZE + 3]++;
+		Store b = write("b", changed);
+		Store same = write("same", data);
+
+		HashingContentComparer comparer = new HashingContentComparer();
+		Diff diff = new Diff();
+		comparer.compareContent(a, b, "", diff);
+		assertEquals(1, diff.size());
+		assertTrue(diff.toString(), diff.toString().contains("at " + (DiffUtil.CHUNK_SIZE + 3)));
+		assertTrue(comparer.toString(), comparer.toString().contains(" 0 hashes"));
+
+		diff = new Diff();
+		comparer.compareContent(a, same, "", diff);
+		assertTrue(diff.isIdentity());
+		assertEquals(comparer.hash(new File(this.dir, "a")), comparer.hash(new File(this.dir, "same")));
+		assertTrue(comparer.toString(), comparer.toString().contains(" 2 hashes"));
+	}
+
+	public void testUnknownSize() throws IOException {
+		byte[] data = content(LARGE);
+		Store a = unsized(write("a", data));
+		Store shorter = unsized(write("shorter", Arrays.copyOf(data, LARGE - 100)));
+		Diff diff = new Diff();
+		DiffUtil.compareContent(a, shorter, "", diff);
+		assertEquals(1, diff.size());
+		assertTrue(diff.getDeltas().get(0).getDeltaSize() > 0);
+
+		diff = new Diff();
+		DiffUtil.compareContent(a, unsized(write("same", data)), "", diff);
+		assertTrue(diff.isIdentity());
+	}
+
+	private static Store unsized(final Store store) {
+		return new DelegateStore(store) {
+			@Override
+			public long getSize() {
+				return UNKNOWN_SIZE;
+			}
+		};
+	}
+}
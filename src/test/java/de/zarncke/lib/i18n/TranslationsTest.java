@@ -1,6 +1,12 @@
 package de.zarncke.lib.i18n;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
 import java.util.Locale;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -85,4 +91,69 @@ public class TranslationsTest extends GuardedTest {
 		assertEquals("Hi", t.get(L.l(Locale.UK, Locale.GERMANY)));
 	}
 
+	@Test
+	public void testVariantsAndFallbacks() {
+		Translations t = new Translations("?");
+		t.put(new Locale("de", "CH", "x"), "Gr\u00fcezi");
+		assertEquals("Gr\u00fcezi", t.get(new Locale("de", "CH", "x")));
+		assertEquals("Gr\u00fcezi", t.get(new Locale("de", "CH")));
+		assertEquals("Gr\u00fcezi", t.get(Locale.GERMANY));
+		t.put(Locale.GERMAN, "Hallo");
+		assertEquals("Hallo", t.get(Locale.GERMAN));
+		assertEquals("Gr\u00fcezi", t.get(new Locale("de", "CH", "y")));
+		assertEquals(Locale.GERMAN, t.getTextAndLocale(Locale.GERMANY).getSecond());
+		assertEquals("?", t.get(Locale.FRENCH));
+		assertEquals("?", t.get("not a locale"));
+
+		// variants first, then countries, then languages
+		Translations u = new Translations("?");
+		u.put(Locale.ENGLISH, "Hello");
+		u.put(Locale.FRANCE, "Bonjour");
+		assertEquals("Bonjour", u.get(L.l(new Locale("fr", "FR", "x"), Locale.UK)));
+	}
+
+	@Test
+	public void testMapOperations() throws Exception {
+		Translations t = new Translations("?");
+		t.put(Locale.GERMANY, "Hallo");
+		t.put(Locale.ENGLISH, "Hello");
+		assertEquals(4, t.size());
+		assertTrue(t.containsKey(Locale.GERMAN));
+		assertEquals("Hallo", t.remove(Locale.GERMAN));
+		assertFalse(t.containsKey(Locale.GERMAN));
+		for (Iterator<Map.Entry<Locale, String>> it = t.entrySet().iterator(); it.hasNext();) {
+			if (Locale.ENGLISH.equals(it.next().getKey())) {
+				it.remove();
+			}
+		}
+		assertEquals(2, t.size());
+		assertEquals("?", t.get(Locale.ENGLISH));
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(t);
+		oos.close();
+		Translations copy = (Translations) new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))
+				.readObject();
+		assertEquals(t, copy);
+		assertEquals("Hallo", copy.get(Locale.GERMANY));
+		assertEquals("?", copy.get(null));
+	}
+
+	@Test
+	public void testLookupsDontIntern() {
+		Translations t = new Translations("?");
+		t.put(Locale.GERMAN, "Hallo");
+		int size = LocaleTable.size();
+		for (int i = 0; i < 100; i++) {
+			Locale requested = new Locale("de", "X" + i, "v" + i);
+			assertEquals("Hallo", t.get(requested));
+			assertEquals(Locale.GERMAN, t.getTextAndLocale(requested).getSecond());
+			assertFalse(t.containsKey(requested));
+			assertNull(t.remove(requested));
+			assertEquals("Hallo", t.get(L.l(requested, new Locale("zz" + i))));
+		}
+		assertEquals(size, LocaleTable.size());
+	}
+
 }
@@ -0,0 +1,188 @@
+package de.zarncke.lib.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.index.MultiIndexTest.Data;
+import de.zarncke.lib.index.crit.Criteria;
+import de.zarncke.lib.index.crit.SingleCriteria;
+import de.zarncke.lib.index.crit.StringCriteria;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.io.store.FileStore;
+import de.zarncke.lib.io.store.MemStore;
+import de.zarncke.lib.io.store.Store;
+
+/**
+ * Tests {@link IndexSnapshot}.
+ *
+ * @author Gunnar Zarncke
+ */
+public class IndexSnapshotTest extends GuardedTest {
+	private static final IndexSnapshot.Codec<Data> DATA = new IndexSnapshot.Codec<Data>() {
+		@Override
+		public void write(final Data value, final DataOutput out) throws IOException {
+			IndexSnapshot.STRING.write(value.a, out);
+			out.writeLong(value.v);
+		}
+
+		@Override
+		public Data read(final DataInput in) throws IOException {
+			return new Data(IndexSnapshot.STRING.read(in), in.readLong());
+		}
+	};
+
+	private static KeyValueIndexing<String, Data> byA() {
+		return new KeyValueIndexing<String, Data>(String.class) {
+			@Override
+			public void add(final Data d) {
+				add(d.a, d);
+			}
+
+			@Override
+			protected Index<Data> createNewIndex(final String key) {
+				return new ListIndex<Data>();
+			}
+		};
+	}
+
+	private static KeyValueIndexing<Long, Data> byV() {
+		return new KeyValueIndexing<Long, Data>(Long.class) {
+			@Override
+			public void add(final Data d) {
+				add(Long.valueOf(d.v), d);
+			}
+
+			@Override
+			protected Index<Data> createNewIndex(final Long key) {
+				return new ListIndex<Data>();
+			}
+		};
+	}
+
+	private static Criteria<String, Data> a(final String a) {
+		return new StringCriteria<Data>(a) {
+			@Override
+			public boolean matches(final Data entry) {
+				return entry.a.equals(this.str);
+			}
+		};
+	}
+
+	private static Criteria<Long, Data> v(final long v) {
+		return new SingleCriteria<Long, Data>(Long.valueOf(v), Long.class) {
+			@Override
+			public boolean matches(final Data entry) {
+				return entry.v == v;
+			}
+		};
+	}
+
+	private static MultiIndex<Data> createIndex() {
+		MultiIndex<Data> index = new MultiIndex<Data>();
+		index.addIndex(String.class, byA());
+		index.addIndex(Long.class, byV());
+		for (int i = 0; i < 100; i++) {
+			index.add(new Data("n" + i % 10, i % 7));
+		}
+		return index;
+	}
+
+	private static Map<Class<?>, Indexing<Data>> freshIndexings() {
+		Map<Class<?>, Indexing<Data>> indexings = L.map();
+		indexings.put(String.class, byA());
+		indexings.put(Long.class, byV());
+		return indexings;
+	}
+
+	private static List<String> find(final MultiIndex<Data> index, final Criteria<?, Data> crit) {
+		@SuppressWarnings("unchecked")
+		List<Criteria<?, Data>> crits = L.<Criteria<?, Data>> l(crit);
+		List<String> found = L.l();
+		for (Data d : index.getMatches(crits, 1000)) {
+			found.add(d.toString());
+		}
+		Collections.sort(found);
+		return found;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File dir = IOTools.createTempDir("snapshot");
+		try {
+			MultiIndex<Data> original = createIndex();
+			IndexSnapshot<Data> snapshot = new IndexSnapshot<Data>(DATA, 42).addKeyCodec(String.class,
+					IndexSnapshot.STRING);
+			Store store = new FileStore(new File(dir, "index.snapshot"));
+			snapshot.write(original, store);
+
+			// the Long index has no key codec and is rebuilt from the entries
+			MultiIndex<Data> loaded = snapshot.load(store, freshIndexings());
+			assertNotNull(loaded);
+			assertEquals(original.getTotalCandidates(), loaded.getTotalCandidates());
+			List<Criteria<?, Data>> crits = L.l();
+			crits.add(a("n3"));
+			crits.add(a("n9"));
+			crits.add(a("x"));
+			crits.add(v(0));
+			crits.add(v(6));
+			for (Criteria<?, Data> crit : crits) {
+				assertEquals(find(original, crit), find(loaded, crit));
+			}
+			assertEquals(original.getPredictivityOf(a("n3")), loaded.getPredictivityOf(a("n3")), 0.0);
+
+			// modifications after loading
+			loaded.add(new Data("n3", 99));
+			loaded.add(new Data("x", 1));
+			assertEquals(11, find(loaded, a("n3")).size());
+			assertEquals(1, find(loaded, a("x")).size());
+			IndexSnapshot.materialize(loaded);
+
+			// a loaded index can be written again
+			MemStore copy = new MemStore();
+			snapshot.write(loaded, copy);
+			MultiIndex<Data> reloaded = snapshot.load(copy, freshIndexings());
+			assertEquals(find(loaded, a("n3")), find(reloaded, a("n3")));
+			assertEquals(find(loaded, v(1)), find(reloaded, v(1)));
+		} finally {
+			IOTools.deleteAll(dir);
+		}
+	}
+
+	@Test
+	public void testStale() throws IOException {
+		File dir = IOTools.createTempDir("snapshot");
+		try {
+			IndexSnapshot<Data> snapshot = new IndexSnapshot<Data>(DATA, 1).addKeyCodec(String.class,
+					IndexSnapshot.STRING);
+			Store store = new FileStore(new File(dir, "index.snapshot"));
+			assertNull(snapshot.load(store, freshIndexings()));
+
+			snapshot.write(createIndex(), store);
+			IndexSnapshot<Data> newer = new IndexSnapshot<Data>(DATA, 2).addKeyCodec(String.class,
+					IndexSnapshot.STRING);
+			assertNull(newer.load(store, freshIndexings()));
+			assertFalse(store.exists());
+
+			snapshot.write(createIndex(), store);
+			byte[] bytes = IOTools.getAllBytes(store.getInputStream());
+			bytes[bytes.length / 2]++;
+			OutputStream os = store.getOutputStream(false);
+			os.write(bytes);
+			os.close();
+			assertNull(snapshot.load(store, freshIndexings()));
+			assertNull(snapshot.load(new MemStore(), freshIndexings()));
+		} finally {
+			IOTools.deleteAll(dir);
+		}
+	}
+}
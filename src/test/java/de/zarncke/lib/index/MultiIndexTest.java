@@ -4,6 +4,7 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import junit.framework.Assert;
 
@@ -294,4 +295,63 @@ public class MultiIndexTest extends GuardedTest {
 		Assert.assertEquals(2, matchesRes3.size());
 		Assert.assertEquals(new HashSet<Data>(L.l(this.a1, this.b4)), new HashSet<Data>(matchesRes3.realize()));
 	}
+
+	@Test
+	public void testBulkLoad() {
+		List<Data> entries = L.l();
+		for (int i = 0; i < 3 * KeyValueIndexing.DEFAULT_PARTITION_SIZE + 17; i++) {
+			entries.add(new Data(String.valueOf((char) ('a' + i % 7)), i % 5));
+		}
+		MultiIndex<Data> sequential = new MultiIndex<Data>();
+		sequential.addIndex(Long.class, createLongIndex());
+		for (Data d : entries) {
+			sequential.add(d);
+		}
+		MultiIndex<Data> bulk = new MultiIndex<Data>(entries.size());
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			bulk.addIndex(Long.class, createLongIndex());
+			bulk.addAll(entries, pool);
+
+			Assert.assertEquals(sequential.getTotalCandidates(), bulk.getTotalCandidates());
+			@SuppressWarnings("unchecked")
+			List<? extends Criteria<?, Data>> find2 = L.l(eq2);
+			Assert.assertEquals(sequential.getMatches(find2, 100000).realize(),
+					bulk.getMatches(find2, 100000).realize());
+			Assert.assertEquals(sequential.getPredictivityOf(eq2), bulk.getPredictivityOf(eq2), 0.0);
+
+			// partitions smaller than the data and adding an index later
+			KeyValueIndexing<Long, Data> longIndex = createLongIndex();
+			longIndex.addAll(entries.subList(0, 100), pool, 7);
+			// the sorted index per key keeps one entry per distinct name
+			Assert.assertEquals(7, longIndex.getIndex(eq2).size());
+			bulk.addIndex(Integer.class, new ListIndexing());
+			Assert.assertEquals(entries.size(), ((ListIndexing) bulk.getIndexByType(Integer.class)).added);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static class ListIndexing extends DefaultSubIndexing<Data> {
+		int added = 0;
+
+		ListIndexing() {
+			super(Integer.class);
+		}
+
+		@Override
+		public void add(final Data entry) {
+			this.added++;
+		}
+
+		@Override
+		public Index<Data> getIndex(final Criteria<?, Data> crit) {
+			return null;
+		}
+
+		@Override
+		public void clear() {
+			this.added = 0;
+		}
+	}
 }
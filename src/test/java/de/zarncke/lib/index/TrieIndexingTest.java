@@ -0,0 +1,107 @@
+package de.zarncke.lib.index;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.index.MultiIndexTest.Data;
+import de.zarncke.lib.index.crit.Criteria;
+import de.zarncke.lib.index.crit.StringMatch;
+
+/**
+ * Tests {@link TrieIndexing} with {@link StringMatch} queries.
+ *
+ * @author Gunnar Zarncke
+ */
+public class TrieIndexingTest extends GuardedTest {
+
+	private static StringMatch<Data> match(final StringMatch.Kind kind, final String pattern, final int maxEdits) {
+		return new StringMatch<Data>(kind, pattern, maxEdits) {
+			@Override
+			protected String getValue(final Data entry) {
+				return entry.a;
+			}
+		};
+	}
+
+	private static List<String> find(final MultiIndex<Data> index, final Criteria<?, Data> crit) {
+		@SuppressWarnings("unchecked")
+		List<Criteria<?, Data>> crits = L.<Criteria<?, Data>> l(crit);
+		List<String> found = L.l();
+		for (Data d : index.getMatches(crits, 1000)) {
+			found.add(d.toString());
+		}
+		Collections.sort(found);
+		return found;
+	}
+
+	@Test
+	public void testQueries() {
+		MultiIndex<Data> indexed = new MultiIndex<Data>();
+		indexed.addIndex(String.class, new TrieIndexing<Data>() {
+			@Override
+			public void add(final Data entry) {
+				add(entry.a, entry);
+			}
+
+			@Override
+			protected Index<Data> createNewIndex(final String key) {
+				return new ListIndex<Data>();
+			}
+		});
+		MultiIndex<Data> scanned = new MultiIndex<Data>();
+		for (String a : L.l("apple", "apply", "ample", "maple", "apple", "banana", "bandana", "ape")) {
+			indexed.add(new Data(a, a.length()));
+			scanned.add(new Data(a, a.length()));
+		}
+
+		@SuppressWarnings("unchecked")
+		List<StringMatch<Data>> crits = L.l(match(StringMatch.Kind.PREFIX, "ap", 0),
+				match(StringMatch.Kind.PREFIX, "x", 0), match(StringMatch.Kind.WILDCARD, "*ple", 0),
+				match(StringMatch.Kind.WILDCARD, "ban?na", 0), match(StringMatch.Kind.SIMILAR, "apple", 1),
+				match(StringMatch.Kind.SIMILAR, "bandanna", 2));
+		for (StringMatch<Data> crit : crits) {
+			assertEquals(crit.toString(), find(scanned, crit), find(indexed, crit));
+		}
+		assertEquals(L.l("ape,3", "apple,5", "apple,5", "apply,5"),
+				find(indexed, match(StringMatch.Kind.PREFIX, "ap", 0)));
+		assertEquals(0.5, indexed.getPredictivityOf(match(StringMatch.Kind.PREFIX, "ap", 0)), 0.0);
+
+		// keys added later are found
+		indexed.add(new Data("apex", 4));
+		assertEquals(5, find(indexed, match(StringMatch.Kind.PREFIX, "ap", 0)).size());
+	}
+
+	@Test
+	public void testInterleavedAddsAndQueries() {
+		MultiIndex<Data> indexed = new MultiIndex<Data>();
+		indexed.addIndex(String.class, new TrieIndexing<Data>() {
+			@Override
+			public void add(final Data entry) {
+				add(entry.a, entry);
+			}
+
+			@Override
+			protected Index<Data> createNewIndex(final String key) {
+				return new ListIndex<Data>();
+			}
+		});
+		MultiIndex<Data> scanned = new MultiIndex<Data>();
+		// enough keys to rebuild the trie several times in between
+		for (int i = 0; i < 500; i++) {
+			String a = (i % 3 == 0 ? "ap" : "ba") + Integer.toString(i * 7919 % 1000, 36);
+			indexed.add(new Data(a, i));
+			scanned.add(new Data(a, i));
+			@SuppressWarnings("unchecked")
+			List<StringMatch<Data>> crits = L.l(match(StringMatch.Kind.PREFIX, "ap", 0),
+					match(StringMatch.Kind.PREFIX, a.substring(0, 3), 0), match(StringMatch.Kind.WILDCARD, "?a*", 0),
+					match(StringMatch.Kind.SIMILAR, a, 1));
+			for (StringMatch<Data> crit : crits) {
+				assertEquals(crit.toString(), find(scanned, crit), find(indexed, crit));
+			}
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package de.zarncke.lib.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.io.store.FileStore;
+import de.zarncke.lib.io.store.MemStore;
+import de.zarncke.lib.io.store.Store;
+import de.zarncke.lib.region.RegionUtil;
+import de.zarncke.lib.util.Misc;
+
+public class MappedLineConsumerTest extends GuardedTest {
+
+	/**
+	 * Collects all lines as Strings.
+	 */
+	private static final class Lines extends MappedLineConsumer<List<String>, List<String>> {
+		private final List<String> all = L.l();
+
+		Lines(final ForkJoinPool pool, final int chunkSize, final boolean ordered) {
+			super(pool, chunkSize, ordered);
+		}
+
+		@Override
+		protected List<String> startChunk(final long offset) {
+			return L.l();
+		}
+
+		@Override
+		protected void consume(final Line line, final List<String> chunk) {
+			chunk.add(line.toString());
+		}
+
+		@Override
+		protected void collect(final List<String> chunk) {
+			this.all.addAll(chunk);
+		}
+
+		@Override
+		protected List<String> result() {
+			return this.all;
+		}
+	}
+
+	private static final String TEXT = "first\nsecond line\r\n\n\nx\nä long line with umlauts ü and more than ten bytes\n"
+			+ "y\r\nlast without newline";
+
+	public void testChunkBoundaries() throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			for (String text : L.l(TEXT, TEXT + "\n", "", "\n", "a", "\n\n", "ab\ncd\n")) {
+				List<String> expected = readLines(text);
+				Store store = new MemStore(RegionUtil.asRegion(text.getBytes(Misc.UTF_8)));
+				for (int chunk = 1; chunk < 20; chunk++) {
+					assertEquals(text + " in " + chunk, expected, new Lines(pool, chunk, true).consume(store));
+					List<String> unordered = new Lines(pool, chunk, false).consume(store);
+					Collections.sort(unordered);
+					List<String> sorted = L.copy(expected);
+					Collections.sort(sorted);
+					assertEquals(sorted, unordered);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static List<String> readLines(final String text) throws IOException {
+		return new LineConsumer<List<String>>() {
+			private final List<String> res = L.l();
+
+			@Override
+			protected void consume(final String line) {
+				this.res.add(line);
+			}
+
+			@Override
+			protected List<String> result() {
+				return this.res;
+			}
+		}.consume(new MemStore(RegionUtil.asRegion(text.getBytes(Misc.UTF_8))));
+	}
+
+	public void testMappedFile() throws IOException {
+		File file = File.createTempFile("lines", ".txt");
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 10000; i++) {
+				sb.append(i % 7 == 0 ? "ERROR " : "info ").append(i).append('\n');
+			}
+			IOTools.dump(sb.toString(), file);
+			long errors = new MappedLineConsumer<long[], Long>(null, 1000, false) {
+				private long count;
+
+				@Override
+				protected long[] startChunk(final long offset) {
+					return new long[1];
+				}
+
+				@Override
+				protected void consume(final Line line, final long[] chunk) {
+					if (line.indexOf("ERROR") >= 0) {
+						assertEquals('E', line.charAt(0));
+						assertEquals(' ', line.byteAt(line.indexOf(' ', 0)));
+						chunk[0]++;
+					}
+				}
+
+				@Override
+				protected void collect(final long[] chunk) {
+					this.count += chunk[0];
+				}
+
+				@Override
+				protected Long result() {
+					return Long.valueOf(this.count);
+				}
+			}.consume(new FileStore(file)).longValue();
+			assertEquals(1429, errors);
+			assertEquals(readLines(sb.toString()), new Lines(null, 4096, true).consume(new FileStore(file)));
+		} finally {
+			assertTrue(file.delete());
+		}
+	}
+
+	public void testFailure() throws IOException {
+		try {
+			new MappedLineConsumer<Void, Void>(null, 2, true) {
+				@Override
+				protected void consume(final Line line, final Void chunk) {
+					if (line.length() > 3) {
+						throw new IllegalStateException(line.toString());
+					}
+				}
+			}.consume(new MemStore(RegionUtil.asRegion("a\nbb\ncccc\nd\n".getBytes(Misc.UTF_8))));
+			fail("exception expected");
+		} catch (IllegalStateException e) {
+			assertEquals("cccc", e.getMessage());
+			Warden.disregard(e);
+		}
+	}
+}
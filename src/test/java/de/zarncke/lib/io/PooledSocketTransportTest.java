@@ -0,0 +1,162 @@
+package de.zarncke.lib.io;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.util.Misc;
+
+public class PooledSocketTransportTest extends GuardedTest {
+
+	/**
+	 * Answers framed requests with the upper case query, optionally closing each connection after some requests.
+	 */
+	private static final class UpperServer implements Runnable {
+		final ServerSocket server;
+		final AtomicInteger accepted = new AtomicInteger();
+		final int requestsPerConnection;
+
+		UpperServer(final int requestsPerConnection) throws IOException {
+			this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			this.requestsPerConnection = requestsPerConnection;
+			Thread t = new Thread(this, "upper server");
+			t.setDaemon(true);
+			t.start();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final Socket socket = this.server.accept();
+					this.accepted.incrementAndGet();
+					Thread t = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							final AtomicInteger count = new AtomicInteger();
+							try {
+								PooledSocketTransport.serve(socket, new PooledSocketTransport.FrameHandler() {
+									@Override
+									public byte[] handle(final byte[] request) throws IOException {
+										if (count.incrementAndGet() > UpperServer.this.requestsPerConnection) {
+											throw new IOException("enough");
+										}
+										return new String(request, Misc.UTF_8).toUpperCase().getBytes(Misc.UTF_8);
+									}
+								});
+							} catch (IOException e) {
+								// connection ends
+							}
+						}
+					});
+					t.setDaemon(true);
+					t.start();
+				}
+			} catch (IOException e) {
+				// closed
+			}
+		}
+
+		int port() {
+			return this.server.getLocalPort();
+		}
+	}
+
+	public void testKeepAlive() throws IOException {
+		UpperServer server = new UpperServer(Integer.MAX_VALUE);
+		PooledSocketTransport transport = new PooledSocketTransport();
+		try {
+			for (int i = 0; i < 10; i++) {
+				assertEquals("HELLO " + i, transport.sendRequest("localhost", server.port(),
+						new LineReadSocketCommunicator("hello " + i + "\n")));
+			}
+			assertEquals(1, server.accepted.get());
+			assertEquals(0, transport.evictIdle());
+		} finally {
+			transport.close();
+			server.server.close();
+		}
+	}
+
+	public void testIdleEviction() throws Exception {
+		UpperServer server = new UpperServer(Integer.MAX_VALUE);
+		PooledSocketTransport transport = new PooledSocketTransport(2, 1, false);
+		try {
+			assertEquals("A", transport.sendRequest("localhost", server.port(), new LineReadSocketCommunicator("a")));
+			Thread.sleep(10);
+			assertEquals(1, transport.evictIdle());
+			assertEquals("B", transport.sendRequest("localhost", server.port(), new LineReadSocketCommunicator("b")));
+			assertEquals(2, server.accepted.get());
+		} finally {
+			transport.close();
+			server.server.close();
+		}
+	}
+
+	public void testServerClosedIdleConnection() throws IOException {
+		UpperServer server = new UpperServer(1);
+		PooledSocketTransport transport = new PooledSocketTransport();
+		try {
+			for (int i = 0; i < 3; i++) {
+				assertEquals("X", transport.sendRequest("localhost", server.port(), new LineReadSocketCommunicator("x")));
+			}
+			assertEquals(3, server.accepted.get());
+		} finally {
+			transport.close();
+			server.server.close();
+		}
+	}
+
+	public void testMultiplexed() throws Exception {
+		UpperServer server = new UpperServer(Integer.MAX_VALUE);
+		final PooledSocketTransport transport = new PooledSocketTransport(4, PooledSocketTransport.DEFAULT_IDLE_MILLIS,
+				true);
+		final int port = server.port();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = L.l();
+			for (int i = 0; i < 200; i++) {
+				final String query = "q" + i;
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws IOException {
+						return transport.sendRequest("localhost", port, new LineReadSocketCommunicator(query));
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals("Q" + i, results.get(i).get());
+			}
+			assertEquals(1, server.accepted.get());
+		} finally {
+			executor.shutdown();
+			transport.close();
+			server.server.close();
+		}
+	}
+
+	public void testUnavailable() throws IOException {
+		ServerSocket unused = new ServerSocket(0);
+		int port = unused.getLocalPort();
+		unused.close();
+		PooledSocketTransport transport = new PooledSocketTransport();
+		try {
+			transport.sendRequest("localhost", port, new LineReadSocketCommunicator("x"));
+			fail("connection must fail");
+		} catch (SocketCommunicator.SendIoException e) {
+			Warden.disregard(e);
+		} finally {
+			transport.close();
+		}
+	}
+}
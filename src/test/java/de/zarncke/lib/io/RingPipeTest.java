@@ -0,0 +1,100 @@
+package de.zarncke.lib.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.err.Warden;
+
+public class RingPipeTest extends GuardedTest {
+
+	public void testTransfer() throws Exception {
+		final RingPipe pipe = new RingPipe(100);
+		assertEquals(128, pipe.getCapacity());
+		final byte[] data = new byte[100000];
+		new Random(42).nextBytes(data);
+		Thread writer = new Thread("writer") {
+			@Override
+			public void run() {
+				Warden w = Warden.appointWarden();
+				try {
+					OutputStream out = pipe.getOutputStream();
+					Random random = new Random(7);
+					int pos = 0;
+					while (pos < data.length) {
+						int n = Math.min(data.length - pos, random.nextInt(300));
+						if (n == 1) {
+							out.write(data[pos]);
+						} else {
+							out.write(data, pos, n);
+						}
+						pos += n;
+					}
+					out.close();
+				} catch (IOException e) {
+					Warden.disregardAndReport(e);
+				} finally {
+					w.finish();
+				}
+			}
+		};
+		writer.start();
+		InputStream ins = pipe.getInputStream();
+		byte[] res = new byte[data.length];
+		int pos = 0;
+		Random random = new Random(11);
+		while (true) {
+			int n;
+			if (random.nextBoolean()) {
+				n = ins.read();
+				if (n >= 0) {
+					res[pos] = (byte) n;
+					n = 1;
+				}
+			} else {
+				n = ins.read(res, pos, Math.min(res.length - pos, 1 + random.nextInt(200)));
+			}
+			if (n < 0) {
+				break;
+			}
+			pos += n;
+			if (pos == res.length) {
+				assertEquals(-1, ins.read());
+				break;
+			}
+		}
+		writer.join();
+		assertEquals(data.length, pos);
+		assertTrue(Arrays.equals(data, res));
+	}
+
+	public void testReaderClosed() throws Exception {
+		RingPipe pipe = new RingPipe(16);
+		pipe.getOutputStream().write(new byte[10]);
+		assertEquals(10, pipe.getInputStream().available());
+		pipe.getInputStream().close();
+		try {
+			pipe.getOutputStream().write(new byte[1]);
+			fail("reader is closed");
+		} catch (IOException e) {
+			Warden.disregard(e);
+		}
+	}
+
+	public void testInterrupt() throws Exception {
+		RingPipe pipe = new RingPipe(16);
+		Thread.currentThread().interrupt();
+		try {
+			pipe.getInputStream().read();
+			fail("interrupted");
+		} catch (IOException e) {
+			Warden.disregard(e);
+		}
+		assertFalse(Thread.interrupted());
+		pipe.getOutputStream().close();
+		assertEquals(-1, pipe.getInputStream().read());
+	}
+}
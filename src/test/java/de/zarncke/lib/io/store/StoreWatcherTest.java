@@ -0,0 +1,195 @@
+package de.zarncke.lib.io.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.joda.time.Duration;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+
+import de.zarncke.lib.block.Running;
+import de.zarncke.lib.cache.CheckModfiedContent;
+import de.zarncke.lib.ctx.Context;
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.region.Region;
+import de.zarncke.lib.region.RegionUtil;
+import de.zarncke.lib.value.Default;
+import de.zarncke.lib.value.RefreshStoreValue;
+
+/**
+ * Tests {@link StoreWatcher}.
+ *
+ * @author Gunnar Zarncke
+ */
+public class StoreWatcherTest extends GuardedTest {
+	private static final long TIMEOUT_MS = 20000;
+
+	@Test
+	public void testFileWatch() throws Exception {
+		File dir = IOTools.createTempDir("watch");
+		StoreWatcher watcher = new StoreWatcher(Duration.millis(50));
+		try {
+			FileStore store = new FileStore(new File(dir, "a.txt"));
+			IOTools.dump("one", store);
+			StoreWatcher.Watch watch = watcher.watch(store);
+			assertSame(watch, watcher.watch(new FileStore(new File(dir, "a.txt"))));
+			long generation = watch.getGeneration();
+
+			IOTools.dump("two", new FileStore(new File(dir, "b.txt")));
+			IOTools.dump("two", store);
+			waitForChange(watch, generation);
+
+			generation = watch.getGeneration();
+			assertTrue(store.delete());
+			waitForChange(watch, generation);
+		} finally {
+			watcher.close();
+			IOTools.deleteAll(dir);
+		}
+	}
+
+	@Test
+	public void testPolling() throws Exception {
+		StoreWatcher watcher = new StoreWatcher(Duration.millis(20));
+		try {
+			MemStore store = new MemStore();
+			StoreWatcher.Watch watch = watcher.watch(store);
+			assertTrue(watch.isPolled());
+			long generation = watch.getGeneration();
+			store.setLastModified(4711);
+			waitForChange(watch, generation);
+		} finally {
+			watcher.close();
+		}
+	}
+
+	@Test
+	public void testRefreshValue() throws Exception {
+		File dir = IOTools.createTempDir("watch");
+		final StoreWatcher watcher = new StoreWatcher(Duration.millis(50));
+		try {
+			final FileStore store = new FileStore(new File(dir, "value.txt"));
+			IOTools.dump("one", store);
+			final RefreshStoreValue<String> value = new RefreshStoreValue<String>(store, new Function<Store, String>() {
+				@Override
+				public String apply(final Store from) {
+					try {
+						return IOTools.getAsString(from.getInputStream()).toString();
+					} catch (IOException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+			Context.runWith(new Running() {
+				@Override
+				public void run() {
+					assertEquals("one", value.get());
+					StoreWatcher.Watch watch = watcher.watch(store);
+					long generation = watch.getGeneration();
+					try {
+						IOTools.dump("two", store);
+					} catch (IOException e) {
+						throw new IllegalStateException(e);
+					}
+					waitForChange(watch, generation);
+					assertEquals("two", value.get());
+				}
+			}, Default.of(watcher, StoreWatcher.class));
+		} finally {
+			watcher.close();
+			IOTools.deleteAll(dir);
+		}
+	}
+
+	@Test
+	public void testRefreshValueChangedDuringLoad() throws Exception {
+		final StoreWatcher watcher = new StoreWatcher(Duration.standardHours(1));
+		try {
+			final MemStore store = new MemStore(RegionUtil.asRegionUtf8("one"));
+			store.setLastModified(1000);
+			final AtomicBoolean first = new AtomicBoolean(true);
+			final RefreshStoreValue<String> value = new RefreshStoreValue<String>(store, new Function<Store, String>() {
+				@Override
+				public String apply(final Store from) {
+					try {
+						String content = IOTools.getAsString(from.getInputStream()).toString();
+						if (first.getAndSet(false)) {
+							changeContent(store, "two", 2000);
+						}
+						return content;
+					} catch (IOException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+			Context.runWith(new Running() {
+				@Override
+				public void run() {
+					assertEquals("one", value.get());
+					watcher.pollAll();
+					assertEquals("two", value.get());
+				}
+			}, Default.of(watcher, StoreWatcher.class));
+		} finally {
+			watcher.close();
+		}
+	}
+
+	@Test
+	public void testContentChangedDuringLoad() throws Exception {
+		final StoreWatcher watcher = new StoreWatcher(Duration.standardHours(1));
+		try {
+			final MemStore store = new MemStore(RegionUtil.asRegionUtf8("one"));
+			store.setLastModified(1000);
+			final AtomicBoolean first = new AtomicBoolean(true);
+			final CheckModfiedContent content = new CheckModfiedContent(new DelegateStore(store) {
+				@Override
+				public Region asRegion() throws IOException {
+					Region region = super.asRegion();
+					if (first.getAndSet(false)) {
+						changeContent(store, "two", 2000);
+					}
+					return region;
+				}
+			});
+			Context.runWith(new Running() {
+				@Override
+				public void run() {
+					try {
+						assertEquals("one", new String(content.asRegion().toByteArray(), "UTF-8"));
+						watcher.pollAll();
+						assertEquals("two", new String(content.asRegion().toByteArray(), "UTF-8"));
+					} catch (IOException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			}, Default.of(watcher, StoreWatcher.class));
+		} finally {
+			watcher.close();
+		}
+	}
+
+	static void changeContent(final MemStore store, final String content, final long lastModified) {
+		try {
+			IOTools.dump(content, store);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		store.setLastModified(lastModified);
+	}
+
+	static void waitForChange(final StoreWatcher.Watch watch, final long generation) {
+		long end = System.currentTimeMillis() + TIMEOUT_MS;
+		while (watch.getGeneration() == generation) {
+			assertTrue("no change of " + watch, System.currentTimeMillis() < end);
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package de.zarncke.lib.io.store;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.util.InterruptionMode;
+import de.zarncke.lib.util.Misc;
+
+public class TreeCopierTest extends GuardedTest {
+	private File dir;
+	private File source;
+	private File target;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		this.dir = IOTools.createTempDir("treecopy");
+		this.source = new File(this.dir, "source");
+		this.target = new File(this.dir, "target");
+		for (int d = 0; d < 5; d++) {
+			File sub = new File(this.source, "d" + d + "/e" + d % 2);
+			sub.mkdirs();
+			for (int f = 0; f < 20; f++) {
+				IOTools.dump("file " + d + "/" + f, new File(sub, "f" + f));
+			}
+		}
+		new File(this.source, "empty").mkdirs();
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		IOTools.deleteAll(this.dir);
+		super.tearDown();
+	}
+
+	private static String read(final File file) throws IOException {
+		return new String(IOTools.getAllBytes(new FileInputStream(file)), Misc.UTF_8);
+	}
+
+	public void testCopyAndSkipUnchanged() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			TreeCopier copier = new TreeCopier(pool, StoreUtil.OVERWRITE, TreeCopier.ChangeDetection.SIZE_AND_TIME,
+					false);
+			copier.copy(new FileStore(this.source), new FileStore(this.target), InterruptionMode.PASS_ON);
+			assertEquals(100, copier.getCopied());
+			File copy = new File(this.target, "d3/e1/f7");
+			assertEquals("file 3/7", read(copy));
+			assertEquals(new File(this.source, "d3/e1/f7").lastModified(), copy.lastModified());
+			assertTrue(new File(this.target, "empty").isDirectory());
+
+			File changed = new File(this.source, "d2/e0/f1");
+			IOTools.dump("changed content", changed);
+			TreeCopier again = new TreeCopier(pool, StoreUtil.OVERWRITE, TreeCopier.ChangeDetection.SIZE_AND_TIME,
+					false);
+			again.copy(new FileStore(this.source), new FileStore(this.target), InterruptionMode.PASS_ON);
+			assertEquals(1, again.getCopied());
+			assertEquals(99, again.getSkipped());
+			assertEquals("changed content", read(new File(this.target, "d2/e0/f1")));
+
+			// same size, different time and content
+			File sameSize = new File(this.target, "d4/e0/f2");
+			IOTools.dump("FILE 4/2", sameSize);
+			TreeCopier hashing = new TreeCopier(pool, StoreUtil.OVERWRITE, TreeCopier.ChangeDetection.HASH, false);
+			hashing.copy(new FileStore(this.source), new FileStore(this.target), InterruptionMode.PASS_ON);
+			assertEquals(1, hashing.getCopied());
+			assertEquals("file 4/2", read(sameSize));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testFailure() throws Exception {
+		File existing = new File(this.target, "d1/e1/f5");
+		existing.getParentFile().mkdirs();
+		IOTools.dump("other", existing);
+		TreeCopier copier = new TreeCopier(null, StoreUtil.FAIL, TreeCopier.ChangeDetection.NONE, false);
+		try {
+			copier.copy(new FileStore(this.source), new FileStore(this.target), InterruptionMode.PASS_ON);
+			fail("target exists");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("f5"));
+			Warden.disregard(e);
+		}
+	}
+
+	public void testNotIntoItself() throws Exception {
+		File inner = new File(this.source, "d0/copy");
+		StoreUtil.copyRecursiveOptimized(new FileStore(this.source), new FileStore(inner), StoreUtil.OVERWRITE);
+		assertEquals("file 1/3", read(new File(inner, "d1/e1/f3")));
+		assertFalse(new File(inner, "d0/copy").exists());
+	}
+}
@@ -0,0 +1,94 @@
+package de.zarncke.lib.io.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.io.StoreConsumer;
+
+public class UnionStoreTest extends GuardedTest {
+	private File root;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		this.root = Files.createTempDirectory("union").toFile();
+		assertTrue(new File(this.root, "a/dir").mkdirs());
+		assertTrue(new File(this.root, "b/dir").mkdirs());
+		assertTrue(new File(this.root, "c").mkdirs());
+		IOTools.dump("a1", new File(this.root, "a/one"));
+		IOTools.dump("a-shared", new File(this.root, "a/dir/x"));
+		IOTools.dump("b2", new File(this.root, "b/two"));
+		IOTools.dump("b-shared", new File(this.root, "b/dir/y"));
+		IOTools.dump("c3", new File(this.root, "c/three"));
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		IOTools.deleteAll(this.root);
+		super.tearDown();
+	}
+
+	public void testLookup() throws IOException {
+		UnionStore union = new UnionStore(new FileStore(this.root));
+		assertEquals("a1", StoreConsumer.TO_UTF_STRING.consume(union.element("one")));
+		assertEquals("c3", StoreConsumer.TO_UTF_STRING.consume(union.element("three")));
+		assertFalse(union.element("none").exists());
+		assertSame(union, union.element("two").getParent());
+
+		Store dir = union.element("dir");
+		assertTrue(dir instanceof UnionStore);
+		assertEquals("dir", dir.getName());
+		assertEquals("a-shared", StoreConsumer.TO_UTF_STRING.consume(dir.element("x")));
+		assertEquals("b-shared", StoreConsumer.TO_UTF_STRING.consume(dir.element("y")));
+		assertEquals(L.l("x", "y"), names(dir));
+		// merged directories are kept with the index
+		assertSame(dir, union.element("dir"));
+	}
+
+	public void testIteration() {
+		UnionStore union = new UnionStore(new FileStore(this.root));
+		assertEquals(L.l("dir", "one", "three", "two"), names(union));
+	}
+
+	public void testInvalidation() throws IOException {
+		UnionStore union = new UnionStore(new FileStore(this.root), Long.MAX_VALUE);
+		assertFalse(union.element("four").exists());
+		IOTools.dump("c4", new File(this.root, "c/four"));
+		assertFalse(union.element("four").exists());
+		union.invalidate();
+		assertEquals("c4", StoreConsumer.TO_UTF_STRING.consume(union.element("four")));
+	}
+
+	public void testModification() throws IOException {
+		File layer = new File(this.root, "b");
+		assertTrue(layer.setLastModified(System.currentTimeMillis() - 10000));
+		UnionStore union = new UnionStore(new FileStore(this.root), 0);
+		assertFalse(union.element("five").exists());
+		IOTools.dump("b5", new File(layer, "five"));
+		assertTrue(layer.setLastModified(System.currentTimeMillis()));
+		assertEquals("b5", StoreConsumer.TO_UTF_STRING.consume(union.element("five")));
+	}
+
+	public void testNewElementsVisibleByDefault() throws IOException {
+		UnionStore union = new UnionStore(new FileStore(this.root));
+		assertEquals(0, union.getRecheckMillis());
+		assertFalse(union.element("six").exists());
+		// within the modification time granularity of the layer
+		IOTools.dump("c6", new File(this.root, "c/six"));
+		assertEquals("c6", StoreConsumer.TO_UTF_STRING.consume(union.element("six")));
+		assertEquals(L.l("dir", "one", "six", "three", "two"), names(union));
+	}
+
+	private static List<String> names(final Store store) {
+		List<String> names = L.l();
+		for (Store s : store) {
+			names.add(s.getName());
+		}
+		return names;
+	}
+}
@@ -0,0 +1,178 @@
+package de.zarncke.lib.io.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.err.Warden;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.io.StoreConsumer;
+import de.zarncke.lib.util.Misc;
+
+public class UrlStoreTest extends GuardedTest {
+	private HttpServer server;
+	private final List<String> requests = L.l();
+	private volatile String content = "a=1";
+	private volatile String etag = "\"v1\"";
+	private File cacheDir;
+	private URI base;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		this.server.start();
+		this.base = new URI("http://localhost:" + this.server.getAddress().getPort() + "/");
+		this.cacheDir = IOTools.createTempDir("urlcache");
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		this.server.stop(0);
+		IOTools.deleteAll(this.cacheDir);
+		super.tearDown();
+	}
+
+	void serve(final HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		String method = exchange.getRequestMethod();
+		synchronized (this.requests) {
+			String conditional = exchange.getRequestHeaders().getFirst("If-None-Match");
+			this.requests.add(method + " " + path + (conditional == null ? "" : " " + conditional));
+		}
+		if (!path.startsWith("/config")) {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+		if (path.equals("/config-nohead") && method.equals("HEAD")) {
+			exchange.sendResponseHeaders(405, -1);
+			exchange.close();
+			return;
+		}
+		exchange.getResponseHeaders().set("ETag", this.etag);
+		if (path.equals("/config-fresh")) {
+			exchange.getResponseHeaders().set("Cache-Control", "max-age=600");
+		}
+		if (path.equals("/config-nostore")) {
+			exchange.getResponseHeaders().set("Cache-Control", "private, no-store");
+		}
+		if (this.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+		byte[] body = this.content.getBytes(Misc.UTF_8);
+		if (method.equals("HEAD")) {
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		exchange.sendResponseHeaders(200, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+	private List<String> takeRequests() {
+		synchronized (this.requests) {
+			List<String> res = L.copy(this.requests);
+			this.requests.clear();
+			return res;
+		}
+	}
+
+	public void testUncached() throws IOException {
+		UrlStore root = new UrlStore(this.base);
+		Store config = root.element("config");
+		assertTrue(config.exists());
+		assertFalse(root.element("missing").exists());
+		assertEquals(L.l("HEAD /config", "HEAD /missing"), takeRequests());
+		assertEquals("a=1", StoreConsumer.TO_UTF_STRING.consume(config));
+		assertEquals("a=1", StoreConsumer.TO_UTF_STRING.consume(config));
+		assertEquals(L.l("GET /config", "GET /config"), takeRequests());
+	}
+
+	public void testRevalidation() throws IOException {
+		UrlCache cache = new UrlCache(this.cacheDir);
+		Store config = new UrlStore(this.base, null, cache).element("config");
+		assertEquals("a=1", StoreConsumer.TO_UTF_STRING.consume(config));
+		assertEquals("a=1", StoreConsumer.TO_UTF_STRING.consume(config));
+		assertEquals(L.l("GET /config", "GET /config \"v1\""), takeRequests());
+
+		this.content = "a=2";
+		this.etag = "\"v2\"";
+		assertEquals("a=2", StoreConsumer.TO_UTF_STRING.consume(config));
+		assertEquals(L.l("GET /config \"v1\""), takeRequests());
+
+		// survives a new cache instance
+		Store again = new UrlStore(this.base.resolve("config"), null, new UrlCache(this.cacheDir));
+		assertEquals("a=2", StoreConsumer.TO_UTF_STRING.consume(again));
+		assertEquals(L.l("GET /config \"v2\""), takeRequests());
+	}
+
+	public void testFresh() throws IOException {
+		UrlCache cache = new UrlCache(this.cacheDir);
+		Store config = new UrlStore(this.base, null, cache).element("config-fresh");
+		assertEquals("a=1", StoreConsumer.TO_UTF_STRING.consume(config));
+		assertEquals("a=1", StoreConsumer.TO_UTF_STRING.consume(config));
+		assertTrue(config.exists());
+		assertEquals(L.l("GET /config-fresh"), takeRequests());
+	}
+
+	public void testHeadRefused() {
+		UrlCache cache = new UrlCache(this.cacheDir);
+		assertTrue(new UrlStore(this.base.resolve("config-nohead")).exists());
+		assertTrue(new UrlStore(this.base, null, cache).element("config-nohead").exists());
+		assertEquals(L.l("HEAD /config-nohead", "GET /config-nohead", "HEAD /config-nohead", "GET /config-nohead"),
+				takeRequests());
+	}
+
+	public void testNoStore() throws IOException {
+		UrlCache cache = new UrlCache(this.cacheDir);
+		Store config = new UrlStore(this.base, null, cache).element("config-nostore");
+		assertEquals("a=1", StoreConsumer.TO_UTF_STRING.consume(config));
+		assertEquals("a=1", StoreConsumer.TO_UTF_STRING.consume(config));
+		assertEquals(L.l("GET /config-nostore", "GET /config-nostore"), takeRequests());
+		assertEquals(0, this.cacheDir.list().length);
+	}
+
+	public void testNormalizedUri() throws IOException {
+		UrlCache cache = new UrlCache(this.cacheDir);
+		Store config = new UrlStore(this.base.resolve("config"), null, cache);
+		assertEquals("a=1", StoreConsumer.TO_UTF_STRING.consume(config));
+		URI upper = URI.create("HTTP://LOCALHOST:" + this.base.getPort() + "/config#part");
+		assertEquals("a=1", StoreConsumer.TO_UTF_STRING.consume(new UrlStore(upper, null, cache)));
+		assertEquals(L.l("GET /config", "GET /config \"v1\""), takeRequests());
+		assertEquals(2, this.cacheDir.list().length);
+	}
+
+	public void testMissing() {
+		UrlCache cache = new UrlCache(this.cacheDir);
+		Store missing = new UrlStore(this.base, null, cache).element("missing");
+		assertFalse(missing.exists());
+		try {
+			StoreConsumer.TO_UTF_STRING.consume(missing);
+			fail("missing");
+		} catch (IOException e) {
+			Warden.disregard(e);
+		}
+		assertEquals(L.l("HEAD /missing", "GET /missing"), takeRequests());
+	}
+}
@@ -1,9 +1,13 @@
 package de.zarncke.lib.jna;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.List;
 
+import de.zarncke.lib.coll.L;
 import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.io.DiskInfo;
 import de.zarncke.lib.util.Misc;
 
 public class LinuxFunctionsTest extends GuardedTest {
@@ -24,4 +28,27 @@ public class LinuxFunctionsTest extends GuardedTest {
 		}
 	}
 
+	public void testParseMountPoints() {
+		List<String> mounts = LinuxFunctions.parseMountPoints(L.l(
+				"36 35 98:0 / / rw,noatime master:1 - ext3 /dev/root rw,errors=continue",
+				"23 36 0:22 / /proc rw,relatime - proc proc rw",
+				"40 36 8:1 / /mnt/my\\040disk rw - ext4 /dev/sda1 rw", "broken"));
+		assertEquals(L.l("/mnt/my disk", "/proc", "/"), mounts);
+	}
+
+	public void testDiskInfos() {
+		if (Misc.isLinux()) {
+			List<String> mounts = LinuxFunctions.getMountPoints();
+			assertTrue(mounts.contains("/"));
+			assertSame(mounts, LinuxFunctions.getMountPoints());
+			assertEquals("/", LinuxFunctions.getMountPointOf(new File("/")));
+
+			List<DiskInfo> infos = LinuxFunctions.getDiskInfos();
+			assertFalse(infos.isEmpty());
+			for (DiskInfo info : infos) {
+				assertTrue(info.getTotal() > 0);
+				assertTrue(info.getFree() <= info.getTotal());
+			}
+		}
+	}
 }
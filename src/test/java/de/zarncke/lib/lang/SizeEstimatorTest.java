@@ -0,0 +1,124 @@
+package de.zarncke.lib.lang;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import de.zarncke.lib.err.GuardedTest;
+
+/**
+ * Tests {@link SizeEstimator}.
+ *
+ * @author Gunnar Zarncke
+ */
+public class SizeEstimatorTest extends GuardedTest {
+
+	private static class Node {
+		private final long value;
+		private Node next;
+		private final Object payload;
+
+		Node(final long value, final Object payload) {
+			this.value = value;
+			this.payload = payload;
+		}
+	}
+
+	@Test
+	public void testShallow() {
+		assertEquals(0, SizeEstimator.shallowSizeOf((Object) null));
+		long object = SizeEstimator.shallowSizeOf(new Object());
+		assertEquals(SizeEstimator.align(SizeEstimator.OBJECT_HEADER_SIZE), object);
+		long node = SizeEstimator.shallowSizeOf(new Node(1, null));
+		assertEquals(SizeEstimator.align(SizeEstimator.OBJECT_HEADER_SIZE + 8 + 2 * SizeEstimator.REFERENCE_SIZE), node);
+		assertEquals(node, SizeEstimator.shallowSizeOf(Node.class));
+
+		assertEquals(SizeEstimator.align(SizeEstimator.ARRAY_HEADER_SIZE + 100), SizeEstimator.shallowSizeOf(new byte[100]));
+		assertEquals(SizeEstimator.align(SizeEstimator.ARRAY_HEADER_SIZE + 800), SizeEstimator.shallowSizeOf(new long[100]));
+		assertEquals(SizeEstimator.align(SizeEstimator.ARRAY_HEADER_SIZE + 10 * SizeEstimator.REFERENCE_SIZE),
+				SizeEstimator.shallowSizeOf(new Object[10]));
+	}
+
+	@Test
+	public void testDeep() {
+		byte[] shared = new byte[1000];
+		Node a = new Node(1, shared);
+		Node b = new Node(2, shared);
+		a.next = b;
+		b.next = a;
+		long node = SizeEstimator.shallowSizeOf(Node.class);
+		long bytes = SizeEstimator.shallowSizeOf(shared);
+		// cycle terminates and shared array counted once
+		assertEquals(2 * node + bytes, SizeEstimator.deepSizeOf(a));
+		assertEquals(bytes + SizeEstimator.shallowSizeOf(new Object[] { shared, shared }),
+				SizeEstimator.deepSizeOf(new Object[] { shared, shared }));
+
+		// repeated use of the reused traversal gives the same result
+		assertEquals(2 * node + bytes, SizeEstimator.deepSizeOf(b));
+	}
+
+	@Test
+	public void testJdkClasses() {
+		// fields of JDK classes may be inaccessible (since Java 9), then only their reference slots count
+		String hello = "hello";
+		assertTrue(SizeEstimator.deepSizeOf(hello) >= SizeEstimator.shallowSizeOf(hello));
+
+		Map<String, Long> map = new HashMap<String, Long>();
+		map.put(hello, Long.valueOf(1));
+		assertTrue(SizeEstimator.deepSizeOf(map) >= SizeEstimator.shallowSizeOf(map));
+		assertTrue(SizeEstimator.deepSizeOf(new HashMap<Object, Object>()) > 0);
+
+		List<Node> list = new ArrayList<Node>();
+		list.add(new Node(1, hello));
+		assertTrue(SizeEstimator.deepSizeOf(list) >= SizeEstimator.shallowSizeOf(list));
+
+		// custom objects referenced from JDK ones are reached where the JDK fields are accessible
+		Node node = new Node(2, list);
+		assertTrue(SizeEstimator.deepSizeOf(node) >= SizeEstimator.shallowSizeOf(node)
+				+ SizeEstimator.shallowSizeOf(list));
+	}
+
+	@Test
+	public void testBudgets() {
+		Node head = new Node(0, null);
+		Node n = head;
+		for (int i = 1; i < 1000; i++) {
+			n.next = new Node(i, null);
+			n = n.next;
+		}
+		long node = SizeEstimator.shallowSizeOf(Node.class);
+		assertEquals(1000 * node, SizeEstimator.deepSizeOf(head, Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE));
+		assertEquals(11 * node, SizeEstimator.deepSizeOf(head, 10, Integer.MAX_VALUE, Long.MAX_VALUE));
+		assertEquals(5 * node, SizeEstimator.deepSizeOf(head, Integer.MAX_VALUE, 5, Long.MAX_VALUE));
+		assertEquals(node, SizeEstimator.deepSizeOf(head, 0, Integer.MAX_VALUE, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testInstrumentation() {
+		Instrumentation inst = (Instrumentation) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { Instrumentation.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						if (method.getName().equals("getObjectSize")) {
+							return Long.valueOf(100);
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		SizeEstimator.setInstrumentation(inst);
+		try {
+			assertEquals(100, SizeEstimator.shallowSizeOf(new Object()));
+			Node a = new Node(1, new Object());
+			assertEquals(200, SizeEstimator.deepSizeOf(a));
+		} finally {
+			SizeEstimator.setInstrumentation(null);
+		}
+	}
+}
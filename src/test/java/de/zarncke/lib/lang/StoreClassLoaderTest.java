@@ -1,12 +1,181 @@
 package de.zarncke.lib.lang;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.joda.time.Duration;
+
 import junit.framework.TestCase;
+import de.zarncke.lib.block.StrictBlock;
+import de.zarncke.lib.ctx.Context;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.io.store.FileStore;
+import de.zarncke.lib.io.store.MapStore;
+import de.zarncke.lib.io.store.MemStore;
+import de.zarncke.lib.io.store.RegionJar;
+import de.zarncke.lib.io.store.StoreWatcher;
+import de.zarncke.lib.region.RegionUtil;
+import de.zarncke.lib.value.Default;
 
 public class StoreClassLoaderTest extends TestCase
 {
-    public void testStoreLoader()
-    {
-    // todo where to get a not already loaded class?
-    }
+	public static class Probe {
+		@Override
+		public String toString() {
+			return "probe";
+		}
+	}
+
+	private static final String PACKAGE = "de/zarncke/lib/lang/";
+	private static final String PROBE_CLASS = "StoreClassLoaderTest$Probe.class";
+
+	public void testStoreLoader() throws Exception {
+		final File dir = Files.createTempDirectory("scl").toFile();
+		// not the shared watcher, which may still report changes of the temp directory by other tests
+		StoreWatcher watcher = new StoreWatcher(Duration.standardHours(1));
+		try {
+			File pack = new File(dir, PACKAGE);
+			assertTrue(pack.mkdirs());
+			byte[] probe = IOTools.getAllBytes(StoreClassLoaderTest.class.getResourceAsStream(PROBE_CLASS));
+			IOTools.dump(probe, new File(pack, PROBE_CLASS));
+			IOTools.dump("x=1", new File(pack, "res.properties"));
+
+			StoreClassLoader loader = Context.runWith(new StrictBlock<StoreClassLoader>() {
+				@Override
+				public StoreClassLoader execute() {
+					return new StoreClassLoader(null, new FileStore(dir));
+				}
+			}, Default.of(watcher, StoreWatcher.class));
+			Class<?> loaded = loader.loadClass(Probe.class.getName());
+			assertNotSame(Probe.class, loaded);
+			assertSame(loader, loaded.getClassLoader());
+			assertEquals("probe", loaded.getDeclaredConstructor().newInstance().toString());
+
+			InputStream ins = loader.getResourceAsStream(PACKAGE + "res.properties");
+			assertNotNull(ins);
+			ins.close();
+			assertNull(loader.getResourceAsStream(PACKAGE + "none.properties"));
+			assertNull(loader.getResourceAsStream("unknown/package/none.properties"));
+
+			assertNotFound(loader, "unknown.pack.Clazz");
+			assertNotFound(loader, "de.zarncke.lib.lang.StoreClassLoaderTest$Other");
+
+			// misses are remembered until refresh
+			IOTools.dump(probe, new File(pack, "StoreClassLoaderTest$Other.class"));
+			assertNotFound(loader, "de.zarncke.lib.lang.StoreClassLoaderTest$Other");
+			loader.refresh();
+			try {
+				loader.loadClass("de.zarncke.lib.lang.StoreClassLoaderTest$Other");
+				fail("wrong name in class file expected");
+			} catch (NoClassDefFoundError e) {
+				// found but the class file names Probe
+			}
+		} finally {
+			watcher.close();
+			IOTools.deleteAll(dir);
+		}
+	}
+
+	private static void assertNotFound(final StoreClassLoader loader, final String name) {
+		try {
+			loader.loadClass(name);
+			fail("found " + name);
+		} catch (ClassNotFoundException e) {
+			// expected
+		}
+	}
+
+	public void testStoreLoaderDefaultPackage() throws IOException {
+		File dir = Files.createTempDirectory("scl").toFile();
+		try {
+			IOTools.dump("y", new File(dir, "top.txt"));
+			StoreClassLoader loader = new StoreClassLoader(null, new FileStore(dir));
+			InputStream ins = loader.getResourceAsStream("top.txt");
+			assertNotNull(ins);
+			ins.close();
+		} finally {
+			IOTools.deleteAll(dir);
+		}
+	}
+
+	public void testJarStore() throws Exception {
+		byte[] probe = IOTools.getAllBytes(StoreClassLoaderTest.class.getResourceAsStream(PROBE_CLASS));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ZipOutputStream zos = new ZipOutputStream(baos);
+		zos.setMethod(ZipOutputStream.STORED);
+		ZipEntry entry = new ZipEntry(PACKAGE + PROBE_CLASS);
+		CRC32 crc = new CRC32();
+		crc.update(probe);
+		entry.setCrc(crc.getValue());
+		entry.setSize(probe.length);
+		zos.putNextEntry(entry);
+		zos.write(probe);
+		zos.closeEntry();
+		zos.close();
+
+		RegionJar jar = new RegionJar();
+		jar.init(RegionUtil.asRegion(baos.toByteArray()));
+		StoreClassLoader loader = new StoreClassLoader(null, jar.getStore());
+		Class<?> loaded = loader.loadClass(Probe.class.getName());
+		assertEquals("probe", loaded.getDeclaredConstructor().newInstance().toString());
+		assertNotFound(loader, "de.zarncke.lib.lang.Absent");
+	}
+
+	public void testJarRootFallback() throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ZipOutputStream zos = new ZipOutputStream(baos);
+		zos.putNextEntry(new ZipEntry("top.resource"));
+		zos.write("top".getBytes("ASCII"));
+		zos.closeEntry();
+		zos.close();
+
+		RegionJar jar = new RegionJar();
+		jar.init(RegionUtil.asRegion(baos.toByteArray()));
+		StoreClassLoader loader = new StoreClassLoader(null, jar.getStore());
+		// jars resolve unknown paths against their root; the index must not prevent that
+		InputStream ins = loader.getResourceAsStream(PACKAGE + "top.resource");
+		assertNotNull(ins);
+		assertEquals("top", new String(IOTools.getAllBytes(ins), "ASCII"));
+	}
+
+	public void testRefreshOnChange() throws Exception {
+		final MapStore root = new MapStore().add("a", new MapStore().add("b.txt", new MemStore(
+				RegionUtil.asRegionUtf8("b"))));
+		final StoreWatcher watcher = new StoreWatcher(Duration.standardHours(1));
+		try {
+			StoreClassLoader loader = Context.runWith(new StrictBlock<StoreClassLoader>() {
+				@Override
+				public StoreClassLoader execute() {
+					return new StoreClassLoader(null, StoreClassLoader.DEFAULT_NEGATIVE_CACHE_SIZE, true, root);
+				}
+			}, Default.of(watcher, StoreWatcher.class));
+			StoreClassLoader unpolled = Context.runWith(new StrictBlock<StoreClassLoader>() {
+				@Override
+				public StoreClassLoader execute() {
+					return new StoreClassLoader(null, root);
+				}
+			}, Default.of(watcher, StoreWatcher.class));
+			assertNotNull(loader.getResourceAsStream("a/b.txt"));
+			assertNull(loader.getResourceAsStream("c/d.txt"));
+			assertNull(unpolled.getResourceAsStream("c/d.txt"));
+
+			root.add("c", new MapStore().add("d.txt", new MemStore(RegionUtil.asRegionUtf8("d"))));
+			assertNull("miss is remembered", loader.getResourceAsStream("c/d.txt"));
 
+			root.setLastModified(root.getLastModified() + 1000);
+			watcher.pollAll();
+			assertNotNull("index rebuilt after change", loader.getResourceAsStream("c/d.txt"));
+			assertNull("Stores without files are polled only on request", unpolled.getResourceAsStream("c/d.txt"));
+			unpolled.refresh();
+			assertNotNull(unpolled.getResourceAsStream("c/d.txt"));
+		} finally {
+			watcher.close();
+		}
+	}
 }
@@ -0,0 +1,188 @@
+package de.zarncke.lib.lang.reflect;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.GuardedTest;
+
+public class InvokerTest extends GuardedTest {
+	public static class Target {
+		private final String prefix;
+		public int calls;
+
+		public Target() {
+			this("");
+		}
+
+		public Target(final String prefix) {
+			this.prefix = prefix;
+		}
+
+		public String concat(final String a, final Object b) {
+			return this.prefix + a + b;
+		}
+
+		public int twice(final int value) {
+			return 2 * value;
+		}
+
+		public void touch() {
+			this.calls++;
+		}
+
+		public static String join(final String... parts) {
+			return L.l(parts).toString();
+		}
+
+		public void fail(final String message) {
+			throw new IllegalStateException(message);
+		}
+	}
+
+	static class Hidden {
+		public String name() {
+			return "hidden";
+		}
+	}
+
+	public void testMethods() throws Throwable {
+		Target t = new Target(">");
+		Invoker concat = Invoker.forMethod(Target.class, "concat", false, new Class<?>[] { String.class,
+				Integer.class });
+		assertTrue(concat.isDirect());
+		assertEquals(String.class, concat.getReturnType());
+		assertEquals(">a1", concat.invoke(t, "a", Integer.valueOf(1)));
+		assertSame(concat, Invoker.forMethod(Target.class, "concat", false, new Class<?>[] { String.class,
+				Integer.class }));
+
+		assertEquals(Integer.valueOf(6),
+				Invoker.forMethod(Target.class, "twice", false, new Class<?>[] { Integer.class }).invoke(t,
+						Integer.valueOf(3)));
+
+		Invoker touch = Invoker.forMethod(Target.class, "touch", false, new Class<?>[0]);
+		assertNull(touch.invoke(t));
+		assertEquals(1, t.calls);
+
+		Invoker join = Invoker.forMethod(Target.class, "join", true, new Class<?>[] { String[].class });
+		assertEquals("[a, b]", join.invoke(null, new Object[] { new String[] { "a", "b" } }));
+
+		try {
+			Invoker.forMethod(Target.class, "fail", false, new Class<?>[] { String.class }).invoke(t, "x");
+			fail("exception expected");
+		} catch (IllegalStateException e) {
+			assertEquals("x", e.getMessage());
+		}
+	}
+
+	public void testMissing() {
+		for (int i = 0; i < 2; i++) {
+			try {
+				Invoker.forMethod(Target.class, "absent", false, new Class<?>[0]);
+				fail("not found expected");
+			} catch (NoSuchMethodException e) {
+				// also from the cache
+			}
+		}
+	}
+
+	public void testConstructor() throws Throwable {
+		Invoker create = Invoker.forConstructor(Target.class, new Class<?>[] { String.class });
+		assertTrue(create.isDirect());
+		assertEquals(Target.class, create.getReturnType());
+		Target t = (Target) create.invoke(null, "+");
+		assertEquals("+ab", t.concat("a", "b"));
+	}
+
+	public void testReflective() throws Throwable {
+		Invoker name = Invoker.forMethod(Hidden.class, "name", false, new Class<?>[0]);
+		assertFalse(name.isDirect());
+		assertEquals("hidden", name.invoke(new Hidden()));
+
+		Invoker size = Invoker.forMethod(List.class, "size", false, new Class<?>[0]);
+		assertEquals(Integer.valueOf(2), size.invoke(L.l("a", "b")));
+	}
+
+	public void testReflect() {
+		assertEquals(">ab", Reflect.create(Target.class.getName(), ">").call("concat", (Object) "a", "b").get());
+		assertEquals("[x]", Reflect.call(Target.class.getName(), "join", (Object) new String[] { "x" }).get());
+	}
+
+	public void testArgumentMismatch() throws Throwable {
+		Invoker concat = Invoker.forMethod(Target.class, "concat", false, new Class<?>[] { String.class,
+				Object.class });
+		assertMismatch(concat, new Target(), Integer.valueOf(1), "b");
+		assertMismatch(concat, new Target(), "a");
+		assertMismatch(concat, "no target", "a", "b");
+		try {
+			concat.invoke(null, "a", "b");
+			fail("no object");
+		} catch (NullPointerException e) {
+			// like Method.invoke
+		}
+
+		Invoker twice = Invoker.forMethod(Target.class, "twice", false, new Class<?>[] { Integer.class });
+		assertMismatch(twice, new Target(), (Object) null);
+		assertMismatch(Invoker.forConstructor(Target.class, new Class<?>[] { String.class }), null, Boolean.TRUE);
+	}
+
+	private static void assertMismatch(final Invoker invoker, final Object self, final Object... args)
+			throws Throwable {
+		try {
+			invoker.invoke(self, args);
+			fail("mismatch expected");
+		} catch (Invoker.ArgumentMismatchException e) {
+			// expected
+		}
+	}
+
+	public void testClassesAreNotRetained() throws Throwable {
+		URLClassLoader loader = newForeignLoader();
+		Class<?> foreign = loader.loadClass(Target.class.getName());
+		assertNotSame(Target.class, foreign);
+		Invoker twice = Invoker.forMethod(foreign, "twice", false, new Class<?>[] { Integer.class });
+		Object target = foreign.getDeclaredConstructor().newInstance();
+		assertEquals(Integer.valueOf(4), twice.invoke(target, Integer.valueOf(2)));
+
+		WeakReference<ClassLoader> ref = new WeakReference<ClassLoader>(loader);
+		loader.close();
+		loader = null;
+		foreign = null;
+		twice = null;
+		target = null;
+		assertCollected(ref);
+	}
+
+	public void testArgumentClassesAreNotRetained() throws Throwable {
+		URLClassLoader loader = newForeignLoader();
+		Class<?> foreign = loader.loadClass(Target.class.getName());
+		Invoker add = Invoker.forMethod(ArrayList.class, "add", false, new Class<?>[] { foreign });
+		List<Object> list = new ArrayList<Object>();
+		assertEquals(Boolean.TRUE, add.invoke(list, foreign.getDeclaredConstructor().newInstance()));
+		assertEquals(1, list.size());
+
+		WeakReference<ClassLoader> ref = new WeakReference<ClassLoader>(loader);
+		loader.close();
+		loader = null;
+		foreign = null;
+		add = null;
+		list = null;
+		assertCollected(ref);
+	}
+
+	private static URLClassLoader newForeignLoader() {
+		URL location = Target.class.getProtectionDomain().getCodeSource().getLocation();
+		return new URLClassLoader(new URL[] { location }, null);
+	}
+
+	private static void assertCollected(final WeakReference<ClassLoader> ref) throws InterruptedException {
+		for (int i = 0; i < 20 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull("class loader retained by cache", ref.get());
+	}
+}
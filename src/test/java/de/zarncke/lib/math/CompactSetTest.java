@@ -0,0 +1,155 @@
+package de.zarncke.lib.math;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.region.ByteBufferRegion;
+import de.zarncke.lib.region.RegionUtil;
+
+public class CompactSetTest {
+
+	@Test
+	public void testSimple() {
+		CompactSet cs = CompactSet.of(7, 3, 1000, 3, 0, 64, 65);
+		assertEquals(6, cs.size());
+		assertEquals(1000, cs.getMax());
+		assertArrayEquals(new long[] { 0, 3, 7, 64, 65, 1000 }, cs.toArray());
+		assertTrue(cs.contains(0));
+		assertTrue(cs.contains(65));
+		assertTrue(cs.contains(1000));
+		assertFalse(cs.contains(1));
+		assertFalse(cs.contains(999));
+		assertFalse(cs.contains(1001));
+		assertFalse(cs.contains(-1));
+		assertEquals(0, cs.rank(0));
+		assertEquals(2, cs.rank(7));
+		assertEquals(3, cs.rank(8));
+		assertEquals(6, cs.rank(Long.MAX_VALUE));
+		assertEquals(64, cs.select(3));
+		assertEquals(1000, cs.select(5));
+		assertEquals(L.l(0L, 3L, 7L, 64L, 65L, 1000L), L.copy(cs.iterator()));
+
+		assertEquals(cs, new CompactSet.Builder().addAll(L.l(1000, 65, 64, 7, 3, 0)).build());
+		assertEquals(0, CompactSet.EMPTY.size());
+		assertFalse(CompactSet.EMPTY.contains(0));
+		assertEquals(0, CompactSet.of().rank(5));
+		assertEquals(CompactSet.EMPTY, CompactSet.of());
+
+		CompactSet large = CompactSet.of(0, Long.MAX_VALUE);
+		assertTrue(large.contains(Long.MAX_VALUE));
+		assertFalse(large.contains(Long.MAX_VALUE - 1));
+		assertEquals(Long.MAX_VALUE, large.select(1));
+
+		try {
+			CompactSet.of(-1);
+			fail("negative");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			cs.select(6);
+			fail("out of range");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(4711);
+		for (int bound : new int[] { 10, 1000, 100000, 10000000 }) {
+			TreeSet<Long> reference = new TreeSet<Long>();
+			CompactSet.Builder builder = new CompactSet.Builder();
+			for (int i = 0; i < 10000; i++) {
+				long v = random.nextInt(bound);
+				reference.add(Long.valueOf(v));
+				builder.add(v);
+			}
+			CompactSet cs = builder.build();
+			assertEquals(reference.size(), cs.size());
+			assertEquals(L.copy(reference), L.copy(cs.iterator()));
+			int rank = 0;
+			for (Long v : reference) {
+				assertEquals(v.longValue(), cs.select(rank));
+				assertEquals(rank, cs.rank(v.longValue()));
+				rank++;
+			}
+			for (int i = 0; i < 10000; i++) {
+				long v = random.nextInt(bound + 10);
+				assertEquals(Long.valueOf(v).toString(), reference.contains(Long.valueOf(v)), cs.contains(v));
+				assertEquals(reference.headSet(Long.valueOf(v)).size(), cs.rank(v));
+			}
+		}
+	}
+
+	@Test
+	public void testCompactness() {
+		CompactSet.Builder builder = new CompactSet.Builder();
+		Random random = new Random(42);
+		for (int i = 0; i < 1000000; i++) {
+			builder.add(random.nextInt(1000000000));
+		}
+		CompactSet cs = builder.build();
+		assertTrue(cs.toString(), cs.getSizeInBytes() < 2 * cs.size());
+	}
+
+	@Test
+	public void testUnionAndIntersection() {
+		CompactSet a = CompactSet.of(1, 2, 3, 10, 20, 30);
+		CompactSet b = CompactSet.of(2, 3, 4, 30, 40);
+		assertArrayEquals(new long[] { 1, 2, 3, 4, 10, 20, 30, 40 }, a.union(b).toArray());
+		assertArrayEquals(new long[] { 2, 3, 30 }, a.intersection(b).toArray());
+		assertEquals(a.intersection(b), b.intersection(a));
+		assertEquals(a, a.union(CompactSet.EMPTY));
+		assertEquals(CompactSet.EMPTY, a.intersection(CompactSet.EMPTY));
+		assertEquals(CompactSet.EMPTY, a.intersection(CompactSet.of(0, 4, 100)));
+
+		// probing path
+		CompactSet.Builder builder = new CompactSet.Builder();
+		for (int i = 0; i < 100000; i += 3) {
+			builder.add(i);
+		}
+		CompactSet many = builder.build();
+		CompactSet few = CompactSet.of(0, 1, 2, 3, 99999, 100002);
+		assertArrayEquals(new long[] { 0, 3, 99999 }, few.intersection(many).toArray());
+		assertEquals(many.size() + 3, many.union(few).size());
+	}
+
+	@Test
+	public void testEncoding() {
+		long[] values = new long[5000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (long) i * i;
+		}
+		CompactSet cs = CompactSet.of(values);
+		CompactSet decoded = CompactSet.decode(cs.encode());
+		assertEquals(cs, decoded);
+		assertArrayEquals(values, decoded.toArray());
+
+		// directly on a buffer as it would be mapped
+		byte[] bytes = cs.encode().toByteArray();
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes);
+		CompactSet onBuffer = CompactSet.DECODER.decode(new ByteBufferRegion(direct));
+		assertTrue(onBuffer.contains(4999L * 4999L));
+		assertEquals(4998L * 4998L, onBuffer.select(4998));
+
+		try {
+			CompactSet.decode(RegionUtil.asRegion(Arrays.copyOf(bytes, bytes.length - 8)));
+			fail("truncated");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -3,6 +3,8 @@ package de.zarncke.lib.money;
 import java.math.BigDecimal;
 import java.util.Currency;
 
+import de.zarncke.lib.coll.L;
+
 import de.zarncke.lib.err.GuardedTest;
 import de.zarncke.lib.err.Warden;
 
@@ -50,4 +52,85 @@ public class MoneyTest extends GuardedTest {
 		assertTrue("<", euro0.compareTo(euro1) < 0);
 		assertTrue(">", euro1.compareTo(euro0) > 0);
 	}
+
+	public void testCompactMatchesBigDecimal() {
+		String[] values = { "0", "1", "-1", "0.5", "12.34", "-7.001", "99999999999999.99", "1E+3", "0.1234567890123456789" };
+		for (String x : values) {
+			for (String y : values) {
+				BigDecimal a = new BigDecimal(x);
+				BigDecimal b = new BigDecimal(y);
+				MAmount ma = MAmount.of(a, Money.EURO);
+				MAmount mb = MAmount.of(b, Money.EURO);
+				assertEquals(x + "+" + y, a.add(b), ma.plus(mb).getAmount());
+				assertEquals(x + "-" + y, a.subtract(b), ma.minus(mb).getAmount());
+				assertEquals(x + "<>" + y, a.compareTo(b), ma.compareTo(mb));
+				assertEquals(a.compareTo(b) == 0, ma.equals(mb));
+			}
+			assertEquals(new BigDecimal(x).multiply(BigDecimal.valueOf(37)), MAmount.of(new BigDecimal(x), Money.EURO)
+					.times(37).getAmount());
+		}
+		MAmount m = MAmount.of(12, 34, Money.EURO);
+		assertTrue(m.isCompact());
+		assertEquals(1234, m.getUnits());
+		assertEquals(2, m.getScale());
+		assertEquals(new BigDecimal("12.34"), m.getAmount());
+		assertEquals(m, MAmount.ofUnits(1234, Money.EURO));
+		assertEquals("12.34 EUR", m.toString());
+		assertEquals(MAmount.of(new BigDecimal("12.34"), Money.EURO).hashCode(), m.hashCode());
+	}
+
+	public void testOverflowFallsBack() {
+		MAmount max = MAmount.ofUnits(Long.MAX_VALUE, 2, Money.EURO);
+		MAmount one = MAmount.ofUnits(1, 2, Money.EURO);
+		MAmount sum = max.plus(one);
+		assertFalse(sum.isCompact());
+		assertEquals(BigDecimal.valueOf(Long.MAX_VALUE, 2).add(new BigDecimal("0.01")), sum.getAmount());
+		assertTrue(sum.minus(one).isCompact());
+		assertEquals(max, sum.minus(one));
+
+		MAmount product = max.times(3);
+		assertFalse(product.isCompact());
+		assertEquals(BigDecimal.valueOf(Long.MAX_VALUE, 2).multiply(BigDecimal.valueOf(3)), product.getAmount());
+
+		MAmount min = MAmount.ofUnits(Long.MIN_VALUE, 0, Money.EURO);
+		assertEquals(BigDecimal.valueOf(Long.MIN_VALUE).negate(), min.negate().getAmount());
+		assertEquals(BigDecimal.valueOf(Long.MIN_VALUE).negate(), min.times(-1).getAmount());
+		assertTrue(max.compareTo(sum) < 0);
+		assertTrue(MAmount.ofUnits(Long.MAX_VALUE, 0, Money.EURO).compareTo(max) > 0);
+	}
+
+	public void testColumns() {
+		long[] units = new long[1000];
+		BigDecimal expected = BigDecimal.ZERO;
+		for (int i = 0; i < units.length; i++) {
+			units[i] = (i * 7919L) % 1000 - 300;
+			expected = expected.add(BigDecimal.valueOf(units[i], 2));
+		}
+		assertEquals(expected, MoneyColumns.sum(units, Money.EURO).getAmount());
+		assertEquals(BigDecimal.valueOf(units[3] + units[4], 2), MoneyColumns.sum(units, 3, 5, 2, Money.EURO).getAmount());
+
+		long[] big = { Long.MAX_VALUE, Long.MAX_VALUE, 5, Long.MIN_VALUE };
+		assertEquals(BigDecimal.valueOf(Long.MAX_VALUE).add(BigDecimal.valueOf(4)), MoneyColumns.sum(big, 0, 4, 0,
+				Money.EURO).getAmount());
+		long[] negative = { Long.MIN_VALUE, Long.MIN_VALUE, -1 };
+		assertEquals(BigDecimal.valueOf(Long.MIN_VALUE).multiply(BigDecimal.valueOf(2)).subtract(BigDecimal.ONE),
+				MoneyColumns.sum(negative, 0, 3, 0, Money.EURO).getAmount());
+
+		long[] totals = new long[2];
+		MoneyColumns.sumByGroup(new long[] { 1, 2, 3, 4 }, new int[] { 0, 1, 0, 1 }, totals);
+		assertEquals(4, totals[0]);
+		assertEquals(6, totals[1]);
+
+		assertEquals(1234, MoneyColumns.toUnits(MAmount.of(new BigDecimal("12.34"), Money.EURO), 2));
+		assertEquals(123400, MoneyColumns.toUnits(MAmount.of(new BigDecimal("12.34"), Money.EURO), 4));
+		long[] column = MoneyColumns.toUnits(L.l(MAmount.of(1, 5, Money.EURO), new Cash(Money.EURO)), 2);
+		assertEquals(105, column[0]);
+		assertEquals(0, column[1]);
+		try {
+			MoneyColumns.toUnits(MAmount.of(new BigDecimal("0.001"), Money.EURO), 2);
+			fail("not representable");
+		} catch (ArithmeticException e) {
+			Warden.disregard(e);
+		}
+	}
 }
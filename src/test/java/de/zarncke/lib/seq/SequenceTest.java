@@ -1,7 +1,19 @@
 package de.zarncke.lib.seq;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.Test;
 
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.coll.Pair;
 import de.zarncke.lib.err.GuardedTest4;
 import de.zarncke.lib.io.store.MemStore;
 import de.zarncke.lib.io.store.Store;
@@ -52,6 +64,166 @@ public class SequenceTest extends GuardedTest4 {
 		assertEquals(500, s.incrementAndGet());
 	}
 
+	@Test
+	public void testTerminate() {
+		BatchedSequence s = new BatchedSequence(newBacking(), 100);
+		long first = s.incrementAndGet();
+		s.addAndGet(9);
+
+		Pair<Long, Long> rest = s.terminateAndGetCurrentAndRemaining();
+		assertEquals(first + 10, rest.getFirst().longValue());
+		assertEquals(90, rest.getSecond().longValue());
+		try {
+			s.incrementAndGet();
+			fail("terminated");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testTerminateStriped() {
+		BatchedSequence s = new BatchedSequence(newBacking(), 100, 10);
+		s.incrementAndGet();
+		s.terminateAndGetCurrentAndRemaining();
+		try {
+			// the rest of the stripe must not be used either
+			s.incrementAndGet();
+			fail("terminated");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testPrefetch() throws Exception {
+		final Sequence backing = newBacking();
+		final List<Thread> callers = Collections.synchronizedList(new ArrayList<Thread>());
+		final Semaphore fetched = new Semaphore(0);
+		BatchedSequence s = new BatchedSequence(new Sequence() {
+			@Override
+			public long incrementAndGet() {
+				return addAndGet(1);
+			}
+
+			@Override
+			public long addAndGet(final long delta) {
+				callers.add(Thread.currentThread());
+				long value = backing.addAndGet(delta);
+				fetched.release();
+				return value;
+			}
+		}, 10);
+
+		assertEquals(0, s.incrementAndGet());
+		assertEquals(L.l(Thread.currentThread()), callers);
+		fetched.acquire();
+
+		// using up half of the batch prefetches the next one in the background
+		for (int i = 1; i < 5; i++) {
+			assertEquals(i, s.incrementAndGet());
+		}
+		assertTrue(fetched.tryAcquire(5, TimeUnit.SECONDS));
+		assertEquals(2, callers.size());
+		assertNotSame(Thread.currentThread(), callers.get(1));
+
+		// the refill takes the prefetched batch without calling the backing sequence
+		for (int i = 5; i <= 10; i++) {
+			assertEquals(i, s.incrementAndGet());
+		}
+		assertEquals(2, callers.size());
+	}
+
+	@Test
+	public void testConcurrentBatchSequence() throws Exception {
+		// every value must be larger than any value returned before the call started
+		final AtomicLong maxReturned = new AtomicLong(-1);
+		final BatchedSequence s = new BatchedSequence(newBacking(), 10);
+		long[][] values = allocateConcurrently(4, 5000, new Sequence() {
+			@Override
+			public long incrementAndGet() {
+				return addAndGet(1);
+			}
+
+			@Override
+			public long addAndGet(final long delta) {
+				long before = maxReturned.get();
+				long value = s.addAndGet(delta);
+				assertTrue(value + " after " + before, value > before);
+				long max;
+				do {
+					max = maxReturned.get();
+				} while (value > max && !maxReturned.compareAndSet(max, value));
+				return value;
+			}
+		});
+		assertUniqueAndIncreasingPerThread(values);
+	}
+
+	@Test
+	public void testStripedBatchSequence() throws Exception {
+		BatchedSequence single = new BatchedSequence(newBacking(), 100, 10);
+		long first = single.incrementAndGet();
+		for (int i = 1; i < 25; i++) {
+			assertEquals(first + i, single.incrementAndGet());
+		}
+
+		BatchedSequence striped = new BatchedSequence(newBacking(), 100, 10);
+		assertUniqueAndIncreasingPerThread(allocateConcurrently(4, 5000, striped));
+	}
+
+	private static Sequence newBacking() {
+		return new StoredSequence(new MemStore(RegionUtil.asRegionUtf8("0")));
+	}
+
+	/**
+	 * @return values per thread; increments with some larger deltas
+	 */
+	private static long[][] allocateConcurrently(final int threads, final int perThread, final Sequence sequence)
+			throws InterruptedException {
+		final long[][] values = new long[threads][perThread];
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final long[] mine = values[t];
+			workers[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < mine.length; i++) {
+							mine[i] = i % 100 == 0 ? sequence.addAndGet(25) : sequence.incrementAndGet();
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		return values;
+	}
+
+	private static void assertUniqueAndIncreasingPerThread(final long[][] values) {
+		Set<Long> all = new HashSet<Long>();
+		int n = 0;
+		for (long[] mine : values) {
+			for (int i = 0; i < mine.length; i++) {
+				if (i > 0) {
+					assertTrue(mine[i] + " after " + mine[i - 1], mine[i] > mine[i - 1]);
+				}
+				all.add(Long.valueOf(mine[i]));
+				n++;
+			}
+		}
+		assertEquals(n, all.size());
+	}
+
 	protected void testSequence(final Sequence sequence) {
 		assertEquals(0, sequence.incrementAndGet());
 		assertEquals(1, sequence.incrementAndGet());
@@ -1,10 +1,17 @@
 package de.zarncke.lib.struct;
 
+import java.util.HashSet;
+import java.util.List;
+
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.coll.Pair;
 import de.zarncke.lib.err.GuardedTest;
 import de.zarncke.lib.log.Log;
 import de.zarncke.lib.struct.Graph.Traverser;
+import de.zarncke.lib.time.Times;
 
 public class GraphTest extends GuardedTest {
 	static class E {
@@ -62,6 +69,12 @@ public class GraphTest extends GuardedTest {
 	private static E s = new E("s");
 	private static E t = new E("t");
 
+	@Override
+	protected long getMaximumTestMillis() {
+		// testLongChain builds and traverses a graph of a million vertices
+		return "testLongChain".equals(getName()) ? 10 * Times.MILLIS_PER_SECOND : super.getMaximumTestMillis();
+	}
+
 	public void testMapGraph() {
 		Graph<V,E> graph = new MapGraph<V,E>();
 
@@ -143,4 +156,76 @@ public class GraphTest extends GuardedTest {
 		Mockito.verify(trav).arrive(a, true);
 		Mockito.verifyNoMoreInteractions(trav);
 	}
+
+	public void testCsrGraph() {
+		Graph<V, E> map = new MapGraph<V, E>();
+		map.add(a, s, b).add(b, t, c).add(a, t, c).add(d);
+		CsrGraph<V, E> graph = CsrGraph.of(map);
+		assertEquals(4, graph.numberOfVertices());
+		assertEquals(3, graph.size());
+		assertTrue(graph.containsVertex(d));
+		assertTrue(graph.isAscyclic());
+		assertEquals(new HashSet<Object>(L.l(Pair.pair(s, b), Pair.pair(t, c))), new HashSet<Object>(graph.getEdgesFrom(a)));
+		assertEquals(new HashSet<Object>(L.l(Pair.pair(b, t), Pair.pair(a, t))), new HashSet<Object>(graph.getEdgesTo(c)));
+		assertEquals(L.l(t), graph.getEdges(b, c));
+		assertEquals(new HashSet<Object>(L.l(a, b, c)), new HashSet<Object>(graph.getReachable(a)));
+		List<V> order = graph.topologicalSort();
+		assertTrue(order.indexOf(a) < order.indexOf(b));
+		assertTrue(order.indexOf(b) < order.indexOf(c));
+		assertEquals(new HashSet<Object>(L.l(a, b, c)), new HashSet<Object>(graph.getReachable(a)));
+		assertEquals(3, L.copy(graph.iterator()).size());
+
+		CsrGraph<V, E> cyclic = new CsrGraph.Builder<V, E>().add(a, s, b).add(b, t, c).add(c, s, a).build();
+		assertFalse(cyclic.isAscyclic());
+		assertNull(cyclic.topologicalOrder());
+		@SuppressWarnings("unchecked")
+		Traverser<V, E, Object> trav = Mockito.mock(Traverser.class);
+		cyclic.traverse(a, trav);
+		InOrder inOrder = Mockito.inOrder(trav);
+		inOrder.verify(trav).depart(a);
+		inOrder.verify(trav).traverse(a, s, b);
+		inOrder.verify(trav).arrive(b, false);
+		inOrder.verify(trav).depart(b);
+		inOrder.verify(trav).traverse(b, t, c);
+		inOrder.verify(trav).arrive(c, false);
+		inOrder.verify(trav).depart(c);
+		inOrder.verify(trav).traverse(c, s, a);
+		inOrder.verify(trav).arrive(a, true);
+		Mockito.verifyNoMoreInteractions(trav);
+	}
+
+	public void testLongChain() {
+		int n = 1000000;
+		CsrGraph.Builder<Integer, Void> builder = new CsrGraph.Builder<Integer, Void>();
+		for (int i = 0; i < n; i++) {
+			builder.add(Integer.valueOf(i), null, Integer.valueOf(i + 1));
+		}
+		CsrGraph<Integer, Void> chain = builder.build();
+		assertEquals(n + 1, chain.numberOfVertices());
+		final int[] departed = new int[1];
+		Object res = chain.traverse(Integer.valueOf(0), new Traverser<Integer, Void, Object>() {
+			@Override
+			public Object depart(final Integer vertex) {
+				departed[0]++;
+				return null;
+			}
+
+			@Override
+			public Object traverse(final Integer src, final Void edge, final Integer dst) {
+				return null;
+			}
+
+			@Override
+			public Object arrive(final Integer vertex, final boolean alreadySeen) {
+				return vertex.intValue() == n ? "end" : null;
+			}
+		});
+		assertEquals("end", res);
+		assertEquals(n, departed[0]);
+		assertEquals(n + 1, chain.reachable(0, true).cardinality());
+		assertEquals(n + 1, chain.reachable(chain.indexOf(Integer.valueOf(n)), false).cardinality());
+		int[] order = chain.topologicalOrder();
+		assertEquals(0, chain.getVertex(order[0]).intValue());
+		assertEquals(n, chain.getVertex(order[n]).intValue());
+	}
 }
@@ -0,0 +1,106 @@
+package de.zarncke.lib.struct;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.util.Chars;
+
+/**
+ * Tests {@link StringTrie} against brute force matching.
+ *
+ * @author Gunnar Zarncke
+ */
+public class StringTrieTest extends GuardedTest {
+
+	@Test
+	public void testSimple() {
+		StringTrie trie = new StringTrie(L.l("team", "tea", "ten", "to", "tea", "inn", ""));
+		assertEquals(6, trie.size());
+		assertEquals("", trie.getTerm(0));
+		assertEquals(0, trie.indexOf(""));
+		assertEquals(-1, trie.indexOf("te"));
+		assertEquals(-1, trie.indexOf("teams"));
+		assertEquals("team", trie.getTerm(trie.indexOf("team")));
+
+		int[] range = trie.prefixRange("te");
+		assertEquals(L.l("tea", "team", "ten"), terms(trie, range[0], range[1]));
+		range = trie.prefixRange("x");
+		assertEquals(range[0], range[1]);
+
+		assertEquals(L.l("tea", "team"), terms(trie, trie.matchWildcard("tea*")));
+		assertEquals(L.l("tea", "ten"), terms(trie, trie.matchWildcard("te?")));
+		assertEquals(L.l("inn", "ten"), terms(trie, trie.matchWildcard("*n")));
+		assertEquals(6, trie.matchWildcard("*").length);
+		assertEquals(L.l("tea", "ten"), terms(trie, trie.matchFuzzy("ten", 1)));
+		assertEquals(L.l("inn", "tea", "team", "ten", "to"), terms(trie, trie.matchFuzzy("ten", 2)));
+		assertEquals(L.l("ten"), terms(trie, trie.matchFuzzy("ten", 0)));
+
+		assertEquals(0, new StringTrie(L.<String> e()).matchFuzzy("a", 3).length);
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(4711);
+		TreeSet<String> set = new TreeSet<String>();
+		for (int i = 0; i < 2000; i++) {
+			set.add(randomWord(random));
+		}
+		List<String> all = L.copy(set);
+		StringTrie trie = new StringTrie(all);
+		assertEquals(all.size(), trie.size());
+		for (int i = 0; i < all.size(); i++) {
+			assertEquals(i, trie.indexOf(all.get(i)));
+		}
+		for (int q = 0; q < 200; q++) {
+			String word = randomWord(random);
+			String prefix = word.substring(0, Math.min(2, word.length()));
+			int[] range = trie.prefixRange(prefix);
+			assertEquals(bruteForce(all, prefix + "*", -1), terms(trie, range[0], range[1]));
+
+			String pattern = word.replace('b', '?').replace('c', '*');
+			assertEquals(pattern, bruteForce(all, pattern, -1), terms(trie, trie.matchWildcard(pattern)));
+			assertEquals(word, bruteForce(all, word, 2), terms(trie, trie.matchFuzzy(word, 2)));
+		}
+	}
+
+	private static String randomWord(final Random random) {
+		char[] chars = new char[random.nextInt(7)];
+		for (int j = 0; j < chars.length; j++) {
+			chars[j] = (char) ('a' + random.nextInt(4));
+		}
+		return new String(chars);
+	}
+
+	private static List<String> bruteForce(final List<String> all, final String pattern, final int maxEdits) {
+		List<String> res = L.l();
+		for (String s : all) {
+			if (maxEdits < 0 ? Chars.wildcardMatch(s, pattern) : Chars.editDistance(s, pattern, maxEdits) <= maxEdits) {
+				res.add(s);
+			}
+		}
+		return res;
+	}
+
+	private static List<String> terms(final StringTrie trie, final int from, final int to) {
+		List<String> res = L.l();
+		for (int i = from; i < to; i++) {
+			res.add(trie.getTerm(i));
+		}
+		return res;
+	}
+
+	private static List<String> terms(final StringTrie trie, final int[] numbers) {
+		List<String> res = L.l();
+		for (int i : numbers) {
+			res.add(trie.getTerm(i));
+		}
+		assertTrue(Arrays.toString(numbers), res.equals(L.copy(new TreeSet<String>(res))));
+		return res;
+	}
+}
@@ -0,0 +1,138 @@
+package de.zarncke.lib.sys;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.i18n.Translations;
+import de.zarncke.lib.sys.module.AbstractModule;
+import de.zarncke.lib.sys.module.Module;
+
+/**
+ * Tests {@link Headquarters} health checking.
+ *
+ * @author Gunnar Zarncke
+ */
+public class HeadquartersTest extends GuardedTest {
+
+	private static class TestModule extends AbstractModule {
+		private final String name;
+		private final CountDownLatch release;
+		final AtomicInteger calls = new AtomicInteger();
+
+		TestModule(final String name, final CountDownLatch release) {
+			this.name = name;
+			this.release = release;
+			this.state = State.UP;
+		}
+
+		@Override
+		protected long getMinHealthRecheckMillis() {
+			return 0;
+		}
+
+		@Override
+		protected Health getHealthProtected() {
+			this.calls.incrementAndGet();
+			if (this.release != null) {
+				try {
+					this.release.await();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return Health.OK;
+		}
+
+		@Override
+		public Translations getName() {
+			return new Translations(this.name);
+		}
+
+		@Override
+		public double getLoad() {
+			return 0;
+		}
+	}
+
+	private static Headquarters createHeadquarters(final Module... modules) {
+		return new Headquarters(new DefaultInstallation() {
+			@Override
+			protected List<Module> getKnownPackageModules() {
+				return L.l(modules);
+			}
+		});
+	}
+
+	@Test
+	public void testDeadline() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		TestModule fast = new TestModule("fast", null);
+		TestModule slow = new TestModule("slow", release);
+		Headquarters hq = createHeadquarters(fast, slow).setModuleHealthDeadlineMillis(200);
+		try {
+			long start = System.currentTimeMillis();
+			assertEquals(Health.VIRGIN, hq.checkModuleHealthUpdateStatusAndGetAggregate());
+			assertTrue(System.currentTimeMillis() - start < 5000);
+			assertTrue(hq.getStatusFor(slow).isStale());
+			assertFalse(hq.getStatusFor(fast).isStale());
+			assertEquals(Health.OK, hq.getStatusFor(fast).getHealth());
+
+			// the hanging evaluation is not repeated
+			int slowCalls = slow.calls.get();
+			int fastCalls = fast.calls.get();
+			hq.checkModuleHealthUpdateStatusAndGetAggregate();
+			assertEquals(slowCalls, slow.calls.get());
+			assertTrue(fast.calls.get() > fastCalls);
+			assertTrue(hq.getStatusFor(slow).isStale());
+		} finally {
+			release.countDown();
+		}
+		Thread.sleep(50);
+		hq.checkModuleHealthUpdateStatusAndGetAggregate();
+		assertFalse(hq.getStatusFor(slow).isStale());
+		assertEquals(Health.OK, hq.getStatusFor(slow).getHealth());
+	}
+
+	@Test
+	public void testMoreModulesThanThreads() {
+		CountDownLatch release = new CountDownLatch(1);
+		List<Module> modules = L.l();
+		for (int i = 0; i < Headquarters.DEFAULT_HEALTH_THREADS; i++) {
+			modules.add(new TestModule("slow" + i, release));
+		}
+		TestModule fast = new TestModule("fast", null);
+		modules.add(fast);
+		Headquarters hq = createHeadquarters(modules.toArray(new Module[modules.size()])).setModuleHealthDeadlineMillis(
+				200);
+		try {
+			hq.checkModuleHealthUpdateStatusAndGetAggregate();
+			// not queued behind the hanging modules
+			assertFalse(hq.getStatusFor(fast).isStale());
+			assertEquals(Health.OK, hq.getStatusFor(fast).getHealth());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testTtl() {
+		TestModule module = new TestModule("module", null);
+		Headquarters hq = createHeadquarters(module).setHealthTtlMillis(TimeUnit.MINUTES.toMillis(1));
+		hq.getHealth();
+		int calls = module.calls.get();
+		assertTrue(calls > 0);
+		hq.getHealth();
+		hq.getHealth();
+		assertEquals(calls, module.calls.get());
+
+		hq.setHealthTtlMillis(0);
+		hq.getHealth();
+		assertTrue(module.calls.get() > calls);
+	}
+}
@@ -1,14 +1,21 @@
 package de.zarncke.lib.tmpl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
 
 import junit.framework.TestCase;
 
 import de.zarncke.lib.io.IOTools;
 
 public class TemplateTest extends TestCase {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
 	public void testTrivial() {
 		assertRender(new Template(""), "");
 		assertRender(new Template("simple"), "simple");
@@ -80,6 +87,75 @@ public class TemplateTest extends TestCase {
 		assertRender(t, "hello");
 	}
 
+	public void testCompiled() throws IOException {
+		Template t = new Template("h\u00e4llo ${X}and ${Y} ${X}end\n", Template.SHELL_PATTERN);
+		CompiledTemplate c = t.compile(UTF8);
+		assertSame(c, t.compile(UTF8));
+		assertEquals(2, c.getNumberOfSlots());
+		assertEquals(-1, c.getSlot("Z"));
+		int x = c.getSlot("X");
+		int y = c.getSlot("Y");
+
+		CharSequence[] values = new CharSequence[2];
+		assertEquals("h\u00e4llo and  end\n", new String(c.render(values), UTF8));
+		values[x] = "w\u00f6rld \u20ac";
+		values[y] = new StringBuilder("y");
+		assertEquals("h\u00e4llo w\u00f6rld \u20acand y w\u00f6rld \u20acend\n", new String(c.render(values), UTF8));
+
+		ByteBuffer bb = ByteBuffer.allocate(100);
+		c.render(values, bb);
+		assertEquals("h\u00e4llo w\u00f6rld \u20acand y w\u00f6rld \u20acend\n", new String(bb.array(), 0, bb.position(),
+				UTF8));
+		try {
+			c.render(values, ByteBuffer.allocate(10));
+			fail("too small");
+		} catch (BufferOverflowException e) {
+			// expected
+		}
+
+		// larger than the internal buffer
+		StringBuilder big = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			big.append(i % 2 == 0 ? "a" : "\u00e4");
+		}
+		values[y] = big;
+		assertEquals("h\u00e4llo w\u00f6rld \u20acand " + big + " w\u00f6rld \u20acend\n", new String(c.render(values),
+				UTF8));
+	}
+
+	public void testCompiledDefaults() throws IOException {
+		Template t = new Template("hello\n#ifdef X\npart 1\n#endif /*X*/\nend\n");
+		t.put("X", "world\n");
+		CompiledTemplate c = t.compile(Charset.forName("ISO-8859-15"));
+		assertEquals("hello\npart 1\nend\n", new String(c.render(new CharSequence[1]), "ISO-8859-15"));
+		assertEquals("hello\n\u20ac\nend\n", new String(c.render(c.toSlots(Collections.singletonMap("X", "\u20ac\n"))), "ISO-8859-15"));
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		t.renderTo(baos, UTF8);
+		assertEquals("hello\nworld\nend\n", baos.toString("UTF-8"));
+		assertEquals("hello\nworld\nend\n", new String(IOTools.getAllBytes(t.getAsRenderedInputStream(UTF8)), UTF8));
+	}
+
+	public void testStreamsKeepDefaultsPerPosition() throws IOException {
+		Template t = new Template("a\n#ifdef X\none\n#endif\nb\n#ifdef X\ntwo\n#endif\nc\n");
+		assertRender(t, "a\none\nb\ntwo\nc\n");
+		assertStreamsRender(t, "a\none\nb\ntwo\nc\n");
+		t.put("X", "x\n");
+		assertStreamsRender(t, "a\nx\nb\nx\nc\n");
+		t.clear();
+		assertStreamsRender(t, "a\nb\nc\n");
+	}
+
+	private static void assertStreamsRender(final Template template, final String expected) throws IOException {
+		StringWriter sw = new StringWriter();
+		template.renderTo(sw);
+		assertEquals(expected, sw.toString());
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		template.renderTo(baos, UTF8);
+		assertEquals(expected, baos.toString("UTF-8"));
+		assertEquals(expected, new String(IOTools.getAllBytes(template.getAsRenderedInputStream(UTF8)), UTF8));
+	}
+
 	private void assertRender(final Template template, final String expected) {
 		StringWriter sw = new StringWriter();
 		try {
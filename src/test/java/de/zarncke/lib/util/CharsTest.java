@@ -188,6 +188,17 @@ public class CharsTest extends GuardedTest {
 		assertTrue("none-match simple", !Chars.simpleMatch("hallo", "halo"));
 		assertTrue("none-match too long", !Chars.simpleMatch("hallo", "hall*allo"));
 
+		// TEST wildcardMatch and editDistance
+		assertTrue(Chars.wildcardMatch("hallo", "h?l*"));
+		assertTrue(Chars.wildcardMatch("hallo", "*a*l*o"));
+		assertTrue(Chars.wildcardMatch("", "*"));
+		assertFalse(Chars.wildcardMatch("hallo", "h?lo"));
+		assertFalse(Chars.wildcardMatch("hallo", "*x*"));
+		assertEquals(0, Chars.editDistance("hallo", "hallo", 2));
+		assertEquals(1, Chars.editDistance("hallo", "halo", 2));
+		assertEquals(2, Chars.editDistance("hallo", "hello!", 2));
+		assertEquals(3, Chars.editDistance("hallo", "xyz", 2));
+
 		// testing replace(All)
 
 		// cases equal for both
@@ -0,0 +1,123 @@
+package de.zarncke.lib.value;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.GuardedTest;
+
+/**
+ * Tests {@link RefreshScheduler}.
+ *
+ * @author Gunnar Zarncke
+ */
+public class RefreshSchedulerTest extends GuardedTest {
+
+	@Test
+	public void testCollapseAndPriority() throws InterruptedException {
+		RefreshScheduler scheduler = new RefreshScheduler(1, 100);
+		try {
+			final CountDownLatch blocked = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			RefreshScheduler.Task blocker = scheduler.createTask("blocker", RefreshScheduler.Priority.NORMAL,
+					new Runnable() {
+						@Override
+						public void run() {
+							blocked.countDown();
+							try {
+								release.await();
+							} catch (InterruptedException e) {
+								throw new IllegalStateException(e);
+							}
+						}
+					});
+			final List<String> order = Collections.synchronizedList(L.<String> l());
+			final CountDownLatch done = new CountDownLatch(3);
+			RefreshScheduler.Task low = task(scheduler, "low", RefreshScheduler.Priority.LOW, order, done);
+			RefreshScheduler.Task normal = task(scheduler, "normal", RefreshScheduler.Priority.NORMAL, order, done);
+			RefreshScheduler.Task high = task(scheduler, "high", RefreshScheduler.Priority.HIGH, order, done);
+
+			assertTrue(blocker.trigger());
+			assertTrue(blocked.await(5, TimeUnit.SECONDS));
+			assertTrue(blocker.isPending());
+			assertFalse(blocker.trigger());
+
+			assertTrue(low.trigger());
+			assertTrue(normal.trigger());
+			assertFalse(normal.trigger());
+			assertTrue(high.trigger());
+			assertEquals(3, scheduler.getNumberQueued());
+			release.countDown();
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+
+			assertEquals(L.l("high", "normal", "low"), order);
+			assertEquals(2, scheduler.getNumberOfCollapsed());
+			assertTrue(scheduler.getMetaInformation().contains("refreshes: "));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testBounded() throws InterruptedException {
+		RefreshScheduler scheduler = new RefreshScheduler(2, 10);
+		try {
+			final AtomicInteger runs = new AtomicInteger();
+			final CountDownLatch release = new CountDownLatch(1);
+			int accepted = 0;
+			for (int i = 0; i < 1000; i++) {
+				RefreshScheduler.Task task = scheduler.createTask("t" + i, RefreshScheduler.Priority.NORMAL,
+						new Runnable() {
+							@Override
+							public void run() {
+								try {
+									release.await();
+								} catch (InterruptedException e) {
+									throw new IllegalStateException(e);
+								}
+								runs.incrementAndGet();
+							}
+						});
+				if (task.trigger()) {
+					accepted++;
+				}
+			}
+			assertTrue(accepted <= 12);
+			assertEquals(1000 - accepted, scheduler.getNumberOfDropped());
+			release.countDown();
+			long end = System.currentTimeMillis() + 5000;
+			while (runs.get() < accepted && System.currentTimeMillis() < end) {
+				Thread.sleep(10);
+			}
+			assertEquals(accepted, runs.get());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testRefreshAt() {
+		RefreshScheduler scheduler = new RefreshScheduler(1, 1);
+		for (int i = 0; i < 100; i++) {
+			long at = scheduler.refreshAt(1000, 1000);
+			assertTrue(String.valueOf(at), at >= 1800 && at <= 1900);
+		}
+		scheduler.shutdown();
+	}
+
+	private static RefreshScheduler.Task task(final RefreshScheduler scheduler, final String name,
+			final RefreshScheduler.Priority priority, final List<String> order, final CountDownLatch done) {
+		return scheduler.createTask(name, priority, new Runnable() {
+			@Override
+			public void run() {
+				order.add(name);
+				done.countDown();
+			}
+		});
+	}
+}
@@ -0,0 +1,114 @@
+package de.zarncke.lib.www;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+import de.zarncke.lib.coll.L;
+import de.zarncke.lib.err.GuardedTest;
+import de.zarncke.lib.io.IOTools;
+import de.zarncke.lib.io.store.FileStore;
+import de.zarncke.lib.io.store.MemStore;
+import de.zarncke.lib.log.StringLog;
+import de.zarncke.lib.region.RegionUtil;
+import de.zarncke.lib.www.HttpEntity.Range;
+
+public class HttpEntityTest extends GuardedTest {
+	private static final byte[] DATA = "0123456789abcdefghij".getBytes();
+
+	public void testRanges() {
+		HttpEntity entity = HttpEntity.of(DATA);
+		assertNull(entity.getRanges(null, null));
+		assertNull(entity.getRanges("items=1-2", null));
+		assertNull(entity.getRanges("bytes=5-2", null));
+		assertNull(entity.getRanges("bytes=x-2", null));
+		assertEquals(L.l(new Range(0, 9)), entity.getRanges("bytes=0-9", null));
+		assertEquals(L.l(new Range(15, 19)), entity.getRanges("bytes=15-", null));
+		assertEquals(L.l(new Range(15, 19)), entity.getRanges("bytes=-5", null));
+		assertEquals(L.l(new Range(0, 19)), entity.getRanges("bytes=-50", null));
+		assertEquals(L.l(new Range(10, 19)), entity.getRanges("bytes=10-100", null));
+		assertEquals(L.l(new Range(0, 1), new Range(18, 19)), entity.getRanges("bytes=0-1, -2", null));
+		assertEquals(L.l(), entity.getRanges("bytes=20-30", null));
+		assertEquals("bytes 15-19/20", new Range(15, 19).toContentRange(20));
+	}
+
+	public void testConditional() throws IOException {
+		File file = File.createTempFile("entity", ".txt");
+		try {
+			IOTools.dump(DATA, file);
+			long modified = 1400000000000L;
+			assertTrue(file.setLastModified(modified));
+			HttpEntity entity = HttpEntity.of(new FileStore(file));
+			assertEquals(DATA.length, entity.getLength());
+			String etag = entity.getETag();
+			assertNotNull(etag);
+			assertTrue(etag.startsWith("W/\""));
+
+			assertFalse(entity.isNotModified(null, null));
+			assertTrue(entity.isNotModified(etag, null));
+			assertTrue(entity.isNotModified("\"other\", " + etag, null));
+			assertTrue(entity.isNotModified("*", null));
+			assertFalse(entity.isNotModified("\"other\"", HttpEntity.formatHttpDate(modified)));
+			assertTrue(entity.isNotModified(null, HttpEntity.formatHttpDate(modified)));
+			assertTrue(entity.isNotModified(null, HttpEntity.formatHttpDate(modified + 5000)));
+			assertFalse(entity.isNotModified(null, HttpEntity.formatHttpDate(modified - 5000)));
+			assertFalse(entity.isNotModified(null, "garbage"));
+
+			// If-Range
+			assertEquals(L.l(new Range(2, 3)), entity.getRanges("bytes=2-3", HttpEntity.formatHttpDate(modified)));
+			assertNull(entity.getRanges("bytes=2-3", HttpEntity.formatHttpDate(modified - 5000)));
+			assertNull(entity.getRanges("bytes=2-3", etag));
+
+			assertEquals("23456", transfer(entity, 2, 5));
+
+			assertTrue(file.setLastModified(modified + 10000));
+			assertFalse(HttpEntity.of(new FileStore(file)).isNotModified(etag, null));
+		} finally {
+			file.delete();
+		}
+		assertNull(HttpEntity.of(DATA).getETag());
+		assertFalse(HttpEntity.of(DATA).isNotModified("*", null));
+	}
+
+	public void testTransfer() throws IOException {
+		assertEquals("0123456789abcdefghij", transfer(HttpEntity.of(DATA), 0, DATA.length));
+		assertEquals("ab", transfer(HttpEntity.of(DATA), 10, 2));
+
+		MemStore store = new MemStore(RegionUtil.asRegion(DATA));
+		assertEquals("9abc", transfer(HttpEntity.of(store), 9, 4));
+
+		HttpEntity entity = HttpEntity.of(DATA);
+		List<Range> ranges = entity.getRanges("bytes=0-1,-2", null);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		WritableByteChannel channel = Channels.newChannel(baos);
+		entity.transferMultipart(ranges, "text/plain", "XYZ", channel);
+		String multipart = new String(baos.toByteArray());
+		assertEquals(entity.getMultipartLength(ranges, "text/plain", "XYZ"), multipart.length());
+		assertEquals("\r\n--XYZ\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-1/20\r\n\r\n01"
+				+ "\r\n--XYZ\r\nContent-Type: text/plain\r\nContent-Range: bytes 18-19/20\r\n\r\nij\r\n--XYZ--\r\n",
+				multipart);
+	}
+
+	private static String transfer(final HttpEntity entity, final long offset, final long count) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		entity.transfer(offset, count, Channels.newChannel(baos));
+		return new String(baos.toByteArray());
+	}
+
+	public void testAccessLog() {
+		StringLog target = new StringLog();
+		AccessLog log = new AccessLog(target, 2);
+		log.log("first");
+		log.log("second");
+		log.log("third");
+		log.close();
+		String written = target.toString();
+		assertTrue(written, written.contains("first"));
+		assertTrue(written, written.contains("second") || written.contains("dropped"));
+		log.log("after close");
+		assertFalse(target.toString().contains("after close"));
+	}
+}